@@ -0,0 +1,72 @@
+package me.egg82.antivpn.api.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A single page of results read from storage, along with the cursor
+ * needed to read the page after it.
+ *
+ * @param <T> the type of the results
+ */
+public final class Page<T> {
+    private final @NotNull List<T> items;
+    private final long cursor;
+    private final boolean more;
+
+    public Page(@NotNull List<T> items, long cursor, boolean more) {
+        this.items = Collections.unmodifiableList(items);
+        this.cursor = cursor;
+        this.more = more;
+    }
+
+    /**
+     * Gets the results in this page, in storage order.
+     *
+     * @return an immutable list of results
+     */
+    @NotNull
+    public List<T> getItems() { return items; }
+
+    /**
+     * Gets the cursor to pass in to get the next page.
+     *
+     * @return the cursor for the next page
+     */
+    public long getCursor() { return cursor; }
+
+    /**
+     * Gets whether or not there may be more results after this page.
+     * The next page may still be empty if this page ended exactly at the last result.
+     *
+     * @return true if there may be more results, false if this is the last page
+     */
+    public boolean hasMore() { return more; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Page)) {
+            return false;
+        }
+        Page<?> page = (Page<?>) o;
+        return cursor == page.cursor && more == page.more && items.equals(page.items);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(items, cursor, more); }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "items=" + items +
+                ", cursor=" + cursor +
+                ", more=" + more +
+                '}';
+    }
+}
@@ -1,18 +1,22 @@
 package me.egg82.antivpn.api.model.ip;
 
 import me.egg82.antivpn.api.APIException;
+import me.egg82.antivpn.api.model.Page;
 import me.egg82.antivpn.api.model.player.Player;
 import net.kyori.adventure.text.Component;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
@@ -118,6 +122,33 @@ public interface IPManager {
     @NotNull
     CompletableFuture<@NotNull Set<@NotNull InetAddress>> getIPs();
 
+    /**
+     * Gets a page of known IPs. Pages are read in storage order, so
+     * large sets of IPs can be read without holding them all in memory.
+     *
+     * @param cursor the cursor from the previous page, or 0 for the first page
+     * @param max the maximum number of IPs to return
+     *
+     * @return a {@link CompletableFuture} - a page of IPs
+     *
+     * @throws IllegalArgumentException if max is &lt;= 0
+     */
+    @NotNull
+    CompletableFuture<@NotNull Page<@NotNull InetAddress>> getIPs(long cursor, int max);
+
+    /**
+     * Runs the consumer against every known IP, reading them from storage a page at a time.
+     * The consumer is run on a background thread.
+     *
+     * @param consumer the consumer to run against each IP
+     *
+     * @return a {@link CompletableFuture} which completes once every IP has been consumed
+     *
+     * @throws NullPointerException if consumer is null
+     */
+    @NotNull
+    CompletableFuture<Void> forEachIP(@NotNull Consumer<@NotNull InetAddress> consumer);
+
     /**
      * Gets the {@link AlgorithmMethod}, which represents the algorithm method
      * Anti-VPN is currently using to determine IP statuses.
@@ -243,6 +274,94 @@ public interface IPManager {
     @NotNull
     CompletableFuture<@NotNull Double> consensus(@NotNull String ip, boolean useCache);
 
+    /**
+     * Gets the cascade results for a number of IPs from Anti-VPN
+     * using the configuration provided to the plugin.
+     *
+     * <p>You may choose to use Anti-VPN's internal cache
+     * for the results, or skip the cache and get answers
+     * directly from the sources.</p>
+     *
+     * <p>Duplicate IPs are only checked once. Cached and stored
+     * results are fetched in bulk before any sources are queried.
+     * IPs which could not be checked are absent from the result.</p>
+     *
+     * @param ips The IPs to test
+     * @param useCache true if you would like to use Anti-VPN's internal cache, false if not
+     *
+     * @return a {@link CompletableFuture} - a map of IPs to true if the cascade algorithm thinks the IP is a VPN/proxy, false if not
+     *
+     * @throws NullPointerException if ips is null
+     */
+    @NotNull
+    CompletableFuture<@NotNull Map<@NotNull String, @NotNull Boolean>> cascadeAll(@NotNull Collection<@NotNull String> ips, boolean useCache);
+
+    /**
+     * Gets the consensus results for a number of IPs from Anti-VPN
+     * using the configuration provided to the plugin.
+     *
+     * <p>You may choose to use Anti-VPN's internal cache
+     * for the results, or skip the cache and get answers
+     * directly from the sources.</p>
+     *
+     * <p>Duplicate IPs are only checked once. Cached and stored
+     * results are fetched in bulk before any sources are queried.
+     * IPs which could not be checked are absent from the result.</p>
+     *
+     * @param ips The IPs to test
+     * @param useCache true if you would like to use Anti-VPN's internal cache, false if not
+     *
+     * @return a {@link CompletableFuture} - a map of IPs to a number between 0 and 1 determining the likelihood that the IP is a VPN/proxy
+     *
+     * @throws NullPointerException if ips is null
+     */
+    @NotNull
+    CompletableFuture<@NotNull Map<@NotNull String, @NotNull Double>> consensusAll(@NotNull Collection<@NotNull String> ips, boolean useCache);
+
+    /**
+     * Gets the cascade results for a number of IPs from Anti-VPN
+     * using the configuration provided to the plugin, passing
+     * each result to the consumer as soon as it is available.
+     * The consumer is run on a background thread, one result at a time.
+     *
+     * <p>Results are not given in any particular order. Duplicate
+     * IPs are only checked once, and IPs which could not be checked
+     * are skipped. Use this rather than {@link #cascadeAll(Collection, boolean)}
+     * for large batches which should not be held in memory at once.</p>
+     *
+     * @param ips The IPs to test
+     * @param useCache true if you would like to use Anti-VPN's internal cache, false if not
+     * @param consumer the consumer to run against each IP and its result - true if the cascade algorithm thinks the IP is a VPN/proxy, false if not
+     *
+     * @return a {@link CompletableFuture} which completes once every IP has been checked
+     *
+     * @throws NullPointerException if ips or consumer is null
+     */
+    @NotNull
+    CompletableFuture<Void> forEachCascade(@NotNull Collection<@NotNull String> ips, boolean useCache, @NotNull BiConsumer<@NotNull String, @NotNull Boolean> consumer);
+
+    /**
+     * Gets the consensus results for a number of IPs from Anti-VPN
+     * using the configuration provided to the plugin, passing
+     * each result to the consumer as soon as it is available.
+     * The consumer is run on a background thread, one result at a time.
+     *
+     * <p>Results are not given in any particular order. Duplicate
+     * IPs are only checked once, and IPs which could not be checked
+     * are skipped. Use this rather than {@link #consensusAll(Collection, boolean)}
+     * for large batches which should not be held in memory at once.</p>
+     *
+     * @param ips The IPs to test
+     * @param useCache true if you would like to use Anti-VPN's internal cache, false if not
+     * @param consumer the consumer to run against each IP and its result - a number between 0 and 1 determining the likelihood that the IP is a VPN/proxy
+     *
+     * @return a {@link CompletableFuture} which completes once every IP has been checked
+     *
+     * @throws NullPointerException if ips or consumer is null
+     */
+    @NotNull
+    CompletableFuture<Void> forEachConsensus(@NotNull Collection<@NotNull String> ips, boolean useCache, @NotNull BiConsumer<@NotNull String, @NotNull Double> consumer);
+
     /**
      * Returns the minimum consensus value from
      * Anti-VPN's configuration.
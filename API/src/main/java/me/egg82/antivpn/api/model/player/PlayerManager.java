@@ -1,6 +1,7 @@
 package me.egg82.antivpn.api.model.player;
 
 import me.egg82.antivpn.api.APIException;
+import me.egg82.antivpn.api.model.Page;
 import me.egg82.antivpn.api.model.ip.IP;
 import net.kyori.adventure.text.Component;
 import org.jetbrains.annotations.NotNull;
@@ -102,6 +103,33 @@ public interface PlayerManager {
     @NotNull
     CompletableFuture<@NotNull Set<@NotNull UUID>> getPlayers();
 
+    /**
+     * Gets a page of known player {@link UUID}s. Pages are read in storage order, so
+     * large sets of players can be read without holding them all in memory.
+     *
+     * @param cursor the cursor from the previous page, or 0 for the first page
+     * @param max the maximum number of UUIDs to return
+     *
+     * @return a {@link CompletableFuture} - a page of UUIDs
+     *
+     * @throws IllegalArgumentException if max is &lt;= 0
+     */
+    @NotNull
+    CompletableFuture<@NotNull Page<@NotNull UUID>> getPlayers(long cursor, int max);
+
+    /**
+     * Runs the consumer against every known player {@link UUID}, reading them from storage a page at a time.
+     * The consumer is run on a background thread.
+     *
+     * @param consumer the consumer to run against each UUID
+     *
+     * @return a {@link CompletableFuture} which completes once every UUID has been consumed
+     *
+     * @throws NullPointerException if consumer is null
+     */
+    @NotNull
+    CompletableFuture<Void> forEachPlayer(@NotNull Consumer<@NotNull UUID> consumer);
+
     /**
      * Gets the MCLeaks result from Anti-VPN using the configuration
      * provided to the plugin.
@@ -6,7 +6,12 @@ import me.egg82.antivpn.api.model.source.models.SourceModel;
 import org.jetbrains.annotations.NotNull;
 
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * An API source which contains information about various statuses it holds and methods for interfacing with the API.
@@ -68,6 +73,47 @@ public interface Source<T extends SourceModel> {
     @NotNull
     CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip);
 
+    /**
+     * Returns the results for a batch of IPs from the source given its configuration.
+     *
+     * <p>Sources which declare a {@link SourceCapabilities#getMaxBatchSize()} greater than 1
+     * check up to that many IPs in a single request. By default, each IP is checked on its own.
+     * IPs the source could not return a result for are left out of the map,
+     * unless it could not return a result for any of them.</p>
+     *
+     * @param ips the IPs to test
+     *
+     * @return a {@link CompletableFuture} - a map of each IP to true if the source thinks the IP is a VPN/proxy, false if not
+     *
+     * @throws NullPointerException if the IPs are null
+     * @throws APIException in the result if the source returned an error for the whole batch, or for every IP in it
+     */
+    @NotNull
+    default CompletableFuture<@NotNull Map<@NotNull String, @NotNull Boolean>> getResults(@NotNull Collection<@NotNull String> ips) {
+        Map<String, CompletableFuture<Boolean>> futures = new LinkedHashMap<>();
+        for (String ip : ips) {
+            futures.put(ip, getResult(ip));
+        }
+        return CompletableFuture.allOf(futures.values().stream().map(f -> f.handle((v, ex) -> v)).toArray(CompletableFuture[]::new)).thenApply(v -> {
+            Map<String, Boolean> retVal = new LinkedHashMap<>();
+            Throwable error = null;
+            for (Map.Entry<String, CompletableFuture<Boolean>> kvp : futures.entrySet()) {
+                try {
+                    retVal.put(kvp.getKey(), kvp.getValue().join());
+                } catch (CompletionException | CancellationException ex) {
+                    if (error == null) {
+                        error = ex.getCause() != null ? ex.getCause() : ex;
+                    }
+                }
+            }
+            // Nothing at all came back, so the source itself is failing rather than a few of the IPs
+            if (retVal.isEmpty() && error != null) {
+                throw error instanceof APIException ? (APIException) error : new APIException(false, "Could not get results from " + getName(), error);
+            }
+            return retVal;
+        });
+    }
+
     /**
      * Returns the raw response from the source given its configuration.
      *
@@ -117,4 +163,12 @@ public interface Source<T extends SourceModel> {
      */
     @NotNull
     Class<T> getModelClass();
+
+    /**
+     * Returns the source's capabilities, used to batch, throttle and order lookups.
+     *
+     * @return the source's capabilities, {@link SourceCapabilities#DEFAULT} if not declared
+     */
+    @NotNull
+    default SourceCapabilities getCapabilities() { return SourceCapabilities.DEFAULT; }
 }
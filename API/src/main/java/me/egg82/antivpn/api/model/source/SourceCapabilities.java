@@ -0,0 +1,215 @@
+package me.egg82.antivpn.api.model.source;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes what a {@link Source} can do and what it costs to use,
+ * so lookups can be batched, throttled and ordered around it.
+ */
+public final class SourceCapabilities {
+    /**
+     * The capabilities assumed for sources which don't declare their own:
+     * one IP per request, no declared limits, low cost, normal latency and IPv6 support.
+     */
+    public static final @NotNull SourceCapabilities DEFAULT = builder().build();
+
+    private int maxBatchSize = 1;
+    private @NotNull List<@NotNull RateLimit> rateLimits = Collections.emptyList();
+    private @NotNull Cost cost = Cost.LOW;
+    private @NotNull LatencyClass latencyClass = LatencyClass.NORMAL;
+    private boolean ipv6 = true;
+
+    private SourceCapabilities() { }
+
+    /**
+     * Gets the largest number of IPs the source can check in a single call to
+     * {@link Source#getResults(java.util.Collection)}.
+     *
+     * @return the maximum batch size, 1 if the source does not support batching
+     */
+    public int getMaxBatchSize() { return maxBatchSize; }
+
+    /**
+     * Gets the rate limits declared by the source. Each IP checked counts as one request.
+     *
+     * @return an immutable list of the source's rate limits
+     */
+    @NotNull
+    public List<@NotNull RateLimit> getRateLimits() { return rateLimits; }
+
+    /**
+     * Gets the relative cost of a single lookup from the source.
+     *
+     * @return the source's relative cost
+     */
+    @NotNull
+    public Cost getCost() { return cost; }
+
+    /**
+     * Gets the latency the source is expected to respond with.
+     *
+     * @return the source's expected latency class
+     */
+    @NotNull
+    public LatencyClass getLatencyClass() { return latencyClass; }
+
+    /**
+     * Returns the source's support for IPv6 addresses.
+     *
+     * @return true if the source can check IPv6 addresses, false if not
+     */
+    public boolean supportsIpv6() { return ipv6; }
+
+    @NotNull
+    public static SourceCapabilities.Builder builder() { return new SourceCapabilities.Builder(); }
+
+    public static class Builder {
+        private final SourceCapabilities values = new SourceCapabilities();
+        private final List<RateLimit> rateLimits = new ArrayList<>();
+
+        private Builder() { }
+
+        @NotNull
+        public SourceCapabilities.Builder maxBatchSize(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.maxBatchSize = value;
+            return this;
+        }
+
+        @NotNull
+        public SourceCapabilities.Builder rateLimit(int requests, long period, @NotNull TimeUnit unit) {
+            rateLimits.add(new RateLimit(requests, period, unit));
+            return this;
+        }
+
+        @NotNull
+        public SourceCapabilities.Builder cost(@NotNull Cost value) {
+            values.cost = value;
+            return this;
+        }
+
+        @NotNull
+        public SourceCapabilities.Builder latencyClass(@NotNull LatencyClass value) {
+            values.latencyClass = value;
+            return this;
+        }
+
+        @NotNull
+        public SourceCapabilities.Builder ipv6(boolean value) {
+            values.ipv6 = value;
+            return this;
+        }
+
+        @NotNull
+        public SourceCapabilities build() {
+            values.rateLimits = Collections.unmodifiableList(new ArrayList<>(rateLimits));
+            return values;
+        }
+    }
+
+    /**
+     * A limit of a number of requests over a fixed period of time.
+     */
+    public static final class RateLimit {
+        private final int requests;
+        private final long periodMillis;
+
+        public RateLimit(int requests, long period, @NotNull TimeUnit unit) {
+            if (requests <= 0) {
+                throw new IllegalArgumentException("requests cannot be <= 0.");
+            }
+            if (period <= 0L) {
+                throw new IllegalArgumentException("period cannot be <= 0.");
+            }
+
+            this.requests = requests;
+            this.periodMillis = unit.toMillis(period);
+        }
+
+        /**
+         * Gets the number of requests allowed in each period.
+         *
+         * @return the number of requests allowed
+         */
+        public int getRequests() { return requests; }
+
+        /**
+         * Gets the length of the period, in milliseconds.
+         *
+         * @return the period length in milliseconds
+         */
+        public long getPeriodMillis() { return periodMillis; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RateLimit)) {
+                return false;
+            }
+            RateLimit that = (RateLimit) o;
+            return requests == that.requests && periodMillis == that.periodMillis;
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(requests, periodMillis); }
+
+        @Override
+        public String toString() {
+            return "RateLimit{" +
+                    "requests=" + requests +
+                    ", periodMillis=" + periodMillis +
+                    '}';
+        }
+    }
+
+    /**
+     * The relative cost of a single lookup.
+     */
+    public enum Cost {
+        /**
+         * Free, or effectively free.
+         */
+        FREE,
+        /**
+         * Free within a generous quota.
+         */
+        LOW,
+        /**
+         * Free within a small quota, or cheap to pay for.
+         */
+        MEDIUM,
+        /**
+         * Paid per lookup, or limited to a very small quota.
+         */
+        HIGH
+    }
+
+    /**
+     * How quickly a source is expected to respond.
+     */
+    public enum LatencyClass {
+        /**
+         * Usually responds well under 200ms.
+         */
+        FAST,
+        /**
+         * Usually responds in under a second.
+         */
+        NORMAL,
+        /**
+         * Regularly takes a second or more to respond.
+         */
+        SLOW
+    }
+}
@@ -2,9 +2,15 @@ package me.egg82.antivpn.api.model.ip;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import me.egg82.antivpn.api.APIException;
+import me.egg82.antivpn.api.model.Page;
+import me.egg82.antivpn.api.model.source.AbstractSource;
 import me.egg82.antivpn.api.model.source.Source;
+import me.egg82.antivpn.api.model.source.SourceCapabilities;
 import me.egg82.antivpn.api.model.source.SourceManager;
+import me.egg82.antivpn.api.model.source.SourceRateLimiter;
 import me.egg82.antivpn.api.model.source.models.SourceModel;
 import me.egg82.antivpn.config.CachedConfig;
 import me.egg82.antivpn.config.ConfigUtil;
@@ -15,6 +21,7 @@ import me.egg82.antivpn.messaging.packets.vpn.IPPacket;
 import me.egg82.antivpn.storage.StorageService;
 import me.egg82.antivpn.storage.models.IPModel;
 import me.egg82.antivpn.utils.PacketUtil;
+import me.egg82.antivpn.utils.StorageUtil;
 import me.egg82.antivpn.utils.TimeUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -23,17 +30,31 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public abstract class AbstractIPManager implements IPManager {
     protected final @NotNull Logger logger = new GELFLogger(LoggerFactory.getLogger(getClass()));
 
+    private static final int PAGE_SIZE = 500;
+
     private final @NotNull LoadingCache<Pair<String, AlgorithmMethod>, IPModel> ipCache;
     private final @NotNull LoadingCache<String, Boolean> sourceInvalidationCache;
+    // Only for sources that don't extend AbstractSource, which keeps its own limiter
+    private final @NotNull ConcurrentMap<String, SourceRateLimiter> sourceLimiters = new ConcurrentHashMap<>();
+
+    // Shared by every bulk lookup, so together they never run more source requests at once than the configured thread count
+    private final @NotNull ThreadPoolExecutor batchPool = new ThreadPoolExecutor(
+            1,
+            1,
+            30L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("Anti-VPN_BatchLookup_%d").setDaemon(true).build()
+    );
 
     private final @NotNull SourceManager sourceManager;
 
@@ -45,6 +66,7 @@ public abstract class AbstractIPManager implements IPManager {
                 .expireAfterWrite(cacheTime.getTime(), cacheTime.getUnit())
                 .build(k -> calculateIpResult(k.getT1(), k.getT2(), true));
         sourceInvalidationCache = Caffeine.newBuilder().expireAfterWrite(1L, TimeUnit.MINUTES).build(k -> Boolean.FALSE);
+        batchPool.allowCoreThreadTimeOut(true);
     }
 
     @NotNull
@@ -56,14 +78,12 @@ public abstract class AbstractIPManager implements IPManager {
         return CompletableFuture.supplyAsync(() -> {
             CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-            for (StorageService service : cachedConfig.getStorage()) {
-                IPModel model = service.getIpModel(ip, cachedConfig.getSourceCacheTime());
-                if (model != null) {
-                    try {
-                        return new GenericIP(InetAddress.getByName(ip), AlgorithmMethod.values()[model.getType()], model.getCascade(), model.getConsensus());
-                    } catch (UnknownHostException ex) {
-                        throw new IllegalArgumentException("Could not create InetAddress for " + model.getIp());
-                    }
+            IPModel model = StorageUtil.getFirst(cachedConfig.getStorage(), s -> s.getIpModel(ip, cachedConfig.getSourceCacheTime()));
+            if (model != null) {
+                try {
+                    return new GenericIP(InetAddress.getByName(ip), AlgorithmMethod.values()[model.getType()], model.getCascade(), model.getConsensus());
+                } catch (UnknownHostException ex) {
+                    throw new IllegalArgumentException("Could not create InetAddress for " + model.getIp());
                 }
             }
             return null;
@@ -76,12 +96,12 @@ public abstract class AbstractIPManager implements IPManager {
         return CompletableFuture.runAsync(() -> {
             CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-            for (StorageService service : cachedConfig.getStorage()) {
+            StorageUtil.forEach(cachedConfig.getStorage(), service -> {
                 IPModel model = service.getOrCreateIpModel(ip.getIP().getHostAddress(), ip.getType().ordinal());
                 model.setCascade(ip.getCascade());
                 model.setConsensus(ip.getConsensus());
                 service.storeModel(model);
-            }
+            });
 
             IPPacket packet = new IPPacket();
             packet.setIp(ip.getIP().getHostAddress());
@@ -98,12 +118,12 @@ public abstract class AbstractIPManager implements IPManager {
         return CompletableFuture.runAsync(() -> {
             CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-            for (StorageService service : cachedConfig.getStorage()) {
+            StorageUtil.forEach(cachedConfig.getStorage(), service -> {
                 IPModel model = new IPModel();
                 model.setIp(ip);
 
                 service.deleteModel(model);
-            }
+            });
 
             DeleteIPPacket packet = new DeleteIPPacket();
             packet.setIp(ip);
@@ -118,23 +138,83 @@ public abstract class AbstractIPManager implements IPManager {
             CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
             Set<InetAddress> retVal = new HashSet<>();
-            for (StorageService service : cachedConfig.getStorage()) {
-                Set<IPModel> models = service.getAllIps(cachedConfig.getSourceCacheTime());
-                if (!models.isEmpty()) {
-                    for (IPModel model : models) {
-                        try {
-                            retVal.add(InetAddress.getByName(model.getIp()));
-                        } catch (UnknownHostException ex) {
-                            logger.warn("Could not create InetAddress for " + model.getIp());
-                        }
+            Iterator<IPModel> models = StorageUtil.getFirst(cachedConfig.getStorage(), s -> {
+                Iterator<IPModel> r = s.streamIps(0L, PAGE_SIZE, cachedConfig.getSourceCacheTime());
+                return r.hasNext() ? r : null;
+            });
+            if (models != null) {
+                while (models.hasNext()) {
+                    InetAddress ip = toInetAddress(models.next());
+                    if (ip != null) {
+                        retVal.add(ip);
                     }
-                    break;
                 }
             }
             return retVal;
         });
     }
 
+    @Override
+    @NotNull
+    public CompletableFuture<@NotNull Page<@NotNull InetAddress>> getIPs(long cursor, int max) {
+        if (max <= 0) {
+            throw new IllegalArgumentException("max cannot be <= 0.");
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+            if (cachedConfig.getStorage().isEmpty()) {
+                return new Page<>(Collections.emptyList(), cursor, false);
+            }
+            // Cursors are ids, which only mean anything to the storage they came from
+            StorageService service = cachedConfig.getStorage().get(0);
+
+            List<IPModel> models = service.getIpPage(cursor, max, cachedConfig.getSourceCacheTime());
+            List<InetAddress> retVal = new ArrayList<>(models.size());
+            long last = cursor;
+            for (IPModel model : models) {
+                InetAddress ip = toInetAddress(model);
+                if (ip != null) {
+                    retVal.add(ip);
+                }
+                last = model.getId();
+            }
+            return new Page<>(retVal, last, models.size() == max);
+        });
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> forEachIP(@NotNull Consumer<@NotNull InetAddress> consumer) {
+        Objects.requireNonNull(consumer, "consumer cannot be null.");
+
+        return CompletableFuture.runAsync(() -> {
+            CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+
+            Iterator<IPModel> models = StorageUtil.getFirst(cachedConfig.getStorage(), s -> {
+                Iterator<IPModel> r = s.streamIps(0L, PAGE_SIZE, cachedConfig.getSourceCacheTime());
+                return r.hasNext() ? r : null;
+            });
+            if (models != null) {
+                while (models.hasNext()) {
+                    InetAddress ip = toInetAddress(models.next());
+                    if (ip != null) {
+                        consumer.accept(ip);
+                    }
+                }
+            }
+        });
+    }
+
+    private @Nullable InetAddress toInetAddress(@NotNull IPModel model) {
+        try {
+            return InetAddress.getByAddress(model.getIpBytes());
+        } catch (UnknownHostException ex) {
+            logger.warn("Could not create InetAddress for " + model.getIp());
+            return null;
+        }
+    }
+
     @Override
     @NotNull
     public AlgorithmMethod getCurrentAlgorithmMethod() { return ConfigUtil.getCachedConfig().getVPNAlgorithmMethod(); }
@@ -193,6 +273,58 @@ public abstract class AbstractIPManager implements IPManager {
         });
     }
 
+    @Override
+    @NotNull
+    public CompletableFuture<@NotNull Map<@NotNull String, @NotNull Boolean>> cascadeAll(@NotNull Collection<@NotNull String> ips, boolean useCache) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, Boolean> found = new HashMap<>();
+            calculateIpResults(ips, AlgorithmMethod.CASCADE, useCache, (ip, model) -> found.put(ip, Boolean.TRUE.equals(model.getCascade())));
+            return inOrder(ips, found);
+        });
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<@NotNull Map<@NotNull String, @NotNull Double>> consensusAll(@NotNull Collection<@NotNull String> ips, boolean useCache) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, Double> found = new HashMap<>();
+            calculateIpResults(ips, AlgorithmMethod.CONSESNSUS, useCache, (ip, model) -> found.put(ip, model.getConsensus() == null ? 1.0d : model.getConsensus()));
+            return inOrder(ips, found);
+        });
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> forEachCascade(@NotNull Collection<@NotNull String> ips, boolean useCache, @NotNull BiConsumer<@NotNull String, @NotNull Boolean> consumer) {
+        Objects.requireNonNull(consumer, "consumer cannot be null.");
+
+        return CompletableFuture.runAsync(() -> calculateIpResults(ips, AlgorithmMethod.CASCADE, useCache, (ip, model) -> consumer.accept(ip, Boolean.TRUE.equals(model.getCascade()))));
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> forEachConsensus(@NotNull Collection<@NotNull String> ips, boolean useCache, @NotNull BiConsumer<@NotNull String, @NotNull Double> consumer) {
+        Objects.requireNonNull(consumer, "consumer cannot be null.");
+
+        return CompletableFuture.runAsync(() -> calculateIpResults(
+                ips,
+                AlgorithmMethod.CONSESNSUS,
+                useCache,
+                (ip, model) -> consumer.accept(ip, model.getConsensus() == null ? 1.0d : model.getConsensus())
+        ));
+    }
+
+    private static <T> @NotNull Map<String, T> inOrder(@NotNull Collection<String> ips, @NotNull Map<String, T> found) {
+        Map<String, T> retVal = new LinkedHashMap<>();
+        for (String ip : ips) {
+            T value = found.get(ip);
+            if (value != null) {
+                retVal.put(ip, value);
+            }
+        }
+        return retVal;
+    }
+
     @Override
     public double getMinConsensusValue() { return ConfigUtil.getCachedConfig().getVPNAlgorithmConsensus(); }
 
@@ -201,14 +333,15 @@ public abstract class AbstractIPManager implements IPManager {
         CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
         if (useCache) {
-            for (StorageService service : cachedConfig.getStorage()) {
-                IPModel model = service.getIpModel(ip, cachedConfig.getSourceCacheTime());
-                if (model != null && model.getType() == method.ordinal()) {
-                    if (cachedConfig.getDebug()) {
-                        logger.info("Found database value for IP " + ip + ".");
-                    }
-                    return model;
+            IPModel model = StorageUtil.getFirst(cachedConfig.getStorage(), s -> {
+                IPModel r = s.getIpModel(ip, cachedConfig.getSourceCacheTime());
+                return r != null && r.getType() == method.ordinal() ? r : null;
+            });
+            if (model != null) {
+                if (cachedConfig.getDebug()) {
+                    logger.info("Found database value for IP " + ip + ".");
                 }
+                return model;
             }
         }
 
@@ -222,19 +355,20 @@ public abstract class AbstractIPManager implements IPManager {
 
         if (method == AlgorithmMethod.CONSESNSUS) {
             ExecutorService pool = Executors.newWorkStealingPool(cachedConfig.getThreads());
-            List<Source<SourceModel>> sources = sourceManager.getSources();
+            List<Source<SourceModel>> sources = new ArrayList<>();
+            for (Source<SourceModel> source : sourceManager.getSources()) {
+                // Checked before canQuery, so sources that recently failed don't use up their rate limits
+                if (!isInvalidated(source, cachedConfig) && canQuery(source, ip, cachedConfig)) {
+                    sources.add(source);
+                }
+            }
+            // Start the quickest and cheapest sources first so they aren't stuck behind slow ones when threads are scarce
+            sources.sort(Comparator.comparing((Source<SourceModel> s) -> s.getCapabilities().getLatencyClass()).thenComparing(s -> s.getCapabilities().getCost()));
             CountDownLatch latch = new CountDownLatch(sources.size());
             AtomicLong results = new AtomicLong(0L);
             AtomicLong totalSources = new AtomicLong(0L);
             for (Source<SourceModel> source : sources) {
                 pool.submit(() -> {
-                    if (Boolean.TRUE.equals(sourceInvalidationCache.get(source.getName()))) {
-                        if (cachedConfig.getDebug()) {
-                            logger.info("Skipping source " + source.getName() + " due to recent failure.");
-                        }
-                        latch.countDown();
-                        return;
-                    }
                     if (cachedConfig.getDebug()) {
                         logger.info("Getting result from source " + source.getName() + ".");
                     }
@@ -274,10 +408,10 @@ public abstract class AbstractIPManager implements IPManager {
             }
         } else {
             for (Source<SourceModel> source : sourceManager.getSources()) {
-                if (Boolean.TRUE.equals(sourceInvalidationCache.get(source.getName()))) {
-                    if (cachedConfig.getDebug()) {
-                        logger.info("Skipping source " + source.getName() + " due to recent failure.");
-                    }
+                if (isInvalidated(source, cachedConfig)) {
+                    continue;
+                }
+                if (!canQuery(source, ip, cachedConfig)) {
                     continue;
                 }
                 if (cachedConfig.getDebug()) {
@@ -311,16 +445,297 @@ public abstract class AbstractIPManager implements IPManager {
         throw new APIException(false, "No sources were available to query. See https://github.com/egg82/Anti-VPN/wiki/FAQ#Errors");
     }
 
+    /*
+    Passes each result to the consumer as soon as it's known, on the calling thread. IPs which could not be checked are skipped.
+     */
+    private void calculateIpResults(@NotNull Collection<String> ips, @NotNull AlgorithmMethod method, boolean useCache, @NotNull BiConsumer<String, IPModel> consumer) {
+        CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+
+        Set<String> remaining = new LinkedHashSet<>(ips);
+
+        if (useCache && !remaining.isEmpty()) {
+            int total = remaining.size();
+
+            List<Pair<String, AlgorithmMethod>> keys = new ArrayList<>(remaining.size());
+            for (String ip : remaining) {
+                keys.add(new Pair<>(ip, method));
+            }
+            for (Map.Entry<Pair<String, AlgorithmMethod>, IPModel> kvp : ipCache.getAllPresent(keys).entrySet()) {
+                remaining.remove(kvp.getKey().getT1());
+                consumer.accept(kvp.getKey().getT1(), kvp.getValue());
+            }
+
+            for (StorageService service : cachedConfig.getStorage()) {
+                if (remaining.isEmpty()) {
+                    break;
+                }
+                // Keys are the IPs as requested, which may be written differently to the stored form
+                for (Map.Entry<String, IPModel> kvp : service.getIpModels(remaining, cachedConfig.getSourceCacheTime()).entrySet()) {
+                    if (kvp.getValue().getType() == method.ordinal() && remaining.remove(kvp.getKey())) {
+                        ipCache.put(new Pair<>(kvp.getKey(), method), kvp.getValue());
+                        consumer.accept(kvp.getKey(), kvp.getValue());
+                    }
+                }
+            }
+
+            if (cachedConfig.getDebug()) {
+                logger.info("Found " + (total - remaining.size()) + "/" + total + " IPs in cache or storage.");
+            }
+        }
+
+        if (remaining.isEmpty()) {
+            return;
+        }
+
+        ExecutorService pool = getBatchPool(cachedConfig.getThreads());
+        if (method == AlgorithmMethod.CASCADE) {
+            calculateCascadeResults(remaining, cachedConfig, useCache, pool, consumer);
+        } else {
+            // Chunked so results can be handed back before the whole batch is done
+            for (List<String> chunk : Lists.partition(new ArrayList<>(remaining), PAGE_SIZE)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                calculateConsensusResults(chunk, cachedConfig, useCache, pool, consumer);
+            }
+        }
+    }
+
+    private void calculateCascadeResults(
+            @NotNull Set<String> ips,
+            @NotNull CachedConfig cachedConfig,
+            boolean useCache,
+            @NotNull ExecutorService pool,
+            @NotNull BiConsumer<String, IPModel> consumer
+    ) {
+        Set<String> remaining = new LinkedHashSet<>(ips);
+
+        // Sources are tried in the configured order, each one given every IP the sources before it couldn't answer
+        for (Source<SourceModel> source : sourceManager.getSources()) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+
+            List<Future<Map<String, Boolean>>> futures = new ArrayList<>();
+            for (List<String> batch : getBatches(source, remaining, cachedConfig)) {
+                futures.add(pool.submit(() -> source.getResults(batch).get()));
+            }
+
+            for (Future<Map<String, Boolean>> future : futures) {
+                try {
+                    Map<String, Boolean> results = future.get();
+                    if (results.isEmpty()) {
+                        invalidateEmpty(source);
+                        continue;
+                    }
+                    for (Map.Entry<String, Boolean> kvp : results.entrySet()) {
+                        if (!remaining.remove(kvp.getKey())) {
+                            continue;
+                        }
+                        IPModel model = new IPModel();
+                        model.setIp(kvp.getKey());
+                        model.setType(AlgorithmMethod.CASCADE.ordinal());
+                        model.setCascade(kvp.getValue());
+                        if (useCache) {
+                            cacheResult(model, AlgorithmMethod.CASCADE, cachedConfig);
+                        }
+                        consumer.accept(kvp.getKey(), model);
+                    }
+                } catch (InterruptedException ignored) {
+                    cancelAll(futures);
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException | CancellationException ex) {
+                    logger.error("Source " + source.getName() + " returned an error. Skipping.", ex);
+                    sourceInvalidationCache.put(source.getName(), Boolean.TRUE);
+                }
+            }
+        }
+    }
+
+    private void calculateConsensusResults(
+            @NotNull List<String> ips,
+            @NotNull CachedConfig cachedConfig,
+            boolean useCache,
+            @NotNull ExecutorService pool,
+            @NotNull BiConsumer<String, IPModel> consumer
+    ) {
+        // Every source is asked at once, each one given the IPs it can answer in as few requests as it allows
+        List<Pair<Source<SourceModel>, Future<Map<String, Boolean>>>> futures = new ArrayList<>();
+        for (Source<SourceModel> source : sourceManager.getSources()) {
+            for (List<String> batch : getBatches(source, ips, cachedConfig)) {
+                futures.add(new Pair<>(source, pool.submit(() -> source.getResults(batch).get())));
+            }
+        }
+
+        Map<String, int[]> counts = new HashMap<>(); // Positive results, total results
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20L);
+        for (Pair<Source<SourceModel>, Future<Map<String, Boolean>>> pair : futures) {
+            try {
+                Map<String, Boolean> results = pair.getT2().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (results.isEmpty()) {
+                    invalidateEmpty(pair.getT1());
+                    continue;
+                }
+                for (Map.Entry<String, Boolean> kvp : results.entrySet()) {
+                    int[] count = counts.computeIfAbsent(kvp.getKey(), k -> new int[2]);
+                    if (Boolean.TRUE.equals(kvp.getValue())) {
+                        count[0]++;
+                    }
+                    count[1]++;
+                }
+            } catch (InterruptedException ignored) {
+                for (Pair<Source<SourceModel>, Future<Map<String, Boolean>>> p : futures) {
+                    p.getT2().cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (TimeoutException ignored) {
+                pair.getT2().cancel(true);
+                logger.warn("Consensus timed out before source " + pair.getT1().getName() + " could be queried.");
+            } catch (ExecutionException | CancellationException ex) {
+                logger.error("Source " + pair.getT1().getName() + " returned an error. Skipping.", ex);
+                sourceInvalidationCache.put(pair.getT1().getName(), Boolean.TRUE);
+            }
+        }
+
+        for (String ip : ips) {
+            int[] count = counts.get(ip);
+            if (count == null) {
+                continue;
+            }
+            IPModel model = new IPModel();
+            model.setIp(ip);
+            model.setType(AlgorithmMethod.CONSESNSUS.ordinal());
+            model.setConsensus((double) count[0] / (double) count[1]);
+            if (useCache) {
+                cacheResult(model, AlgorithmMethod.CONSESNSUS, cachedConfig);
+            }
+            consumer.accept(ip, model);
+        }
+    }
+
+    /*
+    Splits the IPs a source can answer into batches it accepts, taking a rate limit permit for each IP
+     */
+    private @NotNull List<@NotNull List<String>> getBatches(@NotNull Source<SourceModel> source, @NotNull Collection<String> ips, @NotNull CachedConfig cachedConfig) {
+        if (isInvalidated(source, cachedConfig)) {
+            return Collections.emptyList();
+        }
+
+        SourceCapabilities capabilities = source.getCapabilities();
+        List<String> supported = new ArrayList<>();
+        for (String ip : ips) {
+            if (capabilities.supportsIpv6() || !isIpv6(ip)) {
+                supported.add(ip);
+            }
+        }
+        int allowed = acquire(source, supported.size());
+        if (allowed < supported.size()) {
+            if (cachedConfig.getDebug()) {
+                logger.info("Source " + source.getName() + " is rate limited to " + allowed + "/" + supported.size() + " IPs.");
+            }
+            supported = supported.subList(0, allowed);
+        }
+        if (supported.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (cachedConfig.getDebug()) {
+            logger.info("Getting results for " + supported.size() + " IPs from source " + source.getName() + ".");
+        }
+        return Lists.partition(supported, capabilities.getMaxBatchSize());
+    }
+
+    private @NotNull ExecutorService getBatchPool(int threads) {
+        synchronized (batchPool) {
+            // Grown max first and shrunk core first, so core never goes above max
+            if (threads > batchPool.getMaximumPoolSize()) {
+                batchPool.setMaximumPoolSize(threads);
+                batchPool.setCorePoolSize(threads);
+            } else if (threads < batchPool.getMaximumPoolSize()) {
+                batchPool.setCorePoolSize(threads);
+                batchPool.setMaximumPoolSize(threads);
+            }
+        }
+        return batchPool;
+    }
+
+    private static void cancelAll(@NotNull List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private void cacheResult(@NotNull IPModel model, @NotNull AlgorithmMethod method, @NotNull CachedConfig cachedConfig) {
+        ipCache.put(new Pair<>(model.getIp(), method), model);
+        storeResult(model, cachedConfig);
+        sendResult(model, cachedConfig);
+    }
+
+    private boolean isInvalidated(@NotNull Source<SourceModel> source, @NotNull CachedConfig cachedConfig) {
+        if (Boolean.TRUE.equals(sourceInvalidationCache.get(source.getName()))) {
+            if (cachedConfig.getDebug()) {
+                logger.info("Skipping source " + source.getName() + " due to recent failure.");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /*
+    Batches are never empty, so a source that answers none of the IPs it was given is treated as failing
+     */
+    private void invalidateEmpty(@NotNull Source<SourceModel> source) {
+        logger.error("Source " + source.getName() + " returned no results for a batch. Skipping.");
+        sourceInvalidationCache.put(source.getName(), Boolean.TRUE);
+    }
+
+    private boolean canQuery(@NotNull Source<SourceModel> source, @NotNull String ip, @NotNull CachedConfig cachedConfig) {
+        if (!source.getCapabilities().supportsIpv6() && isIpv6(ip)) {
+            if (cachedConfig.getDebug()) {
+                logger.info("Skipping source " + source.getName() + " as it does not support IPv6.");
+            }
+            return false;
+        }
+        if (acquire(source, 1) == 0) {
+            if (cachedConfig.getDebug()) {
+                logger.info("Skipping source " + source.getName() + " due to its rate limit.");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private int acquire(@NotNull Source<SourceModel> source, int permits) {
+        List<SourceCapabilities.RateLimit> limits = source.getCapabilities().getRateLimits();
+        if (limits.isEmpty() || permits <= 0) {
+            return permits;
+        }
+        // Reserved from the source's own limiter, so the request it makes later uses these permits instead of taking more
+        if (source instanceof AbstractSource) {
+            return ((AbstractSource<?>) source).getRateLimiter().reserve(permits);
+        }
+        // Re-created if the source's declared limits change, eg. on a config reload
+        SourceRateLimiter limiter = sourceLimiters.compute(source.getName(), (k, v) -> v == null || !v.getLimits().equals(limits) ? new SourceRateLimiter(limits) : v);
+        return limiter.reserve(permits);
+    }
+
+    private static boolean isIpv6(@NotNull String ip) { return ip.indexOf(':') > -1; }
+
     private void storeResult(@NotNull IPModel model, @NotNull CachedConfig cachedConfig) {
         for (StorageService service : cachedConfig.getStorage()) {
-            IPModel m = service.getOrCreateIpModel(model.getIp(), model.getType());
+            // Each service gets its own copy, since they're written later on their own threads
+            IPModel m = new IPModel();
+            m.setIp(model.getIp());
+            m.setType(model.getType());
             m.setCascade(model.getCascade());
             m.setConsensus(model.getConsensus());
-            service.storeModel(m);
+            service.queueModel(m);
         }
 
         if (cachedConfig.getDebug()) {
-            logger.info("Stored data for " + model.getIp() + " in storage.");
+            logger.info("Queued data for " + model.getIp() + " in storage.");
         }
     }
 
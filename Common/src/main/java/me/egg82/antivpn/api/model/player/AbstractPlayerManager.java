@@ -4,6 +4,7 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
+import me.egg82.antivpn.api.model.Page;
 import me.egg82.antivpn.config.CachedConfig;
 import me.egg82.antivpn.config.ConfigUtil;
 import me.egg82.antivpn.logging.GELFLogger;
@@ -12,6 +13,7 @@ import me.egg82.antivpn.messaging.packets.vpn.PlayerPacket;
 import me.egg82.antivpn.storage.StorageService;
 import me.egg82.antivpn.storage.models.PlayerModel;
 import me.egg82.antivpn.utils.PacketUtil;
+import me.egg82.antivpn.utils.StorageUtil;
 import me.egg82.antivpn.utils.TimeUtil;
 import me.egg82.antivpn.web.WebRequest;
 import me.egg82.antivpn.web.models.MCLeaksResultModel;
@@ -21,18 +23,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public abstract class AbstractPlayerManager implements PlayerManager {
     protected final @NotNull Logger logger = new GELFLogger(LoggerFactory.getLogger(getClass()));
 
+    private static final int PAGE_SIZE = 500;
+
     protected final @NotNull LoadingCache<UUID, PlayerModel> playerCache;
     private final @Nullable String mcleaksKey;
 
@@ -53,10 +55,10 @@ public abstract class AbstractPlayerManager implements PlayerManager {
         return CompletableFuture.runAsync(() -> {
             CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-            for (StorageService service : cachedConfig.getStorage()) {
+            StorageUtil.forEach(cachedConfig.getStorage(), service -> {
                 PlayerModel model = service.getOrCreatePlayerModel(player.getUuid(), player.isMcLeaks());
                 service.storeModel(model);
-            }
+            });
 
             PlayerPacket packet = new PlayerPacket();
             packet.setUuid(player.getUuid());
@@ -71,12 +73,12 @@ public abstract class AbstractPlayerManager implements PlayerManager {
         return CompletableFuture.runAsync(() -> {
             CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-            for (StorageService service : cachedConfig.getStorage()) {
+            StorageUtil.forEach(cachedConfig.getStorage(), service -> {
                 PlayerModel model = new PlayerModel();
                 model.setUuid(uniqueId);
 
                 service.deleteModel(model);
-            }
+            });
 
             DeletePlayerPacket packet = new DeletePlayerPacket();
             packet.setUuid(uniqueId);
@@ -91,19 +93,66 @@ public abstract class AbstractPlayerManager implements PlayerManager {
             CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
             Set<UUID> retVal = new HashSet<>();
-            for (StorageService service : cachedConfig.getStorage()) {
-                Set<PlayerModel> models = service.getAllPlayers(cachedConfig.getSourceCacheTime());
-                if (!models.isEmpty()) {
-                    for (PlayerModel model : models) {
-                        retVal.add(model.getUuid());
-                    }
-                    break;
+            Iterator<PlayerModel> models = StorageUtil.getFirst(cachedConfig.getStorage(), s -> {
+                Iterator<PlayerModel> r = s.streamPlayers(0L, PAGE_SIZE, cachedConfig.getSourceCacheTime());
+                return r.hasNext() ? r : null;
+            });
+            if (models != null) {
+                while (models.hasNext()) {
+                    retVal.add(models.next().getUuid());
                 }
             }
             return retVal;
         });
     }
 
+    @Override
+    @NotNull
+    public CompletableFuture<@NotNull Page<@NotNull UUID>> getPlayers(long cursor, int max) {
+        if (max <= 0) {
+            throw new IllegalArgumentException("max cannot be <= 0.");
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+
+            if (cachedConfig.getStorage().isEmpty()) {
+                return new Page<>(Collections.emptyList(), cursor, false);
+            }
+            // Cursors are ids, which only mean anything to the storage they came from
+            StorageService service = cachedConfig.getStorage().get(0);
+
+            List<PlayerModel> models = service.getPlayerPage(cursor, max, cachedConfig.getSourceCacheTime());
+            List<UUID> retVal = new ArrayList<>(models.size());
+            long last = cursor;
+            for (PlayerModel model : models) {
+                retVal.add(model.getUuid());
+                last = model.getId();
+            }
+            return new Page<>(retVal, last, models.size() == max);
+        });
+    }
+
+    @Override
+    @NotNull
+    public CompletableFuture<Void> forEachPlayer(@NotNull Consumer<@NotNull UUID> consumer) {
+        Objects.requireNonNull(consumer, "consumer cannot be null.");
+
+        return CompletableFuture.runAsync(() -> {
+            CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+
+            Iterator<PlayerModel> models = StorageUtil.getFirst(cachedConfig.getStorage(), s -> {
+                Iterator<PlayerModel> r = s.streamPlayers(0L, PAGE_SIZE, cachedConfig.getSourceCacheTime());
+                return r.hasNext() ? r : null;
+            });
+            if (models != null) {
+                while (models.hasNext()) {
+                    consumer.accept(models.next().getUuid());
+                }
+            }
+        });
+    }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> checkMcLeaks(@NotNull UUID uniqueId, boolean useCache) throws APIException {
@@ -136,14 +185,12 @@ public abstract class AbstractPlayerManager implements PlayerManager {
         CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
         if (useCache) {
-            for (StorageService service : cachedConfig.getStorage()) {
-                PlayerModel model = service.getPlayerModel(uuid, cachedConfig.getSourceCacheTime());
-                if (model != null) {
-                    if (cachedConfig.getDebug()) {
-                        logger.info("Found database value for player " + uuid + ".");
-                    }
-                    return model;
+            PlayerModel model = StorageUtil.getFirst(cachedConfig.getStorage(), s -> s.getPlayerModel(uuid, cachedConfig.getSourceCacheTime()));
+            if (model != null) {
+                if (cachedConfig.getDebug()) {
+                    logger.info("Found database value for player " + uuid + ".");
                 }
+                return model;
             }
         }
 
@@ -155,15 +202,15 @@ public abstract class AbstractPlayerManager implements PlayerManager {
         retVal.setUuid(uuid);
 
         try {
-            HttpURLConnection conn = WebRequest.builder(new URL("https://mcleaks.themrgong.xyz/api/v3/isuuidmcleaks/" + uuid))
+            String body = WebRequest.builder(new URL("https://mcleaks.themrgong.xyz/api/v3/isuuidmcleaks/" + uuid))
                     .timeout(new TimeUtil.Time(2500L, TimeUnit.MILLISECONDS))
                     .userAgent("egg82/Anti-VPN")
                     .header("API-Key", mcleaksKey)
                     .build()
-                    .getConnection();
+                    .getString();
 
             JSONDeserializer<MCLeaksResultModel> modelDeserializer = new JSONDeserializer<>();
-            MCLeaksResultModel model = modelDeserializer.deserialize(WebRequest.getString(conn));
+            MCLeaksResultModel model = modelDeserializer.deserialize(body);
 
             if (model.getError() != null) {
                 throw new APIException(model.getError().contains("rate limit"), model.getError());
@@ -182,12 +229,14 @@ public abstract class AbstractPlayerManager implements PlayerManager {
 
     private void storeResult(@NotNull PlayerModel model, @NotNull CachedConfig cachedConfig) {
         for (StorageService service : cachedConfig.getStorage()) {
-            PlayerModel m = service.getOrCreatePlayerModel(model.getUuid(), model.isMcleaks());
-            service.storeModel(m);
+            PlayerModel m = new PlayerModel();
+            m.setUuid(model.getUuid());
+            m.setMcleaks(model.isMcleaks());
+            service.queueModel(m);
         }
 
         if (cachedConfig.getDebug()) {
-            logger.info("Stored data for " + model.getUuid() + " in storage.");
+            logger.info("Queued data for " + model.getUuid() + " in storage.");
         }
     }
 
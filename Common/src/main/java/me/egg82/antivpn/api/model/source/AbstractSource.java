@@ -1,29 +1,164 @@
 package me.egg82.antivpn.api.model.source;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.SourceModel;
+import me.egg82.antivpn.config.CachedConfig;
 import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.json.JsonReader;
+import me.egg82.antivpn.json.MalformedJsonException;
+import me.egg82.antivpn.json.ModelReader;
+import me.egg82.antivpn.logging.GELFLogger;
 import me.egg82.antivpn.utils.TimeUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.spongepowered.configurate.ConfigurationNode;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.util.concurrent.TimeUnit;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
 
 public abstract class AbstractSource<T extends SourceModel> implements Source<T> {
+    protected final @NotNull Logger logger = new GELFLogger(LoggerFactory.getLogger(getClass()));
+
     private final @NotNull Class<T> modelClass;
 
+    private static final ScheduledExecutorService retryPool = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Anti-VPN_SourceRetry_%d").setDaemon(true).build()
+    );
+
+    private final @NotNull LatencyTracker latency = new LatencyTracker(200, 20);
+    private volatile long rateLimitedUntil = 0L;
+    private volatile @Nullable SourceRateLimiter rateLimiter = null;
+
+    private final @NotNull AsyncCache<String, T> responseCache;
+
     protected AbstractSource(@NotNull Class<T> modelClass) {
         this.modelClass = modelClass;
+
+        CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+        responseCache = Caffeine.newBuilder()
+                .expireAfterWrite(cachedConfig.getResponseCacheTime().getTime(), cachedConfig.getResponseCacheTime().getUnit())
+                .maximumSize(cachedConfig.getResponseCacheSize())
+                .buildAsync();
     }
 
     @Override
     @NotNull
     public Class<T> getModelClass() { return modelClass; }
 
+    /**
+     * Returns the raw response from the source, sharing recent and in-flight lookups.
+     *
+     * <p>Responses are kept for a short time, so {@link #getResult(String)} and
+     * {@link #getRawResponse(String)} calls for the same IP only cost one request,
+     * and concurrent calls for the same IP wait on the same request. Failed
+     * lookups and responses which {@link #isCacheable(SourceModel)} rejects
+     * are handed to the callers already waiting on them, but not kept.</p>
+     */
+    @Override
+    @NotNull
+    public final CompletableFuture<@NotNull T> getRawResponse(@NotNull String ip) {
+        CompletableFuture<T> future = responseCache.get(ip, (k, executor) -> lookup(k));
+        // Callers get their own stage, so cancelling one can't break the shared lookup
+        return future.thenApply(v -> {
+            if (!isCacheable(v)) {
+                responseCache.asMap().remove(ip, future);
+            }
+            return v;
+        });
+    }
+
+    /**
+     * Adds a response fetched outside of {@link #getRawResponse(String)},
+     * such as from a batch request, to the response cache.
+     */
+    protected final void cacheResponse(@NotNull String ip, @NotNull T model) {
+        if (isCacheable(model)) {
+            responseCache.put(ip, CompletableFuture.completedFuture(model));
+        }
+    }
+
+    /**
+     * Whether a response is a real answer which can be shared with later lookups.
+     * Sources whose error bodies still parse into a model return false for those,
+     * so the error isn't handed back for the whole response cache time.
+     */
+    protected boolean isCacheable(@NotNull T model) { return true; }
+
+    /**
+     * Makes the actual request to the source.
+     */
+    @NotNull
+    protected abstract CompletableFuture<@NotNull T> lookup(@NotNull String ip);
+
+    /**
+     * The hostnames this source will connect to, used to pre-resolve them.
+     */
+    @NotNull
+    public abstract Set<@NotNull String> getHostnames();
+
+    /**
+     * Returns the timeout currently used for requests to this source.
+     *
+     * <p>With adaptive timeouts enabled this is the source's p99 response
+     * time plus the configured margin, clamped between the configured
+     * minimum and maximum timeouts. Until enough responses have been seen
+     * the maximum timeout is used.</p>
+     */
+    public long getTimeout() {
+        CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+        if (!cachedConfig.getAdaptiveTimeout()) {
+            return cachedConfig.getTimeout();
+        }
+
+        long p99 = latency.getPercentile(0.99d);
+        if (p99 < 0L) {
+            return cachedConfig.getTimeout();
+        }
+        long retVal = (long) Math.ceil(p99 * cachedConfig.getTimeoutMargin());
+        return Math.max(Math.min(cachedConfig.getMinTimeout(), cachedConfig.getTimeout()), Math.min(cachedConfig.getTimeout(), retVal));
+    }
+
+    @NotNull
+    public LatencyTracker getLatency() { return latency; }
+
+    /**
+     * Returns the limiter enforcing this source's declared rate limits.
+     *
+     * <p>Every request the source makes takes its permits from here, so callers
+     * going through {@link Source#getResult(String)} directly are held to the
+     * same windows as lookups made through the IP manager. The limiter is
+     * re-created if the declared limits change, eg. on a config reload.</p>
+     */
+    @NotNull
+    public final SourceRateLimiter getRateLimiter() {
+        List<SourceCapabilities.RateLimit> limits = getCapabilities().getRateLimits();
+        SourceRateLimiter retVal = rateLimiter;
+        if (retVal == null || !retVal.getLimits().equals(limits)) {
+            synchronized (this) {
+                retVal = rateLimiter;
+                if (retVal == null || !retVal.getLimits().equals(limits)) {
+                    retVal = new SourceRateLimiter(limits);
+                    rateLimiter = retVal;
+                }
+            }
+        }
+        return retVal;
+    }
+
     @NotNull
     protected final ConfigurationNode getSourceConfigNode() { return ConfigUtil.getConfig().node("sources", getName()); }
 
@@ -31,7 +166,7 @@ public abstract class AbstractSource<T extends SourceModel> implements Source<T>
     protected final WebRequest.Builder getDefaultBuilder(@NotNull String url) throws APIException {
         try {
             return WebRequest.builder(new URL(url))
-                    .timeout(new TimeUtil.Time(ConfigUtil.getCachedConfig().getTimeout(), TimeUnit.MILLISECONDS))
+                    .timeout(new TimeUtil.Time(getTimeout(), TimeUnit.MILLISECONDS))
                     .userAgent("egg82/Anti-VPN")
                     .header("Accept", "application/json")
                     .throwOnStandardErrors(false);
@@ -44,28 +179,183 @@ public abstract class AbstractSource<T extends SourceModel> implements Source<T>
     protected final HttpURLConnection getConnection(@NotNull WebRequest request) throws APIException {
         try {
             HttpURLConnection conn = request.getConnection();
+            checkStatus(conn);
+            return conn;
+        } catch (IOException ex) {
+            throw new APIException(false, "Could not get result from " + getName(), ex);
+        }
+    }
+
+    /**
+     * Runs the request asynchronously, retrying temporary failures.
+     *
+     * <p>GET requests that fail with a timeout, connection error, HTTP 429 or
+     * HTTP 5xx are retried with a jittered exponential backoff, or after the
+     * server's Retry-After delay if one was sent. All attempts share the
+     * configured (maximum) timeout as their deadline, and a retry is only made
+     * if there is enough time left for it to be useful.</p>
+     *
+     * <p>The request counts as one IP against the source's rate limits.</p>
+     */
+    @NotNull
+    protected final <R> CompletableFuture<R> getResponse(@NotNull WebRequest request, @NotNull WebRequest.ConnectionHandler<R> handler) { return getResponse(request, 1, handler); }
+
+    /**
+     * Runs the request asynchronously, retrying temporary failures, as
+     * {@link #getResponse(WebRequest, WebRequest.ConnectionHandler)} does.
+     *
+     * <p>Each attempt takes the given number of IPs from the source's rate
+     * limits before it's made, and fails without a request if that would
+     * go over any of them.</p>
+     */
+    @NotNull
+    protected final <R> CompletableFuture<R> getResponse(@NotNull WebRequest request, int permits, @NotNull WebRequest.ConnectionHandler<R> handler) {
+        CompletableFuture<R> retVal = new CompletableFuture<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ConfigUtil.getCachedConfig().getTimeout());
+        attempt(request, permits, handler, retVal, 1, deadline);
+        return retVal;
+    }
+
+    private <R> void attempt(@NotNull WebRequest request, int permits, @NotNull WebRequest.ConnectionHandler<R> handler, @NotNull CompletableFuture<R> retVal, int attempt, long deadline) {
+        long blocked = rateLimitedUntil - System.currentTimeMillis();
+        if (blocked > 0L) {
+            retVal.completeExceptionally(new APIException(false, "Could not get result from " + getName() + " (rate limited for another " + blocked + "ms)"));
+            return;
+        }
+        // Retries count too, the source can't tell them apart from any other request
+        if (!getRateLimiter().tryAcquire(permits)) {
+            retVal.completeExceptionally(new APIException(false, "Could not get result from " + getName() + " (over its declared rate limit)"));
+            return;
+        }
+
+        long start = System.nanoTime();
+        request.executeAsync(conn -> {
             int status = conn.getResponseCode();
+            if (status == 429 || (status >= 500 && status < 600)) {
+                throw new RetryableStatusException(status, getRetryAfter(conn));
+            }
+            checkStatus(conn);
+            return handler.handle(conn);
+        }).whenComplete((v, ex) -> {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
 
-            if (status >= 200 && status < 300) {
-                if (status == 204 || status == 205) { // Empty response, reset
-                    throw new APIException(false, "Could not get result from " + getName() + " (HTTP status " + status + " - empty response/reset connection)");
-                }
+            // Timeouts are recorded too, otherwise a timeout that is too tight could never grow again
+            if (cause == null || cause instanceof SocketTimeoutException || cause instanceof RetryableStatusException) {
+                latency.record(elapsed);
+            }
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info(getName() + " responded in " + elapsed + "ms (attempt " + attempt + ", timeout " + request.getTimeout().getMillis() + "ms, next timeout " + getTimeout() + "ms)");
+            }
 
-                return conn;
-            } else if (status >= 400 && status < 500) {
-                if (status == 401 || status == 403) { // Unauthorized, forbidden
-                    throw new APIException(true, "Could not get result from " + getName() + " (HTTP status " + status + " - access denied, key/token issue)");
+            if (cause == null) {
+                retVal.complete(v);
+                return;
+            }
+
+            CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+            APIException failure;
+            long delay = -1L;
+            if (cause instanceof RetryableStatusException) {
+                RetryableStatusException statusEx = (RetryableStatusException) cause;
+                if (statusEx.retryAfter >= 0L) {
+                    rateLimit(statusEx.retryAfter);
+                    delay = statusEx.retryAfter;
+                } else {
+                    delay = getBackoff(attempt, cachedConfig);
                 }
-                if (status == 429) { // Too many queries
-                    throw new APIException(false, "Could not get result from " + getName() + " (HTTP status " + status + " - too many queries, temporary issue)");
+                failure = new APIException(false, "Could not get result from " + getName() + " (HTTP status " + statusEx.status + (statusEx.status == 429 ? " - too many queries, temporary issue)" : ")"));
+            } else if (cause instanceof APIException || cause instanceof IllegalArgumentException) {
+                retVal.completeExceptionally(cause);
+                return;
+            } else {
+                // Bad JSON won't get any better by asking again
+                if (cause instanceof IOException && !(cause instanceof MalformedJsonException)) {
+                    delay = getBackoff(attempt, cachedConfig);
                 }
-                throw new APIException(true, "Could not get result from " + getName() + " (HTTP status " + status + ")");
-            } else if (status >= 500 && status < 600) { // Server errors (usually temporary)
-                throw new APIException(false, "Could not get result from " + getName() + " (HTTP status " + status + ")");
+                failure = new APIException(false, "Could not get result from " + getName(), cause);
+            }
+
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) - delay;
+            if (delay < 0L || request.getMethod() != WebRequest.RequestMethod.GET || attempt >= cachedConfig.getRetryAttempts() || remaining < Math.min(cachedConfig.getMinTimeout(), cachedConfig.getTimeout())) {
+                retVal.completeExceptionally(failure);
+                return;
+            }
+
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info("Retrying " + getName() + " in " + delay + "ms (" + failure.getMessage() + ")");
+            }
+            WebRequest next = request.withTimeout(new TimeUtil.Time(Math.min(getTimeout(), remaining), TimeUnit.MILLISECONDS));
+            try {
+                retryPool.schedule(() -> attempt(next, permits, handler, retVal, attempt + 1, deadline), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                retVal.completeExceptionally(failure);
+            }
+        });
+    }
+
+    /**
+     * Pauses requests to this source for the given amount of time,
+     * usually because the source asked for it.
+     */
+    protected final void rateLimit(long millis) {
+        long until = System.currentTimeMillis() + millis;
+        synchronized (this) {
+            if (until > rateLimitedUntil) {
+                rateLimitedUntil = until;
+            }
+        }
+    }
+
+    private static long getBackoff(int attempt, @NotNull CachedConfig cachedConfig) {
+        // "Full jitter" - a random delay up to the exponential backoff, so retries from many lookups don't line up
+        long cap = Math.min(cachedConfig.getRetryMaxDelay(), cachedConfig.getRetryBaseDelay() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1L);
+    }
+
+    private static long getRetryAfter(@NotNull HttpURLConnection conn) {
+        String value = conn.getHeaderField("Retry-After");
+        if (value == null || value.trim().isEmpty()) {
+            return -1L;
+        }
+        value = value.trim();
+
+        try {
+            return Math.max(0L, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException ignored) { }
+        try {
+            return Math.max(0L, ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException ignored) {
+            return -1L;
+        }
+    }
+
+    private void checkStatus(@NotNull HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+
+        if (status >= 200 && status < 300) {
+            if (status == 204 || status == 205) { // Empty response, reset
+                throw new APIException(false, "Could not get result from " + getName() + " (HTTP status " + status + " - empty response/reset connection)");
+            }
+            return;
+        } else if (status >= 400 && status < 500) {
+            if (status == 401 || status == 403) { // Unauthorized, forbidden
+                throw new APIException(true, "Could not get result from " + getName() + " (HTTP status " + status + " - access denied, key/token issue)");
+            }
+            if (status == 429) { // Too many queries
+                throw new APIException(false, "Could not get result from " + getName() + " (HTTP status " + status + " - too many queries, temporary issue)");
             }
             throw new APIException(true, "Could not get result from " + getName() + " (HTTP status " + status + ")");
-        } catch (IOException ex) {
-            throw new APIException(false, "Could not get result from " + getName(), ex);
+        } else if (status >= 500 && status < 600) { // Server errors (usually temporary)
+            throw new APIException(false, "Could not get result from " + getName() + " (HTTP status " + status + ")");
+        }
+        throw new APIException(true, "Could not get result from " + getName() + " (HTTP status " + status + ")");
+    }
+
+    @NotNull
+    protected static <R> R readJson(@NotNull HttpURLConnection conn, @NotNull ModelReader<R> reader) throws IOException {
+        try (JsonReader json = new JsonReader(WebRequest.getInputStream(conn))) {
+            return reader.read(json);
         }
     }
 
@@ -77,4 +367,15 @@ public abstract class AbstractSource<T extends SourceModel> implements Source<T>
             throw new APIException(false, "Could not get result from " + getName(), ex);
         }
     }
+
+    private static class RetryableStatusException extends IOException {
+        private final int status;
+        private final long retryAfter;
+
+        private RetryableStatusException(int status, long retryAfter) {
+            super("HTTP status " + status);
+            this.status = status;
+            this.retryAfter = retryAfter;
+        }
+    }
 }
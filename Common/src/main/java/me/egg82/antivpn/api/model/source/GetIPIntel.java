@@ -1,30 +1,26 @@
 package me.egg82.antivpn.api.model.source;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.GetIPIntelModel;
+import me.egg82.antivpn.json.JsonReader;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class GetIPIntel extends AbstractSource<GetIPIntelModel> {
-    private static final @NotNull AtomicInteger hourlyRequests = new AtomicInteger(0);
-    private static final @NotNull AtomicInteger minuteRequests = new AtomicInteger(0);
-    private static final @NotNull ScheduledExecutorService threadPool = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Anti-VPN_GetIPIntel_%d").build());
-
-    static {
-        threadPool.scheduleAtFixedRate(() -> hourlyRequests.set(0), 0L, 24L, TimeUnit.HOURS);
-        threadPool.scheduleAtFixedRate(() -> minuteRequests.set(0), 0L, 1L, TimeUnit.MINUTES);
-    }
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .rateLimit(15, 1L, TimeUnit.MINUTES)
+            .rateLimit(500, 1L, TimeUnit.DAYS)
+            .cost(SourceCapabilities.Cost.HIGH)
+            .latencyClass(SourceCapabilities.LatencyClass.SLOW)
+            .build();
 
     public GetIPIntel() {
         super(GetIPIntelModel.class);
@@ -37,6 +33,17 @@ public class GetIPIntel extends AbstractSource<GetIPIntelModel> {
     @Override
     public boolean isKeyRequired() { return false; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton(getSourceConfigNode().node("subdomain").getString("check") + ".getipintel.net"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
+    @Override
+    protected boolean isCacheable(@NotNull GetIPIntelModel model) { return "success".equalsIgnoreCase(model.getStatus()) && model.getResult() != null; }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -60,7 +67,7 @@ public class GetIPIntel extends AbstractSource<GetIPIntelModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull GetIPIntelModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull GetIPIntelModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -74,19 +81,46 @@ public class GetIPIntel extends AbstractSource<GetIPIntelModel> {
                 );
             }
 
-            if (hourlyRequests.getAndIncrement() >= 500) {
-                throw new APIException(false, "API calls to this source have been limited to 500/day as per request.");
-            }
-            if (minuteRequests.getAndIncrement() >= 15) {
-                throw new APIException(false, "API calls to this source have been limited to 15/minute as per request.");
-            }
-
             WebRequest.Builder builder = getDefaultBuilder("https://" + sourceConfigNode.node("subdomain")
                     .getString("check") + ".getipintel.net/check.php?ip=" + ip + "&contact=" + sourceConfigNode.node("contact")
                     .getString("admin@yoursite.com") + "&format=json&flags=b");
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<GetIPIntelModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), GetIPIntelModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, GetIPIntel::readModel)));
+    }
+
+    @NotNull
+    static GetIPIntelModel readModel(@NotNull JsonReader reader) throws IOException {
+        GetIPIntelModel retVal = new GetIPIntelModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    retVal.setStatus(reader.nextString());
+                    break;
+                case "result":
+                    retVal.setResult(reader.nextString());
+                    break;
+                case "message":
+                    retVal.setMessage(reader.nextString());
+                    break;
+                case "queryIP":
+                    retVal.setIp(reader.nextString());
+                    break;
+                case "queryFlags":
+                    retVal.setFlags(reader.nextString());
+                    break;
+                case "queryFormat":
+                    retVal.setFormat(reader.nextString());
+                    break;
+                case "contact":
+                    retVal.setContact(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
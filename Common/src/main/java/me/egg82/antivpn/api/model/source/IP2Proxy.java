@@ -1,17 +1,23 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.IP2ProxyModel;
+import me.egg82.antivpn.json.JsonReader;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public class IP2Proxy extends AbstractSource<IP2ProxyModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .cost(SourceCapabilities.Cost.MEDIUM)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "ip2proxy"; }
@@ -19,10 +25,21 @@ public class IP2Proxy extends AbstractSource<IP2ProxyModel> {
     @Override
     public boolean isKeyRequired() { return true; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("api.ip2proxy.com"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public IP2Proxy() {
         super(IP2ProxyModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull IP2ProxyModel model) { return "OK".equalsIgnoreCase(model.getResponse()); }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -37,7 +54,7 @@ public class IP2Proxy extends AbstractSource<IP2ProxyModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull IP2ProxyModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull IP2ProxyModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -51,9 +68,34 @@ public class IP2Proxy extends AbstractSource<IP2ProxyModel> {
             }
 
             WebRequest.Builder builder = getDefaultBuilder("https://api.ip2proxy.com/?ip=" + ip + "&key=" + key + "&package=PX1&format=json");
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<IP2ProxyModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), IP2ProxyModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, IP2Proxy::readModel)));
+    }
+
+    @NotNull
+    static IP2ProxyModel readModel(@NotNull JsonReader reader) throws IOException {
+        IP2ProxyModel retVal = new IP2ProxyModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "response":
+                    retVal.setResponse(reader.nextString());
+                    break;
+                case "countryCode":
+                    retVal.setCountryCode(reader.nextString());
+                    break;
+                case "countryName":
+                    retVal.setCountry(reader.nextString());
+                    break;
+                case "isProxy":
+                    retVal.setProxy(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
@@ -1,17 +1,24 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.IPHubModel;
+import me.egg82.antivpn.json.JsonReader;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public class IPHub extends AbstractSource<IPHubModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .latencyClass(SourceCapabilities.LatencyClass.FAST)
+            .ipv6(false)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "iphub"; }
@@ -19,10 +26,21 @@ public class IPHub extends AbstractSource<IPHubModel> {
     @Override
     public boolean isKeyRequired() { return true; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("v2.api.iphub.info"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public IPHub() {
         super(IPHubModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull IPHubModel model) { return model.getError() == null; }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -37,7 +55,7 @@ public class IPHub extends AbstractSource<IPHubModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull IPHubModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull IPHubModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -52,9 +70,43 @@ public class IPHub extends AbstractSource<IPHubModel> {
 
             WebRequest.Builder builder = getDefaultBuilder("https://v2.api.iphub.info/ip/" + ip);
             builder.header("X-Key", key);
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<IPHubModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), IPHubModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, IPHub::readModel)));
+    }
+
+    @NotNull
+    static IPHubModel readModel(@NotNull JsonReader reader) throws IOException {
+        IPHubModel retVal = new IPHubModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "error":
+                    retVal.setError(reader.nextString());
+                    break;
+                case "ip":
+                    retVal.setIp(reader.nextString());
+                    break;
+                case "countryCode":
+                    retVal.setCountryCode(reader.nextString());
+                    break;
+                case "countryName":
+                    retVal.setCountry(reader.nextString());
+                    break;
+                case "asn":
+                    retVal.setAsn(reader.nextInt(-1));
+                    break;
+                case "isp":
+                    retVal.setIsp(reader.nextString());
+                    break;
+                case "block":
+                    retVal.setBlock(reader.nextInt(-1));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
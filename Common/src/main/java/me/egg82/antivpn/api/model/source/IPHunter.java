@@ -1,17 +1,25 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.IPHunterModel;
+import me.egg82.antivpn.json.JsonReader;
+import me.egg82.antivpn.json.JsonToken;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public class IPHunter extends AbstractSource<IPHunterModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .ipv6(false)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "iphunter"; }
@@ -19,10 +27,21 @@ public class IPHunter extends AbstractSource<IPHunterModel> {
     @Override
     public boolean isKeyRequired() { return true; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("www.iphunter.info"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public IPHunter() {
         super(IPHunterModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull IPHunterModel model) { return "success".equalsIgnoreCase(model.getStatus()); }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -40,7 +59,7 @@ public class IPHunter extends AbstractSource<IPHunterModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull IPHunterModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull IPHunterModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -55,9 +74,72 @@ public class IPHunter extends AbstractSource<IPHunterModel> {
 
             WebRequest.Builder builder = getDefaultBuilder("https://www.iphunter.info:8082/v1/ip/" + ip);
             builder.header("X-Key", key);
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<IPHunterModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), IPHunterModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, IPHunter::readModel)));
+    }
+
+    @NotNull
+    static IPHunterModel readModel(@NotNull JsonReader reader) throws IOException {
+        IPHunterModel retVal = new IPHunterModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    retVal.setStatus(reader.nextString());
+                    break;
+                case "code":
+                    retVal.setCode(reader.nextString());
+                    break;
+                case "data":
+                    retVal.setData(readData(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
+    }
+
+    @Nullable
+    private static IPHunterModel.Data readData(@NotNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        IPHunterModel.Data retVal = new IPHunterModel.Data();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "ip":
+                    retVal.setIp(reader.nextString());
+                    break;
+                case "ip_num":
+                    retVal.setIpNumber(reader.nextLong(-1L));
+                    break;
+                case "country_code":
+                    retVal.setCountryCode(reader.nextString());
+                    break;
+                case "country_name":
+                    retVal.setCountry(reader.nextString());
+                    break;
+                case "city":
+                    retVal.setCity(reader.nextString());
+                    break;
+                case "isp":
+                    retVal.setIsp(reader.nextString());
+                    break;
+                case "block":
+                    retVal.setBlock(reader.nextInt(-1));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
@@ -1,17 +1,25 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.IPInfoModel;
+import me.egg82.antivpn.json.JsonReader;
+import me.egg82.antivpn.json.JsonToken;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public class IPInfo extends AbstractSource<IPInfoModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .latencyClass(SourceCapabilities.LatencyClass.FAST)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "ipinfo"; }
@@ -19,10 +27,21 @@ public class IPInfo extends AbstractSource<IPInfoModel> {
     @Override
     public boolean isKeyRequired() { return true; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("ipinfo.io"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public IPInfo() {
         super(IPInfoModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull IPInfoModel model) { return model.getError() == null; }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -46,7 +65,7 @@ public class IPInfo extends AbstractSource<IPInfoModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull IPInfoModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull IPInfoModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -60,9 +79,66 @@ public class IPInfo extends AbstractSource<IPInfoModel> {
             }
 
             WebRequest.Builder builder = getDefaultBuilder("https://ipinfo.io/" + ip + "/privacy?token=" + key);
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<IPInfoModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), IPInfoModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, IPInfo::readModel)));
+    }
+
+    @NotNull
+    static IPInfoModel readModel(@NotNull JsonReader reader) throws IOException {
+        IPInfoModel retVal = new IPInfoModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    retVal.setStatus(reader.nextInt(-1));
+                    break;
+                case "error":
+                    retVal.setError(readError(reader));
+                    break;
+                case "vpn":
+                    retVal.setVpn(reader.nextBoolean());
+                    break;
+                case "proxy":
+                    retVal.setProxy(reader.nextBoolean());
+                    break;
+                case "tor":
+                    retVal.setTor(reader.nextBoolean());
+                    break;
+                case "hosting":
+                    retVal.setHosting(reader.nextBoolean());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
+    }
+
+    @Nullable
+    private static IPInfoModel.Error readError(@NotNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        IPInfoModel.Error retVal = new IPInfoModel.Error();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    retVal.setTitle(reader.nextString());
+                    break;
+                case "message":
+                    retVal.setMessage(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
@@ -1,17 +1,23 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.IPQualityScoreModel;
+import me.egg82.antivpn.json.JsonReader;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public class IPQualityScore extends AbstractSource<IPQualityScoreModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .cost(SourceCapabilities.Cost.MEDIUM)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "ipqualityscore"; }
@@ -19,10 +25,21 @@ public class IPQualityScore extends AbstractSource<IPQualityScoreModel> {
     @Override
     public boolean isKeyRequired() { return true; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("www.ipqualityscore.com"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public IPQualityScore() {
         super(IPQualityScoreModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull IPQualityScoreModel model) { return model.isSuccess(); }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -52,7 +69,7 @@ public class IPQualityScore extends AbstractSource<IPQualityScoreModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull IPQualityScoreModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull IPQualityScoreModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -69,9 +86,94 @@ public class IPQualityScore extends AbstractSource<IPQualityScoreModel> {
                     "strictness").getInt(0) + "&mobile=" + (sourceConfigNode.node("mobile").getBoolean(true)
                                                             ? "true"
                                                             : "false") + "&fast=true&allow_public_access_points=true&lighter_penalties=true");
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<IPQualityScoreModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), IPQualityScoreModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, IPQualityScore::readModel)));
+    }
+
+    @NotNull
+    static IPQualityScoreModel readModel(@NotNull JsonReader reader) throws IOException {
+        IPQualityScoreModel retVal = new IPQualityScoreModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "success":
+                    retVal.setSuccess(reader.nextBoolean());
+                    break;
+                case "message":
+                    retVal.setMessage(reader.nextString());
+                    break;
+                case "request_id":
+                    retVal.setRequestId(reader.nextString());
+                    break;
+                case "ISP":
+                    retVal.setIsp(reader.nextString());
+                    break;
+                case "organization":
+                    retVal.setOrganization(reader.nextString());
+                    break;
+                case "ASN":
+                    retVal.setAsn(reader.nextInt(-1));
+                    break;
+                case "host":
+                    retVal.setHost(reader.nextString());
+                    break;
+                case "country_code":
+                    retVal.setCountryCode(reader.nextString());
+                    break;
+                case "city":
+                    retVal.setCity(reader.nextString());
+                    break;
+                case "region":
+                    retVal.setRegion(reader.nextString());
+                    break;
+                case "is_crawler":
+                    retVal.setCrawler(reader.nextBoolean());
+                    break;
+                case "connection_type":
+                    retVal.setConnectionType(reader.nextString());
+                    break;
+                case "latitude":
+                    retVal.setLatitude(reader.nextDouble(-1.0d));
+                    break;
+                case "longitude":
+                    retVal.setLongitude(reader.nextDouble(-1.0d));
+                    break;
+                case "timezone":
+                    retVal.setTimezone(reader.nextString());
+                    break;
+                case "proxy":
+                    retVal.setProxy(reader.nextBoolean());
+                    break;
+                case "vpn":
+                    retVal.setVpn(reader.nextBoolean());
+                    break;
+                case "active_vpn":
+                    retVal.setActiveVpn(reader.nextBoolean());
+                    break;
+                case "tor":
+                    retVal.setTor(reader.nextBoolean());
+                    break;
+                case "active_tor":
+                    retVal.setActiveTor(reader.nextBoolean());
+                    break;
+                case "recent_abuse":
+                    retVal.setRecentAbuse(reader.nextBoolean());
+                    break;
+                case "bot_status":
+                    retVal.setBot(reader.nextBoolean());
+                    break;
+                case "abuse_velocity":
+                    retVal.setAbuseVelocity(reader.nextString());
+                    break;
+                case "fraud_score":
+                    retVal.setFraudScore(reader.nextInt(-1));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
@@ -1,16 +1,22 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.IPTrooperModel;
+import me.egg82.antivpn.json.JsonReader;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public class IPTrooper extends AbstractSource<IPTrooperModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .cost(SourceCapabilities.Cost.FREE)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "iptrooper"; }
@@ -18,10 +24,21 @@ public class IPTrooper extends AbstractSource<IPTrooperModel> {
     @Override
     public boolean isKeyRequired() { return false; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("api.iptrooper.net"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public IPTrooper() {
         super(IPTrooperModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull IPTrooperModel model) { return model.getCode() != 3; }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -36,16 +53,47 @@ public class IPTrooper extends AbstractSource<IPTrooperModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull IPTrooperModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull IPTrooperModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
             }
 
             WebRequest.Builder builder = getDefaultBuilder("https://api.iptrooper.net/check/" + ip + "?full=1");
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<IPTrooperModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), IPTrooperModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, IPTrooper::readModel)));
+    }
+
+    @NotNull
+    static IPTrooperModel readModel(@NotNull JsonReader reader) throws IOException {
+        IPTrooperModel retVal = new IPTrooperModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "code":
+                    retVal.setCode(reader.nextInt(-1));
+                    break;
+                case "bad":
+                    retVal.setBad(reader.nextBoolean());
+                    break;
+                case "asn":
+                    retVal.setAsn(reader.nextString());
+                    break;
+                case "country":
+                    retVal.setCountryCode(reader.nextString());
+                    break;
+                case "name":
+                    retVal.setName(reader.nextString());
+                    break;
+                case "type":
+                    retVal.setType(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
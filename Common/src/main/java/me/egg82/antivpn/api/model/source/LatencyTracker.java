@@ -0,0 +1,62 @@
+package me.egg82.antivpn.api.model.source;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a rolling window of response times for a single source.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private final int minSamples;
+
+    private int next = 0;
+    private int count = 0;
+
+    private long[] sorted = null;
+
+    public LatencyTracker(int windowSize, int minSamples) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize cannot be <= 0.");
+        }
+        if (minSamples <= 0 || minSamples > windowSize) {
+            throw new IllegalArgumentException("minSamples must be between 1 and windowSize.");
+        }
+
+        this.samples = new long[windowSize];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = Math.max(0L, millis);
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        sorted = null;
+    }
+
+    /**
+     * Returns the given percentile (0-1) of the recorded response times,
+     * or -1 if not enough responses have been seen yet.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count < minSamples) {
+            return -1L;
+        }
+
+        if (sorted == null) {
+            sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+        }
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public synchronized int getSampleCount() { return count; }
+
+    public synchronized void clear() {
+        next = 0;
+        count = 0;
+        sorted = null;
+    }
+}
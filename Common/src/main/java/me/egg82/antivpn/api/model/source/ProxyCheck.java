@@ -1,19 +1,30 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
-import flexjson.JSONSerializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.ProxyCheckModel;
+import me.egg82.antivpn.json.JsonReader;
+import me.egg82.antivpn.json.JsonToken;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class ProxyCheck extends AbstractSource<ProxyCheckModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .maxBatchSize(100)
+            .latencyClass(SourceCapabilities.LatencyClass.FAST)
+            .build();
+    private static final @NotNull SourceCapabilities keylessCapabilities = SourceCapabilities.builder()
+            .maxBatchSize(100)
+            .rateLimit(100, 1L, TimeUnit.DAYS)
+            .latencyClass(SourceCapabilities.LatencyClass.FAST)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "proxycheck"; }
@@ -21,28 +32,79 @@ public class ProxyCheck extends AbstractSource<ProxyCheckModel> {
     @Override
     public boolean isKeyRequired() { return false; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("proxycheck.io"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() {
+        String key = getSourceConfigNode().node("key").getString();
+        // Keyed limits depend on the plan, so only the fixed limit for keyless use is declared
+        return key != null && !key.isEmpty() ? capabilities : keylessCapabilities;
+    }
+
     public ProxyCheck() {
         super(ProxyCheckModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull ProxyCheckModel model) { return "ok".equalsIgnoreCase(model.getStatus()); }
+
     @Override
     @NotNull
-    public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
-        return getRawResponse(ip).thenApply(model -> {
-            if (!"ok".equalsIgnoreCase(model.getStatus())) {
-                throw new APIException(
-                        model.getMessage() != null && model.getMessage().contains("Key"),
-                        "Could not get result from " + getName() + " (" + model.getMessage() + ")"
-                );
+    public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) { return getRawResponse(ip).thenApply(this::isProxy); }
+
+    @Override
+    @NotNull
+    public CompletableFuture<@NotNull Map<@NotNull String, @NotNull Boolean>> getResults(@NotNull Collection<@NotNull String> ips) {
+        if (ips.size() <= 1) {
+            return super.getResults(ips);
+        }
+
+        Set<String> batch = new LinkedHashSet<>(ips);
+        return CompletableFuture.supplyAsync(() -> {
+            for (String ip : batch) {
+                if (!ValidationUtil.isValidIp(ip)) {
+                    throw new IllegalArgumentException("ip is invalid.");
+                }
             }
 
-            return model.getIp() != null && "yes".equalsIgnoreCase(model.getIp().getProxy());
+            ConfigurationNode sourceConfigNode = getSourceConfigNode();
+
+            String key = sourceConfigNode.node("key").getString();
+
+            WebRequest.Builder builder = getDefaultBuilder("https://proxycheck.io/v2/?vpn=1" + ((key != null && !key.isEmpty()) ? "&key=" + key : ""))
+                    .method(WebRequest.RequestMethod.POST)
+                    .formData("ips", String.join(",", batch));
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, batch.size(), conn -> readJson(conn, reader -> readModels(reader, batch)))).thenApply(models -> {
+            Map<String, Boolean> retVal = new LinkedHashMap<>();
+            for (Map.Entry<String, ProxyCheckModel> kvp : models.entrySet()) {
+                boolean result = isProxy(kvp.getValue()); // Throws on a bad status, which fails the whole batch
+                if (kvp.getValue().getIp() != null) {
+                    cacheResponse(kvp.getKey(), kvp.getValue());
+                    retVal.put(kvp.getKey(), result);
+                }
+            }
+            return retVal;
         });
     }
 
+    private boolean isProxy(@NotNull ProxyCheckModel model) {
+        if (!"ok".equalsIgnoreCase(model.getStatus())) {
+            throw new APIException(
+                    model.getMessage() != null && model.getMessage().contains("Key"),
+                    "Could not get result from " + getName() + " (" + model.getMessage() + ")"
+            );
+        }
+
+        return model.getIp() != null && "yes".equalsIgnoreCase(model.getIp().getProxy());
+    }
+
     @Override
     @NotNull
-    public CompletableFuture<@NotNull ProxyCheckModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull ProxyCheckModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -53,21 +115,72 @@ public class ProxyCheck extends AbstractSource<ProxyCheckModel> {
             String key = sourceConfigNode.node("key").getString();
 
             WebRequest.Builder builder = getDefaultBuilder("https://proxycheck.io/v2/" + ip + "?vpn=1" + ((key != null && !key.isEmpty()) ? "&key=" + key : ""));
-            HttpURLConnection conn = getConnection(builder.build());
-            String str = getString(conn);
-
-            JSONDeserializer<Map<String, Object>> mapDeserializer = new JSONDeserializer<>();
-            Map<String, Object> map = mapDeserializer.deserialize(str);
-            ProxyCheckModel.IP ipModel = null;
-            if (map.containsKey(ip)) {
-                JSONDeserializer<ProxyCheckModel.IP> ipModelDeserializer = new JSONDeserializer<>();
-                ipModel = ipModelDeserializer.deserialize(new JSONSerializer().exclude("*.class").deepSerialize(map.get(ip)), ProxyCheckModel.IP.class);
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, reader -> readModel(reader, ip))));
+    }
+
+    @NotNull
+    static ProxyCheckModel readModel(@NotNull JsonReader reader, @NotNull String ip) throws IOException {
+        return readModels(reader, Collections.singleton(ip)).get(ip);
+    }
+
+    @NotNull
+    static Map<String, ProxyCheckModel> readModels(@NotNull JsonReader reader, @NotNull Set<String> ips) throws IOException {
+        String status = null;
+        String message = null;
+        Map<String, ProxyCheckModel.IP> results = new HashMap<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "status":
+                    status = reader.nextString();
+                    break;
+                case "message":
+                    message = reader.nextString();
+                    break;
+                default:
+                    // The result for each IP is keyed by the IP itself
+                    if (ips.contains(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        results.put(name, readIp(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
             }
+        }
+        reader.endObject();
 
-            JSONDeserializer<ProxyCheckModel> modelDeserializer = new JSONDeserializer<>();
-            ProxyCheckModel model = modelDeserializer.deserialize(str, ProxyCheckModel.class);
-            model.setIp(ipModel);
-            return model;
-        });
+        Map<String, ProxyCheckModel> retVal = new LinkedHashMap<>();
+        for (String ip : ips) {
+            ProxyCheckModel model = new ProxyCheckModel();
+            model.setStatus(status);
+            model.setMessage(message);
+            model.setIp(results.get(ip));
+            retVal.put(ip, model);
+        }
+        return retVal;
+    }
+
+    @NotNull
+    private static ProxyCheckModel.IP readIp(@NotNull JsonReader reader) throws IOException {
+        ProxyCheckModel.IP retVal = new ProxyCheckModel.IP();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "proxy":
+                    retVal.setProxy(reader.nextString());
+                    break;
+                case "type":
+                    retVal.setType(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
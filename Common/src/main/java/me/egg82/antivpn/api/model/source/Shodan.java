@@ -1,17 +1,30 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.ShodanModel;
+import me.egg82.antivpn.json.JsonReader;
+import me.egg82.antivpn.json.JsonToken;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class Shodan extends AbstractSource<ShodanModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .rateLimit(1, 1L, TimeUnit.SECONDS)
+            .cost(SourceCapabilities.Cost.HIGH)
+            .latencyClass(SourceCapabilities.LatencyClass.SLOW)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "shodan"; }
@@ -19,10 +32,21 @@ public class Shodan extends AbstractSource<ShodanModel> {
     @Override
     public boolean isKeyRequired() { return true; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("api.shodan.io"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public Shodan() {
         super(ShodanModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull ShodanModel model) { return model.getError() == null; }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -46,7 +70,7 @@ public class Shodan extends AbstractSource<ShodanModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull ShodanModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull ShodanModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -60,9 +84,120 @@ public class Shodan extends AbstractSource<ShodanModel> {
             }
 
             WebRequest.Builder builder = getDefaultBuilder("https://api.shodan.io/shodan/host/" + ip + "?minify=true&key=" + key);
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<ShodanModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), ShodanModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, Shodan::readModel)));
+    }
+
+    @NotNull
+    static ShodanModel readModel(@NotNull JsonReader reader) throws IOException {
+        ShodanModel retVal = new ShodanModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "error":
+                    retVal.setError(reader.nextString());
+                    break;
+                case "region_code":
+                    retVal.setRegionCode(reader.nextString());
+                    break;
+                case "ip":
+                    retVal.setIp(reader.nextLong(-1L));
+                    break;
+                case "ip_str":
+                    retVal.setIpString(reader.nextString());
+                    break;
+                case "area_code":
+                    retVal.setAreaCode(reader.nextString());
+                    break;
+                case "country_code":
+                    retVal.setCountryCode(reader.nextString());
+                    break;
+                case "country_code3":
+                    retVal.setCountryCode3(reader.nextString());
+                    break;
+                case "country_name":
+                    retVal.setCountry(reader.nextString());
+                    break;
+                case "postal_code":
+                    retVal.setPostalCode(reader.nextString());
+                    break;
+                case "dma_code":
+                    retVal.setDmaCode(reader.nextString());
+                    break;
+                case "asn":
+                    retVal.setAsn(reader.nextString());
+                    break;
+                case "org":
+                    retVal.setOrg(reader.nextString());
+                    break;
+                case "isp":
+                    retVal.setIsp(reader.nextString());
+                    break;
+                case "city":
+                    retVal.setCity(reader.nextString());
+                    break;
+                case "latitude":
+                    retVal.setLatitude(reader.nextDouble(-1.0d));
+                    break;
+                case "longitude":
+                    retVal.setLongitude(reader.nextDouble(-1.0d));
+                    break;
+                case "os":
+                    retVal.setOs(reader.nextString());
+                    break;
+                case "ports":
+                    retVal.setPorts(readIntList(reader));
+                    break;
+                case "tags":
+                    retVal.setTags(readStringList(reader));
+                    break;
+                case "hostnames":
+                    retVal.setHostnames(readStringList(reader));
+                    break;
+                case "domains":
+                    retVal.setDomains(readStringList(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
+    }
+
+    @Nullable
+    private static List<@NotNull Integer> readIntList(@NotNull JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.skipValue();
+            return null;
+        }
+
+        List<Integer> retVal = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            retVal.add(reader.nextInt(-1));
+        }
+        reader.endArray();
+        return retVal;
+    }
+
+    @Nullable
+    private static List<@NotNull String> readStringList(@NotNull JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.skipValue();
+            return null;
+        }
+
+        List<String> retVal = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = reader.nextString();
+            if (value != null) {
+                retVal.add(value);
+            }
+        }
+        reader.endArray();
+        return retVal;
     }
 }
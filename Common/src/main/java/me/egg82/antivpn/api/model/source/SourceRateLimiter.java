@@ -0,0 +1,90 @@
+package me.egg82.antivpn.api.model.source;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Enforces the rate limits a source declares in its {@link SourceCapabilities}.
+ *
+ * <p>Each limit is tracked as a fixed window starting at the first request made in it.
+ * Permits can be reserved ahead of time, which lets a caller deciding which sources to
+ * ask hold on to them until the source actually makes its request. Reserved permits are
+ * counted against the window when they're reserved, and dropped when the window ends.</p>
+ */
+public class SourceRateLimiter {
+    private final @NotNull List<SourceCapabilities.@NotNull RateLimit> limits;
+    private final long[] windowStart;
+    private final int[] used;
+    private final int[] reserved;
+
+    public SourceRateLimiter(@NotNull List<SourceCapabilities.@NotNull RateLimit> limits) {
+        this.limits = limits;
+        this.windowStart = new long[limits.size()];
+        this.used = new int[limits.size()];
+        this.reserved = new int[limits.size()];
+    }
+
+    @NotNull
+    public List<SourceCapabilities.@NotNull RateLimit> getLimits() { return limits; }
+
+    /**
+     * Reserves up to the given number of requests from every limit.
+     *
+     * @return the number of requests that were reserved, between 0 and permits
+     */
+    public synchronized int reserve(int permits) {
+        if (permits <= 0) {
+            return 0;
+        }
+
+        roll(System.currentTimeMillis());
+        int retVal = permits;
+        for (int i = 0; i < limits.size(); i++) {
+            retVal = Math.min(retVal, limits.get(i).getRequests() - used[i]);
+        }
+        retVal = Math.max(0, retVal);
+
+        for (int i = 0; i < used.length; i++) {
+            used[i] += retVal;
+            reserved[i] += retVal;
+        }
+        return retVal;
+    }
+
+    /**
+     * Takes the given number of requests from every limit, using up any
+     * reserved requests first. Either all of them are taken or none are.
+     *
+     * @return true if the requests can be made, false if they would go over a limit
+     */
+    public synchronized boolean tryAcquire(int permits) {
+        if (permits <= 0) {
+            return true;
+        }
+
+        roll(System.currentTimeMillis());
+        for (int i = 0; i < limits.size(); i++) {
+            if (reserved[i] + limits.get(i).getRequests() - used[i] < permits) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < limits.size(); i++) {
+            int fromReserved = Math.min(reserved[i], permits);
+            reserved[i] -= fromReserved;
+            used[i] += permits - fromReserved;
+        }
+        return true;
+    }
+
+    private void roll(long now) {
+        for (int i = 0; i < limits.size(); i++) {
+            if (now - windowStart[i] >= limits.get(i).getPeriodMillis()) {
+                windowStart[i] = now;
+                used[i] = 0;
+                reserved[i] = 0;
+            }
+        }
+    }
+}
@@ -1,21 +1,24 @@
 package me.egg82.antivpn.api.model.source;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.TeohModel;
+import me.egg82.antivpn.json.JsonReader;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class Teoh extends AbstractSource<TeohModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .rateLimit(1000, 1L, TimeUnit.DAYS)
+            .cost(SourceCapabilities.Cost.FREE)
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "teoh"; }
@@ -23,17 +26,21 @@ public class Teoh extends AbstractSource<TeohModel> {
     @Override
     public boolean isKeyRequired() { return false; }
 
-    private static final @NotNull AtomicInteger requests = new AtomicInteger(0);
-    private static final @NotNull ScheduledExecutorService threadPool = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Anti-VPN_TeohAPI_%d").build());
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("ip.teoh.io"); }
 
-    static {
-        threadPool.scheduleAtFixedRate(() -> requests.set(0), 0L, 24L, TimeUnit.HOURS);
-    }
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
 
     public Teoh() {
         super(TeohModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull TeohModel model) { return model.getMessage() == null; }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -48,20 +55,53 @@ public class Teoh extends AbstractSource<TeohModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull TeohModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull TeohModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
             }
 
-            if (requests.getAndIncrement() >= 1000) {
-                throw new APIException(false, "API calls to " + getName() + " have been limited to 1,000/day as per request.");
-            }
-
             WebRequest.Builder builder = getDefaultBuilder("https://ip.teoh.io/api/vpn/" + ip);
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<TeohModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), TeohModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, Teoh::readModel)));
+    }
+
+    @NotNull
+    static TeohModel readModel(@NotNull JsonReader reader) throws IOException {
+        TeohModel retVal = new TeohModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "message":
+                    retVal.setMessage(reader.nextString());
+                    break;
+                case "ip":
+                    retVal.setIp(reader.nextString());
+                    break;
+                case "organization":
+                    retVal.setOrganization(reader.nextString());
+                    break;
+                case "asn":
+                    retVal.setAsn(reader.nextString());
+                    break;
+                case "type":
+                    retVal.setType(reader.nextString());
+                    break;
+                case "risk":
+                    retVal.setRisk(reader.nextString());
+                    break;
+                case "is_hosting":
+                    retVal.setHosting(reader.nextInt(-1));
+                    break;
+                case "vpn_or_proxy":
+                    retVal.setVpnOrProxy(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
@@ -1,17 +1,22 @@
 package me.egg82.antivpn.api.model.source;
 
-import flexjson.JSONDeserializer;
 import me.egg82.antivpn.api.APIException;
 import me.egg82.antivpn.api.model.source.models.VPNBlockerModel;
+import me.egg82.antivpn.json.JsonReader;
 import me.egg82.antivpn.utils.ValidationUtil;
 import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public class VPNBlocker extends AbstractSource<VPNBlockerModel> {
+    private static final @NotNull SourceCapabilities capabilities = SourceCapabilities.builder()
+            .build();
+
     @Override
     @NotNull
     public String getName() { return "vpnblocker"; }
@@ -19,10 +24,21 @@ public class VPNBlocker extends AbstractSource<VPNBlockerModel> {
     @Override
     public boolean isKeyRequired() { return false; }
 
+    @Override
+    @NotNull
+    public Set<@NotNull String> getHostnames() { return Collections.singleton("api.vpnblocker.net"); }
+
+    @Override
+    @NotNull
+    public SourceCapabilities getCapabilities() { return capabilities; }
+
     public VPNBlocker() {
         super(VPNBlockerModel.class);
     }
 
+    @Override
+    protected boolean isCacheable(@NotNull VPNBlockerModel model) { return "success".equalsIgnoreCase(model.getStatus()); }
+
     @Override
     @NotNull
     public CompletableFuture<@NotNull Boolean> getResult(@NotNull String ip) {
@@ -37,7 +53,7 @@ public class VPNBlocker extends AbstractSource<VPNBlockerModel> {
 
     @Override
     @NotNull
-    public CompletableFuture<@NotNull VPNBlockerModel> getRawResponse(@NotNull String ip) {
+    protected CompletableFuture<@NotNull VPNBlockerModel> lookup(@NotNull String ip) {
         return CompletableFuture.supplyAsync(() -> {
             if (!ValidationUtil.isValidIp(ip)) {
                 throw new IllegalArgumentException("ip is invalid.");
@@ -48,9 +64,43 @@ public class VPNBlocker extends AbstractSource<VPNBlockerModel> {
             String key = sourceConfigNode.node("key").getString();
 
             WebRequest.Builder builder = getDefaultBuilder("http" + ((key != null && !key.isEmpty()) ? "s" : "") + "://api.vpnblocker.net/v2/json/" + ip + ((key != null && !key.isEmpty()) ? "/" + key : ""));
-            HttpURLConnection conn = getConnection(builder.build());
-            JSONDeserializer<VPNBlockerModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(getString(conn), VPNBlockerModel.class);
-        });
+            return builder.build();
+        }).thenCompose(request -> getResponse(request, conn -> readJson(conn, VPNBlocker::readModel)));
+    }
+
+    @NotNull
+    static VPNBlockerModel readModel(@NotNull JsonReader reader) throws IOException {
+        VPNBlockerModel retVal = new VPNBlockerModel();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    retVal.setStatus(reader.nextString());
+                    break;
+                case "msg":
+                    retVal.setMsg(reader.nextString());
+                    break;
+                case "package":
+                    retVal.setPackageName(reader.nextString());
+                    break;
+                case "remaining_requests":
+                    retVal.setRequestsRemaining(reader.nextInt(-1));
+                    break;
+                case "ipaddress":
+                    retVal.setIp(reader.nextString());
+                    break;
+                case "host-ip":
+                    retVal.setHost(reader.nextBoolean());
+                    break;
+                case "org":
+                    retVal.setOrg(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return retVal;
     }
 }
@@ -31,6 +31,15 @@ public class CachedConfig {
 
     public long getSourceCacheTime() { return sourceCacheTime; }
 
+    private @NotNull TimeUtil.Time responseCacheTime = new TimeUtil.Time(30L, TimeUnit.SECONDS);
+
+    @NotNull
+    public TimeUtil.Time getResponseCacheTime() { return responseCacheTime; }
+
+    private int responseCacheSize = 1000;
+
+    public int getResponseCacheSize() { return responseCacheSize; }
+
     private long mcleaksCacheTime = new TimeUtil.Time(1L, TimeUnit.DAYS).getMillis();
 
     public long getMCLeaksCacheTime() { return mcleaksCacheTime; }
@@ -62,6 +71,43 @@ public class CachedConfig {
 
     public long getTimeout() { return timeout; }
 
+    private boolean adaptiveTimeout = true;
+
+    public boolean getAdaptiveTimeout() { return adaptiveTimeout; }
+
+    private long minTimeout = 500L;
+
+    public long getMinTimeout() { return minTimeout; }
+
+    private double timeoutMargin = 1.5d;
+
+    public double getTimeoutMargin() { return timeoutMargin; }
+
+    private int retryAttempts = 3;
+
+    public int getRetryAttempts() { return retryAttempts; }
+
+    private long retryBaseDelay = 100L;
+
+    public long getRetryBaseDelay() { return retryBaseDelay; }
+
+    private long retryMaxDelay = 1000L;
+
+    public long getRetryMaxDelay() { return retryMaxDelay; }
+
+    private int connectionsPerHost = 4;
+
+    public int getConnectionsPerHost() { return connectionsPerHost; }
+
+    private int maxResponseSize = 1024 * 1024;
+
+    public int getMaxResponseSize() { return maxResponseSize; }
+
+    private @NotNull TimeUtil.Time dnsCacheTime = new TimeUtil.Time(5L, TimeUnit.MINUTES);
+
+    @NotNull
+    public TimeUtil.Time getDnsCacheTime() { return dnsCacheTime; }
+
     private @NotNull String vpnKickMessage = "<red>Please disconnect from your proxy or VPN before re-joining!</red>";
 
     @NotNull
@@ -158,6 +204,26 @@ public class CachedConfig {
             return this;
         }
 
+        @NotNull
+        public CachedConfig.Builder responseCacheTime(@NotNull TimeUtil.Time value) {
+            if (value.getMillis() <= 0L) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.responseCacheTime = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder responseCacheSize(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.responseCacheSize = value;
+            return this;
+        }
+
         @NotNull
         public CachedConfig.Builder mcleaksCacheTime(@NotNull TimeUtil.Time value) {
             if (value.getMillis() <= 0L) {
@@ -204,6 +270,92 @@ public class CachedConfig {
             return this;
         }
 
+        @NotNull
+        public CachedConfig.Builder adaptiveTimeout(boolean value) {
+            values.adaptiveTimeout = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder minTimeout(long value) {
+            if (value <= 0L) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.minTimeout = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder timeoutMargin(double value) {
+            if (value < 1.0d) {
+                throw new IllegalArgumentException("value cannot be < 1.");
+            }
+
+            values.timeoutMargin = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder retryAttempts(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.retryAttempts = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder retryBaseDelay(long value) {
+            if (value <= 0L) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.retryBaseDelay = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder retryMaxDelay(long value) {
+            if (value <= 0L) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.retryMaxDelay = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder connectionsPerHost(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.connectionsPerHost = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder maxResponseSize(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.maxResponseSize = value;
+            return this;
+        }
+
+        @NotNull
+        public CachedConfig.Builder dnsCacheTime(@NotNull TimeUtil.Time value) {
+            if (value.getMillis() <= 0L) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+
+            values.dnsCacheTime = value;
+            return this;
+        }
+
         @NotNull
         public CachedConfig.Builder vpnKickMessage(@NotNull String value) {
             values.vpnKickMessage = value;
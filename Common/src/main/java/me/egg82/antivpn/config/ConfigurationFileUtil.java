@@ -1,6 +1,7 @@
 package me.egg82.antivpn.config;
 
 import me.egg82.antivpn.api.model.ip.AlgorithmMethod;
+import me.egg82.antivpn.api.model.source.AbstractSource;
 import me.egg82.antivpn.api.model.source.Source;
 import me.egg82.antivpn.api.model.source.SourceManager;
 import me.egg82.antivpn.api.model.source.models.SourceModel;
@@ -15,8 +16,11 @@ import me.egg82.antivpn.messaging.handler.MessagingHandler;
 import me.egg82.antivpn.reflect.PackageFilter;
 import me.egg82.antivpn.storage.*;
 import me.egg82.antivpn.utils.PacketUtil;
+import me.egg82.antivpn.utils.StorageUtil;
 import me.egg82.antivpn.utils.TimeUtil;
 import me.egg82.antivpn.utils.ValidationUtil;
+import me.egg82.antivpn.web.HostResolver;
+import me.egg82.antivpn.web.WebRequest;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -105,17 +109,32 @@ public class ConfigurationFileUtil {
 
         AlgorithmMethod vpnAlgorithmMethod = getVpnAlgorithmMethod(config, debug, console);
 
+        setWriteBehind(config, debug, console);
+        setPurge(config, debug, console);
+        setSlowQueryLog(config, debug, console);
+
         CachedConfig cachedConfig = CachedConfig.builder()
                 .debug(debug)
                 .language(language)
                 .storage(getStorage(config, dataDirectory, debug, console))
                 .messaging(getMessaging(config, serverId, messagingHandler, new File(dataDirectory, "packets"), debug, console))
                 .sourceCacheTime(getSourceCacheTime(config, debug, console))
+                .responseCacheTime(getResponseCacheTime(config, debug, console))
+                .responseCacheSize(Math.max(1, config.node("sources", "response-cache", "size").getInt(1000)))
                 .mcleaksCacheTime(getMcLeaksCacheTime(config, debug, console))
                 .cacheTime(getCacheTime(config, debug, console))
                 .ignoredIps(getIgnoredIps(config, debug, console))
                 .threads(config.node("connection", "threads").getInt(4))
-                .timeout(config.node("connection", "timeout").getLong(5000L))
+                .timeout(getTimeout(config.node("connection", "timeout"), 5000L))
+                .adaptiveTimeout(config.node("connection", "adaptive-timeout", "enabled").getBoolean(true))
+                .minTimeout(getTimeout(config.node("connection", "adaptive-timeout", "min-timeout"), 500L))
+                .timeoutMargin(Math.max(1.0d, config.node("connection", "adaptive-timeout", "margin").getDouble(1.5d)))
+                .retryAttempts(Math.max(1, config.node("connection", "retry", "attempts").getInt(3)))
+                .retryBaseDelay(getTimeout(config.node("connection", "retry", "base-delay"), 100L))
+                .retryMaxDelay(getTimeout(config.node("connection", "retry", "max-delay"), 1000L))
+                .connectionsPerHost(config.node("connection", "connections-per-host").getInt(4))
+                .maxResponseSize(config.node("connection", "max-response-kb").getInt(1024) * 1024)
+                .dnsCacheTime(getDnsCacheTime(config, debug, console))
                 .vpnKickMessage(config.node("action", "vpn", "kick-message").getString("<red>Please disconnect from your proxy or VPN before re-joining!</red>"))
                 .vpnActionCommands(getVpnActionCommands(config, debug, console))
                 .mcleaksKickMessage(config.node("action", "mcleaks", "kick-message").getString("<red>Please discontinue your use of an MCLeaks account!</red>"))
@@ -129,6 +148,10 @@ public class ConfigurationFileUtil {
                 .build();
 
         PacketUtil.setPoolSize(cachedConfig.getMessaging().size() + 1);
+        WebRequest.setPoolSize(cachedConfig.getThreads(), cachedConfig.getConnectionsPerHost());
+        WebRequest.setMaxBodySize(cachedConfig.getMaxResponseSize());
+        HostResolver.setTtl(cachedConfig.getDnsCacheTime().getMillis());
+        StorageUtil.setHedgeDelay(getTimeout(config.node("storage", "hedge-delay"), 50L));
 
         HiddenConfig hiddenConfig = HiddenConfig.builder()
                 .doPacketDump(config.node("debug", "packet-dump").getBoolean(false))
@@ -141,6 +164,14 @@ public class ConfigurationFileUtil {
         if (debug) {
             console.sendMessage(MessageKey.CONFIG__SOURCE_THREADS, "{threads}", String.valueOf(cachedConfig.getThreads()));
             console.sendMessage(MessageKey.CONFIG__SOURCE_TIMEOUT, "{timeout}", String.valueOf(cachedConfig.getTimeout()));
+            if (cachedConfig.getAdaptiveTimeout()) {
+                console.sendMessage(
+                        MessageKey.CONFIG__SOURCE_ADAPTIVE_TIMEOUT,
+                        "{margin}", String.valueOf(cachedConfig.getTimeoutMargin()),
+                        "{min}", String.valueOf(cachedConfig.getMinTimeout()),
+                        "{max}", String.valueOf(cachedConfig.getTimeout())
+                );
+            }
             console.sendMessage(MessageKey.CONFIG__VPN_KICK_MESSAGE, "{message}", cachedConfig.getVPNKickMessage());
             console.sendMessage(MessageKey.CONFIG__MCLEAKS_KICK_MESSAGE, "{message}", cachedConfig.getMCLeaksKickMessage());
             if (!cachedConfig.getMcLeaksKey().isEmpty()) {
@@ -365,6 +396,7 @@ public class ConfigurationFileUtil {
                             .options(options)
                             .poolSize(poolSettings.minPoolSize, poolSettings.maxPoolSize)
                             .life(poolSettings.maxLifetime, poolSettings.timeout)
+                            .singleWriter(connectionNode.node("single-writer").getBoolean(true))
                             .build();
                 } catch (Exception ex) {
                     logger.error(console.getLocalizedText(MessageKey.ERROR__CONFIG__NO_ENGINE, "{name}", name), ex);
@@ -389,12 +421,53 @@ public class ConfigurationFileUtil {
                             .options(options)
                             .poolSize(poolSettings.minPoolSize, poolSettings.maxPoolSize)
                             .life(poolSettings.maxLifetime, poolSettings.timeout)
+                            .singleWriter(connectionNode.node("single-writer").getBoolean(true))
                             .build();
                 } catch (Exception ex) {
                     logger.error(console.getLocalizedText(MessageKey.ERROR__CONFIG__NO_ENGINE, "{name}", name), ex);
                 }
                 break;
             }
+            case "mvstore": {
+                if (debug) {
+                    console.sendMessage("<c2>Creating engine</c2> <c1>" + name + "</c1> <c2>of type mvstore with file</c2> <c1>" + connectionNode.node("file")
+                            .getString("anti_vpn.mv") + "</c1>");
+                }
+                String options = connectionNode.node("options").getString("cacheSize=16&commitInterval=1000");
+                if (options.length() > 0 && options.charAt(0) == '?') {
+                    options = options.substring(1);
+                }
+                if (debug) {
+                    console.sendMessage("<c2>Setting options for engine</c2> <c1>" + name + "</c1> <c2>to</c2> <c1>" + options.replace("&", "&\\") + "</c1>");
+                }
+                try {
+                    return MVStoreStorageService.builder(name)
+                            .file(new File(dataDirectory, connectionNode.node("file").getString("anti_vpn.mv")))
+                            .options(options)
+                            .build();
+                } catch (Exception ex) {
+                    logger.error(console.getLocalizedText(MessageKey.ERROR__CONFIG__NO_ENGINE, "{name}", name), ex);
+                }
+                break;
+            }
+            case "redis": {
+                AddressPort url = new AddressPort(connectionNode.key() + ".address", connectionNode.node("address").getString("127.0.0.1:6379"), 6379, console);
+                if (debug) {
+                    console.sendMessage("<c2>Creating engine</c2> <c1>" + name + "</c1> <c2>of type redis with address</c2> <c1>" + url.getAddress() + ":" + url.getPort() + "</c1>");
+                }
+                try {
+                    return RedisStorageService.builder(name)
+                            .url(url.address, url.port)
+                            .credentials(connectionNode.node("password").getString(""))
+                            .prefix(connectionNode.node("prefix").getString("avpn:"))
+                            .poolSize(poolSettings.minPoolSize, poolSettings.maxPoolSize)
+                            .life(poolSettings.maxLifetime, (int) poolSettings.timeout)
+                            .build();
+                } catch (JedisException ex) {
+                    logger.error(console.getLocalizedText(MessageKey.ERROR__CONFIG__NO_ENGINE, "{name}", name), ex);
+                }
+                break;
+            }
             default: {
                 console.sendMessage("<c9>Unknown storage type</c9> <c1>" + type + "</c1> <c9>in engine</c9> <c1>" + name + "</c1>");
                 break;
@@ -531,6 +604,24 @@ public class ConfigurationFileUtil {
         return retVal;
     }
 
+    @NotNull
+    private static <M extends LocalizedCommandSender<M, B>, B> TimeUtil.Time getResponseCacheTime(
+            @NotNull ConfigurationNode config,
+            boolean debug,
+            @NotNull LocalizedCommandSender<M, B> console
+    ) {
+        TimeUtil.Time retVal = TimeUtil.getTime(config.node("sources", "response-cache", "time").getString("30seconds"));
+        if (retVal == null || retVal.getMillis() <= 0L) {
+            console.sendMessage("<c2>sources.response-cache.time is not a valid time pattern. Using default value.<c2>");
+            retVal = new TimeUtil.Time(30L, TimeUnit.SECONDS);
+        }
+
+        if (debug) {
+            console.sendMessage("<c2>Source response cache time:</c2> <c1>" + retVal.getMillis() + "ms (" + retVal.getTime() + " " + retVal.getUnit().name() + ")</c1>");
+        }
+        return retVal;
+    }
+
     @NotNull
     private static <M extends LocalizedCommandSender<M, B>, B> TimeUtil.Time getMcLeaksCacheTime(
             @NotNull ConfigurationNode config,
@@ -567,6 +658,88 @@ public class ConfigurationFileUtil {
         return retVal;
     }
 
+    private static <M extends LocalizedCommandSender<M, B>, B> void setWriteBehind(
+            @NotNull ConfigurationNode config,
+            boolean debug,
+            @NotNull M console
+    ) {
+        int batchSize = Math.max(1, config.node("storage", "write-behind", "batch-size").getInt(100));
+        int maxQueueSize = Math.max(batchSize, config.node("storage", "write-behind", "max-queue").getInt(10000));
+        long flushInterval = getTimeout(config.node("storage", "write-behind", "flush-interval"), 1000L);
+        WriteBehindQueue.setSettings(batchSize, maxQueueSize, flushInterval);
+
+        if (debug) {
+            console.sendMessage("<c2>Storage write-behind:</c2> <c1>batches of " + batchSize + " every " + flushInterval + "ms, up to " + maxQueueSize + " queued</c1>");
+        }
+    }
+
+    private static <M extends LocalizedCommandSender<M, B>, B> void setPurge(
+            @NotNull ConfigurationNode config,
+            boolean debug,
+            @NotNull M console
+    ) {
+        boolean enabled = config.node("storage", "purge", "enabled").getBoolean(true);
+        long interval = getTimeout(config.node("storage", "purge", "interval"), TimeUnit.HOURS.toMillis(1L));
+        int batchSize = Math.max(1, config.node("storage", "purge", "batch-size").getInt(500));
+        TimeUtil.Time pause = TimeUtil.getTime(config.node("storage", "purge", "pause").getString("100ms"));
+        long pauseMillis = pause != null ? pause.getMillis() : 100L;
+        ExpiryPurger.setSettings(enabled, interval, batchSize, pauseMillis);
+
+        if (debug) {
+            if (enabled) {
+                console.sendMessage("<c2>Storage purge:</c2> <c1>every " + interval + "ms, batches of " + batchSize + " with " + pauseMillis + "ms pauses</c1>");
+            } else {
+                console.sendMessage("<c2>Storage purge:</c2> <c1>disabled</c1>");
+            }
+        }
+    }
+
+    private static <M extends LocalizedCommandSender<M, B>, B> void setSlowQueryLog(
+            @NotNull ConfigurationNode config,
+            boolean debug,
+            @NotNull M console
+    ) {
+        TimeUtil.Time threshold = TimeUtil.getTime(config.node("storage", "slow-query-log").getString("250ms"));
+        if (threshold == null) {
+            console.sendMessage("<c2>storage.slow-query-log is not a valid time pattern. Using default value.<c2>");
+            threshold = new TimeUtil.Time(250L, TimeUnit.MILLISECONDS);
+        }
+        StorageMetrics.setSlowQueryThreshold(threshold.getMillis());
+
+        if (debug) {
+            if (threshold.getMillis() > 0L) {
+                console.sendMessage("<c2>Storage slow query log:</c2> <c1>" + threshold.getMillis() + "ms</c1>");
+            } else {
+                console.sendMessage("<c2>Storage slow query log:</c2> <c1>disabled</c1>");
+            }
+        }
+    }
+
+    private static long getTimeout(@NotNull ConfigurationNode node, long def) {
+        // Older configs stored plain milliseconds, newer ones use time patterns
+        TimeUtil.Time time = TimeUtil.getTime(node.getString(""));
+        long retVal = time != null ? time.getMillis() : node.getLong(def);
+        return retVal > 0L ? retVal : def;
+    }
+
+    @NotNull
+    private static <M extends LocalizedCommandSender<M, B>, B> TimeUtil.Time getDnsCacheTime(
+            @NotNull ConfigurationNode config,
+            boolean debug,
+            @NotNull LocalizedCommandSender<M, B> console
+    ) {
+        TimeUtil.Time retVal = TimeUtil.getTime(config.node("connection", "dns-cache-time").getString("5minutes"));
+        if (retVal == null || retVal.getMillis() <= 0L) {
+            console.sendMessage("<c2>connection.dns-cache-time is not a valid time pattern. Using default value.<c2>");
+            retVal = new TimeUtil.Time(5L, TimeUnit.MINUTES);
+        }
+
+        if (debug) {
+            console.sendMessage("<c2>DNS cache time:</c2> <c1>" + retVal.getMillis() + "ms (" + retVal.getTime() + " " + retVal.getUnit().name() + ")</c1>");
+        }
+        return retVal;
+    }
+
     @NotNull
     private static <M extends LocalizedCommandSender<M, B>, B> Set<@NotNull String> getIgnoredIps(
             @NotNull ConfigurationNode config,
@@ -756,15 +929,24 @@ public class ConfigurationFileUtil {
             }
         }
 
+        Set<String> hostnames = new HashSet<>();
+        hostnames.add("api.mojang.com");
+        hostnames.add("sessionserver.mojang.com");
+
         for (int i = 0; i < order.size(); i++) {
             String s = order.get(i);
             Source<SourceModel> source = initializedSources.get(s);
             sourceManager.deregisterSource(s);
             sourceManager.registerSource(source, i);
+            if (source instanceof AbstractSource) {
+                hostnames.addAll(((AbstractSource<?>) source).getHostnames());
+            }
             if (debug) {
                 console.sendMessage("<c2>Added/Replaced source:</c2> <c1>" + s + " (" + source.getClass().getSimpleName() + ")</c1>");
             }
         }
+
+        HostResolver.prefetch(hostnames);
     }
 
     @NotNull
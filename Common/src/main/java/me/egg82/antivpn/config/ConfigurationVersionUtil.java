@@ -76,6 +76,9 @@ public class ConfigurationVersionUtil {
         if (config.node("version").getDouble() == 5.1d) {
             to52(config);
         }
+        if (config.node("version").getDouble() == 5.2d) {
+            to53(config);
+        }
 
         if (config.node("version").getDouble() != oldVersion) {
             File backupFile = new File(fileOnDisk.getParent(), fileOnDisk.getName() + ".bak");
@@ -715,4 +718,53 @@ public class ConfigurationVersionUtil {
         // Version
         config.node("version").set(5.2d);
     }
+
+    private static void to53(@NotNull CommentedConfigurationNode config) throws SerializationException {
+        // Add connection->connections-per-host
+        config.node("connection", "connections-per-host").set(4);
+        // Add connection->max-response-kb
+        config.node("connection", "max-response-kb").set(1024);
+        // Add connection->dns-cache-time
+        config.node("connection", "dns-cache-time").set("5minutes");
+        // Add connection->adaptive-timeout
+        config.node("connection", "adaptive-timeout", "enabled").set(Boolean.TRUE);
+        config.node("connection", "adaptive-timeout", "min-timeout").set("500ms");
+        config.node("connection", "adaptive-timeout", "margin").set(1.5d);
+
+        // Add connection->retry
+        config.node("connection", "retry", "attempts").set(3);
+        config.node("connection", "retry", "base-delay").set("100ms");
+        config.node("connection", "retry", "max-delay").set("1second");
+
+        // Add sources->response-cache
+        config.node("sources", "response-cache", "time").set("30seconds");
+        config.node("sources", "response-cache", "size").set(1000);
+
+        // Add storage->write-behind
+        config.node("storage", "write-behind", "batch-size").set(100);
+        config.node("storage", "write-behind", "max-queue").set(10000);
+        config.node("storage", "write-behind", "flush-interval").set("1second");
+        // Add storage->hedge-delay
+        config.node("storage", "hedge-delay").set("50ms");
+        // Add storage->purge
+        config.node("storage", "purge", "enabled").set(Boolean.TRUE);
+        config.node("storage", "purge", "interval").set("1hour");
+        config.node("storage", "purge", "batch-size").set(500);
+        config.node("storage", "purge", "pause").set("100ms");
+        // Add storage->slow-query-log
+        config.node("storage", "slow-query-log").set("250ms");
+
+        // Add per-engine connection->single-writer (SQLite, H2) and connection->prefix (Redis)
+        for (CommentedConfigurationNode engineNode : config.node("storage", "engines").childrenMap().values()) {
+            String type = engineNode.node("type").getString("").toLowerCase();
+            if ((type.equals("sqlite") || type.equals("h2")) && engineNode.node("connection", "single-writer").virtual()) {
+                engineNode.node("connection", "single-writer").set(Boolean.TRUE);
+            } else if (type.equals("redis") && engineNode.node("connection", "prefix").virtual()) {
+                engineNode.node("connection", "prefix").set("avpn:");
+            }
+        }
+
+        // Version
+        config.node("version").set(5.3d);
+    }
 }
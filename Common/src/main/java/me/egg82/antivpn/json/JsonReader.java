@@ -0,0 +1,443 @@
+package me.egg82.antivpn.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A small pull-style JSON reader that works directly on a stream.
+ *
+ * <p>Values are read lazily and never built into an intermediate tree,
+ * so callers bind straight into their own models. Scalar reads are
+ * lenient in the same way flexjson is: numbers and booleans can be
+ * read as strings, and quoted numbers/booleans can be read as their
+ * primitive types.</p>
+ */
+public class JsonReader implements Closeable {
+    private static final int SCOPE_DOCUMENT = 0;
+    private static final int SCOPE_OBJECT_NAME = 1;
+    private static final int SCOPE_OBJECT_VALUE = 2;
+    private static final int SCOPE_ARRAY = 3;
+
+    private final @NotNull Reader in;
+    private final char[] buffer = new char[1024];
+    private int pos = 0;
+    private int limit = 0;
+
+    private final @NotNull StringBuilder builder = new StringBuilder();
+
+    private int[] scopes = new int[16];
+    private int scopeSize = 1;
+
+    private @Nullable JsonToken peeked = null;
+
+    public JsonReader(@NotNull InputStream in) { this(new InputStreamReader(in, StandardCharsets.UTF_8)); }
+
+    public JsonReader(@NotNull Reader in) {
+        this.in = in;
+        scopes[0] = SCOPE_DOCUMENT;
+    }
+
+    @NotNull
+    public JsonToken peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int scope = scopes[scopeSize - 1];
+        int c = nextNonWhitespace();
+        if (scope == SCOPE_OBJECT_NAME) {
+            if (c == ',') {
+                pos++;
+                c = nextNonWhitespace();
+            }
+            if (c == '}') {
+                return peeked = JsonToken.END_OBJECT;
+            }
+            if (c != '"') {
+                throw syntaxError("Expected name");
+            }
+            return peeked = JsonToken.NAME;
+        }
+        if (scope == SCOPE_OBJECT_VALUE) {
+            if (c != ':') {
+                throw syntaxError("Expected ':'");
+            }
+            pos++;
+            c = nextNonWhitespace();
+        } else if (scope == SCOPE_ARRAY) {
+            if (c == ',') {
+                pos++;
+                c = nextNonWhitespace();
+            }
+            if (c == ']') {
+                return peeked = JsonToken.END_ARRAY;
+            }
+        }
+
+        switch (c) {
+            case -1:
+                if (scope != SCOPE_DOCUMENT) {
+                    throw syntaxError("Unexpected end of input");
+                }
+                return peeked = JsonToken.END_DOCUMENT;
+            case '{':
+                return peeked = JsonToken.BEGIN_OBJECT;
+            case '[':
+                return peeked = JsonToken.BEGIN_ARRAY;
+            case '"':
+                return peeked = JsonToken.STRING;
+            case 't':
+            case 'f':
+                return peeked = JsonToken.BOOLEAN;
+            case 'n':
+                return peeked = JsonToken.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return peeked = JsonToken.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        pos++;
+        push(SCOPE_OBJECT_NAME);
+    }
+
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        pos++;
+        scopeSize--;
+        valueConsumed();
+    }
+
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        pos++;
+        push(SCOPE_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        pos++;
+        scopeSize--;
+        valueConsumed();
+    }
+
+    @NotNull
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        pos++;
+        String retVal = readQuoted();
+        peeked = null;
+        scopes[scopeSize - 1] = SCOPE_OBJECT_VALUE;
+        return retVal;
+    }
+
+    @Nullable
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        String retVal;
+        switch (token) {
+            case STRING:
+                pos++;
+                retVal = readQuoted();
+                break;
+            case NUMBER:
+            case BOOLEAN:
+                retVal = readLiteral();
+                break;
+            case NULL:
+                readLiteral();
+                retVal = null;
+                break;
+            default:
+                throw syntaxError("Expected a string but was " + token);
+        }
+        valueConsumed();
+        return retVal;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        String value = nextScalar();
+        if (value == null) {
+            return false;
+        }
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no") || value.isEmpty()) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(value) != 0.0d;
+        } catch (NumberFormatException ignored) {
+            return false;
+        }
+    }
+
+    public int nextInt(int defaultValue) throws IOException {
+        String value = nextScalar();
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ignored) {
+            try {
+                return (int) Double.parseDouble(value);
+            } catch (NumberFormatException ignored2) {
+                return defaultValue;
+            }
+        }
+    }
+
+    public long nextLong(long defaultValue) throws IOException {
+        String value = nextScalar();
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ignored) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException ignored2) {
+                return defaultValue;
+            }
+        }
+    }
+
+    public double nextDouble(double defaultValue) throws IOException {
+        String value = nextScalar();
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ignored) {
+            return defaultValue;
+        }
+    }
+
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            JsonToken token = peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                    pos++;
+                    skipQuoted();
+                    valueConsumed();
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    skipLiteral();
+                    valueConsumed();
+                    break;
+                default:
+                    throw syntaxError("Unexpected " + token);
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        scopeSize = 0;
+        in.close();
+    }
+
+    @Nullable
+    private String nextScalar() throws IOException {
+        JsonToken token = peek();
+        if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+            // flexjson would silently drop these, so do the same
+            skipValue();
+            return null;
+        }
+        return nextString();
+    }
+
+    private void expect(@NotNull JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+    }
+
+    private void push(int scope) {
+        if (scopeSize == scopes.length) {
+            scopes = Arrays.copyOf(scopes, scopes.length * 2);
+        }
+        scopes[scopeSize++] = scope;
+        peeked = null;
+    }
+
+    private void valueConsumed() {
+        peeked = null;
+        if (scopes[scopeSize - 1] == SCOPE_OBJECT_VALUE) {
+            scopes[scopeSize - 1] = SCOPE_OBJECT_NAME;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        pos = 0;
+        limit = in.read(buffer, 0, buffer.length);
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (fill()) {
+            char c = buffer[pos];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    @NotNull
+    private String readQuoted() throws IOException {
+        builder.setLength(0);
+        while (true) {
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            // Copy runs of plain characters in one go
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"') {
+                    builder.append(buffer, start, pos - start);
+                    pos++;
+                    return builder.toString();
+                }
+                if (c == '\\') {
+                    builder.append(buffer, start, pos - start);
+                    pos++;
+                    builder.append(readEscape());
+                    start = pos;
+                    if (pos >= limit) {
+                        break;
+                    }
+                    continue;
+                }
+                pos++;
+            }
+            builder.append(buffer, start, pos - start);
+        }
+    }
+
+    private void skipQuoted() throws IOException {
+        while (fill()) {
+            char c = buffer[pos++];
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                readEscape();
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        if (!fill()) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        char c = buffer[pos++];
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (!fill()) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    int digit = Character.digit(buffer[pos++], 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return c;
+        }
+    }
+
+    @NotNull
+    private String readLiteral() throws IOException {
+        builder.setLength(0);
+        while (fill()) {
+            char c = buffer[pos];
+            if (isLiteralEnd(c)) {
+                break;
+            }
+            builder.append(c);
+            pos++;
+        }
+        return builder.toString();
+    }
+
+    private void skipLiteral() throws IOException {
+        while (fill() && !isLiteralEnd(buffer[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isLiteralEnd(char c) {
+        return c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    @NotNull
+    private MalformedJsonException syntaxError(@NotNull String message) { return new MalformedJsonException(message + " in JSON input"); }
+}
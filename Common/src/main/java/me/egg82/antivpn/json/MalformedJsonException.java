@@ -0,0 +1,11 @@
+package me.egg82.antivpn.json;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+public class MalformedJsonException extends IOException {
+    public MalformedJsonException(@NotNull String message) {
+        super(message);
+    }
+}
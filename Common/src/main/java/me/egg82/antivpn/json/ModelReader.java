@@ -0,0 +1,10 @@
+package me.egg82.antivpn.json;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface ModelReader<T> {
+    @NotNull T read(@NotNull JsonReader reader) throws IOException;
+}
@@ -10,6 +10,11 @@ public enum MessageKey {
     COMMAND_DESC__CHECK,
     COMMAND_DESC__SCORE,
     COMMAND_DESC__TEST,
+    COMMAND_DESC__STORAGE,
+    COMMAND_DESC__SOURCES,
+    COMMAND_DESC__SNAPSHOT,
+    COMMAND_DESC__SNAPSHOT_EXPORT,
+    COMMAND_DESC__SNAPSHOT_IMPORT,
 
     BANNER__USE_PAPER,
     BANNER__PRE_18,
@@ -74,6 +79,7 @@ public enum MessageKey {
     CONFIG__SERVER_ID,
     CONFIG__SOURCE_THREADS,
     CONFIG__SOURCE_TIMEOUT,
+    CONFIG__SOURCE_ADAPTIVE_TIMEOUT,
     CONFIG__VPN_KICK_MESSAGE,
     CONFIG__MCLEAKS_KICK_MESSAGE,
     CONFIG__MCLEAKS_KEY,
@@ -93,12 +99,43 @@ public enum MessageKey {
     DEBUG__MCLEAKS_PASSED,
     DEBUG__MCLEAKS_API_ONLY,
 
+    COMMAND__IMPORT__ERROR__SAME_STORAGE,
+    COMMAND__IMPORT__ERROR__NO_MASTER,
+    COMMAND__IMPORT__ERROR__NO_SLAVE,
+    COMMAND__IMPORT__ERROR__FAILED,
+    COMMAND__IMPORT__BEGIN,
+    COMMAND__IMPORT__RESUME,
+    COMMAND__IMPORT__END,
+    COMMAND__IMPORT__IMPORT_IP,
+    COMMAND__IMPORT__IMPORT_PLAYER,
+
     COMMAND__KICK__ERROR__NOT_ONLINE,
     COMMAND__KICK__ERROR__VPN_API_MODE,
     COMMAND__KICK__ERROR__MCLEAKS_API_MODE,
     COMMAND__KICK__VPN_USAGE,
     COMMAND__KICK__MCLEAKS_USAGE,
 
+    COMMAND__SNAPSHOT__ERROR__NO_STORAGE,
+    COMMAND__SNAPSHOT__ERROR__BAD_FILE,
+    COMMAND__SNAPSHOT__ERROR__NO_FILE,
+    COMMAND__SNAPSHOT__ERROR__FAILED,
+    COMMAND__SNAPSHOT__EXPORT_BEGIN,
+    COMMAND__SNAPSHOT__EXPORT_END,
+    COMMAND__SNAPSHOT__IMPORT_BEGIN,
+    COMMAND__SNAPSHOT__IMPORT_END,
+    COMMAND__SNAPSHOT__PROGRESS,
+
+    COMMAND__STORAGE__ENGINE,
+    COMMAND__STORAGE__OPERATION,
+    COMMAND__STORAGE__POOL,
+    COMMAND__STORAGE__NO_DATA,
+
+    COMMAND__SOURCES__TIMEOUT,
+    COMMAND__SOURCES__ADAPTIVE_TIMEOUT,
+    COMMAND__SOURCES__SOURCE,
+    COMMAND__SOURCES__NO_DATA,
+    COMMAND__SOURCES__NONE,
+
     COMMAND__RELOAD__BEGIN,
     COMMAND__RELOAD__END;
 
@@ -19,7 +19,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
@@ -161,17 +160,19 @@ public class GELFLoggerUtil {
                     .header("Content-Encoding", "gzip")
                     .outputData(GZIP_COMPRESSION.compress(modelSerializer.exclude("*.class").deepSerialize(model).getBytes(StandardCharsets.UTF_8)))
                     .build();
-            HttpURLConnection conn = request.getConnection();
-            if (conn.getResponseCode() != 202) {
-                throw new IOException(LocaleUtil.getDefaultI18N()
-                                              .getText(
-                                                      MessageKey.ERROR__LOGGER__SEND,
-                                                      "{code}",
-                                                      String.valueOf(conn.getResponseCode()),
-                                                      "{message}",
-                                                      WebRequest.getString(conn)
-                                              ));
-            }
+            request.execute(conn -> {
+                if (conn.getResponseCode() != 202) {
+                    throw new IOException(LocaleUtil.getDefaultI18N()
+                                                  .getText(
+                                                          MessageKey.ERROR__LOGGER__SEND,
+                                                          "{code}",
+                                                          String.valueOf(conn.getResponseCode()),
+                                                          "{message}",
+                                                          WebRequest.getString(conn)
+                                                  ));
+                }
+                return null;
+            });
         } catch (IOException ex) {
             logger.error(ex.getClass().getName() + ": " + ex.getMessage(), ex);
         }
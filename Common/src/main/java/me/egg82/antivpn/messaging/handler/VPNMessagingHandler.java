@@ -15,6 +15,7 @@ import me.egg82.antivpn.messaging.packets.vpn.PlayerPacket;
 import me.egg82.antivpn.storage.StorageService;
 import me.egg82.antivpn.storage.models.IPModel;
 import me.egg82.antivpn.storage.models.PlayerModel;
+import me.egg82.antivpn.utils.StorageUtil;
 import org.jetbrains.annotations.NotNull;
 
 public class VPNMessagingHandler extends AbstractMessagingHandler {
@@ -59,10 +60,12 @@ public class VPNMessagingHandler extends AbstractMessagingHandler {
         CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
         for (StorageService service : cachedConfig.getStorage()) {
-            IPModel model = service.getOrCreateIpModel(packet.getIp(), packet.getType().ordinal());
+            IPModel model = new IPModel();
+            model.setIp(packet.getIp());
+            model.setType(packet.getType().ordinal());
             model.setCascade(packet.getCascade());
             model.setConsensus(packet.getConsensus());
-            service.storeModel(model);
+            service.queueModel(model);
         }
     }
 
@@ -83,11 +86,11 @@ public class VPNMessagingHandler extends AbstractMessagingHandler {
 
         CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-        for (StorageService service : cachedConfig.getStorage()) {
+        StorageUtil.forEach(cachedConfig.getStorage(), service -> {
             IPModel model = new IPModel();
             model.setIp(packet.getIp());
             service.deleteModel(model);
-        }
+        });
     }
 
     private void handlePlayer(@NotNull PlayerPacket packet) {
@@ -110,8 +113,10 @@ public class VPNMessagingHandler extends AbstractMessagingHandler {
         CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
         for (StorageService service : cachedConfig.getStorage()) {
-            PlayerModel model = service.getOrCreatePlayerModel(packet.getUuid(), packet.getValue());
-            service.storeModel(model);
+            PlayerModel model = new PlayerModel();
+            model.setUuid(packet.getUuid());
+            model.setMcleaks(packet.getValue());
+            service.queueModel(model);
         }
     }
 
@@ -131,10 +136,10 @@ public class VPNMessagingHandler extends AbstractMessagingHandler {
 
         CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-        for (StorageService service : cachedConfig.getStorage()) {
+        StorageUtil.forEach(cachedConfig.getStorage(), service -> {
             PlayerModel model = new PlayerModel();
             model.setUuid(packet.getUuid());
             service.deleteModel(model);
-        }
+        });
     }
 }
@@ -13,7 +13,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -107,81 +106,84 @@ public class MojangPlayerInfo implements PlayerInfo {
 
     protected @Nullable String nameExpensive(@NotNull UUID uuid) throws IOException {
         // Network lookup
-        HttpURLConnection conn = WebRequest.builder(new URL("https://api.mojang.com/user/profiles/" + uuid.toString().replace("-", "") + "/names"))
+        return WebRequest.builder(new URL("https://api.mojang.com/user/profiles/" + uuid.toString().replace("-", "") + "/names"))
                 .timeout(new TimeUtil.Time(2500L, TimeUnit.MILLISECONDS)).userAgent("egg82/PlayerInfo")
                 .header("Accept", "application/json")
                 .build()
-                .getConnection();
-        int status = conn.getResponseCode();
-
-        if (status == 204) {
-            // No data exists
-            return null;
-        } else if (status == 200) {
-            JSONDeserializer<List<PlayerNameModel>> modelDeserializer = new JSONDeserializer<>();
-            modelDeserializer.use("values", PlayerNameModel.class);
-            List<PlayerNameModel> model = modelDeserializer.deserialize(WebRequest.getString(conn));
-
-            String name = model.get(model.size() - 1).getName();
-            synchronized (nameCacheLock) {
-                nameCache.put(name, uuid);
-            }
-            return name;
-        }
+                .execute(conn -> {
+                    int status = conn.getResponseCode();
+
+                    if (status == 204) {
+                        // No data exists
+                        return null;
+                    } else if (status == 200) {
+                        JSONDeserializer<List<PlayerNameModel>> modelDeserializer = new JSONDeserializer<>();
+                        modelDeserializer.use("values", PlayerNameModel.class);
+                        List<PlayerNameModel> model = modelDeserializer.deserialize(WebRequest.getString(conn));
+
+                        String name = model.get(model.size() - 1).getName();
+                        synchronized (nameCacheLock) {
+                            nameCache.put(name, uuid);
+                        }
+                        return name;
+                    }
 
-        throw new IOException("Mojang API response code: " + status);
+                    throw new IOException("Mojang API response code: " + status);
+                });
     }
 
     protected @Nullable UUID uuidExpensive(@NotNull String name) throws IOException {
         // Network lookup
-        HttpURLConnection conn = WebRequest.builder(new URL("https://api.mojang.com/users/profiles/minecraft/" + WebRequest.urlEncode(name)))
+        return WebRequest.builder(new URL("https://api.mojang.com/users/profiles/minecraft/" + WebRequest.urlEncode(name)))
                 .timeout(new TimeUtil.Time(2500L, TimeUnit.MILLISECONDS))
                 .userAgent("egg82/PlayerInfo")
                 .header("Accept", "application/json")
                 .build()
-                .getConnection();
-        int status = conn.getResponseCode();
-
-        if (status == 204) {
-            // No data exists
-            return null;
-        } else if (status == 200) {
-            JSONDeserializer<PlayerUUIDModel> modelDeserializer = new JSONDeserializer<>();
-            PlayerUUIDModel model = modelDeserializer.deserialize(WebRequest.getString(conn), PlayerUUIDModel.class);
-
-            if (model.getId() == null) {
-                return null;
-            }
-
-            UUID uuid = UUID.fromString(model.getId().replaceFirst("(\\p{XDigit}{8})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}+)", "$1-$2-$3-$4-$5"));
-            synchronized (uuidCacheLock) {
-                uuidCache.put(uuid, name);
-            }
-            return uuid;
-        }
+                .execute(conn -> {
+                    int status = conn.getResponseCode();
+
+                    if (status == 204) {
+                        // No data exists
+                        return null;
+                    } else if (status == 200) {
+                        JSONDeserializer<PlayerUUIDModel> modelDeserializer = new JSONDeserializer<>();
+                        PlayerUUIDModel model = modelDeserializer.deserialize(WebRequest.getString(conn), PlayerUUIDModel.class);
+
+                        if (model.getId() == null) {
+                            return null;
+                        }
+
+                        UUID uuid = UUID.fromString(model.getId().replaceFirst("(\\p{XDigit}{8})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}+)", "$1-$2-$3-$4-$5"));
+                        synchronized (uuidCacheLock) {
+                            uuidCache.put(uuid, name);
+                        }
+                        return uuid;
+                    }
 
-        throw new IOException("Mojang API response code: " + status);
+                    throw new IOException("Mojang API response code: " + status);
+                });
     }
 
     protected @Nullable List<ProfileModel.ProfilePropertyModel> propertiesExpensive(@NotNull UUID uuid) throws IOException {
         // Network lookup
-        HttpURLConnection conn = WebRequest.builder(new URL("https://sessionserver.mojang.com/session/minecraft/profile/" + uuid.toString()
+        return WebRequest.builder(new URL("https://sessionserver.mojang.com/session/minecraft/profile/" + uuid.toString()
                 .replace("-", "") + "?unsigned=false"))
                 .timeout(new TimeUtil.Time(2500L, TimeUnit.MILLISECONDS))
                 .userAgent("egg82/PlayerInfo")
                 .header("Accept", "application/json")
                 .build()
-                .getConnection();
-        int status = conn.getResponseCode();
-
-        if (status == 204) {
-            // No data exists
-            return null;
-        } else if (status == 200) {
-            JSONDeserializer<ProfileModel> modelDeserializer = new JSONDeserializer<>();
-            return modelDeserializer.deserialize(WebRequest.getString(conn), ProfileModel.class).getProperties();
-        }
+                .execute(conn -> {
+                    int status = conn.getResponseCode();
+
+                    if (status == 204) {
+                        // No data exists
+                        return null;
+                    } else if (status == 200) {
+                        JSONDeserializer<ProfileModel> modelDeserializer = new JSONDeserializer<>();
+                        return modelDeserializer.deserialize(WebRequest.getString(conn), ProfileModel.class).getProperties();
+                    }
 
-        throw new IOException("Mojang API response code: " + status);
+                    throw new IOException("Mojang API response code: " + status);
+                });
     }
 }
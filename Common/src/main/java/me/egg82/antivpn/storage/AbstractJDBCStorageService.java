@@ -1,12 +1,17 @@
 package me.egg82.antivpn.storage;
 
+import com.google.common.io.ByteStreams;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import io.ebean.Database;
 import io.ebean.DatabaseFactory;
+import io.ebean.SqlUpdate;
 import io.ebean.Transaction;
 import io.ebean.config.DatabaseConfig;
+import io.ebean.config.PlatformConfig;
 import io.ebean.config.dbplatform.DatabasePlatform;
+import me.egg82.antivpn.core.Pair;
+import me.egg82.antivpn.storage.StorageMetrics.Operation;
 import me.egg82.antivpn.storage.models.BaseModel;
 import me.egg82.antivpn.storage.models.DataModel;
 import me.egg82.antivpn.storage.models.IPModel;
@@ -14,21 +19,44 @@ import me.egg82.antivpn.storage.models.PlayerModel;
 import me.egg82.antivpn.storage.models.query.QDataModel;
 import me.egg82.antivpn.storage.models.query.QIPModel;
 import me.egg82.antivpn.storage.models.query.QPlayerModel;
+import me.egg82.antivpn.utils.IPUtil;
+import me.egg82.antivpn.utils.UUIDUtil;
 import me.egg82.antivpn.utils.VersionUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.reflections8.Reflections;
-import org.reflections8.ReflectionsException;
-import org.reflections8.scanners.ResourcesScanner;
 
 import javax.persistence.PersistenceException;
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public abstract class AbstractJDBCStorageService extends AbstractStorageService {
     protected Database connection;
     protected HikariDataSource source;
+    // The same as source unless there's a separate read-only pool
+    protected HikariDataSource readSource;
+    private SingleWriter writer = null;
+
+    private String ipUpsert;
+    private String ipInsert;
+    private String playerUpsert;
+    private String playerInsert;
+    private String dataUpsert;
+    private String dataInsert;
+    private String ipLookup;
+    private String playerLookup;
+    private int inChunkSize;
+    private boolean cacheLookups;
+
+    // Lookup statements kept per physical connection, for drivers without a statement cache of their own. See prepareLookup
+    private final @NotNull Map<Connection, Map<String, PreparedStatement>> lookupStatements = new ConcurrentHashMap<>();
 
     protected AbstractJDBCStorageService(@NotNull String name) {
         super(name);
@@ -36,11 +64,21 @@ public abstract class AbstractJDBCStorageService extends AbstractStorageService
 
     @Override
     public void close() {
+        purger.close();
+        writeQueue.close();
+        if (writer != null) {
+            writer.close();
+        }
+
         queueLock.writeLock().lock();
         try {
             closed = true;
+            lookupStatements.clear(); // Closed along with their connections
             connection.shutdown(false, false);
             source.close();
+            if (readSource != source) {
+                readSource.close();
+            }
         } finally {
             queueLock.writeLock().unlock();
         }
@@ -48,269 +86,607 @@ public abstract class AbstractJDBCStorageService extends AbstractStorageService
 
     @Override
     public void storeModel(@NotNull BaseModel model) {
-        queueLock.readLock().lock();
-        try {
-            createOrUpdate(model, false);
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        metrics.run(Operation.STORE, () -> {
+            writeQueue.remove(model); // Stale queued writes would otherwise land on top of this one
+
+            queueLock.readLock().lock();
+            try {
+                store(() -> createOrUpdate(model, false));
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public void storeModels(@NotNull Collection<@NotNull ? extends BaseModel> models) {
-        queueLock.readLock().lock();
-        try (Transaction tx = connection.beginTransaction()) {
-            for (BaseModel model : models) {
-                createOrUpdate(model, true);
+        metrics.run(Operation.STORE_BATCH, () -> {
+            if (models.isEmpty()) {
+                return;
             }
-            tx.commit();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+
+            queueLock.readLock().lock();
+            try {
+                store(() -> {
+                    SqlUpdate ipBatch = null;
+                    SqlUpdate playerBatch = null;
+                    SqlUpdate dataBatch = null;
+                    for (BaseModel model : models) {
+                        if (model instanceof IPModel) {
+                            ipBatch = bindUpsert(ipBatch != null ? ipBatch : connection.sqlUpdate(ipUpsert), model, true).addBatch();
+                        } else if (model instanceof PlayerModel) {
+                            playerBatch = bindUpsert(playerBatch != null ? playerBatch : connection.sqlUpdate(playerUpsert), model, true).addBatch();
+                        } else if (model instanceof DataModel) {
+                            dataBatch = bindUpsert(dataBatch != null ? dataBatch : connection.sqlUpdate(dataUpsert), model, true).addBatch();
+                        }
+                    }
+                    for (SqlUpdate batch : new SqlUpdate[] { ipBatch, playerBatch, dataBatch }) {
+                        if (batch != null) {
+                            batch.executeBatch();
+                        }
+                    }
+                });
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public void deleteModel(@NotNull BaseModel model) {
-        BaseModel newModel = duplicateModel(model, true);
-        if (newModel == null) {
-            return;
-        }
+        metrics.run(Operation.DELETE, () -> {
+            writeQueue.remove(model);
 
-        queueLock.readLock().lock();
-        try {
-            connection.delete(newModel);
-        } finally {
-            queueLock.readLock().unlock();
-        }
+            BaseModel newModel = duplicateModel(model, true);
+            if (newModel == null) {
+                return;
+            }
+
+            queueLock.readLock().lock();
+            try {
+                write(() -> connection.delete(newModel));
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @NotNull IPModel getOrCreateIpModel(@NotNull String ip, int type) {
-        queueLock.readLock().lock();
-        try {
-            IPModel model = new QIPModel(connection)
-                    .ip.equalTo(ip)
-                    .findOne();
-            if (model == null) {
-                model = new IPModel();
-                model.setIp(ip);
-                model.setType(type);
-                connection.save(model);
-                model = new QIPModel(connection)
-                        .ip.equalTo(ip)
-                        .findOne();
-                if (model == null) {
-                    throw new PersistenceException("findOne() returned null after saving.");
+        return metrics.time(Operation.GET_OR_CREATE_IP, () -> {
+            byte[] ipBytes = IPUtil.toBytes(ip);
+
+            queueLock.readLock().lock();
+            try {
+                return write(() -> {
+                    IPModel model = connection.find(IPModel.class)
+                            .where().eq("ip", ipBytes)
+                            .findOne();
+                    if (model == null) {
+                        // Another server may be creating the same row, so let the database decide who wins
+                        connection.sqlUpdate(ipInsert)
+                                .setParameter(1, Instant.now())
+                                .setParameter(2, Instant.now())
+                                .setParameter(3, ipBytes)
+                                .setParameter(4, type)
+                                .setNull(5, Types.BOOLEAN)
+                                .setNull(6, Types.DOUBLE)
+                                .execute();
+                        model = connection.find(IPModel.class)
+                                .where().eq("ip", ipBytes)
+                                .findOne();
+                        if (model == null) {
+                            throw new PersistenceException("findOne() returned null after inserting.");
+                        }
+                    }
+                    if (model.getType() != type) {
+                        model.setType(type);
+                        model.setModified(null);
+                        connection.save(model);
+                    }
+                    return model;
+                });
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable IPModel getIpModel(@NotNull String ip, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP, () -> {
+            queueLock.readLock().lock();
+            // Hot path, so this skips Ebean and reads the row straight off the connection. See getLookup
+            try (Connection c = readSource.getConnection()) {
+                PreparedStatement statement = prepareLookup(c, ipLookup);
+                try {
+                    statement.setBytes(1, IPUtil.toBytes(ip));
+                    statement.setTimestamp(2, Timestamp.from(Instant.now().minusMillis(cacheTimeMillis)));
+                    try (ResultSet result = statement.executeQuery()) {
+                        if (!result.next()) {
+                            return null;
+                        }
+
+                        IPModel retVal = new IPModel();
+                        readBase(retVal, result);
+                        retVal.setIp(ip);
+                        retVal.setType(result.getInt(5));
+                        boolean cascade = result.getBoolean(6);
+                        retVal.setCascade(result.wasNull() ? null : cascade);
+                        double consensus = result.getDouble(7);
+                        retVal.setConsensus(result.wasNull() ? null : consensus);
+                        return retVal;
+                    }
+                } finally {
+                    releaseLookup(statement);
                 }
+            } catch (SQLException ex) {
+                throw new PersistenceException(ex);
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Map<@NotNull String, @NotNull IPModel> getIpModels(@NotNull Collection<@NotNull String> ips, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IPS, () -> {
+            if (ips.isEmpty()) {
+                return new HashMap<>();
+            }
+
+            // Keyed on the stored bytes so results map back to the strings as given, however they were written
+            Map<ByteBuffer, String> requested = new HashMap<>();
+            for (String ip : ips) {
+                requested.put(ByteBuffer.wrap(IPUtil.toBytes(ip)), ip);
             }
-            if (model.getType() != type) {
-                model.setType(type);
-                model.setModified(null);
-                connection.save(model);
+            List<byte[]> keys = new ArrayList<>(requested.size());
+            for (ByteBuffer key : requested.keySet()) {
+                keys.add(key.array());
             }
-            return model;
-        } finally {
-            queueLock.readLock().unlock();
-        }
+
+            queueLock.readLock().lock();
+            try {
+                Instant after = Instant.now().minusMillis(cacheTimeMillis);
+                Map<String, IPModel> retVal = new HashMap<>();
+                for (int i = 0; i < keys.size(); i += inChunkSize) {
+                    List<IPModel> models = connection.find(IPModel.class)
+                            .where()
+                            .in("ip", keys.subList(i, Math.min(i + inChunkSize, keys.size())))
+                            .gt("modified", after)
+                            .findList();
+                    for (IPModel model : models) {
+                        String ip = requested.get(ByteBuffer.wrap(model.getIpBytes()));
+                        if (ip != null) {
+                            retVal.put(ip, model);
+                        }
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
-    public @Nullable IPModel getIpModel(@NotNull String ip, long cacheTimeMillis) {
-        queueLock.readLock().lock();
-        try {
-            return new QIPModel(connection)
-                    .ip.equalTo(ip)
-                    .modified.after(Instant.now().minusMillis(cacheTimeMillis))
-                    .findOne();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+    public @NotNull Set<@NotNull IPModel> getIpModelsInRange(@NotNull String range, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IPS_IN_RANGE, () -> {
+            Pair<byte[], byte[]> bounds = IPUtil.toRange(range);
+
+            queueLock.readLock().lock();
+            try {
+                // Binary columns compare byte by byte, so the unique index on ip covers this
+                return connection.find(IPModel.class)
+                        .where()
+                        .between("ip", bounds.getT1(), bounds.getT2())
+                        .gt("modified", Instant.now().minusMillis(cacheTimeMillis))
+                        .findSet();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @Nullable IPModel getIpModel(long ipId, long cacheTimeMillis) {
-        queueLock.readLock().lock();
-        try {
-            return new QIPModel(connection)
-                    .id.equalTo(ipId)
-                    .modified.after(Instant.now().minusMillis(cacheTimeMillis))
-                    .findOne();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_IP_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QIPModel(connection)
+                        .id.equalTo(ipId)
+                        .modified.after(Instant.now().minusMillis(cacheTimeMillis))
+                        .findOne();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @NotNull Set<@NotNull IPModel> getAllIps(long cacheTimeMillis) {
-        queueLock.readLock().lock();
-        try {
-            return new QIPModel(connection)
-                    .modified.after(Instant.now().minusMillis(cacheTimeMillis))
-                    .findSet();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_ALL_IPS, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QIPModel(connection)
+                        .modified.after(Instant.now().minusMillis(cacheTimeMillis))
+                        .findSet();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
+    @Deprecated
     public @NotNull Set<@NotNull IPModel> getAllIps(int start, int max) {
-        queueLock.readLock().lock();
-        try {
-            return new QIPModel(connection)
-                    .id.between(start, start + max - 1)
-                    .findSet();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_IP_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QIPModel(connection)
+                        .id.between(start, start + max - 1)
+                        .findSet();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
-    public @NotNull PlayerModel getOrCreatePlayerModel(@NotNull UUID player, boolean isMcLeaks) {
-        queueLock.readLock().lock();
-        try {
-            PlayerModel model = new QPlayerModel(connection)
-                    .uuid.equalTo(player)
-                    .findOne();
-            if (model == null) {
-                model = new PlayerModel();
-                model.setUuid(player);
-                model.setMcleaks(isMcLeaks);
-                connection.save(model);
-                model = new QPlayerModel(connection)
-                        .uuid.equalTo(player)
-                        .findOne();
-                if (model == null) {
-                    throw new PersistenceException("findOne() returned null after saving.");
-                }
+    public @NotNull List<@NotNull IPModel> getIpPage(long afterId, int max, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QIPModel(connection)
+                        .id.greaterThan(afterId)
+                        .modified.after(Instant.now().minusMillis(cacheTimeMillis))
+                        .orderBy().id.asc()
+                        .setMaxRows(max)
+                        .findList();
+            } finally {
+                queueLock.readLock().unlock();
             }
-            if (model.isMcleaks() != isMcLeaks) {
-                model.setMcleaks(isMcLeaks);
-                model.setModified(null);
-                connection.save(model);
+        });
+    }
+
+    @Override
+    public int purgeIps(@NotNull Instant before, int max) {
+        return metrics.time(Operation.PURGE_IPS, () -> {
+            queueLock.readLock().lock();
+            try {
+                return write(() -> {
+                    // Walks the modified index, so each batch only touches the rows it deletes
+                    List<Object> ids = connection.find(IPModel.class)
+                            .where()
+                            .lt("modified", before)
+                            .orderBy("modified")
+                            .setMaxRows(max)
+                            .findIds();
+                    if (ids.isEmpty()) {
+                        return 0;
+                    }
+                    // Checked again in case a row was refreshed in the meantime
+                    return connection.find(IPModel.class)
+                            .where()
+                            .idIn(ids)
+                            .lt("modified", before)
+                            .delete();
+                });
+            } finally {
+                queueLock.readLock().unlock();
             }
-            return model;
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        });
+    }
+
+    @Override
+    public @NotNull PlayerModel getOrCreatePlayerModel(@NotNull UUID player, boolean isMcLeaks) {
+        return metrics.time(Operation.GET_OR_CREATE_PLAYER, () -> {
+            queueLock.readLock().lock();
+            try {
+                return write(() -> {
+                    PlayerModel model = new QPlayerModel(connection)
+                            .uuid.equalTo(player)
+                            .findOne();
+                    if (model == null) {
+                        connection.sqlUpdate(playerInsert)
+                                .setParameter(1, Instant.now())
+                                .setParameter(2, Instant.now())
+                                .setParameter(3, UUIDUtil.toBytes(player))
+                                .setParameter(4, isMcLeaks)
+                                .execute();
+                        model = new QPlayerModel(connection)
+                                .uuid.equalTo(player)
+                                .findOne();
+                        if (model == null) {
+                            throw new PersistenceException("findOne() returned null after inserting.");
+                        }
+                    }
+                    if (model.isMcleaks() != isMcLeaks) {
+                        model.setMcleaks(isMcLeaks);
+                        model.setModified(null);
+                        connection.save(model);
+                    }
+                    return model;
+                });
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @Nullable PlayerModel getPlayerModel(@NotNull UUID player, long cacheTimeMillis) {
-        queueLock.readLock().lock();
-        try {
-            return new QPlayerModel(connection)
-                    .uuid.equalTo(player)
-                    .modified.after(Instant.now().minusMillis(cacheTimeMillis))
-                    .findOne();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_PLAYER, () -> {
+            queueLock.readLock().lock();
+            try (Connection c = readSource.getConnection()) {
+                PreparedStatement statement = prepareLookup(c, playerLookup);
+                try {
+                    statement.setBytes(1, UUIDUtil.toBytes(player));
+                    statement.setTimestamp(2, Timestamp.from(Instant.now().minusMillis(cacheTimeMillis)));
+                    try (ResultSet result = statement.executeQuery()) {
+                        if (!result.next()) {
+                            return null;
+                        }
+
+                        PlayerModel retVal = new PlayerModel();
+                        readBase(retVal, result);
+                        retVal.setUuid(player);
+                        retVal.setMcleaks(result.getBoolean(5));
+                        return retVal;
+                    }
+                } finally {
+                    releaseLookup(statement);
+                }
+            } catch (SQLException ex) {
+                throw new PersistenceException(ex);
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @Nullable PlayerModel getPlayerModel(long playerId, long cacheTimeMillis) {
-        queueLock.readLock().lock();
-        try {
-            return new QPlayerModel(connection)
-                    .id.equalTo(playerId)
-                    .modified.after(Instant.now().minusMillis(cacheTimeMillis))
-                    .findOne();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_PLAYER_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QPlayerModel(connection)
+                        .id.equalTo(playerId)
+                        .modified.after(Instant.now().minusMillis(cacheTimeMillis))
+                        .findOne();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Map<@NotNull UUID, @NotNull PlayerModel> getPlayerModels(@NotNull Collection<@NotNull UUID> players, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYERS, () -> {
+            if (players.isEmpty()) {
+                return new HashMap<>();
+            }
+
+            List<UUID> keys = new ArrayList<>(new HashSet<>(players));
+
+            queueLock.readLock().lock();
+            try {
+                Instant after = Instant.now().minusMillis(cacheTimeMillis);
+                Map<UUID, PlayerModel> retVal = new HashMap<>();
+                for (int i = 0; i < keys.size(); i += inChunkSize) {
+                    List<PlayerModel> models = new QPlayerModel(connection)
+                            .uuid.in(keys.subList(i, Math.min(i + inChunkSize, keys.size())))
+                            .modified.after(after)
+                            .findList();
+                    for (PlayerModel model : models) {
+                        retVal.put(model.getUuid(), model);
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @NotNull Set<@NotNull PlayerModel> getAllPlayers(long cacheTimeMillis) {
-        queueLock.readLock().lock();
-        try {
-            return new QPlayerModel(connection)
-                    .modified.after(Instant.now().minusMillis(cacheTimeMillis))
-                    .findSet();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_ALL_PLAYERS, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QPlayerModel(connection)
+                        .modified.after(Instant.now().minusMillis(cacheTimeMillis))
+                        .findSet();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
+    @Deprecated
     public @NotNull Set<@NotNull PlayerModel> getAllPlayers(int start, int max) {
-        queueLock.readLock().lock();
-        try {
-            return new QPlayerModel(connection)
-                    .id.between(start, start + max - 1)
-                    .findSet();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_PLAYER_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QPlayerModel(connection)
+                        .id.between(start, start + max - 1)
+                        .findSet();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
-    public @NotNull DataModel getOrCreateDataModel(@NotNull String key, String value) {
-        queueLock.readLock().lock();
-        try {
-            DataModel model = new QDataModel(connection)
-                    .key.equalTo(key)
-                    .findOne();
-            if (model == null) {
-                model = new DataModel();
-                model.setKey(key);
-                model.setValue(value);
-                connection.save(model);
-                model = new QDataModel(connection)
-                        .key.equalTo(key)
-                        .findOne();
-                if (model == null) {
-                    throw new PersistenceException("findOne() returned null after saving.");
-                }
+    public @NotNull List<@NotNull PlayerModel> getPlayerPage(long afterId, int max, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYER_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QPlayerModel(connection)
+                        .id.greaterThan(afterId)
+                        .modified.after(Instant.now().minusMillis(cacheTimeMillis))
+                        .orderBy().id.asc()
+                        .setMaxRows(max)
+                        .findList();
+            } finally {
+                queueLock.readLock().unlock();
             }
-            if (!Objects.equals(model.getValue(), value)) {
-                model.setValue(value);
-                model.setModified(null);
-                connection.save(model);
+        });
+    }
+
+    @Override
+    public int purgePlayers(@NotNull Instant before, int max) {
+        return metrics.time(Operation.PURGE_PLAYERS, () -> {
+            queueLock.readLock().lock();
+            try {
+                return write(() -> {
+                    List<Object> ids = connection.find(PlayerModel.class)
+                            .where()
+                            .lt("modified", before)
+                            .orderBy("modified")
+                            .setMaxRows(max)
+                            .findIds();
+                    if (ids.isEmpty()) {
+                        return 0;
+                    }
+                    return connection.find(PlayerModel.class)
+                            .where()
+                            .idIn(ids)
+                            .lt("modified", before)
+                            .delete();
+                });
+            } finally {
+                queueLock.readLock().unlock();
             }
-            return model;
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        });
+    }
+
+    @Override
+    public @NotNull DataModel getOrCreateDataModel(@NotNull String key, String value) {
+        return metrics.time(Operation.GET_OR_CREATE_DATA, () -> {
+            queueLock.readLock().lock();
+            try {
+                return write(() -> {
+                    DataModel model = new QDataModel(connection)
+                            .key.equalTo(key)
+                            .findOne();
+                    if (model == null) {
+                        SqlUpdate insert = connection.sqlUpdate(dataInsert)
+                                .setParameter(1, Instant.now())
+                                .setParameter(2, Instant.now())
+                                .setParameter(3, key);
+                        if (value != null) {
+                            insert.setParameter(4, value);
+                        } else {
+                            insert.setNull(4, Types.VARCHAR);
+                        }
+                        insert.execute();
+                        model = new QDataModel(connection)
+                                .key.equalTo(key)
+                                .findOne();
+                        if (model == null) {
+                            throw new PersistenceException("findOne() returned null after inserting.");
+                        }
+                    }
+                    if (!Objects.equals(model.getValue(), value)) {
+                        model.setValue(value);
+                        model.setModified(null);
+                        connection.save(model);
+                    }
+                    return model;
+                });
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @Nullable DataModel getDataModel(@NotNull String key) {
-        queueLock.readLock().lock();
-        try {
-            return new QDataModel(connection)
-                    .key.equalTo(key)
-                    .findOne();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_DATA, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QDataModel(connection)
+                        .key.equalTo(key)
+                        .findOne();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     @Override
     public @Nullable DataModel getDataModel(long dataId) {
-        queueLock.readLock().lock();
-        try {
-            return new QDataModel(connection)
-                    .id.equalTo(dataId)
-                    .findOne();
-        } finally {
-            queueLock.readLock().unlock();
-        }
+        return metrics.time(Operation.GET_DATA_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try {
+                return new QDataModel(connection)
+                        .id.equalTo(dataId)
+                        .findOne();
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
     }
 
     protected final void createSource(@NotNull HikariConfig config, @NotNull DatabasePlatform platform, boolean quote, @NotNull String scriptsName) {
+        createSource(config, null, platform, quote, scriptsName);
+    }
+
+    /*
+    Note: With a read config, every write goes through a single connection on a single thread
+    and lookups get their own pool. Meant for embedded file databases, see SingleWriter
+     */
+    protected final void createSource(@NotNull HikariConfig config, @Nullable HikariConfig readConfig, @NotNull DatabasePlatform platform, boolean quote, @NotNull String scriptsName) {
         config.setAutoCommit(false);
-        source = new HikariDataSource(config);
+        PoolMetrics poolMetrics = new PoolMetrics();
+        if (readConfig != null) {
+            config.setMaximumPoolSize(1);
+            config.setMinimumIdle(1);
+            // Opened first, so the file exists (and is in WAL mode) before the read-only connections look for it
+            source = new HikariDataSource(config);
+
+            // Ebean expects auto-commit on its read-only source
+            readConfig.setAutoCommit(true);
+            readConfig.setReadOnly(true);
+            readConfig.setMetricsTrackerFactory(poolMetrics);
+            readSource = new HikariDataSource(readConfig);
+        } else {
+            config.setMetricsTrackerFactory(poolMetrics);
+            source = new HikariDataSource(config);
+            readSource = source;
+        }
+        poolMetrics.setSource(readSource);
+        metrics.setPool(poolMetrics);
         DatabaseConfig dbConfig = new DatabaseConfig();
         dbConfig.setDataSource(source);
+        if (readConfig != null) {
+            // Queries outside a transaction go to the read-only pool, everything else to the writer
+            dbConfig.setReadOnlyDataSource(readSource);
+            dbConfig.setAutoReadOnlyDataSource(true);
+        }
         dbConfig.setDatabasePlatform(platform);
         dbConfig.setAllQuotedIdentifiers(quote);
+        dbConfig.setDbUuid(PlatformConfig.DbUuid.BINARY); // Matches UUIDUtil.toBytes()
         dbConfig.setDefaultServer(false);
         dbConfig.setRegister(false);
         dbConfig.setName(name);
         dbConfig.setClasses(Arrays.asList(BaseModel.class, IPModel.class, PlayerModel.class, DataModel.class));
         connection = DatabaseFactory.createWithContextClassLoader(dbConfig, getClass().getClassLoader());
 
+        Dialect dialect = Dialect.of(scriptsName);
+        ipUpsert = dialect.getUpsert("avpn_6_ip", "ip", "type", "cascade", "consensus");
+        ipInsert = dialect.getInsert("avpn_6_ip", "ip", "type", "cascade", "consensus");
+        playerUpsert = dialect.getUpsert("avpn_6_player", "uuid", "mcleaks");
+        playerInsert = dialect.getInsert("avpn_6_player", "uuid", "mcleaks");
+        dataUpsert = dialect.getUpsert("avpn_6_data", "key", "value");
+        dataInsert = dialect.getInsert("avpn_6_data", "key", "value");
+        ipLookup = dialect.getLookup("avpn_6_ip", "ip", "type", "cascade", "consensus");
+        playerLookup = dialect.getLookup("avpn_6_player", "uuid", "mcleaks");
+        inChunkSize = dialect.inChunkSize;
+        cacheLookups = !dialect.driverCachesStatements;
+
         DataModel model;
         try {
             model = getDataModel("schema-version");
@@ -328,65 +704,128 @@ public abstract class AbstractJDBCStorageService extends AbstractStorageService
             model.setModified(null);
         }
 
-        List<File> files = getResourceDirs("db.migration");
-        for (File file : files) {
-            if (!VersionUtil.isAtLeast(file.getParentFile().getName().substring(1), '_', model.getValue(), '.') && file.getName().equals(scriptsName + ".sql")) {
-                connection.script().run("/" + file.getPath().replace('\\', '/'));
-                model.setValue(file.getParentFile().getName().substring(1).replace('_', '.'));
-                model.setModified(null);
-            }
+        MigrationIndex migrations = MigrationIndex.get();
+        for (MigrationIndex.Migration migration : migrations.getMigrations(scriptsName, model.getValue())) {
+            long start = System.nanoTime();
+            migrate(model, migration);
+            logger.info("Migrated " + name + " to schema version " + migration.getVersion() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
         }
 
-        if (!files.isEmpty() && !VersionUtil.isAtLeast(model.getValue(), '.', files.get(files.size() - 1).getParentFile().getName().substring(1), '_')) {
+        String latest = migrations.getLatest();
+        if (latest != null && !VersionUtil.isAtLeast(model.getValue(), '.', latest, '.')) {
             throw new PersistenceException("This plugin is running against a database with a higher version than expected and requires an update to continue.");
         }
 
         if (model.getModified() == null) {
             connection.save(model);
         }
+
+        if (readConfig != null) {
+            writer = new SingleWriter(name, this::inTransaction);
+        }
+        purger.start();
     }
 
-    private @NotNull List<@NotNull File> getResourceDirs(@NotNull String prefix) {
-        List<File> retVal = new ArrayList<>();
+    /*
+    Copies the connection settings into a new config for a read-only pool, see createSource
+     */
+    protected static @NotNull HikariConfig getReadConfig(@NotNull HikariConfig config, @NotNull String poolName) {
+        HikariConfig retVal = new HikariConfig();
+        retVal.setPoolName(poolName);
+        retVal.setDriverClassName(config.getDriverClassName());
+        retVal.setJdbcUrl(config.getJdbcUrl());
+        retVal.setConnectionTestQuery(config.getConnectionTestQuery());
+        Properties properties = new Properties();
+        properties.putAll(config.getDataSourceProperties());
+        retVal.setDataSourceProperties(properties);
+        retVal.setMaximumPoolSize(config.getMaximumPoolSize());
+        retVal.setMinimumIdle(config.getMinimumIdle());
+        retVal.setMaxLifetime(config.getMaxLifetime());
+        retVal.setConnectionTimeout(config.getConnectionTimeout());
+        return retVal;
+    }
 
-        Reflections reflections = new Reflections(prefix, new ResourcesScanner());
-        Set<String> files;
-        try {
-            files = reflections.getResources(x -> true);
-        } catch (ReflectionsException ex) {
-            return retVal;
+    /*
+    Runs a migration script and records the new schema version in the same transaction, so a failed
+    migration leaves the database at the last version that finished. MySQL and MariaDB commit DDL
+    as it runs, so there a failure part way through still needs fixing by hand.
+     */
+    private void migrate(@NotNull DataModel model, @NotNull MigrationIndex.Migration migration) {
+        String script;
+        try (InputStream inStream = getClass().getResourceAsStream(migration.getPath())) {
+            if (inStream == null) {
+                throw new PersistenceException("Could not find migration " + migration.getPath() + ".");
+            }
+            script = new String(ByteStreams.toByteArray(inStream), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new PersistenceException("Could not read migration " + migration.getPath() + ".", ex);
         }
 
-        for (String file : files) {
-            retVal.add(new File(file));
+        try (Transaction tx = connection.beginTransaction()) {
+            try (Statement statement = tx.getConnection().createStatement()) {
+                // Migration scripts only use semicolons to end statements
+                for (String sql : script.split(";")) {
+                    if (!sql.trim().isEmpty()) {
+                        statement.execute(sql.trim());
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new PersistenceException("Could not run migration " + migration.getPath() + ".", ex);
+            }
+
+            model.setValue(migration.getVersion());
+            model.setModified(null);
+            connection.save(model, tx);
+            tx.commit();
         }
+    }
 
-        retVal.sort((f1, f2) -> {
-            int[] v1 = VersionUtil.parseVersion(f1.getParentFile().getName().substring(1), '_');
-            int[] v2 = VersionUtil.parseVersion(f2.getParentFile().getName().substring(1), '_');
+    /*
+    Prepares one of the hot lookups. Drivers that cache statements get a fresh one, which releaseLookup closes.
+    Otherwise the statement is prepared once on the physical connection under the pool's proxy and kept for as long
+    as that connection lives. A pooled connection is only used by one thread at a time, so neither are its statements.
+     */
+    private @NotNull PreparedStatement prepareLookup(@NotNull Connection c, @NotNull String sql) throws SQLException {
+        if (!cacheLookups) {
+            return c.prepareStatement(sql);
+        }
 
-            for (int i = 0; i < v1.length; i++) {
-                if (i > v2.length) {
-                    // We're looking for a version deeper than what we have
-                    // eg. 1.12.2 -> 1.12
-                    return 1;
+        Connection physical = c.unwrap(Connection.class);
+        Map<String, PreparedStatement> statements = lookupStatements.get(physical);
+        if (statements == null) {
+            // The pool retires connections on its own, so closed ones are dropped whenever a new one shows up
+            lookupStatements.keySet().removeIf(k -> {
+                try {
+                    return k.isClosed();
+                } catch (SQLException ignored) {
+                    return true;
                 }
-                if (v2[i] > v1[i]) {
-                    // The version we're at now is greater than the one we want
-                    // eg. 1.11 -> 1.13
-                    return 1;
-                }
-                if (v2[i] < v1[i]) {
-                    // The version we're at now is less than the one we want
-                    // eg. 1.13 -> 1.11
-                    return -1;
-                }
-            }
-            return 0;
-        });
+            });
+            statements = new HashMap<>();
+            lookupStatements.put(physical, statements);
+        }
+
+        PreparedStatement retVal = statements.get(sql);
+        if (retVal == null || retVal.isClosed()) {
+            retVal = physical.prepareStatement(sql);
+            statements.put(sql, retVal);
+        }
         return retVal;
     }
 
+    private void releaseLookup(@NotNull PreparedStatement statement) throws SQLException {
+        if (!cacheLookups) {
+            statement.close();
+        }
+    }
+
+    private static void readBase(@NotNull BaseModel model, @NotNull ResultSet result) throws SQLException {
+        model.setId(result.getLong(1));
+        model.setVersion(result.getLong(2));
+        model.setCreated(result.getTimestamp(3).toInstant());
+        model.setModified(result.getTimestamp(4).toInstant());
+    }
+
     private @Nullable BaseModel duplicateModel(@NotNull BaseModel model, boolean keepModified) {
         BaseModel retVal = null;
         if (model instanceof IPModel) {
@@ -418,57 +857,231 @@ public abstract class AbstractJDBCStorageService extends AbstractStorageService
         return retVal;
     }
 
+    /*
+    Stores can be committed together with other stores, so they can't start transactions of their own
+     */
+    private void store(@NotNull Runnable body) {
+        if (writer != null) {
+            writer.store(body);
+        } else {
+            inTransaction(body);
+        }
+    }
+
+    private <T> T write(@NotNull Supplier<T> body) { return writer != null ? writer.call(body) : body.get(); }
+
+    private void inTransaction(@NotNull Runnable body) {
+        try (Transaction tx = connection.beginTransaction()) {
+            body.run();
+            tx.commit();
+        }
+    }
+
     private void createOrUpdate(@NotNull BaseModel model, boolean keepModified) {
+        String sql;
         if (model instanceof IPModel) {
-            IPModel m = new QIPModel(connection)
-                    .ip.equalTo(((IPModel) model).getIp())
-                    .findOne();
-            if (m == null) {
-                m = (IPModel) duplicateModel(model, keepModified);
-                if (m == null) {
-                    return;
-                }
-                connection.save(m);
+            sql = ipUpsert;
+        } else if (model instanceof PlayerModel) {
+            sql = playerUpsert;
+        } else if (model instanceof DataModel) {
+            sql = dataUpsert;
+        } else {
+            return;
+        }
+        bindUpsert(connection.sqlUpdate(sql), model, keepModified).execute();
+    }
+
+    private static @NotNull SqlUpdate bindUpsert(@NotNull SqlUpdate update, @NotNull BaseModel model, boolean keepModified) {
+        Instant now = Instant.now();
+        // Created is only used when inserting, existing rows keep theirs
+        update.setParameter(1, model.getCreated() != null ? model.getCreated() : now);
+        update.setParameter(2, keepModified && model.getModified() != null ? model.getModified() : now);
+
+        if (model instanceof IPModel) {
+            IPModel m = (IPModel) model;
+            update.setParameter(3, m.getIpBytes());
+            update.setParameter(4, m.getType());
+            if (m.getCascade() != null) {
+                update.setParameter(5, m.getCascade());
             } else {
-                m.setType(((IPModel) model).getType());
-                m.setCascade(((IPModel) model).getCascade());
-                m.setConsensus(((IPModel) model).getConsensus());
-                m.setCreated(model.getCreated());
-                m.setModified(keepModified ? model.getModified() : null);
-                connection.update(m);
+                update.setNull(5, Types.BOOLEAN);
             }
-        } else if (model instanceof PlayerModel) {
-            PlayerModel m = new QPlayerModel(connection)
-                    .uuid.equalTo(((PlayerModel) model).getUuid())
-                    .findOne();
-            if (m == null) {
-                m = (PlayerModel) duplicateModel(model, keepModified);
-                if (m == null) {
-                    return;
-                }
-                connection.save(m);
+            if (m.getConsensus() != null) {
+                update.setParameter(6, m.getConsensus());
             } else {
-                m.setMcleaks(((PlayerModel) model).isMcleaks());
-                m.setCreated(model.getCreated());
-                m.setModified(keepModified ? model.getModified() : null);
-                connection.update(m);
+                update.setNull(6, Types.DOUBLE);
             }
+        } else if (model instanceof PlayerModel) {
+            PlayerModel m = (PlayerModel) model;
+            update.setParameter(3, UUIDUtil.toBytes(m.getUuid()));
+            update.setParameter(4, m.isMcleaks());
         } else if (model instanceof DataModel) {
-            DataModel m = new QDataModel(connection)
-                    .key.equalTo(((DataModel) model).getKey())
-                    .findOne();
-            if (m == null) {
-                m = (DataModel) duplicateModel(model, keepModified);
-                if (m == null) {
-                    return;
-                }
-                connection.save(m);
+            DataModel m = (DataModel) model;
+            update.setParameter(3, m.getKey());
+            if (m.getValue() != null) {
+                update.setParameter(4, m.getValue());
             } else {
-                m.setKey(((DataModel) model).getKey());
-                m.setValue(((DataModel) model).getValue());
-                m.setCreated(model.getCreated());
-                m.setModified(keepModified ? model.getModified() : null);
-                connection.update(m);
+                update.setNull(4, Types.VARCHAR);
+            }
+        }
+        return update;
+    }
+
+    /**
+     * Single-statement inserts and upserts, keyed on each table's unique column.
+     *
+     * <p>Every statement takes the same parameters: created, modified, the unique key and then
+     * the remaining columns. Upserts bump the version and modified time of existing rows and
+     * leave created alone, inserts leave existing rows untouched.</p>
+     *
+     * <p>Lookups take the unique key and the oldest modified time to return, and select id,
+     * version, created and modified followed by the remaining columns.</p>
+     */
+    private enum Dialect {
+        // SQLite before 3.32 allows 999 parameters per statement, and one is taken by the modified time
+        MYSQL("`", 1000, true),
+        POSTGRESQL("\"", 1000, true),
+        // sqlite-jdbc has no statement cache, every prepareStatement compiles the SQL again
+        SQLITE("\"", 900, false),
+        H2("`", 1000, true);
+
+        private final String quote;
+        // The most keys bound into a single IN (...)
+        private final int inChunkSize;
+        // Whether the driver reuses the parsed SQL when the same statement is prepared again on a connection
+        private final boolean driverCachesStatements;
+
+        Dialect(@NotNull String quote, int inChunkSize, boolean driverCachesStatements) {
+            this.quote = quote;
+            this.driverCachesStatements = driverCachesStatements;
+            this.inChunkSize = inChunkSize;
+        }
+
+        private static @NotNull Dialect of(@NotNull String scriptsName) {
+            switch (scriptsName) {
+                case "mysql":
+                case "mysql55":
+                case "mariadb":
+                    return MYSQL;
+                case "postgresql":
+                    return POSTGRESQL;
+                case "sqlite":
+                    return SQLITE;
+                case "h2":
+                    return H2;
+                default:
+                    throw new IllegalArgumentException("Unknown dialect " + scriptsName + ".");
+            }
+        }
+
+        private @NotNull String getInsert(@NotNull String table, @NotNull String key, @NotNull String @NotNull ... columns) { return getStatement(table, key, columns, false); }
+
+        private @NotNull String getUpsert(@NotNull String table, @NotNull String key, @NotNull String @NotNull ... columns) { return getStatement(table, key, columns, true); }
+
+        /*
+        The SQL never changes, so drivers that cache prepared statements per connection
+        (MySQL and MariaDB with cachePrepStmts, PostgreSQL after prepareThreshold uses, H2's query cache) only parse it once.
+        SQLite doesn't, so its lookups are kept per connection instead. See prepareLookup
+         */
+        private @NotNull String getLookup(@NotNull String table, @NotNull String key, @NotNull String @NotNull ... columns) {
+            StringBuilder retVal = new StringBuilder("SELECT ").append(q("id")).append(", ").append(q("version")).append(", ").append(q("created")).append(", ").append(q("modified"));
+            for (String column : columns) {
+                retVal.append(", ").append(q(column));
+            }
+            return retVal.append(" FROM ").append(q(table)).append(" WHERE ").append(q(key)).append(" = ? AND ").append(q("modified")).append(" > ?").toString();
+        }
+
+        private @NotNull String getStatement(@NotNull String table, @NotNull String key, @NotNull String @NotNull [] columns, boolean update) {
+            List<String> inserted = new ArrayList<>();
+            inserted.add("created");
+            inserted.add("modified");
+            inserted.add(key);
+            inserted.addAll(Arrays.asList(columns));
+
+            List<String> updated = new ArrayList<>();
+            updated.add("modified");
+            updated.addAll(Arrays.asList(columns));
+
+            StringBuilder retVal = new StringBuilder();
+            if (this == H2) {
+                // H2 doesn't have ON CONFLICT, and MERGE ... KEY would replace the version and created columns
+                retVal.append("MERGE INTO ").append(q(table)).append(" AS ").append(q("d")).append(" USING (SELECT ");
+                for (int i = 0; i < inserted.size(); i++) {
+                    // H2 can't work out parameter types in a bare SELECT
+                    retVal.append(i > 0 ? ", " : "").append("CAST(? AS ").append(getH2Type(inserted.get(i))).append(") AS ").append(q(inserted.get(i)));
+                }
+                retVal.append(") AS ").append(q("s")).append(" ON ").append(q("d")).append('.').append(q(key)).append(" = ").append(q("s")).append('.').append(q(key));
+                if (update) {
+                    retVal.append(" WHEN MATCHED THEN UPDATE SET ").append(q("version")).append(" = ").append(q("d")).append('.').append(q("version")).append(" + 1");
+                    for (String column : updated) {
+                        retVal.append(", ").append(q(column)).append(" = ").append(q("s")).append('.').append(q(column));
+                    }
+                }
+                retVal.append(" WHEN NOT MATCHED THEN INSERT (").append(q("version"));
+                for (String column : inserted) {
+                    retVal.append(", ").append(q(column));
+                }
+                retVal.append(") VALUES (1");
+                for (String column : inserted) {
+                    retVal.append(", ").append(q("s")).append('.').append(q(column));
+                }
+                return retVal.append(')').toString();
+            }
+
+            retVal.append("INSERT INTO ").append(q(table)).append(" (").append(q("version"));
+            for (String column : inserted) {
+                retVal.append(", ").append(q(column));
+            }
+            retVal.append(") VALUES (1");
+            for (int i = 0; i < inserted.size(); i++) {
+                retVal.append(", ?");
+            }
+            retVal.append(')');
+
+            if (this == MYSQL) {
+                retVal.append(" ON DUPLICATE KEY UPDATE ");
+                if (!update) {
+                    // No-op, but unlike INSERT IGNORE it doesn't hide other errors
+                    return retVal.append(q(key)).append(" = ").append(q(key)).toString();
+                }
+                retVal.append(q("version")).append(" = ").append(q("version")).append(" + 1");
+                for (String column : updated) {
+                    retVal.append(", ").append(q(column)).append(" = VALUES(").append(q(column)).append(')');
+                }
+                return retVal.toString();
+            }
+
+            retVal.append(" ON CONFLICT (").append(q(key)).append(')');
+            if (!update) {
+                return retVal.append(" DO NOTHING").toString();
+            }
+            retVal.append(" DO UPDATE SET ").append(q("version")).append(" = ").append(q(table)).append('.').append(q("version")).append(" + 1");
+            for (String column : updated) {
+                retVal.append(", ").append(q(column)).append(" = EXCLUDED.").append(q(column));
+            }
+            return retVal.toString();
+        }
+
+        private @NotNull String q(@NotNull String identifier) { return quote + identifier + quote; }
+
+        private static @NotNull String getH2Type(@NotNull String column) {
+            switch (column) {
+                case "created":
+                case "modified":
+                    return "TIMESTAMP";
+                case "type":
+                    return "INT";
+                case "cascade":
+                case "mcleaks":
+                    return "BOOLEAN";
+                case "consensus":
+                    return "DOUBLE";
+                case "ip":
+                    return "VARBINARY(16)";
+                case "uuid":
+                    return "BINARY(16)";
+                default:
+                    return "VARCHAR(255)";
             }
         }
     }
@@ -1,6 +1,9 @@
 package me.egg82.antivpn.storage;
 
 import me.egg82.antivpn.logging.GELFLogger;
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +26,29 @@ public abstract class AbstractStorageService implements StorageService {
     protected volatile boolean closed = false;
     protected final ReadWriteLock queueLock = new ReentrantReadWriteLock();
 
+    protected final WriteBehindQueue writeQueue = new WriteBehindQueue(this);
+    protected final ExpiryPurger purger = new ExpiryPurger(this);
+    protected final StorageMetrics metrics = new StorageMetrics(this);
+
     @Override
     public boolean isClosed() { return closed; }
+
+    @Override
+    public @NotNull StorageMetrics getMetrics() { return metrics; }
+
+    @Override
+    public void queueModel(@NotNull BaseModel model) { writeQueue.queue(model); }
+
+    @Override
+    public void flush() { writeQueue.flush(); }
+
+    @Override
+    public @NotNull KeysetIterator<@NotNull IPModel> streamIps(long afterId, int pageSize, long cacheTimeMillis) {
+        return new KeysetIterator<>(afterId, pageSize, (cursor, max) -> getIpPage(cursor, max, cacheTimeMillis));
+    }
+
+    @Override
+    public @NotNull KeysetIterator<@NotNull PlayerModel> streamPlayers(long afterId, int pageSize, long cacheTimeMillis) {
+        return new KeysetIterator<>(afterId, pageSize, (cursor, max) -> getPlayerPage(cursor, max, cacheTimeMillis));
+    }
 }
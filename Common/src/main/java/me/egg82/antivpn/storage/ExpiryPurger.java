@@ -0,0 +1,128 @@
+package me.egg82.antivpn.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.egg82.antivpn.config.CachedConfig;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.logging.GELFLogger;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Periodically deletes expired IP and player rows from a {@link StorageService}.
+ *
+ * <p>Rows are deleted a small batch at a time with a pause in between, so large tables
+ * shrink without holding long locks or starving lookups of connections.</p>
+ */
+public class ExpiryPurger {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(ExpiryPurger.class));
+
+    // One thread, so services are purged one after another rather than all hitting storage at once
+    private static final ScheduledExecutorService purgePool = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Anti-VPN_Purge_%d").setDaemon(true).build()
+    );
+
+    private static volatile boolean enabled = true;
+    private static volatile long interval = TimeUnit.HOURS.toMillis(1L);
+    private static volatile int batchSize = 500;
+    private static volatile long pause = 100L;
+
+    public static void setSettings(boolean enabled, long intervalMillis, int batchSize, long pauseMillis) {
+        if (intervalMillis <= 0L) {
+            throw new IllegalArgumentException("intervalMillis cannot be <= 0.");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize cannot be <= 0.");
+        }
+        if (pauseMillis < 0L) {
+            throw new IllegalArgumentException("pauseMillis cannot be < 0.");
+        }
+
+        ExpiryPurger.enabled = enabled;
+        ExpiryPurger.interval = intervalMillis;
+        ExpiryPurger.batchSize = batchSize;
+        ExpiryPurger.pause = pauseMillis;
+    }
+
+    private final @NotNull StorageService service;
+
+    private volatile boolean closed = false;
+    private volatile ScheduledFuture<?> purgeTask = null;
+
+    public ExpiryPurger(@NotNull StorageService service) {
+        this.service = service;
+    }
+
+    public synchronized void start() {
+        if (purgeTask != null || closed || !enabled) {
+            return;
+        }
+        long i = interval;
+        purgeTask = purgePool.scheduleWithFixedDelay(this::tryPurge, i, i, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void close() {
+        closed = true;
+        if (purgeTask != null) {
+            purgeTask.cancel(false);
+        }
+    }
+
+    private void tryPurge() {
+        try {
+            purge();
+        } catch (Throwable ex) {
+            logger.error("Could not purge expired data from " + service.getName() + ".", ex);
+        }
+    }
+
+    private void purge() {
+        if (closed || service.isClosed()) {
+            return;
+        }
+
+        CachedConfig cachedConfig;
+        try {
+            cachedConfig = ConfigUtil.getCachedConfig();
+        } catch (IllegalStateException ignored) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Instant now = Instant.now();
+        int ips = purge(now.minusMillis(cachedConfig.getSourceCacheTime()), service::purgeIps);
+        // Player lookups are read back with the source cache time too, so keep whichever is longer
+        int players = purge(now.minusMillis(Math.max(cachedConfig.getSourceCacheTime(), cachedConfig.getMCLeaksCacheTime())), service::purgePlayers);
+
+        if (cachedConfig.getDebug()) {
+            logger.info("Purged " + ips + " expired IPs and " + players + " expired players from " + service.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+        }
+    }
+
+    private int purge(@NotNull Instant before, @NotNull ToIntBiFunction<Instant, Integer> purger) {
+        int retVal = 0;
+        while (!closed && !service.isClosed()) {
+            int size = batchSize;
+            int deleted = purger.applyAsInt(before, size);
+            retVal += deleted;
+            if (deleted < size) {
+                break;
+            }
+
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return retVal;
+    }
+}
@@ -19,6 +19,7 @@ public class H2StorageService extends AbstractJDBCStorageService {
     public static class Builder {
         private final H2StorageService service;
         private final HikariConfig config = new HikariConfig();
+        private boolean singleWriter = true;
 
         private Builder(@NotNull String name) {
             service = new H2StorageService(name);
@@ -56,8 +57,19 @@ public class H2StorageService extends AbstractJDBCStorageService {
             return this;
         }
 
+        public @NotNull H2StorageService.Builder singleWriter(boolean singleWriter) {
+            this.singleWriter = singleWriter;
+            return this;
+        }
+
         public @NotNull H2StorageService build() {
-            service.createSource(config, new H2Platform(), false, "h2");
+            if (!singleWriter) {
+                service.createSource(config, new H2Platform(), false, "h2");
+                return service;
+            }
+
+            // MVStore already appends rather than rewriting pages in place, so there's no journal to tune here
+            service.createSource(config, getReadConfig(config, "Anti-VPN_H2_Read"), new H2Platform(), false, "h2");
             return service;
         }
     }
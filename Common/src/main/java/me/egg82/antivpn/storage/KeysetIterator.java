@@ -0,0 +1,78 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.storage.models.BaseModel;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+/**
+ * Iterates over a table in id order, reading it one page at a time.
+ *
+ * <p>Each page starts after the last id of the one before it, so reads stay on the primary key
+ * index no matter how deep into the table they get, and only one page is held in memory at once.
+ * Rows added or removed while iterating may or may not be seen, but none are seen twice.</p>
+ */
+public class KeysetIterator<T extends BaseModel> implements Iterator<T> {
+    private final @NotNull BiFunction<@NotNull Long, @NotNull Integer, @NotNull List<T>> pageReader;
+    private final int pageSize;
+
+    private List<T> page = null;
+    private int index = 0;
+    private long cursor;
+    private boolean done = false;
+
+    /**
+     * @param pageReader reads up to the given number of rows with an id greater than the given cursor, in id order
+     */
+    public KeysetIterator(long cursor, int pageSize, @NotNull BiFunction<@NotNull Long, @NotNull Integer, @NotNull List<T>> pageReader) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize cannot be <= 0.");
+        }
+
+        this.cursor = cursor;
+        this.pageSize = pageSize;
+        this.pageReader = pageReader;
+    }
+
+    /**
+     * Gets the id of the last row returned, to resume from later.
+     */
+    public long getCursor() { return cursor; }
+
+    @Override
+    public boolean hasNext() {
+        if (page != null && index < page.size()) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+
+        page = pageReader.apply(cursor, pageSize);
+        index = 0;
+        // A short page means there's nothing after it, so skip the extra empty read
+        if (page.size() < pageSize) {
+            done = true;
+        }
+        return !page.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        T retVal = page.get(index++);
+        Long id = retVal.getId();
+        if (id == null) {
+            // The cursor couldn't move past this row, so the next page would start over at the same place
+            throw new IllegalStateException("Page returned a model without an id.");
+        }
+        cursor = id;
+        return retVal;
+    }
+}
@@ -0,0 +1,67 @@
+package me.egg82.antivpn.storage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies into power-of-two microsecond buckets.
+ *
+ * <p>Recording is a couple of atomic adds with no locking or allocation, so it's cheap enough
+ * for every storage call. Percentiles are the upper bound of the bucket they land in, which is
+ * within a factor of two of the real value and plenty to tell 2ms from 200ms.</p>
+ */
+public class LatencyHistogram {
+    // Bucket i holds latencies below 2^i microseconds, the last one everything from ~17 minutes up
+    private static final int BUCKETS = 31;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong(0L);
+
+    public void record(long nanos) {
+        nanos = Math.max(0L, nanos);
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() { return count.sum(); }
+
+    public double getMeanMillis() {
+        long c = count.sum();
+        return c > 0L ? totalNanos.sum() / 1_000_000.0d / c : 0.0d;
+    }
+
+    public double getMaxMillis() { return maxNanos.get() / 1_000_000.0d; }
+
+    /**
+     * Returns the given percentile (0-1) in milliseconds, or 0 if nothing has been recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0L) {
+            return 0.0d;
+        }
+
+        long target = Math.max(1L, (long) Math.ceil(percentile * total));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                // Never report more than the slowest call actually seen
+                return Math.min((1L << i) / 1_000.0d, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+}
@@ -0,0 +1,766 @@
+package me.egg82.antivpn.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.egg82.antivpn.core.Pair;
+import me.egg82.antivpn.storage.StorageMetrics.Operation;
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.DataModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
+import me.egg82.antivpn.utils.IPUtil;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stores data in an embedded H2 MVStore file, without going through JDBC or Ebean.
+ *
+ * <p>IPs are keyed on their packed 16-byte form (as an unsigned {@link BigInteger}, so keys sort
+ * the same way the bytes do and CIDR lookups are range scans) and players on their UUID. Rows are
+ * stored as small fixed-layout byte arrays. Each table has an id index for paging and an expiry
+ * index ordered by modified time, so purges only ever touch the rows they delete.</p>
+ *
+ * <p>Writes go to memory and are committed to disk together, either when a batch from
+ * {@link #storeModels(Collection)} finishes or on a fixed interval. Commits only happen between
+ * writes, so a crash never leaves an index half-updated.</p>
+ */
+public class MVStoreStorageService extends AbstractStorageService {
+    private static final ScheduledExecutorService commitPool = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Anti-VPN_MVStore_%d").setDaemon(true).build()
+    );
+
+    private MVStore store;
+
+    private MVMap<BigInteger, byte[]> ips;
+    private MVMap<Long, BigInteger> ipIds;
+    private MVMap<BigInteger, BigInteger> ipExpiry;
+    private MVMap<UUID, byte[]> players;
+    private MVMap<Long, UUID> playerIds;
+    private MVMap<BigInteger, UUID> playerExpiry;
+    private MVMap<String, byte[]> data;
+    private MVMap<Long, String> dataIds;
+
+    private final AtomicLong ipSequence = new AtomicLong(0L);
+    private final AtomicLong playerSequence = new AtomicLong(0L);
+    private final AtomicLong dataSequence = new AtomicLong(0L);
+
+    // Rows and their indexes are updated together, so writes go one at a time
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ScheduledFuture<?> commitTask = null;
+
+    private MVStoreStorageService(@NotNull String name) {
+        super(name);
+    }
+
+    @Override
+    public void close() {
+        purger.close();
+        writeQueue.close();
+
+        queueLock.writeLock().lock();
+        writeLock.lock();
+        try {
+            closed = true;
+            if (commitTask != null) {
+                commitTask.cancel(false);
+            }
+            store.close();
+        } finally {
+            writeLock.unlock();
+            queueLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void storeModel(@NotNull BaseModel model) {
+        metrics.run(Operation.STORE, () -> {
+            writeQueue.remove(model); // Stale queued writes would otherwise land on top of this one
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                put(model, false, Instant.now());
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public void storeModels(@NotNull Collection<@NotNull ? extends BaseModel> models) {
+        metrics.run(Operation.STORE_BATCH, () -> {
+            if (models.isEmpty()) {
+                return;
+            }
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                Instant now = Instant.now();
+                for (BaseModel model : models) {
+                    put(model, true, now);
+                }
+                // One commit for the whole batch
+                store.commit();
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public void deleteModel(@NotNull BaseModel model) {
+        metrics.run(Operation.DELETE, () -> {
+            writeQueue.remove(model);
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                if (model instanceof IPModel) {
+                    BigInteger key = ipKey(((IPModel) model).getIpBytes());
+                    byte[] value = ips.remove(key);
+                    if (value != null) {
+                        ipIds.remove(ModelCodec.getId(value));
+                        ipExpiry.remove(expiryKey(ModelCodec.getModified(value), ModelCodec.getId(value)));
+                    }
+                } else if (model instanceof PlayerModel) {
+                    UUID key = ((PlayerModel) model).getUuid();
+                    byte[] value = players.remove(key);
+                    if (value != null) {
+                        playerIds.remove(ModelCodec.getId(value));
+                        playerExpiry.remove(expiryKey(ModelCodec.getModified(value), ModelCodec.getId(value)));
+                    }
+                } else if (model instanceof DataModel) {
+                    byte[] value = data.remove(((DataModel) model).getKey());
+                    if (value != null) {
+                        dataIds.remove(ModelCodec.getId(value));
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull IPModel getOrCreateIpModel(@NotNull String ip, int type) {
+        return metrics.time(Operation.GET_OR_CREATE_IP, () -> {
+            byte[] ipBytes = IPUtil.toBytes(ip);
+            BigInteger key = ipKey(ipBytes);
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                byte[] value = ips.get(key);
+                IPModel model = value != null ? ModelCodec.decodeIp(ipBytes, value) : null;
+                if (model == null || model.getType() != type) {
+                    if (model == null) {
+                        model = new IPModel();
+                        model.setIp(ip);
+                    }
+                    model.setType(type);
+                    put(model, false, Instant.now());
+                    model = ModelCodec.decodeIp(ipBytes, ips.get(key));
+                }
+                return model;
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable IPModel getIpModel(@NotNull String ip, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP, () -> {
+            byte[] ipBytes = IPUtil.toBytes(ip);
+
+            queueLock.readLock().lock();
+            try {
+                byte[] value = ips.get(ipKey(ipBytes));
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodeIp(ipBytes, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable IPModel getIpModel(long ipId, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try {
+                BigInteger key = ipIds.get(ipId);
+                byte[] value = key != null ? ips.get(key) : null;
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodeIp(ipBytes(key), value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Map<@NotNull String, @NotNull IPModel> getIpModels(@NotNull Collection<@NotNull String> ips, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IPS, () -> {
+            if (ips.isEmpty()) {
+                return new HashMap<>();
+            }
+
+            queueLock.readLock().lock();
+            try {
+                long after = after(cacheTimeMillis);
+                Map<String, IPModel> retVal = new HashMap<>();
+                for (String ip : ips) {
+                    byte[] ipBytes = IPUtil.toBytes(ip);
+                    byte[] value = this.ips.get(ipKey(ipBytes));
+                    if (value != null && ModelCodec.getModified(value) > after) {
+                        retVal.put(ip, ModelCodec.decodeIp(ipBytes, value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Set<@NotNull IPModel> getIpModelsInRange(@NotNull String range, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IPS_IN_RANGE, () -> {
+            Pair<byte[], byte[]> bounds = IPUtil.toRange(range);
+            BigInteger last = ipKey(bounds.getT2());
+
+            queueLock.readLock().lock();
+            try {
+                long after = after(cacheTimeMillis);
+                Set<IPModel> retVal = new HashSet<>();
+                Cursor<BigInteger, byte[]> cursor = ips.cursor(ipKey(bounds.getT1()));
+                while (cursor.hasNext()) {
+                    BigInteger key = cursor.next();
+                    if (key.compareTo(last) > 0) {
+                        break;
+                    }
+                    byte[] value = cursor.getValue();
+                    if (ModelCodec.getModified(value) > after) {
+                        retVal.add(ModelCodec.decodeIp(ipBytes(key), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Set<@NotNull IPModel> getAllIps(long cacheTimeMillis) {
+        return metrics.time(Operation.GET_ALL_IPS, () -> {
+            queueLock.readLock().lock();
+            try {
+                long after = after(cacheTimeMillis);
+                Set<IPModel> retVal = new HashSet<>();
+                Cursor<BigInteger, byte[]> cursor = ips.cursor(null);
+                while (cursor.hasNext()) {
+                    BigInteger key = cursor.next();
+                    byte[] value = cursor.getValue();
+                    if (ModelCodec.getModified(value) > after) {
+                        retVal.add(ModelCodec.decodeIp(ipBytes(key), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    @Deprecated
+    public @NotNull Set<@NotNull IPModel> getAllIps(int start, int max) {
+        return metrics.time(Operation.GET_IP_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                Set<IPModel> retVal = new HashSet<>();
+                Cursor<Long, BigInteger> cursor = ipIds.cursor((long) start);
+                while (cursor.hasNext()) {
+                    if (cursor.next() > start + max - 1) {
+                        break;
+                    }
+                    byte[] value = ips.get(cursor.getValue());
+                    if (value != null) {
+                        retVal.add(ModelCodec.decodeIp(ipBytes(cursor.getValue()), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull List<@NotNull IPModel> getIpPage(long afterId, int max, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                long after = after(cacheTimeMillis);
+                List<IPModel> retVal = new ArrayList<>();
+                Cursor<Long, BigInteger> cursor = ipIds.cursor(afterId + 1L);
+                while (cursor.hasNext() && retVal.size() < max) {
+                    cursor.next();
+                    byte[] value = ips.get(cursor.getValue());
+                    if (value != null && ModelCodec.getModified(value) > after) {
+                        retVal.add(ModelCodec.decodeIp(ipBytes(cursor.getValue()), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public int purgeIps(@NotNull Instant before, int max) {
+        return metrics.time(Operation.PURGE_IPS, () -> {
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                // The expiry index is ordered by modified time, so this stops at the first row still in date
+                long beforeMillis = before.toEpochMilli();
+                List<BigInteger> expired = new ArrayList<>();
+                Cursor<BigInteger, BigInteger> cursor = ipExpiry.cursor(null);
+                while (cursor.hasNext() && expired.size() < max) {
+                    if (getExpiryModified(cursor.next()) >= beforeMillis) {
+                        break;
+                    }
+                    expired.add(cursor.getKey());
+                }
+
+                for (BigInteger expiryKey : expired) {
+                    BigInteger key = ipExpiry.remove(expiryKey);
+                    byte[] value = key != null ? ips.remove(key) : null;
+                    if (value != null) {
+                        ipIds.remove(ModelCodec.getId(value));
+                    }
+                }
+                return expired.size();
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull PlayerModel getOrCreatePlayerModel(@NotNull UUID player, boolean isMcLeaks) {
+        return metrics.time(Operation.GET_OR_CREATE_PLAYER, () -> {
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                byte[] value = players.get(player);
+                PlayerModel model = value != null ? ModelCodec.decodePlayer(player, value) : null;
+                if (model == null || model.isMcleaks() != isMcLeaks) {
+                    if (model == null) {
+                        model = new PlayerModel();
+                        model.setUuid(player);
+                    }
+                    model.setMcleaks(isMcLeaks);
+                    put(model, false, Instant.now());
+                    model = ModelCodec.decodePlayer(player, players.get(player));
+                }
+                return model;
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable PlayerModel getPlayerModel(@NotNull UUID player, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYER, () -> {
+            queueLock.readLock().lock();
+            try {
+                byte[] value = players.get(player);
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodePlayer(player, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable PlayerModel getPlayerModel(long playerId, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYER_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try {
+                UUID key = playerIds.get(playerId);
+                byte[] value = key != null ? players.get(key) : null;
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodePlayer(key, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Map<@NotNull UUID, @NotNull PlayerModel> getPlayerModels(@NotNull Collection<@NotNull UUID> players, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYERS, () -> {
+            if (players.isEmpty()) {
+                return new HashMap<>();
+            }
+
+            queueLock.readLock().lock();
+            try {
+                long after = after(cacheTimeMillis);
+                Map<UUID, PlayerModel> retVal = new HashMap<>();
+                for (UUID player : players) {
+                    byte[] value = this.players.get(player);
+                    if (value != null && ModelCodec.getModified(value) > after) {
+                        retVal.put(player, ModelCodec.decodePlayer(player, value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Set<@NotNull PlayerModel> getAllPlayers(long cacheTimeMillis) {
+        return metrics.time(Operation.GET_ALL_PLAYERS, () -> {
+            queueLock.readLock().lock();
+            try {
+                long after = after(cacheTimeMillis);
+                Set<PlayerModel> retVal = new HashSet<>();
+                Cursor<UUID, byte[]> cursor = players.cursor(null);
+                while (cursor.hasNext()) {
+                    UUID key = cursor.next();
+                    byte[] value = cursor.getValue();
+                    if (ModelCodec.getModified(value) > after) {
+                        retVal.add(ModelCodec.decodePlayer(key, value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    @Deprecated
+    public @NotNull Set<@NotNull PlayerModel> getAllPlayers(int start, int max) {
+        return metrics.time(Operation.GET_PLAYER_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                Set<PlayerModel> retVal = new HashSet<>();
+                Cursor<Long, UUID> cursor = playerIds.cursor((long) start);
+                while (cursor.hasNext()) {
+                    if (cursor.next() > start + max - 1) {
+                        break;
+                    }
+                    byte[] value = players.get(cursor.getValue());
+                    if (value != null) {
+                        retVal.add(ModelCodec.decodePlayer(cursor.getValue(), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull List<@NotNull PlayerModel> getPlayerPage(long afterId, int max, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYER_PAGE, () -> {
+            queueLock.readLock().lock();
+            try {
+                long after = after(cacheTimeMillis);
+                List<PlayerModel> retVal = new ArrayList<>();
+                Cursor<Long, UUID> cursor = playerIds.cursor(afterId + 1L);
+                while (cursor.hasNext() && retVal.size() < max) {
+                    cursor.next();
+                    byte[] value = players.get(cursor.getValue());
+                    if (value != null && ModelCodec.getModified(value) > after) {
+                        retVal.add(ModelCodec.decodePlayer(cursor.getValue(), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public int purgePlayers(@NotNull Instant before, int max) {
+        return metrics.time(Operation.PURGE_PLAYERS, () -> {
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                long beforeMillis = before.toEpochMilli();
+                List<BigInteger> expired = new ArrayList<>();
+                Cursor<BigInteger, UUID> cursor = playerExpiry.cursor(null);
+                while (cursor.hasNext() && expired.size() < max) {
+                    if (getExpiryModified(cursor.next()) >= beforeMillis) {
+                        break;
+                    }
+                    expired.add(cursor.getKey());
+                }
+
+                for (BigInteger expiryKey : expired) {
+                    UUID key = playerExpiry.remove(expiryKey);
+                    byte[] value = key != null ? players.remove(key) : null;
+                    if (value != null) {
+                        playerIds.remove(ModelCodec.getId(value));
+                    }
+                }
+                return expired.size();
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull DataModel getOrCreateDataModel(@NotNull String key, String value) {
+        return metrics.time(Operation.GET_OR_CREATE_DATA, () -> {
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try {
+                byte[] stored = data.get(key);
+                DataModel model = stored != null ? ModelCodec.decodeData(key, stored) : null;
+                if (model == null || !Objects.equals(model.getValue(), value)) {
+                    if (model == null) {
+                        model = new DataModel();
+                        model.setKey(key);
+                    }
+                    model.setValue(value);
+                    put(model, false, Instant.now());
+                    model = ModelCodec.decodeData(key, data.get(key));
+                }
+                return model;
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable DataModel getDataModel(@NotNull String key) {
+        return metrics.time(Operation.GET_DATA, () -> {
+            queueLock.readLock().lock();
+            try {
+                byte[] value = data.get(key);
+                return value != null ? ModelCodec.decodeData(key, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable DataModel getDataModel(long dataId) {
+        return metrics.time(Operation.GET_DATA_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try {
+                String key = dataIds.get(dataId);
+                byte[] value = key != null ? data.get(key) : null;
+                return value != null ? ModelCodec.decodeData(key, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    /*
+    Note: Must be called with writeLock held
+     */
+    private void put(@NotNull BaseModel model, boolean keepModified, @NotNull Instant now) {
+        long modified = keepModified && model.getModified() != null ? model.getModified().toEpochMilli() : now.toEpochMilli();
+        long created = model.getCreated() != null ? model.getCreated().toEpochMilli() : now.toEpochMilli();
+
+        if (model instanceof IPModel) {
+            IPModel m = (IPModel) model;
+            BigInteger key = ipKey(m.getIpBytes());
+            byte[] old = ips.get(key);
+            long id;
+            long version;
+            if (old != null) {
+                id = ModelCodec.getId(old);
+                version = ModelCodec.getVersion(old) + 1L;
+                created = ModelCodec.getCreated(old);
+                ipExpiry.remove(expiryKey(ModelCodec.getModified(old), id));
+            } else {
+                id = ipSequence.incrementAndGet();
+                version = 1L;
+                ipIds.put(id, key);
+            }
+            ips.put(key, ModelCodec.encodeIp(id, version, created, modified, m));
+            ipExpiry.put(expiryKey(modified, id), key);
+        } else if (model instanceof PlayerModel) {
+            PlayerModel m = (PlayerModel) model;
+            UUID key = m.getUuid();
+            byte[] old = players.get(key);
+            long id;
+            long version;
+            if (old != null) {
+                id = ModelCodec.getId(old);
+                version = ModelCodec.getVersion(old) + 1L;
+                created = ModelCodec.getCreated(old);
+                playerExpiry.remove(expiryKey(ModelCodec.getModified(old), id));
+            } else {
+                id = playerSequence.incrementAndGet();
+                version = 1L;
+                playerIds.put(id, key);
+            }
+            players.put(key, ModelCodec.encodePlayer(id, version, created, modified, m));
+            playerExpiry.put(expiryKey(modified, id), key);
+        } else if (model instanceof DataModel) {
+            DataModel m = (DataModel) model;
+            byte[] old = data.get(m.getKey());
+            long id;
+            long version;
+            if (old != null) {
+                id = ModelCodec.getId(old);
+                version = ModelCodec.getVersion(old) + 1L;
+                created = ModelCodec.getCreated(old);
+            } else {
+                id = dataSequence.incrementAndGet();
+                version = 1L;
+                dataIds.put(id, m.getKey());
+            }
+            data.put(m.getKey(), ModelCodec.encodeData(id, version, created, modified, m));
+        }
+    }
+
+    private void tryCommit() {
+        if (closed) {
+            return;
+        }
+
+        writeLock.lock();
+        try {
+            if (!closed && store.hasUnsavedChanges()) {
+                store.commit();
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Could not commit " + name + " to disk.", ex);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static long after(long cacheTimeMillis) { return System.currentTimeMillis() - cacheTimeMillis; }
+
+    // Unsigned, so keys sort in the same order as the bytes
+    private static @NotNull BigInteger ipKey(byte @NotNull [] ip) { return new BigInteger(1, ip); }
+
+    private static byte @NotNull [] ipBytes(@NotNull BigInteger key) {
+        byte[] bytes = key.toByteArray();
+        byte[] retVal = new byte[16];
+        int length = Math.min(bytes.length, 16);
+        System.arraycopy(bytes, bytes.length - length, retVal, 16 - length, length);
+        return retVal;
+    }
+
+    // Modified time in the high bits and id in the low ones, so keys sort oldest first and never collide
+    private static @NotNull BigInteger expiryKey(long modified, long id) { return BigInteger.valueOf(modified).shiftLeft(64).or(BigInteger.valueOf(id)); }
+
+    private static long getExpiryModified(@NotNull BigInteger key) { return key.shiftRight(64).longValue(); }
+
+    public static @NotNull MVStoreStorageService.Builder builder(@NotNull String name) { return new MVStoreStorageService.Builder(name); }
+
+    public static class Builder {
+        private final MVStoreStorageService service;
+        private final MVStore.Builder config = new MVStore.Builder();
+        private long commitInterval = 1000L;
+
+        private Builder(@NotNull String name) {
+            service = new MVStoreStorageService(name);
+
+            // Baseline
+            config.autoCommitDisabled(); // Commits are done between writes instead, see tryCommit
+            config.cacheSize(16);
+        }
+
+        public @NotNull MVStoreStorageService.Builder file(@NotNull File file) {
+            config.fileName(file.getAbsolutePath());
+            return this;
+        }
+
+        public @NotNull MVStoreStorageService.Builder options(@NotNull String options) throws IOException {
+            options = !options.isEmpty() && options.charAt(0) == '?' ? options.substring(1) : options;
+            Properties p = new Properties();
+            p.load(new StringReader(options.replace("&", "\n")));
+            if (p.containsKey("cacheSize")) {
+                config.cacheSize(Integer.parseInt(p.getProperty("cacheSize")));
+            }
+            if (p.containsKey("commitInterval")) {
+                commitInterval(Long.parseLong(p.getProperty("commitInterval")));
+            }
+            if (Boolean.parseBoolean(p.getProperty("compress", "false"))) {
+                config.compress();
+            }
+            return this;
+        }
+
+        public @NotNull MVStoreStorageService.Builder commitInterval(long commitIntervalMillis) {
+            if (commitIntervalMillis <= 0L) {
+                throw new IllegalArgumentException("commitIntervalMillis cannot be <= 0.");
+            }
+            this.commitInterval = commitIntervalMillis;
+            return this;
+        }
+
+        public @NotNull MVStoreStorageService build() {
+            service.store = config.open();
+
+            service.ips = service.store.openMap("ip");
+            service.ipIds = service.store.openMap("ip_id");
+            service.ipExpiry = service.store.openMap("ip_expiry");
+            service.players = service.store.openMap("player");
+            service.playerIds = service.store.openMap("player_id");
+            service.playerExpiry = service.store.openMap("player_expiry");
+            service.data = service.store.openMap("data");
+            service.dataIds = service.store.openMap("data_id");
+
+            service.ipSequence.set(lastId(service.ipIds));
+            service.playerSequence.set(lastId(service.playerIds));
+            service.dataSequence.set(lastId(service.dataIds));
+
+            service.commitTask = commitPool.scheduleWithFixedDelay(service::tryCommit, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+            service.purger.start();
+            return service;
+        }
+
+        private static long lastId(@NotNull MVMap<Long, ?> ids) {
+            Long retVal = ids.lastKey();
+            return retVal != null ? retVal : 0L;
+        }
+    }
+}
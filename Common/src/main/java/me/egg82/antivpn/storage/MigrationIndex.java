@@ -0,0 +1,148 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.logging.GELFLogger;
+import me.egg82.antivpn.utils.VersionUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The schema migrations bundled with the plugin, read from the index written at build time.
+ *
+ * <p>The index lists every script under db/migration as "v1_2/h2.sql", one per line. It's read once
+ * and shared between every storage engine, so starting or reloading several engines doesn't
+ * search the classpath each time.</p>
+ */
+class MigrationIndex {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(MigrationIndex.class));
+
+    private static final String INDEX = "/db/migration/index";
+
+    private static volatile MigrationIndex instance = null;
+
+    static @NotNull MigrationIndex get() {
+        MigrationIndex retVal = instance;
+        if (retVal == null) {
+            synchronized (MigrationIndex.class) {
+                retVal = instance;
+                if (retVal == null) {
+                    retVal = read();
+                    instance = retVal;
+                }
+            }
+        }
+        return retVal;
+    }
+
+    // Ascending, so migrations run oldest to newest
+    private final NavigableMap<Version, Set<String>> versions;
+
+    private MigrationIndex(@NotNull NavigableMap<Version, Set<String>> versions) {
+        this.versions = versions;
+    }
+
+    /**
+     * Gets the migrations for the given scripts name that are newer than the given version, oldest first.
+     */
+    @NotNull List<@NotNull Migration> getMigrations(@NotNull String scriptsName, @NotNull String currentVersion) {
+        List<Migration> retVal = new ArrayList<>();
+        Version current = new Version(currentVersion, VersionUtil.parseVersion(currentVersion, '.'));
+        for (Map.Entry<Version, Set<String>> kvp : versions.tailMap(current, false).entrySet()) {
+            if (kvp.getValue().contains(scriptsName)) {
+                retVal.add(new Migration(kvp.getKey().name, "/db/migration/v" + kvp.getKey().name.replace('.', '_') + "/" + scriptsName + ".sql"));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Gets the newest version of any migration, or null if there are none.
+     */
+    @Nullable String getLatest() { return versions.isEmpty() ? null : versions.lastKey().name; }
+
+    private static @NotNull MigrationIndex read() {
+        NavigableMap<Version, Set<String>> versions = new TreeMap<>();
+
+        try (InputStream inStream = MigrationIndex.class.getResourceAsStream(INDEX)) {
+            if (inStream == null) {
+                logger.warn("Could not find the migration index at " + INDEX + ", no migrations will be run.");
+                return new MigrationIndex(versions);
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inStream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    int slash = line.indexOf('/');
+                    if (line.isEmpty() || line.charAt(0) != 'v' || slash < 0 || !line.endsWith(".sql")) {
+                        continue;
+                    }
+
+                    String name = line.substring(1, slash).replace('_', '.');
+                    versions.computeIfAbsent(new Version(name, VersionUtil.parseVersion(name, '.')), k -> new HashSet<>())
+                            .add(line.substring(slash + 1, line.length() - ".sql".length()));
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Could not read the migration index at " + INDEX + ", no migrations will be run.", ex);
+        }
+
+        return new MigrationIndex(versions);
+    }
+
+    static final class Migration {
+        private final @NotNull String version;
+        private final @NotNull String path;
+
+        private Migration(@NotNull String version, @NotNull String path) {
+            this.version = version;
+            this.path = path;
+        }
+
+        @NotNull String getVersion() { return version; }
+
+        @NotNull String getPath() { return path; }
+    }
+
+    private static final class Version implements Comparable<Version> {
+        private final @NotNull String name;
+        private final int @NotNull [] parts;
+
+        private Version(@NotNull String name, int @NotNull [] parts) {
+            this.name = name;
+            this.parts = parts;
+        }
+
+        @Override
+        public int compareTo(@NotNull Version o) {
+            for (int i = 0; i < Math.min(parts.length, o.parts.length); i++) {
+                if (parts[i] != o.parts[i]) {
+                    return Integer.compare(parts[i], o.parts[i]);
+                }
+            }
+            return Integer.compare(parts.length, o.parts.length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Version)) {
+                return false;
+            }
+            return Arrays.equals(parts, ((Version) o).parts);
+        }
+
+        @Override
+        public int hashCode() { return Arrays.hashCode(parts); }
+    }
+}
@@ -0,0 +1,118 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.DataModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
+import me.egg82.antivpn.utils.IPUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Packs models into small fixed-layout byte arrays for the key-value storage engines.
+ *
+ * <p>Every row starts with id, version, created and modified as longs (epoch millis for times).
+ * IPs follow with type, a flags byte (cascade set, cascade value, consensus set) and the
+ * consensus double if set. Players follow with an mcleaks byte. Data follows with the value
+ * length (-1 for null) and its UTF-8 bytes. Keys aren't included, they're passed back in
+ * when decoding.</p>
+ */
+final class ModelCodec {
+    private static final int HEADER_LENGTH = 32;
+
+    static long getId(byte @NotNull [] value) { return ByteBuffer.wrap(value).getLong(0); }
+
+    static long getVersion(byte @NotNull [] value) { return ByteBuffer.wrap(value).getLong(8); }
+
+    static long getCreated(byte @NotNull [] value) { return ByteBuffer.wrap(value).getLong(16); }
+
+    static long getModified(byte @NotNull [] value) { return ByteBuffer.wrap(value).getLong(24); }
+
+    private static @NotNull ByteBuffer header(int length, long id, long version, long created, long modified) {
+        return ByteBuffer.allocate(HEADER_LENGTH + length).putLong(id).putLong(version).putLong(created).putLong(modified);
+    }
+
+    private static void readHeader(@NotNull BaseModel model, @NotNull ByteBuffer buffer) {
+        model.setId(buffer.getLong());
+        model.setVersion(buffer.getLong());
+        model.setCreated(Instant.ofEpochMilli(buffer.getLong()));
+        model.setModified(Instant.ofEpochMilli(buffer.getLong()));
+    }
+
+    static byte @NotNull [] encodeIp(long id, long version, long created, long modified, @NotNull IPModel model) {
+        byte flags = 0;
+        if (model.getCascade() != null) {
+            flags |= 0x01;
+            if (model.getCascade()) {
+                flags |= 0x02;
+            }
+        }
+        if (model.getConsensus() != null) {
+            flags |= 0x04;
+        }
+
+        ByteBuffer buffer = header(5 + (model.getConsensus() != null ? 8 : 0), id, version, created, modified)
+                .putInt(model.getType())
+                .put(flags);
+        if (model.getConsensus() != null) {
+            buffer.putDouble(model.getConsensus());
+        }
+        return buffer.array();
+    }
+
+    static @NotNull IPModel decodeIp(byte @NotNull [] ip, byte @NotNull [] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        IPModel retVal = new IPModel();
+        readHeader(retVal, buffer);
+        retVal.setIp(IPUtil.toString(ip));
+        retVal.setType(buffer.getInt());
+        byte flags = buffer.get();
+        retVal.setCascade((flags & 0x01) != 0 ? (flags & 0x02) != 0 : null);
+        retVal.setConsensus((flags & 0x04) != 0 ? buffer.getDouble() : null);
+        return retVal;
+    }
+
+    static byte @NotNull [] encodePlayer(long id, long version, long created, long modified, @NotNull PlayerModel model) {
+        return header(1, id, version, created, modified)
+                .put(model.isMcleaks() ? (byte) 1 : (byte) 0)
+                .array();
+    }
+
+    static @NotNull PlayerModel decodePlayer(@NotNull UUID uuid, byte @NotNull [] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        PlayerModel retVal = new PlayerModel();
+        readHeader(retVal, buffer);
+        retVal.setUuid(uuid);
+        retVal.setMcleaks(buffer.get() != 0);
+        return retVal;
+    }
+
+    static byte @NotNull [] encodeData(long id, long version, long created, long modified, @NotNull DataModel model) {
+        byte[] bytes = model.getValue() != null ? model.getValue().getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer buffer = header(4 + (bytes != null ? bytes.length : 0), id, version, created, modified)
+                .putInt(bytes != null ? bytes.length : -1);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+        return buffer.array();
+    }
+
+    static @NotNull DataModel decodeData(@NotNull String key, byte @NotNull [] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        DataModel retVal = new DataModel();
+        readHeader(retVal, buffer);
+        retVal.setKey(key);
+        int length = buffer.getInt();
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            retVal.setValue(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return retVal;
+    }
+
+    private ModelCodec() { }
+}
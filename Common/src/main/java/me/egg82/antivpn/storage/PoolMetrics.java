@@ -0,0 +1,81 @@
+package me.egg82.antivpn.storage;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection pool usage for the JDBC storage engines.
+ *
+ * <p>Registered with HikariCP as its metrics tracker, so every connection checkout is timed
+ * and every checkout timeout counted. Pool sizes come straight from HikariCP when asked for.</p>
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+
+    private volatile HikariDataSource source = null;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) { acquire.record(elapsedAcquiredNanos); }
+
+            @Override
+            public void recordConnectionTimeout() { timeouts.increment(); }
+        };
+    }
+
+    void setSource(@NotNull HikariDataSource source) {
+        this.source = source;
+    }
+
+    /**
+     * How long threads waited for a connection from the pool.
+     */
+    public @NotNull LatencyHistogram getAcquire() { return acquire; }
+
+    /**
+     * The number of times a thread gave up waiting for a connection.
+     */
+    public long getTimeouts() { return timeouts.sum(); }
+
+    public int getActive() {
+        HikariPoolMXBean bean = getBean();
+        return bean != null ? bean.getActiveConnections() : 0;
+    }
+
+    public int getIdle() {
+        HikariPoolMXBean bean = getBean();
+        return bean != null ? bean.getIdleConnections() : 0;
+    }
+
+    public int getTotal() {
+        HikariPoolMXBean bean = getBean();
+        return bean != null ? bean.getTotalConnections() : 0;
+    }
+
+    public int getMax() {
+        HikariDataSource s = source;
+        return s != null ? s.getMaximumPoolSize() : 0;
+    }
+
+    /**
+     * The number of threads waiting for a connection right now.
+     */
+    public int getPending() {
+        HikariPoolMXBean bean = getBean();
+        return bean != null ? bean.getThreadsAwaitingConnection() : 0;
+    }
+
+    private HikariPoolMXBean getBean() {
+        HikariDataSource s = source;
+        return s != null && !s.isClosed() ? s.getHikariPoolMXBean() : null;
+    }
+}
@@ -0,0 +1,921 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.config.CachedConfig;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.core.Pair;
+import me.egg82.antivpn.storage.StorageMetrics.Operation;
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.DataModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
+import me.egg82.antivpn.utils.IPUtil;
+import me.egg82.antivpn.utils.UUIDUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.*;
+import redis.clients.jedis.params.SetParams;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stores data in Redis, one string per row.
+ *
+ * <p>IP and player rows are written with a PX expiry of whatever's left of their cache time, so
+ * Redis drops them on its own and nothing has to scan for expired rows. Rows are packed with
+ * {@link ModelCodec} and keyed on the 16-byte IP or UUID. Sorted sets alongside them keep ids
+ * (for id lookups and paging), modified times (so the purger can clear index entries for rows
+ * Redis already expired) and, for IPs, the raw bytes for CIDR range lookups.</p>
+ *
+ * <p>Batch reads are pipelined, so a batch costs one round trip rather than one per row. Upserts
+ * read the old row first to keep its id, so they WATCH the rows they read and write them back in a
+ * MULTI/EXEC. If another server sharing the same Redis changes one of those rows in between, the
+ * batch is read again and retried, which keeps every row's id and its id index entry in step.</p>
+ */
+public class RedisStorageService extends AbstractStorageService {
+    private static final int CHUNK_SIZE = 500;
+    private static final int MAX_WRITE_ATTEMPTS = 10;
+
+    // Used until the config is loaded
+    private static final long DEFAULT_IP_TTL = TimeUnit.HOURS.toMillis(6L);
+    private static final long DEFAULT_PLAYER_TTL = TimeUnit.DAYS.toMillis(1L);
+
+    private static final byte[] INF = "+inf".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEG_INF = "-inf".getBytes(StandardCharsets.US_ASCII);
+
+    private JedisPool pool;
+
+    private byte[] ipPrefix;
+    private byte[] ipIdKey;
+    private byte[] ipExpiryKey;
+    private byte[] ipRangeKey;
+    private byte[] ipSequenceKey;
+    private byte[] playerPrefix;
+    private byte[] playerIdKey;
+    private byte[] playerExpiryKey;
+    private byte[] playerSequenceKey;
+    private byte[] dataPrefix;
+    private byte[] dataIdKey;
+    private byte[] dataSequenceKey;
+
+    // Other servers are handled by WATCH in put(), this just stops writes from this server retrying against each other
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private RedisStorageService(@NotNull String name) {
+        super(name);
+    }
+
+    @Override
+    public void close() {
+        purger.close();
+        writeQueue.close();
+
+        queueLock.writeLock().lock();
+        try {
+            closed = true;
+            pool.close();
+        } finally {
+            queueLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() { return closed || pool.isClosed(); }
+
+    @Override
+    public void storeModel(@NotNull BaseModel model) {
+        metrics.run(Operation.STORE, () -> {
+            writeQueue.remove(model); // Stale queued writes would otherwise land on top of this one
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                put(redis, Collections.singletonList(model), false);
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public void storeModels(@NotNull Collection<@NotNull ? extends BaseModel> models) {
+        metrics.run(Operation.STORE_BATCH, () -> {
+            if (models.isEmpty()) {
+                return;
+            }
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                List<BaseModel> chunk = new ArrayList<>(Math.min(models.size(), CHUNK_SIZE));
+                for (BaseModel model : models) {
+                    chunk.add(model);
+                    if (chunk.size() == CHUNK_SIZE) {
+                        put(redis, chunk, true);
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    put(redis, chunk, true);
+                }
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public void deleteModel(@NotNull BaseModel model) {
+        metrics.run(Operation.DELETE, () -> {
+            writeQueue.remove(model);
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                Pipeline pipeline = redis.pipelined();
+                if (model instanceof IPModel) {
+                    byte[] ip = ((IPModel) model).getIpBytes();
+                    pipeline.del(concat(ipPrefix, ip));
+                    pipeline.zrem(ipIdKey, ip);
+                    pipeline.zrem(ipExpiryKey, ip);
+                    pipeline.zrem(ipRangeKey, ip);
+                } else if (model instanceof PlayerModel) {
+                    byte[] uuid = UUIDUtil.toBytes(((PlayerModel) model).getUuid());
+                    pipeline.del(concat(playerPrefix, uuid));
+                    pipeline.zrem(playerIdKey, uuid);
+                    pipeline.zrem(playerExpiryKey, uuid);
+                } else if (model instanceof DataModel) {
+                    byte[] key = ((DataModel) model).getKey().getBytes(StandardCharsets.UTF_8);
+                    pipeline.del(concat(dataPrefix, key));
+                    pipeline.zrem(dataIdKey, key);
+                }
+                pipeline.sync();
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull IPModel getOrCreateIpModel(@NotNull String ip, int type) {
+        return metrics.time(Operation.GET_OR_CREATE_IP, () -> {
+            byte[] ipBytes = IPUtil.toBytes(ip);
+            byte[] key = concat(ipPrefix, ipBytes);
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                byte[] value = redis.get(key);
+                IPModel model = value != null ? ModelCodec.decodeIp(ipBytes, value) : null;
+                if (model == null || model.getType() != type) {
+                    if (model == null) {
+                        model = new IPModel();
+                        model.setIp(ip);
+                    }
+                    model.setType(type);
+                    byte[] stored = put(redis, Collections.singletonList(model), false).get(0);
+                    // Nothing is stored when the cache time is <= 0, so hand back the model as it is
+                    if (stored != null) {
+                        model = ModelCodec.decodeIp(ipBytes, stored);
+                    }
+                }
+                return model;
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable IPModel getIpModel(@NotNull String ip, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP, () -> {
+            byte[] ipBytes = IPUtil.toBytes(ip);
+
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                byte[] value = redis.get(concat(ipPrefix, ipBytes));
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodeIp(ipBytes, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable IPModel getIpModel(long ipId, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                Set<byte[]> members = redis.zrangeByScore(ipIdKey, ipId, ipId);
+                if (members.isEmpty()) {
+                    return null;
+                }
+                byte[] ip = members.iterator().next();
+                byte[] value = redis.get(concat(ipPrefix, ip));
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodeIp(ip, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Map<@NotNull String, @NotNull IPModel> getIpModels(@NotNull Collection<@NotNull String> ips, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IPS, () -> {
+            if (ips.isEmpty()) {
+                return new HashMap<>();
+            }
+
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                List<String> keys = new ArrayList<>(ips);
+                List<byte[]> ipBytes = new ArrayList<>(keys.size());
+                for (String ip : keys) {
+                    ipBytes.add(IPUtil.toBytes(ip));
+                }
+                List<byte[]> values = get(redis, ipPrefix, ipBytes);
+
+                long after = after(cacheTimeMillis);
+                Map<String, IPModel> retVal = new HashMap<>();
+                for (int i = 0; i < keys.size(); i++) {
+                    byte[] value = values.get(i);
+                    if (value != null && ModelCodec.getModified(value) > after) {
+                        retVal.put(keys.get(i), ModelCodec.decodeIp(ipBytes.get(i), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Set<@NotNull IPModel> getIpModelsInRange(@NotNull String range, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IPS_IN_RANGE, () -> {
+            Pair<byte[], byte[]> bounds = IPUtil.toRange(range);
+
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                // Every member has the same score, so they sort byte by byte and a CIDR range is a lex range
+                List<byte[]> ips = new ArrayList<>(redis.zrangeByLex(ipRangeKey, concat(new byte[] { '[' }, bounds.getT1()), concat(new byte[] { '[' }, bounds.getT2())));
+                return decodeIps(ips, get(redis, ipPrefix, ips), after(cacheTimeMillis));
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Set<@NotNull IPModel> getAllIps(long cacheTimeMillis) {
+        return metrics.time(Operation.GET_ALL_IPS, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                long after = after(cacheTimeMillis);
+                Set<IPModel> retVal = new HashSet<>();
+                scan(redis, ipPrefix, (ips, values) -> retVal.addAll(decodeIps(ips, values, after)));
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    @Deprecated
+    public @NotNull Set<@NotNull IPModel> getAllIps(int start, int max) {
+        return metrics.time(Operation.GET_IP_PAGE, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                List<byte[]> ips = new ArrayList<>(redis.zrangeByScore(ipIdKey, start, start + max - 1));
+                return decodeIps(ips, get(redis, ipPrefix, ips), Long.MIN_VALUE);
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull List<@NotNull IPModel> getIpPage(long afterId, int max, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_IP_PAGE, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                long after = after(cacheTimeMillis);
+                List<IPModel> retVal = new ArrayList<>();
+                page(redis, ipIdKey, ipPrefix, afterId, max, (ip, value) -> {
+                    if (ModelCodec.getModified(value) > after) {
+                        retVal.add(ModelCodec.decodeIp(ip, value));
+                    }
+                    return retVal.size() < max;
+                });
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public int purgeIps(@NotNull Instant before, int max) {
+        return metrics.time(Operation.PURGE_IPS, () -> {
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                return purge(redis, before, max, ipExpiryKey, ipPrefix, ipIdKey, ipRangeKey);
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull PlayerModel getOrCreatePlayerModel(@NotNull UUID player, boolean isMcLeaks) {
+        return metrics.time(Operation.GET_OR_CREATE_PLAYER, () -> {
+            byte[] key = concat(playerPrefix, UUIDUtil.toBytes(player));
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                byte[] value = redis.get(key);
+                PlayerModel model = value != null ? ModelCodec.decodePlayer(player, value) : null;
+                if (model == null || model.isMcleaks() != isMcLeaks) {
+                    if (model == null) {
+                        model = new PlayerModel();
+                        model.setUuid(player);
+                    }
+                    model.setMcleaks(isMcLeaks);
+                    byte[] stored = put(redis, Collections.singletonList(model), false).get(0);
+                    // Nothing is stored when the cache time is <= 0, so hand back the model as it is
+                    if (stored != null) {
+                        model = ModelCodec.decodePlayer(player, stored);
+                    }
+                }
+                return model;
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable PlayerModel getPlayerModel(@NotNull UUID player, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYER, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                byte[] value = redis.get(concat(playerPrefix, UUIDUtil.toBytes(player)));
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodePlayer(player, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable PlayerModel getPlayerModel(long playerId, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYER_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                Set<byte[]> members = redis.zrangeByScore(playerIdKey, playerId, playerId);
+                if (members.isEmpty()) {
+                    return null;
+                }
+                byte[] uuid = members.iterator().next();
+                byte[] value = redis.get(concat(playerPrefix, uuid));
+                return value != null && ModelCodec.getModified(value) > after(cacheTimeMillis) ? ModelCodec.decodePlayer(UUIDUtil.fromBytes(uuid), value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Map<@NotNull UUID, @NotNull PlayerModel> getPlayerModels(@NotNull Collection<@NotNull UUID> players, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYERS, () -> {
+            if (players.isEmpty()) {
+                return new HashMap<>();
+            }
+
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                List<UUID> keys = new ArrayList<>(players);
+                List<byte[]> uuids = new ArrayList<>(keys.size());
+                for (UUID player : keys) {
+                    uuids.add(UUIDUtil.toBytes(player));
+                }
+                List<byte[]> values = get(redis, playerPrefix, uuids);
+
+                long after = after(cacheTimeMillis);
+                Map<UUID, PlayerModel> retVal = new HashMap<>();
+                for (int i = 0; i < keys.size(); i++) {
+                    byte[] value = values.get(i);
+                    if (value != null && ModelCodec.getModified(value) > after) {
+                        retVal.put(keys.get(i), ModelCodec.decodePlayer(keys.get(i), value));
+                    }
+                }
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull Set<@NotNull PlayerModel> getAllPlayers(long cacheTimeMillis) {
+        return metrics.time(Operation.GET_ALL_PLAYERS, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                long after = after(cacheTimeMillis);
+                Set<PlayerModel> retVal = new HashSet<>();
+                scan(redis, playerPrefix, (players, values) -> retVal.addAll(decodePlayers(players, values, after)));
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    @Deprecated
+    public @NotNull Set<@NotNull PlayerModel> getAllPlayers(int start, int max) {
+        return metrics.time(Operation.GET_PLAYER_PAGE, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                List<byte[]> players = new ArrayList<>(redis.zrangeByScore(playerIdKey, start, start + max - 1));
+                return decodePlayers(players, get(redis, playerPrefix, players), Long.MIN_VALUE);
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull List<@NotNull PlayerModel> getPlayerPage(long afterId, int max, long cacheTimeMillis) {
+        return metrics.time(Operation.GET_PLAYER_PAGE, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                long after = after(cacheTimeMillis);
+                List<PlayerModel> retVal = new ArrayList<>();
+                page(redis, playerIdKey, playerPrefix, afterId, max, (uuid, value) -> {
+                    if (ModelCodec.getModified(value) > after) {
+                        retVal.add(ModelCodec.decodePlayer(UUIDUtil.fromBytes(uuid), value));
+                    }
+                    return retVal.size() < max;
+                });
+                return retVal;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public int purgePlayers(@NotNull Instant before, int max) {
+        return metrics.time(Operation.PURGE_PLAYERS, () -> {
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                return purge(redis, before, max, playerExpiryKey, playerPrefix, playerIdKey);
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull DataModel getOrCreateDataModel(@NotNull String key, String value) {
+        return metrics.time(Operation.GET_OR_CREATE_DATA, () -> {
+            byte[] dataKey = concat(dataPrefix, key.getBytes(StandardCharsets.UTF_8));
+
+            queueLock.readLock().lock();
+            writeLock.lock();
+            try (Jedis redis = pool.getResource()) {
+                byte[] stored = redis.get(dataKey);
+                DataModel model = stored != null ? ModelCodec.decodeData(key, stored) : null;
+                if (model == null || !Objects.equals(model.getValue(), value)) {
+                    if (model == null) {
+                        model = new DataModel();
+                        model.setKey(key);
+                    }
+                    model.setValue(value);
+                    model = ModelCodec.decodeData(key, put(redis, Collections.singletonList(model), false).get(0));
+                }
+                return model;
+            } finally {
+                writeLock.unlock();
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable DataModel getDataModel(@NotNull String key) {
+        return metrics.time(Operation.GET_DATA, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                byte[] value = redis.get(concat(dataPrefix, key.getBytes(StandardCharsets.UTF_8)));
+                return value != null ? ModelCodec.decodeData(key, value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public @Nullable DataModel getDataModel(long dataId) {
+        return metrics.time(Operation.GET_DATA_BY_ID, () -> {
+            queueLock.readLock().lock();
+            try (Jedis redis = pool.getResource()) {
+                Set<byte[]> members = redis.zrangeByScore(dataIdKey, dataId, dataId);
+                if (members.isEmpty()) {
+                    return null;
+                }
+                byte[] key = members.iterator().next();
+                byte[] value = redis.get(concat(dataPrefix, key));
+                return value != null ? ModelCodec.decodeData(new String(key, StandardCharsets.UTF_8), value) : null;
+            } finally {
+                queueLock.readLock().unlock();
+            }
+        });
+    }
+
+    /*
+    Writes the models, returning the stored values in the same order with nulls for rows that had already expired.
+    Note: Must be called with writeLock held
+     */
+    private @NotNull List<byte[]> put(@NotNull Jedis redis, @NotNull List<? extends BaseModel> models, boolean keepModified) {
+        List<byte[]> keys = new ArrayList<>(models.size());
+        for (BaseModel model : models) {
+            keys.add(getKey(model));
+        }
+        byte[][] watched = keys.toArray(new byte[0][]);
+
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            // Any change to these rows by another server before the EXEC aborts it, so the old ids read here are still current when written
+            redis.watch(watched);
+            List<byte[]> retVal = tryPut(redis, models, keys, keepModified);
+            if (retVal != null) {
+                return retVal;
+            }
+        }
+        throw new IllegalStateException("Could not write " + models.size() + " rows after " + MAX_WRITE_ATTEMPTS + " attempts, they kept being changed by another server.");
+    }
+
+    /*
+    Returns null if the transaction was aborted
+     */
+    private @Nullable List<byte[]> tryPut(@NotNull Jedis redis, @NotNull List<? extends BaseModel> models, @NotNull List<byte[]> keys, boolean keepModified) {
+        long now = System.currentTimeMillis();
+        long ipTtl = getIpTtl();
+        long playerTtl = getPlayerTtl();
+
+        // Old rows first, for their ids and created times
+        List<byte[]> old = get(redis, new byte[0], keys);
+
+        int newIps = 0;
+        int newPlayers = 0;
+        int newData = 0;
+        for (int i = 0; i < models.size(); i++) {
+            if (old.get(i) == null) {
+                BaseModel model = models.get(i);
+                if (model instanceof IPModel) {
+                    newIps++;
+                } else if (model instanceof PlayerModel) {
+                    newPlayers++;
+                } else if (model instanceof DataModel) {
+                    newData++;
+                }
+            }
+        }
+        // One INCRBY per table reserves ids for the whole batch. Ids reserved by an aborted attempt are just skipped.
+        long ipId = newIps > 0 ? redis.incrBy(ipSequenceKey, newIps) - newIps : 0L;
+        long playerId = newPlayers > 0 ? redis.incrBy(playerSequenceKey, newPlayers) - newPlayers : 0L;
+        long dataId = newData > 0 ? redis.incrBy(dataSequenceKey, newData) - newData : 0L;
+
+        List<byte[]> retVal = new ArrayList<>(models.size());
+        Transaction transaction = redis.multi();
+        for (int i = 0; i < models.size(); i++) {
+            BaseModel model = models.get(i);
+            byte[] oldValue = old.get(i);
+
+            long modified = keepModified && model.getModified() != null ? model.getModified().toEpochMilli() : now;
+            long created = model.getCreated() != null ? model.getCreated().toEpochMilli() : now;
+            long id;
+            long version;
+            if (oldValue != null) {
+                id = ModelCodec.getId(oldValue);
+                version = ModelCodec.getVersion(oldValue) + 1L;
+                created = ModelCodec.getCreated(oldValue);
+            } else {
+                id = model instanceof IPModel ? ++ipId : model instanceof PlayerModel ? ++playerId : ++dataId;
+                version = 1L;
+            }
+
+            if (model instanceof IPModel) {
+                IPModel m = (IPModel) model;
+                long ttl = ipTtl - (now - modified);
+                if (ttl <= 0L) {
+                    retVal.add(null);
+                    continue; // Already expired, nothing to keep
+                }
+                byte[] ip = m.getIpBytes();
+                byte[] value = ModelCodec.encodeIp(id, version, created, modified, m);
+                transaction.set(keys.get(i), value, SetParams.setParams().px(ttl));
+                transaction.zadd(ipIdKey, id, ip);
+                transaction.zadd(ipExpiryKey, modified, ip);
+                transaction.zadd(ipRangeKey, 0.0d, ip);
+                retVal.add(value);
+            } else if (model instanceof PlayerModel) {
+                PlayerModel m = (PlayerModel) model;
+                long ttl = playerTtl - (now - modified);
+                if (ttl <= 0L) {
+                    retVal.add(null);
+                    continue;
+                }
+                byte[] uuid = UUIDUtil.toBytes(m.getUuid());
+                byte[] value = ModelCodec.encodePlayer(id, version, created, modified, m);
+                transaction.set(keys.get(i), value, SetParams.setParams().px(ttl));
+                transaction.zadd(playerIdKey, id, uuid);
+                transaction.zadd(playerExpiryKey, modified, uuid);
+                retVal.add(value);
+            } else if (model instanceof DataModel) {
+                DataModel m = (DataModel) model;
+                byte[] value = ModelCodec.encodeData(id, version, created, modified, m);
+                transaction.set(keys.get(i), value);
+                transaction.zadd(dataIdKey, id, m.getKey().getBytes(StandardCharsets.UTF_8));
+                retVal.add(value);
+            }
+        }
+        return transaction.exec() != null ? retVal : null;
+    }
+
+    private byte @NotNull [] getKey(@NotNull BaseModel model) {
+        if (model instanceof IPModel) {
+            return concat(ipPrefix, ((IPModel) model).getIpBytes());
+        } else if (model instanceof PlayerModel) {
+            return concat(playerPrefix, UUIDUtil.toBytes(((PlayerModel) model).getUuid()));
+        } else if (model instanceof DataModel) {
+            return concat(dataPrefix, ((DataModel) model).getKey().getBytes(StandardCharsets.UTF_8));
+        }
+        throw new IllegalArgumentException("model is not a known type.");
+    }
+
+    /*
+    MGETs the given keys in pipelined chunks, returning values in the same order with nulls for missing keys
+     */
+    private static @NotNull List<byte[]> get(@NotNull Jedis redis, byte @NotNull [] prefix, @NotNull List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Pipeline pipeline = redis.pipelined();
+        List<Response<List<byte[]>>> responses = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += CHUNK_SIZE) {
+            List<byte[]> chunk = keys.subList(i, Math.min(i + CHUNK_SIZE, keys.size()));
+            byte[][] prefixed = new byte[chunk.size()][];
+            for (int j = 0; j < chunk.size(); j++) {
+                prefixed[j] = concat(prefix, chunk.get(j));
+            }
+            responses.add(pipeline.mget(prefixed));
+        }
+        pipeline.sync();
+
+        List<byte[]> retVal = new ArrayList<>(keys.size());
+        for (Response<List<byte[]>> response : responses) {
+            retVal.addAll(response.get());
+        }
+        return retVal;
+    }
+
+    /*
+    SCANs every key under the prefix, handing the key suffixes and their values over a batch at a time
+     */
+    private static void scan(@NotNull Jedis redis, byte @NotNull [] prefix, @NotNull ScanConsumer consumer) {
+        ScanParams params = new ScanParams().match(concat(prefix, new byte[] { '*' })).count(CHUNK_SIZE);
+        byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        do {
+            ScanResult<byte[]> result = redis.scan(cursor, params);
+            cursor = result.getCursorAsBytes();
+
+            List<byte[]> keys = new ArrayList<>(result.getResult().size());
+            for (byte[] key : result.getResult()) {
+                keys.add(Arrays.copyOfRange(key, prefix.length, key.length));
+            }
+            if (!keys.isEmpty()) {
+                // Keys can expire between the SCAN and the MGET, the null values take care of those
+                consumer.accept(keys, get(redis, prefix, keys));
+            }
+        } while (!result.isCompleteIteration());
+    }
+
+    /*
+    Walks the id index from afterId up, handing over rows still in Redis until the consumer returns false.
+    Index entries for rows Redis has already expired are skipped, so this keeps reading until it has enough.
+     */
+    private static void page(@NotNull Jedis redis, byte @NotNull [] idKey, byte @NotNull [] prefix, long afterId, int max, @NotNull PageConsumer consumer) {
+        long cursor = afterId;
+        while (true) {
+            List<Tuple> members = new ArrayList<>(redis.zrangeByScoreWithScores(idKey, ("(" + cursor).getBytes(StandardCharsets.US_ASCII), INF, 0, max));
+            if (members.isEmpty()) {
+                return;
+            }
+
+            List<byte[]> keys = new ArrayList<>(members.size());
+            for (Tuple member : members) {
+                keys.add(member.getBinaryElement());
+            }
+            List<byte[]> values = get(redis, prefix, keys);
+            for (int i = 0; i < keys.size(); i++) {
+                cursor = (long) members.get(i).getScore();
+                byte[] value = values.get(i);
+                if (value != null && !consumer.accept(keys.get(i), value)) {
+                    return;
+                }
+            }
+
+            if (members.size() < max) {
+                return;
+            }
+        }
+    }
+
+    /*
+    Redis expires the rows on its own, so this mostly clears out the index entries they left behind
+     */
+    private static int purge(@NotNull Jedis redis, @NotNull Instant before, int max, byte @NotNull [] expiryKey, byte @NotNull [] prefix, byte @NotNull []... indexKeys) {
+        Set<byte[]> expired = redis.zrangeByScore(expiryKey, NEG_INF, ("(" + before.toEpochMilli()).getBytes(StandardCharsets.US_ASCII), 0, max);
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        byte[][] members = expired.toArray(new byte[0][]);
+        byte[][] keys = new byte[members.length][];
+        for (int i = 0; i < members.length; i++) {
+            keys[i] = concat(prefix, members[i]);
+        }
+
+        Pipeline pipeline = redis.pipelined();
+        pipeline.del(keys);
+        pipeline.zrem(expiryKey, members);
+        for (byte[] indexKey : indexKeys) {
+            pipeline.zrem(indexKey, members);
+        }
+        pipeline.sync();
+        return members.length;
+    }
+
+    private static @NotNull Set<@NotNull IPModel> decodeIps(@NotNull List<byte[]> ips, @NotNull List<byte[]> values, long after) {
+        Set<IPModel> retVal = new HashSet<>();
+        for (int i = 0; i < ips.size(); i++) {
+            byte[] value = values.get(i);
+            if (value != null && ModelCodec.getModified(value) > after) {
+                retVal.add(ModelCodec.decodeIp(ips.get(i), value));
+            }
+        }
+        return retVal;
+    }
+
+    private static @NotNull Set<@NotNull PlayerModel> decodePlayers(@NotNull List<byte[]> players, @NotNull List<byte[]> values, long after) {
+        Set<PlayerModel> retVal = new HashSet<>();
+        for (int i = 0; i < players.size(); i++) {
+            byte[] value = values.get(i);
+            if (value != null && ModelCodec.getModified(value) > after) {
+                retVal.add(ModelCodec.decodePlayer(UUIDUtil.fromBytes(players.get(i)), value));
+            }
+        }
+        return retVal;
+    }
+
+    private static long getIpTtl() {
+        try {
+            return ConfigUtil.getCachedConfig().getSourceCacheTime();
+        } catch (IllegalStateException ignored) {
+            return DEFAULT_IP_TTL;
+        }
+    }
+
+    private static long getPlayerTtl() {
+        try {
+            CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+            // Player lookups are read back with the source cache time too, so keep whichever is longer
+            return Math.max(cachedConfig.getSourceCacheTime(), cachedConfig.getMCLeaksCacheTime());
+        } catch (IllegalStateException ignored) {
+            return Math.max(DEFAULT_IP_TTL, DEFAULT_PLAYER_TTL);
+        }
+    }
+
+    private static long after(long cacheTimeMillis) { return System.currentTimeMillis() - cacheTimeMillis; }
+
+    private static byte @NotNull [] concat(byte @NotNull [] a, byte @NotNull [] b) {
+        byte[] retVal = new byte[a.length + b.length];
+        System.arraycopy(a, 0, retVal, 0, a.length);
+        System.arraycopy(b, 0, retVal, a.length, b.length);
+        return retVal;
+    }
+
+    @FunctionalInterface
+    private interface ScanConsumer {
+        void accept(@NotNull List<byte[]> keys, @NotNull List<byte[]> values);
+    }
+
+    @FunctionalInterface
+    private interface PageConsumer {
+        boolean accept(byte @NotNull [] key, byte @NotNull [] value);
+    }
+
+    public static @NotNull RedisStorageService.Builder builder(@NotNull String name) { return new RedisStorageService.Builder(name); }
+
+    public static class Builder {
+        private final RedisStorageService service;
+        private final JedisPoolConfig config = new JedisPoolConfig();
+
+        private String address = "127.0.0.1";
+        private int port = 6379;
+        private int timeout = 5000;
+        private String pass = "";
+        private String prefix = "avpn:";
+
+        private Builder(@NotNull String name) {
+            service = new RedisStorageService(name);
+        }
+
+        public @NotNull RedisStorageService.Builder url(@NotNull String address, int port) {
+            this.address = address;
+            this.port = port;
+            return this;
+        }
+
+        public @NotNull RedisStorageService.Builder credentials(@NotNull String pass) {
+            this.pass = pass;
+            return this;
+        }
+
+        public @NotNull RedisStorageService.Builder prefix(@NotNull String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        public @NotNull RedisStorageService.Builder poolSize(int min, int max) {
+            config.setMinIdle(min);
+            config.setMaxTotal(max);
+            return this;
+        }
+
+        public @NotNull RedisStorageService.Builder life(long lifetime, int timeout) {
+            config.setMinEvictableIdleTimeMillis(lifetime);
+            config.setMaxWaitMillis(timeout);
+            this.timeout = timeout;
+            return this;
+        }
+
+        public @NotNull RedisStorageService build() {
+            service.ipPrefix = key("ip:");
+            service.ipIdKey = key("index:ip_id");
+            service.ipExpiryKey = key("index:ip_expiry");
+            service.ipRangeKey = key("index:ip_range");
+            service.ipSequenceKey = key("seq:ip");
+            service.playerPrefix = key("player:");
+            service.playerIdKey = key("index:player_id");
+            service.playerExpiryKey = key("index:player_expiry");
+            service.playerSequenceKey = key("seq:player");
+            service.dataPrefix = key("data:");
+            service.dataIdKey = key("index:data_id");
+            service.dataSequenceKey = key("seq:data");
+
+            service.pool = new JedisPool(config, address, port, timeout, pass == null || pass.isEmpty() ? null : pass);
+            // Warm up pool
+            // https://partners-intl.aliyun.com/help/doc-detail/98726.htm
+            warmup(service.pool);
+            service.purger.start();
+            return service;
+        }
+
+        private byte @NotNull [] key(@NotNull String name) { return (prefix + name).getBytes(StandardCharsets.UTF_8); }
+
+        private void warmup(@NotNull JedisPool pool) {
+            Jedis[] warmpupArr = new Jedis[config.getMinIdle()];
+
+            for (int i = 0; i < config.getMinIdle(); i++) {
+                Jedis jedis;
+                jedis = pool.getResource();
+                warmpupArr[i] = jedis;
+                jedis.ping();
+            }
+            // Two loops because we need to ensure we don't pull a freshly-created resource from the pool
+            for (int i = 0; i < config.getMinIdle(); i++) {
+                Jedis jedis;
+                jedis = warmpupArr[i];
+                jedis.close();
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class SQLiteStorageService extends AbstractJDBCStorageService {
     public static class Builder {
         private final SQLiteStorageService service;
         private final HikariConfig config = new HikariConfig();
+        private boolean singleWriter = true;
 
         private Builder(@NotNull String name) {
             service = new SQLiteStorageService(name);
@@ -56,8 +57,28 @@ public class SQLiteStorageService extends AbstractJDBCStorageService {
             return this;
         }
 
+        public @NotNull SQLiteStorageService.Builder singleWriter(boolean singleWriter) {
+            this.singleWriter = singleWriter;
+            return this;
+        }
+
         public @NotNull SQLiteStorageService build() {
-            service.createSource(config, new SQLitePlatform(), true, "sqlite");
+            if (!singleWriter) {
+                service.createSource(config, new SQLitePlatform(), true, "sqlite");
+                return service;
+            }
+
+            // Anything set in the options is left alone
+            Properties properties = config.getDataSourceProperties();
+            properties.putIfAbsent("cache_size", "-8192"); // Negative is in KiB, so 8MB per connection
+            properties.putIfAbsent("busy_timeout", String.valueOf(config.getConnectionTimeout()));
+            HikariConfig readConfig = getReadConfig(config, "Anti-VPN_SQLite_Read");
+            readConfig.addDataSourceProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+            // Lookups carry on while the writer commits, and NORMAL only syncs the WAL on checkpoints rather than every commit
+            properties.putIfAbsent("journal_mode", "WAL");
+            properties.putIfAbsent("synchronous", "NORMAL");
+
+            service.createSource(config, readConfig, new SQLitePlatform(), true, "sqlite");
             return service;
         }
     }
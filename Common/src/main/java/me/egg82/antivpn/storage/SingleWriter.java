@@ -0,0 +1,191 @@
+package me.egg82.antivpn.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.egg82.antivpn.logging.GELFLogger;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs every write for an embedded file database on one thread.
+ *
+ * <p>SQLite allows a single writer at a time, so writes from several pooled connections end up
+ * waiting on each other (or failing with SQLITE_BUSY). Here callers hand their writes over and
+ * wait for them instead. Stores that arrive while the thread is busy are committed together in
+ * one transaction, so a burst of lookups costs one sync rather than one each.</p>
+ */
+class SingleWriter {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(SingleWriter.class));
+
+    private static final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("Anti-VPN_Writer_%d").setDaemon(true).build();
+
+    // The most stores committed in a single transaction
+    private static final int MAX_BATCH = 256;
+
+    private final Write<?> stop = new Write<>(() -> null, false);
+
+    private final @NotNull String name;
+    private final @NotNull Consumer<@NotNull Runnable> transaction;
+    private final BlockingQueue<Write<?>> writes = new LinkedBlockingQueue<>();
+    private final Thread thread;
+
+    private boolean closed = false;
+
+    /**
+     * @param transaction runs the given writes inside a single transaction and commits it
+     */
+    SingleWriter(@NotNull String name, @NotNull Consumer<@NotNull Runnable> transaction) {
+        this.name = name;
+        this.transaction = transaction;
+        thread = threadFactory.newThread(this::loop);
+        thread.start();
+    }
+
+    /**
+     * Stores a write that can share a transaction with other stores, blocking until it's committed.
+     */
+    void store(@NotNull Runnable body) {
+        submit(() -> {
+            body.run();
+            return null;
+        }, true);
+    }
+
+    /**
+     * Runs a write in its own transaction, blocking until it's done.
+     */
+    <T> T call(@NotNull Supplier<T> body) { return submit(body, false); }
+
+    /**
+     * Finishes everything already handed over and stops the thread. Later writes run on the calling thread.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writes.add(stop);
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> T submit(@NotNull Supplier<T> body, boolean batched) {
+        if (Thread.currentThread() == thread) {
+            return body.get();
+        }
+
+        Write<T> write = new Write<>(body, batched);
+        synchronized (this) {
+            if (closed) {
+                return batched ? inTransaction(body) : body.get();
+            }
+            writes.add(write);
+        }
+
+        try {
+            return write.future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    private void loop() {
+        List<Write<?>> batch = new ArrayList<>();
+        while (true) {
+            Write<?> write;
+            try {
+                write = writes.take();
+            } catch (InterruptedException ignored) {
+                // Nothing else stops this thread, so carry on until close() says so
+                continue;
+            }
+            if (write == stop) {
+                return;
+            }
+
+            if (!write.batched) {
+                write.execute(false);
+                continue;
+            }
+
+            // Only one thread takes from the queue, so whatever peek() sees is still there for poll()
+            batch.add(write);
+            Write<?> next;
+            while (batch.size() < MAX_BATCH && (next = writes.peek()) != null && next.batched) {
+                batch.add(writes.poll());
+            }
+            executeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void executeBatch(@NotNull List<@NotNull Write<?>> batch) {
+        if (batch.size() == 1) {
+            batch.get(0).execute(true);
+            return;
+        }
+
+        try {
+            transaction.accept(() -> {
+                for (Write<?> write : batch) {
+                    write.body.get();
+                }
+            });
+        } catch (RuntimeException ex) {
+            // One bad write shouldn't take the rest down with it, so each is tried again on its own
+            logger.warn("Could not commit " + batch.size() + " writes to " + name + " together, retrying them separately.", ex);
+            for (Write<?> write : batch) {
+                write.execute(true);
+            }
+            return;
+        }
+
+        for (Write<?> write : batch) {
+            write.future.complete(null);
+        }
+    }
+
+    private <T> T inTransaction(@NotNull Supplier<T> body) {
+        List<T> retVal = new ArrayList<>(1);
+        transaction.accept(() -> retVal.add(body.get()));
+        return retVal.get(0);
+    }
+
+    private final class Write<T> {
+        private final @NotNull Supplier<T> body;
+        private final boolean batched;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Write(@NotNull Supplier<T> body, boolean batched) {
+            this.body = body;
+            this.batched = batched;
+        }
+
+        private void execute(boolean inTransaction) {
+            try {
+                future.complete(inTransaction ? inTransaction(body) : body.get());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package me.egg82.antivpn.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.egg82.antivpn.logging.GELFLogger;
+import me.egg82.antivpn.storage.models.BaseModel;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * Copies IPs and players from one {@link StorageService} to another.
+ *
+ * <p>The source is read a page at a time in id order while a pool of writers upserts earlier
+ * pages into the target with {@link StorageService#storeModels(java.util.Collection)}. The queue
+ * between them is bounded, so a slow target holds the reader back instead of filling memory.</p>
+ *
+ * <p>Progress reports carry the highest id below which every row has been written. Upserts make
+ * copying a row twice harmless, so passing that id back in after an interruption picks the copy
+ * up where it left off.</p>
+ */
+public class StorageCopier {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(StorageCopier.class));
+
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(2L);
+
+    private final @NotNull StorageService source;
+    private final @NotNull StorageService target;
+    private final int batchSize;
+    private final int parallelism;
+
+    public StorageCopier(@NotNull StorageService source, @NotNull StorageService target, int batchSize, int parallelism) {
+        if (source == target) {
+            throw new IllegalArgumentException("source cannot be the same as target.");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize cannot be <= 0.");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism cannot be <= 0.");
+        }
+
+        this.source = source;
+        this.target = target;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Copies every IP with an id greater than afterId, returning the id of the last one copied.
+     */
+    public long copyIps(long afterId, long cacheTimeMillis, @NotNull Progress progress) throws InterruptedException {
+        return copy(afterId, (cursor, max) -> source.getIpPage(cursor, max, cacheTimeMillis), progress);
+    }
+
+    /**
+     * Copies every player with an id greater than afterId, returning the id of the last one copied.
+     */
+    public long copyPlayers(long afterId, long cacheTimeMillis, @NotNull Progress progress) throws InterruptedException {
+        return copy(afterId, (cursor, max) -> source.getPlayerPage(cursor, max, cacheTimeMillis), progress);
+    }
+
+    private <T extends BaseModel> long copy(long afterId, @NotNull BiFunction<@NotNull Long, @NotNull Integer, @NotNull List<T>> reader, @NotNull Progress progress) throws InterruptedException {
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(parallelism);
+        Watermark watermark = new Watermark(afterId);
+        AtomicLong copied = new AtomicLong(0L);
+        AtomicReference<Throwable> error = new AtomicReference<>(null);
+
+        ExecutorService writers = Executors.newFixedThreadPool(
+                parallelism,
+                new ThreadFactoryBuilder().setNameFormat("Anti-VPN_Import_%d").setDaemon(true).build()
+        );
+        for (int i = 0; i < parallelism; i++) {
+            writers.execute(() -> write(queue, watermark, copied, error));
+        }
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        try {
+            long cursor = afterId;
+            long sequence = 0L;
+            while (error.get() == null) {
+                // The writers are busy with the previous pages while this one is read
+                List<T> page = reader.apply(cursor, batchSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                Long lastId = page.get(page.size() - 1).getId();
+                cursor = lastId != null ? lastId : cursor;
+                queue.put(new Batch(sequence++, page, cursor));
+
+                long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL) {
+                    lastReport = now;
+                    report(progress, copied.get(), watermark.get(), now - start);
+                }
+
+                if (page.size() < batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            for (int i = 0; i < parallelism; i++) {
+                queue.put(Batch.END);
+            }
+            writers.shutdown();
+            while (!writers.awaitTermination(1L, TimeUnit.SECONDS)) {
+                // Keep the caller up to date while the last batches finish
+                report(progress, copied.get(), watermark.get(), System.nanoTime() - start);
+            }
+        }
+
+        report(progress, copied.get(), watermark.get(), System.nanoTime() - start);
+
+        Throwable ex = error.get();
+        if (ex != null) {
+            throw new StorageCopyException(watermark.get(), ex);
+        }
+        return watermark.get();
+    }
+
+    private void write(@NotNull BlockingQueue<Batch> queue, @NotNull Watermark watermark, @NotNull AtomicLong copied, @NotNull AtomicReference<Throwable> error) {
+        try {
+            Batch batch;
+            while ((batch = queue.take()) != Batch.END) {
+                // Once something's failed the rest are only drained, so the reader never blocks on a full queue
+                if (error.get() != null) {
+                    continue;
+                }
+
+                try {
+                    target.storeModels(batch.models);
+                } catch (RuntimeException ex) {
+                    logger.error("Could not write " + batch.models.size() + " rows to " + target.getName() + ".", ex);
+                    error.compareAndSet(null, ex);
+                    continue;
+                }
+                copied.addAndGet(batch.models.size());
+                watermark.complete(batch.sequence, batch.cursor);
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void report(@NotNull Progress progress, long copied, long cursor, long elapsedNanos) {
+        double rate = elapsedNanos > 0L ? copied / (elapsedNanos / 1_000_000_000.0d) : 0.0d;
+        try {
+            progress.report(copied, cursor, rate);
+        } catch (RuntimeException ex) {
+            logger.error("Could not report import progress.", ex);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * @param copied the number of rows written so far
+         * @param cursor the id below which every row has been written, to resume from
+         * @param rate the average number of rows written per second
+         */
+        void report(long copied, long cursor, double rate);
+    }
+
+    public static class StorageCopyException extends RuntimeException {
+        private final long cursor;
+
+        public StorageCopyException(long cursor, @NotNull Throwable cause) {
+            super("Could not finish copying, resume from id " + cursor + ".", cause);
+            this.cursor = cursor;
+        }
+
+        /**
+         * Gets the id below which every row was written before the failure.
+         */
+        public long getCursor() { return cursor; }
+    }
+
+    private static class Batch {
+        private static final Batch END = new Batch(-1L, Collections.emptyList(), -1L);
+
+        private final long sequence;
+        private final @NotNull List<? extends BaseModel> models;
+        private final long cursor;
+
+        private Batch(long sequence, @NotNull List<? extends BaseModel> models, long cursor) {
+            this.sequence = sequence;
+            this.models = models;
+            this.cursor = cursor;
+        }
+    }
+
+    /*
+    Writers can finish out of order, so the resume point only moves past a
+    batch once every batch before it has been written too.
+     */
+    private static class Watermark {
+        private final Map<Long, Long> finished = new HashMap<>();
+        private long nextSequence = 0L;
+        private long cursor;
+
+        private Watermark(long cursor) {
+            this.cursor = cursor;
+        }
+
+        private synchronized void complete(long sequence, long batchCursor) {
+            finished.put(sequence, batchCursor);
+            Long next;
+            while ((next = finished.remove(nextSequence)) != null) {
+                cursor = next;
+                nextSequence++;
+            }
+        }
+
+        private synchronized long get() { return cursor; }
+    }
+}
@@ -0,0 +1,140 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.logging.GELFLogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latencies and errors for each operation on a single {@link StorageService}.
+ *
+ * <p>Operations that take longer than the slow query threshold are logged as they finish,
+ * so a slow engine shows up in the logs next to whatever it slowed down.</p>
+ */
+public class StorageMetrics {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(StorageMetrics.class));
+
+    private static volatile long slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(250L);
+
+    /**
+     * Sets how long an operation can take before it's logged, or 0 to log nothing.
+     */
+    public static void setSlowQueryThreshold(long millis) {
+        if (millis < 0L) {
+            throw new IllegalArgumentException("millis cannot be < 0.");
+        }
+        StorageMetrics.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private final @NotNull StorageService service;
+    private final Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+
+    private volatile PoolMetrics pool = null;
+
+    public StorageMetrics(@NotNull StorageService service) {
+        this.service = service;
+        // Filled once and only read afterwards, so no locking needed
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+    }
+
+    public <T> T time(@NotNull Operation operation, @NotNull Supplier<T> body) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T retVal = body.get();
+            failed = false;
+            return retVal;
+        } finally {
+            record(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    public void run(@NotNull Operation operation, @NotNull Runnable body) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            body.run();
+            failed = false;
+        } finally {
+            record(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    public @NotNull OperationStats getStats(@NotNull Operation operation) { return operations.get(operation); }
+
+    /**
+     * Gets the connection pool metrics, or null if this engine doesn't pool connections.
+     */
+    public @Nullable PoolMetrics getPool() { return pool; }
+
+    void setPool(@NotNull PoolMetrics pool) {
+        this.pool = pool;
+    }
+
+    private void record(@NotNull Operation operation, long nanos, boolean failed) {
+        OperationStats stats = operations.get(operation);
+        stats.latency.record(nanos);
+        if (failed) {
+            stats.errors.increment();
+        }
+
+        long threshold = slowQueryNanos;
+        if (threshold > 0L && nanos >= threshold) {
+            logger.warn("Slow storage operation " + operation.getName() + " on " + service.getName() + " took " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms" + (failed ? " and failed." : "."));
+        }
+    }
+
+    public enum Operation {
+        STORE("store"),
+        STORE_BATCH("store_batch"),
+        DELETE("delete"),
+        GET_OR_CREATE_IP("get_or_create_ip"),
+        GET_IP("get_ip"),
+        GET_IP_BY_ID("get_ip_by_id"),
+        GET_IPS("get_ips"),
+        GET_IPS_IN_RANGE("get_ips_in_range"),
+        GET_ALL_IPS("get_all_ips"),
+        GET_IP_PAGE("get_ip_page"),
+        PURGE_IPS("purge_ips"),
+        GET_OR_CREATE_PLAYER("get_or_create_player"),
+        GET_PLAYER("get_player"),
+        GET_PLAYER_BY_ID("get_player_by_id"),
+        GET_PLAYERS("get_players"),
+        GET_ALL_PLAYERS("get_all_players"),
+        GET_PLAYER_PAGE("get_player_page"),
+        PURGE_PLAYERS("purge_players"),
+        GET_OR_CREATE_DATA("get_or_create_data"),
+        GET_DATA("get_data"),
+        GET_DATA_BY_ID("get_data_by_id");
+
+        private final String name;
+
+        Operation(@NotNull String name) {
+            this.name = name;
+        }
+
+        public @NotNull String getName() { return name; }
+    }
+
+    public static class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        private OperationStats() { }
+
+        public @NotNull LatencyHistogram getLatency() { return latency; }
+
+        public long getCount() { return latency.getCount(); }
+
+        public long getErrors() { return errors.sum(); }
+    }
+}
@@ -7,7 +7,10 @@ import me.egg82.antivpn.storage.models.PlayerModel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -22,6 +25,13 @@ public interface StorageService {
 
     void storeModels(@NotNull Collection<@NotNull ? extends BaseModel> models);
 
+    /*
+    Note: Writes are batched and stored later, see WriteBehindQueue
+     */
+    void queueModel(@NotNull BaseModel model);
+
+    void flush();
+
     void deleteModel(@NotNull BaseModel model);
 
     /*
@@ -33,10 +43,39 @@ public interface StorageService {
 
     @Nullable IPModel getIpModel(long ipId, long cacheTimeMillis);
 
+    /*
+    Note: Keyed on the IPs as given. IPs that aren't stored or have expired are left out of the map
+     */
+    @NotNull Map<@NotNull String, @NotNull IPModel> getIpModels(@NotNull Collection<@NotNull String> ips, long cacheTimeMillis);
+
+    /*
+    Note: Takes a CIDR range, eg. 203.0.113.0/24
+     */
+    @NotNull Set<@NotNull IPModel> getIpModelsInRange(@NotNull String range, long cacheTimeMillis);
+
     @NotNull Set<@NotNull IPModel> getAllIps(long cacheTimeMillis);
 
+    /**
+     * @deprecated Pages by id range, so gaps in ids make for short or empty pages. Use {@link #getIpPage(long, int, long)}
+     */
+    @Deprecated
     @NotNull Set<@NotNull IPModel> getAllIps(int start, int max);
 
+    /*
+    Note: Returns up to max IPs with an id greater than afterId, in id order
+     */
+    @NotNull List<@NotNull IPModel> getIpPage(long afterId, int max, long cacheTimeMillis);
+
+    /*
+    Note: Only holds one page in memory at a time
+     */
+    @NotNull KeysetIterator<@NotNull IPModel> streamIps(long afterId, int pageSize, long cacheTimeMillis);
+
+    /*
+    Note: Deletes at most max rows, oldest first, and returns the number deleted
+     */
+    int purgeIps(@NotNull Instant before, int max);
+
     /*
    Note: Can be an expensive operation
     */
@@ -46,10 +85,34 @@ public interface StorageService {
 
     @Nullable PlayerModel getPlayerModel(long playerId, long cacheTimeMillis);
 
+    /*
+    Note: Players that aren't stored or have expired are left out of the map
+     */
+    @NotNull Map<@NotNull UUID, @NotNull PlayerModel> getPlayerModels(@NotNull Collection<@NotNull UUID> players, long cacheTimeMillis);
+
     @NotNull Set<@NotNull PlayerModel> getAllPlayers(long cacheTimeMillis);
 
+    /**
+     * @deprecated Pages by id range, so gaps in ids make for short or empty pages. Use {@link #getPlayerPage(long, int, long)}
+     */
+    @Deprecated
     @NotNull Set<@NotNull PlayerModel> getAllPlayers(int start, int max);
 
+    /*
+    Note: Returns up to max players with an id greater than afterId, in id order
+     */
+    @NotNull List<@NotNull PlayerModel> getPlayerPage(long afterId, int max, long cacheTimeMillis);
+
+    /*
+    Note: Only holds one page in memory at a time
+     */
+    @NotNull KeysetIterator<@NotNull PlayerModel> streamPlayers(long afterId, int pageSize, long cacheTimeMillis);
+
+    /*
+    Note: Deletes at most max rows, oldest first, and returns the number deleted
+     */
+    int purgePlayers(@NotNull Instant before, int max);
+
     /*
    Note: Can be an expensive operation
     */
@@ -58,4 +121,9 @@ public interface StorageService {
     @Nullable DataModel getDataModel(@NotNull String key);
 
     @Nullable DataModel getDataModel(long dataId);
+
+    /*
+    Note: Latencies and errors since the service was created, see StorageMetrics
+     */
+    @NotNull StorageMetrics getMetrics();
 }
@@ -0,0 +1,404 @@
+package me.egg82.antivpn.storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import me.egg82.antivpn.logging.GELFLogger;
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
+import me.egg82.antivpn.utils.IPUtil;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the IPs and players in a {@link StorageService} to a compact file, and loads them back into any other.
+ *
+ * <p>Rows are written in blocks of up to blockSize rows, each block column by column so similar values
+ * sit next to each other: IPv4 addresses take four bytes instead of sixteen, flags are packed into
+ * bitsets, consensus values are quantized to 16 bits and timestamps are stored as deltas. The whole
+ * file is then zstd compressed. Both directions work one block at a time, so neither ever holds a
+ * whole table in memory.</p>
+ *
+ * <p>Loading goes through {@link StorageService#storeModels(Collection)}, so rows in the file replace
+ * matching rows in the target and everything else is left alone. Ids and versions aren't kept, the
+ * target assigns its own.</p>
+ */
+public final class StorageSnapshot {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(StorageSnapshot.class));
+
+    private static final byte[] MAGIC = new byte[] { 'A', 'V', 'P', 'N', 'S', 'N', 'A', 'P' };
+    private static final int VERSION = 1;
+
+    private static final int BLOCK_END = 0;
+    private static final int BLOCK_IPS = 1;
+    private static final int BLOCK_PLAYERS = 2;
+
+    // Consensus is a fraction of sources, so 16 bits is well past the precision it's ever compared at
+    private static final double CONSENSUS_SCALE = 65535.0d;
+
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(2L);
+
+    private StorageSnapshot() { }
+
+    /**
+     * Writes every IP and player that hasn't expired to the file, replacing it once finished.
+     * Returns the number of rows written.
+     */
+    public static long export(@NotNull StorageService source, @NotNull File file, int blockSize, long ipCacheTimeMillis, long playerCacheTimeMillis, @NotNull Progress progress) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize cannot be <= 0.");
+        }
+
+        // Written next to the file first, so a failed export never leaves half a snapshot behind
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Counter counter = new Counter(progress);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new ZstdOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            List<IPModel> ips = new ArrayList<>(blockSize);
+            KeysetIterator<IPModel> ipIterator = source.streamIps(0L, blockSize, ipCacheTimeMillis);
+            while (ipIterator.hasNext()) {
+                ips.add(ipIterator.next());
+                if (ips.size() >= blockSize) {
+                    writeIps(out, ips);
+                    counter.add(ips.size());
+                    ips.clear();
+                }
+            }
+            if (!ips.isEmpty()) {
+                writeIps(out, ips);
+                counter.add(ips.size());
+            }
+
+            List<PlayerModel> players = new ArrayList<>(blockSize);
+            KeysetIterator<PlayerModel> playerIterator = source.streamPlayers(0L, blockSize, playerCacheTimeMillis);
+            while (playerIterator.hasNext()) {
+                players.add(playerIterator.next());
+                if (players.size() >= blockSize) {
+                    writePlayers(out, players);
+                    counter.add(players.size());
+                    players.clear();
+                }
+            }
+            if (!players.isEmpty()) {
+                writePlayers(out, players);
+                counter.add(players.size());
+            }
+
+            out.writeByte(BLOCK_END);
+        } catch (IOException | RuntimeException ex) {
+            if (!temp.delete() && temp.exists()) {
+                logger.warn("Could not delete unfinished snapshot " + temp.getAbsolutePath() + ".");
+            }
+            throw ex;
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        counter.report();
+        return counter.rows;
+    }
+
+    /**
+     * Stores every IP and player in the file into the target. Returns the number of rows stored.
+     */
+    public static long load(@NotNull File file, @NotNull StorageService target, @NotNull Progress progress) throws IOException {
+        Counter counter = new Counter(progress);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new ZstdInputStream(new BufferedInputStream(new FileInputStream(file)))))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file.getName() + " is not a snapshot file.");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException(file.getName() + " has an unsupported snapshot version " + version + ".");
+            }
+            in.readLong(); // Export time, for anyone inspecting the file
+
+            int block;
+            while ((block = in.readUnsignedByte()) != BLOCK_END) {
+                List<? extends BaseModel> models;
+                if (block == BLOCK_IPS) {
+                    models = readIps(in);
+                } else if (block == BLOCK_PLAYERS) {
+                    models = readPlayers(in);
+                } else {
+                    throw new IOException(file.getName() + " has an unknown block type " + block + ".");
+                }
+                target.storeModels(models);
+                counter.add(models.size());
+            }
+        }
+
+        counter.report();
+        return counter.rows;
+    }
+
+    private static void writeIps(@NotNull DataOutputStream out, @NotNull List<@NotNull IPModel> models) throws IOException {
+        int count = models.size();
+        out.writeByte(BLOCK_IPS);
+        writeVarLong(out, count);
+
+        boolean[] v4 = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            v4[i] = isMappedV4(models.get(i).getIpBytes());
+        }
+        writeBits(out, v4);
+        for (int i = 0; i < count; i++) {
+            byte[] ip = models.get(i).getIpBytes();
+            if (v4[i]) {
+                out.write(ip, 12, 4);
+            } else if (ip.length == 16) {
+                out.write(ip);
+            } else {
+                throw new IOException("IP model " + models.get(i).getId() + " has an invalid address.");
+            }
+        }
+
+        for (IPModel model : models) {
+            writeVarLong(out, zigZag(model.getType()));
+        }
+
+        boolean[] hasCascade = new boolean[count];
+        boolean[] cascade = new boolean[count];
+        boolean[] hasConsensus = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            IPModel model = models.get(i);
+            hasCascade[i] = model.getCascade() != null;
+            cascade[i] = Boolean.TRUE.equals(model.getCascade());
+            hasConsensus[i] = model.getConsensus() != null;
+        }
+        writeBits(out, hasCascade);
+        writeBits(out, cascade);
+        writeBits(out, hasConsensus);
+        for (IPModel model : models) {
+            if (model.getConsensus() != null) {
+                double clamped = Math.max(0.0d, Math.min(1.0d, model.getConsensus()));
+                out.writeShort((int) Math.round(clamped * CONSENSUS_SCALE));
+            }
+        }
+
+        writeTimes(out, models);
+    }
+
+    private static @NotNull List<@NotNull IPModel> readIps(@NotNull DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<IPModel> retVal = new ArrayList<>(count);
+
+        boolean[] v4 = readBits(in, count);
+        for (int i = 0; i < count; i++) {
+            byte[] ip = new byte[16];
+            if (v4[i]) {
+                ip[10] = (byte) 0xFF;
+                ip[11] = (byte) 0xFF;
+                in.readFully(ip, 12, 4);
+            } else {
+                in.readFully(ip);
+            }
+            IPModel model = new IPModel();
+            model.setIp(IPUtil.toString(ip));
+            retVal.add(model);
+        }
+
+        for (IPModel model : retVal) {
+            model.setType((int) unZigZag(readVarLong(in)));
+        }
+
+        boolean[] hasCascade = readBits(in, count);
+        boolean[] cascade = readBits(in, count);
+        boolean[] hasConsensus = readBits(in, count);
+        for (int i = 0; i < count; i++) {
+            IPModel model = retVal.get(i);
+            model.setCascade(hasCascade[i] ? cascade[i] : null);
+            model.setConsensus(hasConsensus[i] ? in.readUnsignedShort() / CONSENSUS_SCALE : null);
+        }
+
+        readTimes(in, retVal);
+        return retVal;
+    }
+
+    private static void writePlayers(@NotNull DataOutputStream out, @NotNull List<@NotNull PlayerModel> models) throws IOException {
+        int count = models.size();
+        out.writeByte(BLOCK_PLAYERS);
+        writeVarLong(out, count);
+
+        for (PlayerModel model : models) {
+            out.writeLong(model.getUuid().getMostSignificantBits());
+            out.writeLong(model.getUuid().getLeastSignificantBits());
+        }
+
+        boolean[] mcleaks = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            mcleaks[i] = models.get(i).isMcleaks();
+        }
+        writeBits(out, mcleaks);
+
+        writeTimes(out, models);
+    }
+
+    private static @NotNull List<@NotNull PlayerModel> readPlayers(@NotNull DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<PlayerModel> retVal = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            PlayerModel model = new PlayerModel();
+            model.setUuid(new UUID(in.readLong(), in.readLong()));
+            retVal.add(model);
+        }
+
+        boolean[] mcleaks = readBits(in, count);
+        for (int i = 0; i < count; i++) {
+            retVal.get(i).setMcleaks(mcleaks[i]);
+        }
+
+        readTimes(in, retVal);
+        return retVal;
+    }
+
+    /*
+    Rows come out in id order, which is roughly creation order, so created times are
+    stored as the difference from the row before. Modified is stored as the difference from created
+     */
+    private static void writeTimes(@NotNull DataOutputStream out, @NotNull List<@NotNull ? extends BaseModel> models) throws IOException {
+        long last = 0L;
+        for (BaseModel model : models) {
+            long created = toMillis(model.getCreated());
+            writeVarLong(out, zigZag(created - last));
+            last = created;
+        }
+        for (BaseModel model : models) {
+            writeVarLong(out, zigZag(toMillis(model.getModified()) - toMillis(model.getCreated())));
+        }
+    }
+
+    private static void readTimes(@NotNull DataInputStream in, @NotNull List<@NotNull ? extends BaseModel> models) throws IOException {
+        long last = 0L;
+        for (BaseModel model : models) {
+            last += unZigZag(readVarLong(in));
+            model.setCreated(Instant.ofEpochMilli(last));
+        }
+        for (BaseModel model : models) {
+            model.setModified(Instant.ofEpochMilli(model.getCreated().toEpochMilli() + unZigZag(readVarLong(in))));
+        }
+    }
+
+    private static long toMillis(Instant instant) { return instant != null ? instant.toEpochMilli() : System.currentTimeMillis(); }
+
+    private static boolean isMappedV4(byte @NotNull [] ip) {
+        if (ip.length != 16 || ip[10] != (byte) 0xFF || ip[11] != (byte) 0xFF) {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (ip[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readCount(@NotNull DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count <= 0L || count > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot block has an invalid row count " + count + ".");
+        }
+        return (int) count;
+    }
+
+    private static void writeBits(@NotNull DataOutputStream out, boolean @NotNull [] bits) throws IOException {
+        for (int i = 0; i < bits.length; i += 8) {
+            int b = 0;
+            for (int j = 0; j < 8 && i + j < bits.length; j++) {
+                if (bits[i + j]) {
+                    b |= 1 << j;
+                }
+            }
+            out.writeByte(b);
+        }
+    }
+
+    private static boolean @NotNull [] readBits(@NotNull DataInputStream in, int count) throws IOException {
+        boolean[] retVal = new boolean[count];
+        for (int i = 0; i < count; i += 8) {
+            int b = in.readUnsignedByte();
+            for (int j = 0; j < 8 && i + j < count; j++) {
+                retVal[i + j] = (b & (1 << j)) != 0;
+            }
+        }
+        return retVal;
+    }
+
+    private static void writeVarLong(@NotNull DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0L) {
+            out.writeByte((int) ((value & 0x7FL) | 0x80L));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(@NotNull DataInputStream in) throws IOException {
+        long retVal = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            retVal |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return retVal;
+            }
+        }
+        throw new IOException("Snapshot has a malformed number.");
+    }
+
+    private static long zigZag(long value) { return (value << 1) ^ (value >> 63); }
+
+    private static long unZigZag(long value) { return (value >>> 1) ^ -(value & 1L); }
+
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * @param rows the number of rows written so far
+         * @param rate the average number of rows written per second
+         */
+        void report(long rows, double rate);
+    }
+
+    private static class Counter {
+        private final @NotNull Progress progress;
+        private final long start = System.nanoTime();
+        private long lastReport = start;
+        private long rows = 0L;
+
+        private Counter(@NotNull Progress progress) {
+            this.progress = progress;
+        }
+
+        private void add(int count) {
+            rows += count;
+            long now = System.nanoTime();
+            if (now - lastReport >= REPORT_INTERVAL) {
+                lastReport = now;
+                report();
+            }
+        }
+
+        private void report() {
+            long elapsed = System.nanoTime() - start;
+            double rate = elapsed > 0L ? rows / (elapsed / 1_000_000_000.0d) : 0.0d;
+            try {
+                progress.report(rows, rate);
+            } catch (RuntimeException ex) {
+                logger.error("Could not report snapshot progress.", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package me.egg82.antivpn.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.logging.GELFLogger;
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.DataModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers model writes for a {@link StorageService} and writes them in batches.
+ *
+ * <p>Writes to the same IP, player or data key are coalesced so only the latest one is stored.
+ * Batches go through {@link StorageService#storeModels(Collection)} (one transaction each) when
+ * the batch size is reached, on a fixed interval, and when the service is closed. When the queue
+ * is full, callers wait for a flush to make room and write through directly if none does.</p>
+ */
+public class WriteBehindQueue {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(WriteBehindQueue.class));
+
+    // More than one thread so a slow backend can't hold up flushes to the others
+    private static final ScheduledExecutorService flushPool = Executors.newScheduledThreadPool(
+            2,
+            new ThreadFactoryBuilder().setNameFormat("Anti-VPN_WriteBehind_%d").setDaemon(true).build()
+    );
+
+    private static volatile int batchSize = 100;
+    private static volatile int maxQueueSize = 10000;
+    private static volatile long flushInterval = 1000L;
+
+    public static void setSettings(int batchSize, int maxQueueSize, long flushIntervalMillis) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize cannot be <= 0.");
+        }
+        if (maxQueueSize < batchSize) {
+            throw new IllegalArgumentException("maxQueueSize cannot be < batchSize.");
+        }
+        if (flushIntervalMillis <= 0L) {
+            throw new IllegalArgumentException("flushIntervalMillis cannot be <= 0.");
+        }
+
+        WriteBehindQueue.batchSize = batchSize;
+        WriteBehindQueue.maxQueueSize = maxQueueSize;
+        WriteBehindQueue.flushInterval = flushIntervalMillis;
+    }
+
+    private final @NotNull StorageService service;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, BaseModel> pending = new LinkedHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock(); // One flush at a time keeps writes in order
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+
+    private volatile boolean closed = false;
+    private volatile ScheduledFuture<?> flushTask = null;
+
+    public WriteBehindQueue(@NotNull StorageService service) {
+        this.service = service;
+    }
+
+    /**
+     * Queues the model to be stored. Returns immediately unless the queue is full.
+     */
+    public void queue(@NotNull BaseModel model) {
+        String key = getKey(model);
+        boolean writeThrough = false;
+        boolean full;
+
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + flushInterval;
+            while (!closed && pending.size() >= maxQueueSize && !pending.containsKey(key)) {
+                requestFlush();
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0L) {
+                    break;
+                }
+                try {
+                    lock.wait(wait);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (closed || (pending.size() >= maxQueueSize && !pending.containsKey(key))) {
+                writeThrough = true;
+                full = false;
+            } else {
+                // Re-inserted so the latest write to a key goes out last
+                pending.remove(key);
+                pending.put(key, model);
+                full = pending.size() >= batchSize;
+            }
+        }
+
+        if (writeThrough) {
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info("Write-behind queue for " + service.getName() + " is full, writing through.");
+            }
+            service.storeModel(model);
+            return;
+        }
+
+        if (full) {
+            requestFlush();
+        } else if (flushTask == null) {
+            startTimer();
+        }
+    }
+
+    /**
+     * Drops any queued write for the model's key, eg. because it's being deleted.
+     */
+    public void remove(@NotNull BaseModel model) {
+        synchronized (lock) {
+            pending.remove(getKey(model));
+            lock.notifyAll();
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Writes everything queued so far, blocking until done.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                List<BaseModel> batch;
+                synchronized (lock) {
+                    if (pending.isEmpty()) {
+                        lock.notifyAll();
+                        return;
+                    }
+
+                    int size = batchSize;
+                    batch = new ArrayList<>(Math.min(size, pending.size()));
+                    for (Iterator<BaseModel> i = pending.values().iterator(); i.hasNext() && batch.size() < size; ) {
+                        batch.add(i.next());
+                        i.remove();
+                    }
+                    lock.notifyAll();
+                }
+
+                long start = System.nanoTime();
+                try {
+                    service.storeModels(batch);
+                } catch (RuntimeException ex) {
+                    logger.error("Could not write " + batch.size() + " queued models to " + service.getName() + ".", ex);
+                    synchronized (lock) {
+                        // Anything not replaced by a newer write in the meantime is retried on the next flush
+                        for (BaseModel model : batch) {
+                            pending.putIfAbsent(getKey(model), model);
+                        }
+                    }
+                    return;
+                }
+
+                if (ConfigUtil.getDebugOrFalse()) {
+                    logger.info("Wrote " + batch.size() + " queued models to " + service.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the timer and writes everything still queued. Later writes go straight to storage.
+     */
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> task = flushTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+        flush();
+    }
+
+    private synchronized void startTimer() {
+        if (flushTask != null || closed) {
+            return;
+        }
+        long interval = flushInterval;
+        flushTask = flushPool.scheduleWithFixedDelay(this::tryFlush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void requestFlush() {
+        if (flushQueued.compareAndSet(false, true)) {
+            try {
+                flushPool.execute(() -> {
+                    flushQueued.set(false);
+                    tryFlush();
+                });
+            } catch (RejectedExecutionException ignored) {
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    private void tryFlush() {
+        if (service.isClosed()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Throwable ex) {
+            logger.error("Could not flush write-behind queue for " + service.getName() + ".", ex);
+        }
+    }
+
+    @NotNull
+    private static String getKey(@NotNull BaseModel model) {
+        if (model instanceof IPModel) {
+            return "ip:" + ((IPModel) model).getIp();
+        } else if (model instanceof PlayerModel) {
+            return "player:" + ((PlayerModel) model).getUuid();
+        } else if (model instanceof DataModel) {
+            return "data:" + ((DataModel) model).getKey();
+        }
+        return "model:" + System.identityHashCode(model);
+    }
+}
@@ -2,6 +2,7 @@ package me.egg82.antivpn.storage.models;
 
 import io.ebean.annotation.Index;
 import io.ebean.annotation.Length;
+import me.egg82.antivpn.utils.IPUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -11,10 +12,11 @@ import javax.persistence.Table;
 @Entity
 @Table(name = "avpn_6_ip")
 public class IPModel extends BaseModel {
+    // Stored as 16 bytes (see IPUtil) so the unique index doubles as a range index
     @Index(unique = true)
     @io.ebean.annotation.NotNull
-    @Length(45)
-    private String ip;
+    @Length(16)
+    private byte[] ip;
     @io.ebean.annotation.NotNull
     private int type;
     private Boolean cascade;
@@ -22,7 +24,7 @@ public class IPModel extends BaseModel {
 
     public IPModel() {
         super();
-        this.ip = "";
+        this.ip = new byte[0];
         this.type = -1;
         this.cascade = null;
         this.consensus = null;
@@ -30,18 +32,20 @@ public class IPModel extends BaseModel {
 
     public IPModel(String dbName) {
         super(dbName);
-        this.ip = "";
+        this.ip = new byte[0];
         this.type = -1;
         this.cascade = null;
         this.consensus = null;
     }
 
-    public @NotNull String getIp() { return ip; }
+    public @NotNull String getIp() { return IPUtil.toString(ip); }
 
     public void setIp(@NotNull String ip) {
-        this.ip = ip;
+        this.ip = IPUtil.toBytes(ip);
     }
 
+    public byte @NotNull [] getIpBytes() { return ip; }
+
     public int getType() { return type; }
 
     public void setType(int type) {
@@ -67,7 +71,7 @@ public class IPModel extends BaseModel {
                 ", version=" + version +
                 ", created=" + created +
                 ", modified=" + modified +
-                ", ip='" + ip + '\'' +
+                ", ip='" + getIp() + '\'' +
                 ", type=" + type +
                 ", cascade=" + cascade +
                 ", consensus=" + consensus +
@@ -0,0 +1,63 @@
+package me.egg82.antivpn.utils;
+
+import inet.ipaddr.IPAddress;
+import inet.ipaddr.IPAddressString;
+import me.egg82.antivpn.core.Pair;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Converts IPs to and from the 16-byte form storage uses.
+ *
+ * <p>IPv4 addresses are stored IPv4-mapped (::ffff:a.b.c.d) so both families share one column
+ * and any CIDR range is a single contiguous span of it.</p>
+ */
+public class IPUtil {
+    private static final byte[] EMPTY = new byte[0];
+
+    private IPUtil() { }
+
+    public static byte @NotNull [] toBytes(@NotNull String ip) {
+        if (ip.isEmpty()) {
+            return EMPTY;
+        }
+
+        IPAddress address = new IPAddressString(ip).getAddress();
+        if (address == null || address.isMultiple()) {
+            throw new IllegalArgumentException("ip is not a valid IP address.");
+        }
+        return toBytes(address);
+    }
+
+    public static @NotNull String toString(byte @NotNull [] ip) {
+        if (ip.length == 0) {
+            return "";
+        }
+
+        try {
+            // Turns IPv4-mapped addresses back into plain IPv4 ones
+            return InetAddress.getByAddress(ip).getHostAddress();
+        } catch (UnknownHostException ex) {
+            throw new IllegalArgumentException("ip is not a valid IP address.", ex);
+        }
+    }
+
+    /**
+     * Returns the first and last addresses in the range, eg. 203.0.113.0/24 or 2001:db8::/32.
+     */
+    public static @NotNull Pair<byte @NotNull [], byte @NotNull []> toRange(@NotNull String range) {
+        IPAddress address = new IPAddressString(range).getAddress();
+        if (address == null) {
+            throw new IllegalArgumentException("range is not a valid IP range.");
+        }
+        if (address.getNetworkPrefixLength() != null) {
+            // eg. 203.0.113.7/24 is the same block as 203.0.113.0/24
+            address = address.toPrefixBlock();
+        }
+        return new Pair<>(toBytes(address.getLower()), toBytes(address.getUpper()));
+    }
+
+    private static byte @NotNull [] toBytes(@NotNull IPAddress address) { return (address.isIPv4() ? address.toIPv6() : address).getBytes(); }
+}
@@ -0,0 +1,149 @@
+package me.egg82.antivpn.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.egg82.antivpn.logging.GELFLogger;
+import me.egg82.antivpn.storage.StorageService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fans reads and writes out across the configured storage services.
+ *
+ * <p>Reads go to the services in priority order, and if a service hasn't answered within the
+ * hedge delay the next one is queried alongside it. Writes go to every service at once. Either
+ * way, a failing service is logged and skipped rather than failing the whole operation.</p>
+ */
+public class StorageUtil {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(StorageUtil.class));
+
+    // Cached rather than fixed so a hung backend only ties up its own threads
+    private static final ExecutorService workPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Anti-VPN_Storage_%d").setDaemon(true).build());
+
+    private static volatile long hedgeDelay = 50L;
+
+    private StorageUtil() { }
+
+    public static void setHedgeDelay(long millis) {
+        if (millis < 0L) {
+            throw new IllegalArgumentException("millis cannot be < 0.");
+        }
+        hedgeDelay = millis;
+    }
+
+    /**
+     * Returns the first non-null result from the services, or null if none of them had one.
+     */
+    public static <T> @Nullable T getFirst(@NotNull List<@NotNull StorageService> services, @NotNull Function<@NotNull StorageService, @Nullable T> reader) {
+        if (services.isEmpty()) {
+            return null;
+        }
+        if (services.size() == 1) {
+            return reader.apply(services.get(0));
+        }
+
+        CompletionService<T> completion = new ExecutorCompletionService<>(workPool);
+        List<Future<T>> futures = new ArrayList<>();
+        int next = 0;
+        int running = 0;
+        try {
+            futures.add(completion.submit(read(services.get(next++), reader)));
+            running++;
+
+            while (running > 0) {
+                Future<T> done = next < services.size() ? completion.poll(hedgeDelay, TimeUnit.MILLISECONDS) : completion.take();
+                if (done == null) {
+                    // Slow to answer, so hedge with the next service
+                    futures.add(completion.submit(read(services.get(next++), reader)));
+                    running++;
+                    continue;
+                }
+
+                running--;
+                T retVal = done.get();
+                if (retVal != null) {
+                    return retVal;
+                }
+                if (running == 0 && next < services.size()) {
+                    // Missed without anything else in flight, no point waiting out the delay
+                    futures.add(completion.submit(read(services.get(next++), reader)));
+                    running++;
+                }
+            }
+            return null;
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            // read() handles failures, so this shouldn't happen
+            logger.error(ex.getMessage(), ex);
+            return null;
+        } finally {
+            for (Future<T> future : futures) {
+                // Not interrupted, since that can leave pooled JDBC connections in a bad state
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Runs the writer against every service at once and waits for all of them.
+     * Only throws if every service failed.
+     */
+    public static void forEach(@NotNull List<@NotNull StorageService> services, @NotNull Consumer<@NotNull StorageService> writer) {
+        if (services.size() <= 1) {
+            for (StorageService service : services) {
+                writer.accept(service);
+            }
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(services.size());
+        for (StorageService service : services) {
+            futures.add(workPool.submit(() -> writer.accept(service)));
+        }
+
+        Throwable lastError = null;
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                lastError = ex.getCause() != null ? ex.getCause() : ex;
+                failed++;
+                logger.error("Could not write to storage service " + services.get(i).getName() + ".", lastError);
+            }
+        }
+
+        if (failed == services.size()) {
+            if (lastError instanceof RuntimeException) {
+                throw (RuntimeException) lastError;
+            }
+            if (lastError instanceof Error) {
+                throw (Error) lastError;
+            }
+            throw new CompletionException(lastError);
+        }
+    }
+
+    private static <T> @NotNull Callable<T> read(@NotNull StorageService service, @NotNull Function<@NotNull StorageService, @Nullable T> reader) {
+        return () -> {
+            try {
+                return reader.apply(service);
+            } catch (RuntimeException ex) {
+                logger.error("Could not read from storage service " + service.getName() + ".", ex);
+                return null;
+            }
+        };
+    }
+}
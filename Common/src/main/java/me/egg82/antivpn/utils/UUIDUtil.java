@@ -1,9 +1,30 @@
 package me.egg82.antivpn.utils;
 
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 public class UUIDUtil {
     private UUIDUtil() { }
 
     public static final UUID EMPTY_UUID = new UUID(0L, 0L);
+
+    /**
+     * Big-endian, the same layout storage uses for BINARY(16) UUID columns.
+     */
+    public static byte @NotNull [] toBytes(@NotNull UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static @NotNull UUID fromBytes(byte @NotNull [] bytes) {
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("bytes must be 16 bytes long.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
 }
@@ -0,0 +1,152 @@
+package me.egg82.antivpn.web;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.logging.GELFLogger;
+import me.egg82.antivpn.utils.ValidationUtil;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Caches A/AAAA lookups for the hosts the plugin talks to and keeps them fresh in the background.
+ *
+ * <p>HttpURLConnection can't be handed a resolver on Java 8, so this works by re-resolving
+ * hosts before either this cache or the JVM's own address cache expires. Connections then
+ * find a warm entry instead of blocking on a (possibly slow) resolver during a login burst.</p>
+ */
+public class HostResolver {
+    private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(HostResolver.class));
+
+    private static final ScheduledExecutorService refreshPool = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Anti-VPN_HostResolver_%d").setDaemon(true).build()
+    );
+    private static final ConcurrentMap<String, CachedHost> cache = new ConcurrentHashMap<>();
+    private static volatile Set<String> pinnedHosts = Collections.emptySet();
+
+    private static volatile long ttl = 300000L;
+    private static ScheduledFuture<?> refreshTask = null;
+
+    static {
+        setTtl(ttl);
+    }
+
+    private HostResolver() { }
+
+    public static synchronized void setTtl(long ttlMillis) {
+        if (ttlMillis <= 0L) {
+            throw new IllegalArgumentException("ttlMillis cannot be <= 0.");
+        }
+        ttl = ttlMillis;
+
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+        long period = Math.max(1000L, Math.min(ttlMillis, getJvmTtl()) / 2L);
+        refreshTask = refreshPool.scheduleAtFixedRate(HostResolver::refresh, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static @NotNull InetAddress @NotNull [] resolve(@NotNull String host) throws UnknownHostException {
+        CachedHost cached = cache.get(host);
+        if (cached != null && cached.expires > System.currentTimeMillis()) {
+            cached.lastAccess = System.currentTimeMillis();
+            return cached.addresses;
+        }
+        return lookup(host);
+    }
+
+    /**
+     * Resolves the given hosts in the background and keeps them
+     * refreshed until the next call, regardless of use.
+     */
+    public static void prefetch(@NotNull Collection<@NotNull String> hosts) {
+        Set<String> newHosts = new HashSet<>();
+        for (String host : hosts) {
+            if (!ValidationUtil.isValidIp(host)) {
+                newHosts.add(host);
+            }
+        }
+        pinnedHosts = Collections.unmodifiableSet(newHosts);
+
+        for (String host : newHosts) {
+            refreshPool.execute(() -> tryLookup(host));
+        }
+    }
+
+    private static @NotNull InetAddress @NotNull [] lookup(@NotNull String host) throws UnknownHostException {
+        // Also (re-)populates the JVM's own address cache, which HttpURLConnection uses
+        InetAddress[] retVal = InetAddress.getAllByName(host);
+        long now = System.currentTimeMillis();
+        CachedHost cached = cache.get(host);
+        cache.put(host, new CachedHost(retVal, now + ttl, cached != null ? cached.lastAccess : now));
+        return retVal;
+    }
+
+    private static void tryLookup(@NotNull String host) {
+        try {
+            lookup(host);
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info("Resolved host " + host);
+            }
+        } catch (UnknownHostException ex) {
+            // Keep serving the stale entry until it expires, the resolver may just be having a bad moment
+            logger.warn("Could not resolve host " + host + ": " + ex.getMessage());
+        }
+    }
+
+    private static void refresh() {
+        long now = System.currentTimeMillis();
+        Set<String> pinned = pinnedHosts;
+        for (Map.Entry<String, CachedHost> kvp : cache.entrySet()) {
+            if (!pinned.contains(kvp.getKey()) && now - kvp.getValue().lastAccess > ttl) {
+                cache.remove(kvp.getKey(), kvp.getValue());
+                continue;
+            }
+            tryLookup(kvp.getKey());
+        }
+        for (String host : pinned) {
+            if (!cache.containsKey(host)) {
+                tryLookup(host);
+            }
+        }
+    }
+
+    private static long getJvmTtl() {
+        // Default positive TTL for the JVM's address cache when no security manager is installed
+        long retVal = 30000L;
+        String property = Security.getProperty("networkaddress.cache.ttl");
+        if (property != null) {
+            try {
+                long seconds = Long.parseLong(property.trim());
+                if (seconds > 0L) {
+                    retVal = seconds * 1000L;
+                } else if (seconds < 0L) {
+                    retVal = Long.MAX_VALUE; // Cached forever
+                }
+            } catch (NumberFormatException ignored) { }
+        }
+        return retVal;
+    }
+
+    private static class CachedHost {
+        private final @NotNull InetAddress @NotNull [] addresses;
+        private final long expires;
+        private volatile long lastAccess;
+
+        private CachedHost(@NotNull InetAddress @NotNull [] addresses, long expires, long lastAccess) {
+            this.addresses = addresses;
+            this.expires = expires;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package me.egg82.antivpn.web;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import me.egg82.antivpn.config.ConfigUtil;
 import me.egg82.antivpn.logging.GELFLogger;
 import me.egg82.antivpn.utils.TimeUtil;
@@ -13,16 +17,26 @@ import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class WebRequest {
     private static final Logger logger = new GELFLogger(LoggerFactory.getLogger(WebRequest.class));
 
+    private static ExecutorService workPool = Executors.newFixedThreadPool(4, new ThreadFactoryBuilder().setNameFormat("Anti-VPN_Web_%d").build());
+
+    private static final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    private static volatile int maxConnectionsPerHost = 4;
+    private static volatile int maxBodySize = 1024 * 1024;
+    private static final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, URL> baseUrls = new ConcurrentHashMap<>();
+
     private final URL url;
     private RequestMethod method = RequestMethod.GET;
     private TimeUtil.Time timeout = new TimeUtil.Time(5L, TimeUnit.SECONDS);
@@ -37,10 +51,65 @@ public class WebRequest {
         this.url = url;
     }
 
+    public static void setPoolSize(int size, int connectionsPerHost) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size cannot be <= 0.");
+        }
+        if (connectionsPerHost <= 0) {
+            throw new IllegalArgumentException("connectionsPerHost cannot be <= 0.");
+        }
+
+        ExecutorService oldPool = workPool;
+        workPool = Executors.newFixedThreadPool(size, new ThreadFactoryBuilder().setNameFormat("Anti-VPN_Web_%d").build());
+        oldPool.shutdown();
+
+        // In-flight requests keep the permits they already hold, new ones will use the new limit
+        maxConnectionsPerHost = connectionsPerHost;
+        hostPermits.clear();
+    }
+
+    public static void setMaxBodySize(int bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("bytes cannot be <= 0.");
+        }
+        maxBodySize = bytes;
+    }
+
+    /**
+     * Sends every request for the given host to a different base URL instead,
+     * keeping the original path and query. Used to point sources at a local
+     * server for offline testing and benchmarking.
+     *
+     * @param host the host to redirect, as it appears in request URLs
+     * @param baseUrl the URL to send requests to, or null to remove the override
+     */
+    public static void setBaseUrl(@NotNull String host, @Nullable URL baseUrl) {
+        if (baseUrl == null) {
+            baseUrls.remove(host.toLowerCase(Locale.ROOT));
+        } else {
+            baseUrls.put(host.toLowerCase(Locale.ROOT), baseUrl);
+        }
+    }
+
+    public static void clearBaseUrls() { baseUrls.clear(); }
+
+    private static @NotNull URL getTargetUrl(@NotNull URL url) throws IOException {
+        if (baseUrls.isEmpty()) {
+            return url;
+        }
+        URL baseUrl = baseUrls.get(url.getHost().toLowerCase(Locale.ROOT));
+        if (baseUrl == null) {
+            return url;
+        }
+        String basePath = baseUrl.getPath().endsWith("/") ? baseUrl.getPath().substring(0, baseUrl.getPath().length() - 1) : baseUrl.getPath();
+        return new URL(baseUrl.getProtocol(), baseUrl.getHost(), baseUrl.getPort(), basePath + url.getFile());
+    }
+
     public static final Map<String, String> DEFAULT_HEADERS = new HashMap<>();
 
     static {
         DEFAULT_HEADERS.put("Accept-Language", "en-US,en;q=0.8");
+        DEFAULT_HEADERS.put("Accept-Encoding", "gzip, deflate");
     }
 
     public static @NotNull String urlEncode(@NotNull String part) {
@@ -55,53 +124,239 @@ public class WebRequest {
         }
     }
 
-    public @NotNull String getString() throws IOException { return getString(getConnection()); }
+    public <T> T execute(@NotNull ConnectionHandler<T> handler) throws IOException {
+        URL target = getTargetUrl(url);
+        if (proxy == null) {
+            // Usually a cache hit, fails fast on unresolvable hosts before a permit is taken
+            HostResolver.resolve(target.getHost());
+        }
 
-    public static @NotNull String getString(@NotNull HttpURLConnection connection) throws IOException {
-        String sep = System.lineSeparator();
-
-        try (InputStream in = getInputStream(connection); InputStreamReader reader = new InputStreamReader(in); BufferedReader buffer = new BufferedReader(reader)) {
-            StringBuilder builder = new StringBuilder();
-            String line;
-            while ((line = buffer.readLine()) != null) {
-                builder.append(line);
-                builder.append(sep);
+        Semaphore permits = hostPermits.computeIfAbsent(getHostKey(target), k -> new Semaphore(maxConnectionsPerHost, true));
+        try {
+            if (!permits.tryAcquire(timeout.getMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a free connection to " + target.getHost());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free connection to " + target.getHost());
+        }
+
+        HttpURLConnection conn = null;
+        try {
+            conn = getConnection();
+            // Handlers may not read the whole body, so the connection is always released afterwards
+            return handler.handle(conn);
+        } finally {
+            if (conn != null) {
+                release(conn);
             }
-            if (builder.length() > 0) {
-                builder.delete(builder.length() - sep.length(), builder.length());
+            permits.release();
+        }
+    }
+
+    public <T> @NotNull CompletableFuture<T> executeAsync(@NotNull ConnectionHandler<T> handler) {
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        try {
+            workPool.execute(() -> {
+                try {
+                    retVal.complete(execute(handler));
+                } catch (Throwable ex) {
+                    retVal.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            retVal.completeExceptionally(ex);
+        }
+        return retVal;
+    }
+
+    public @NotNull CompletableFuture<@NotNull String> getStringAsync() { return executeAsync(WebRequest::getString); }
+
+    public @NotNull CompletableFuture<byte @NotNull []> getBytesAsync() { return executeAsync(WebRequest::getBytes); }
+
+    public @NotNull String getString() throws IOException { return execute(WebRequest::getString); }
+
+    public static @NotNull String getString(@NotNull HttpURLConnection connection) throws IOException {
+        ByteBuf buffer = readBody(connection);
+        try {
+            int end = buffer.writerIndex();
+            // Match the old line-based reader, which never returned the final line break
+            if (end > buffer.readerIndex() && buffer.getByte(end - 1) == '\n') {
+                end--;
+                if (end > buffer.readerIndex() && buffer.getByte(end - 1) == '\r') {
+                    end--;
+                }
             }
-            return builder.toString();
+            return buffer.toString(buffer.readerIndex(), end - buffer.readerIndex(), getCharset(connection));
+        } finally {
+            buffer.release();
         }
     }
 
-    public byte @NotNull [] getBytes() throws IOException { return getBytes(getConnection()); }
+    public byte @NotNull [] getBytes() throws IOException { return execute(WebRequest::getBytes); }
 
     public static byte @NotNull [] getBytes(@NotNull HttpURLConnection connection) throws IOException {
-        try (InputStream in = getInputStream(connection); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+        // Fast path: uncompressed body with a known length can be read straight into the result
+        long length = connection.getContentLengthLong();
+        if (length >= 0L && getContentEncoding(connection) == null) {
+            if (length > maxBodySize) {
+                throw new IOException("Response body of " + length + " bytes exceeds the maximum of " + maxBodySize + " bytes.");
+            }
+            byte[] retVal = new byte[(int) length];
+            try (InputStream in = connection.getInputStream()) {
+                int total = 0;
+                int read;
+                while (total < retVal.length && (read = in.read(retVal, total, retVal.length - total)) > 0) {
+                    total += read;
+                }
+                if (total < retVal.length) {
+                    throw new EOFException("Response body ended after " + total + " of " + length + " bytes.");
+                }
+            }
+            return retVal;
+        }
+
+        ByteBuf buffer = readBody(connection);
+        try {
+            byte[] retVal = new byte[buffer.readableBytes()];
+            buffer.readBytes(retVal);
+            return retVal;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    public @NotNull InputStream getInputStream() throws IOException { return getInputStream(getConnection()); }
+
+    public static @NotNull InputStream getInputStream(@NotNull HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        String encoding = getContentEncoding(connection);
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            in = new GZIPInputStream(in, READ_BUFFER_SIZE);
+        } else if ("deflate".equals(encoding)) {
+            in = getDeflateStream(in);
+        }
+        // Applied after decoding so a small compressed body can't expand past the limit
+        return new LimitedInputStream(in, maxBodySize);
+    }
+
+    @NotNull
+    private static ByteBuf readBody(@NotNull HttpURLConnection connection) throws IOException {
+        long length = connection.getContentLengthLong();
+        int initialCapacity = length > 0L && length <= maxBodySize ? (int) length : READ_BUFFER_SIZE;
+
+        ByteBuf buffer = alloc.buffer(initialCapacity);
+        try (InputStream in = getInputStream(connection)) {
             int read;
+            do {
+                read = buffer.writeBytes(in, READ_BUFFER_SIZE); // LimitedInputStream enforces the size cap
+            } while (read != -1);
+            return buffer;
+        } catch (IOException | RuntimeException ex) {
+            buffer.release();
+            throw ex;
+        }
+    }
+
+    @Nullable
+    private static String getContentEncoding(@NotNull HttpURLConnection connection) {
+        String encoding = connection.getContentEncoding();
+        if (encoding == null) {
+            return null;
+        }
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
+        return encoding.isEmpty() || encoding.equals("identity") ? null : encoding;
+    }
+
+    @NotNull
+    private static Charset getCharset(@NotNull HttpURLConnection connection) {
+        String contentType = connection.getContentType();
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                param = param.trim();
+                if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                    try {
+                        return Charset.forName(param.substring(8).replace("\"", "").trim());
+                    } catch (IllegalArgumentException ignored) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    @NotNull
+    private static InputStream getDeflateStream(@NotNull InputStream in) throws IOException {
+        // "deflate" is supposed to be zlib-wrapped, but plenty of servers send raw deflate data
+        BufferedInputStream buffered = new BufferedInputStream(in, READ_BUFFER_SIZE);
+        buffered.mark(2);
+        int b0 = buffered.read();
+        int b1 = buffered.read();
+        buffered.reset();
+        boolean zlib = b0 != -1 && b1 != -1 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+
+        Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(buffered, inflater, READ_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    // HttpURLConnection only hands a socket back to the keep-alive cache once the body has been fully read and closed
+    public static void release(@NotNull HttpURLConnection connection) {
+        InputStream in;
+        try {
+            in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        } catch (IOException ignored) {
+            in = connection.getErrorStream();
+        }
+        if (in == null) {
+            return;
+        }
+
+        try {
             byte[] buffer = new byte[4096];
+            int total = 0;
+            int read;
             while ((read = in.read(buffer, 0, buffer.length)) > 0) {
-                out.write(buffer, 0, read);
+                total += read;
+                if (total > MAX_DRAIN_BYTES) { // Not worth reading, drop the socket instead
+                    connection.disconnect();
+                    return;
+                }
             }
-            out.flush();
-            return out.toByteArray();
+        } catch (IOException ignored) {
+            // Stream was already consumed and closed by the handler
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) { }
         }
     }
 
-    public @NotNull InputStream getInputStream() throws IOException { return getInputStream(getConnection()); }
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
 
-    public static @NotNull InputStream getInputStream(@NotNull HttpURLConnection connection) throws IOException { return connection.getInputStream(); }
+    private static @NotNull String getHostKey(@NotNull URL url) { return url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() == -1 ? url.getDefaultPort() : url.getPort()); }
 
     public @NotNull HttpURLConnection getConnection() throws IOException {
+        URL target = getTargetUrl(url);
         if (ConfigUtil.getDebugOrFalse()) {
-            logger.info("Fetching URL: " + url);
+            logger.info("Fetching URL: " + target);
         }
 
-        HttpURLConnection retVal = (HttpURLConnection) (proxy != null ? url.openConnection(proxy) : url.openConnection());
+        HttpURLConnection retVal = (HttpURLConnection) (proxy != null ? target.openConnection(proxy) : target.openConnection());
         setConnectionProperties(retVal, null);
 
         Set<String> previousUrls = new HashSet<>();
-        previousUrls.add(url.toExternalForm() + (headers.containsKey("Set-Cookie") ? ":" + headers.get("Set-Cookie") : ""));
+        previousUrls.add(target.toExternalForm() + (headers.containsKey("Set-Cookie") ? ":" + headers.get("Set-Cookie") : ""));
 
         int status;
         boolean redirect;
@@ -113,7 +368,9 @@ public class WebRequest {
                 String cookies = retVal.getHeaderField("Set-Cookie");
                 String newUrl = retVal.getHeaderField("Location");
                 if (newUrl.charAt(0) == '/') {
-                    newUrl = new URL(url.getProtocol(), url.getHost(), url.getPort(), newUrl, null).toExternalForm();
+                    newUrl = new URL(target.getProtocol(), target.getHost(), target.getPort(), newUrl, null).toExternalForm();
+                } else {
+                    newUrl = getTargetUrl(new URL(newUrl)).toExternalForm();
                 }
                 if (!previousUrls.add(newUrl + (cookies != null ? ":" + cookies : ""))) {
                     throw new IOException("Recursive redirect detected.");
@@ -124,6 +381,7 @@ public class WebRequest {
                 if (ConfigUtil.getDebugOrFalse()) {
                     logger.info("Redirected to URL: " + newUrl);
                 }
+                release(retVal);
                 retVal = (HttpURLConnection) (proxy != null ? new URL(newUrl).openConnection(proxy) : new URL(newUrl).openConnection());
                 setConnectionProperties(retVal, cookies);
             }
@@ -206,6 +464,29 @@ public class WebRequest {
         }
     }
 
+    public @NotNull URL getUrl() { return url; }
+
+    public @NotNull RequestMethod getMethod() { return method; }
+
+    public @NotNull TimeUtil.Time getTimeout() { return timeout; }
+
+    /**
+     * Returns a copy of this request with a different timeout,
+     * used to shrink a retried request to the time left for it.
+     */
+    public @NotNull WebRequest withTimeout(@NotNull TimeUtil.Time value) {
+        WebRequest retVal = new WebRequest(url);
+        retVal.method = method;
+        retVal.timeout = value;
+        retVal.headers.putAll(headers);
+        retVal.formData.putAll(formData);
+        retVal.outputData = outputData;
+        retVal.maxRedirects = maxRedirects;
+        retVal.throwOnStandardErrors = throwOnStandardErrors;
+        retVal.proxy = proxy;
+        return retVal;
+    }
+
     public static @NotNull WebRequest.Builder builder(@NotNull URL url) { return new WebRequest.Builder(url); }
 
     public static class Builder {
@@ -348,6 +629,56 @@ public class WebRequest {
         }
     }
 
+    private static class LimitedInputStream extends FilterInputStream {
+        private final int limit;
+        private int count = 0;
+
+        private LimitedInputStream(@NotNull InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int retVal = super.read();
+            if (retVal != -1) {
+                count(1);
+            }
+            return retVal;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            int retVal = super.read(b, off, len);
+            if (retVal > 0) {
+                count(retVal);
+            }
+            return retVal;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long retVal = super.skip(n);
+            count((int) retVal);
+            return retVal;
+        }
+
+        @Override
+        public boolean markSupported() { return false; }
+
+        private void count(int read) throws IOException {
+            count += read;
+            if (count > limit) {
+                throw new IOException("Response body exceeds the maximum of " + limit + " bytes.");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ConnectionHandler<T> {
+        T handle(@NotNull HttpURLConnection connection) throws IOException;
+    }
+
     public enum RequestMethod {
         GET,
         HEAD,
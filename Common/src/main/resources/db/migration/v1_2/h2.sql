@@ -0,0 +1,23 @@
+DROP TABLE `avpn_6_ip`;
+
+CREATE TABLE `avpn_6_ip` (
+	`id`	IDENTITY NOT NULL PRIMARY KEY,
+	`version`	INT NOT NULL,
+	`created`	TIMESTAMP NOT NULL,
+	`modified`	TIMESTAMP NOT NULL,
+	`ip`	VARBINARY(16) NOT NULL UNIQUE,
+	`type`	INT NOT NULL,
+	`cascade`	BOOLEAN,
+	`consensus`	DOUBLE
+);
+
+DROP TABLE `avpn_6_player`;
+
+CREATE TABLE `avpn_6_player` (
+	`id`	IDENTITY NOT NULL PRIMARY KEY,
+	`version`	INT NOT NULL,
+	`created`	TIMESTAMP NOT NULL,
+	`modified`	TIMESTAMP NOT NULL,
+	`uuid`	BINARY(16) NOT NULL UNIQUE,
+	`mcleaks`	BOOLEAN NOT NULL
+);
\ No newline at end of file
@@ -0,0 +1,13 @@
+ALTER TABLE `avpn_6_ip` ADD COLUMN `ip_bin` VARBINARY(16);
+UPDATE `avpn_6_ip` SET `ip_bin` = CONCAT(UNHEX('00000000000000000000FFFF'), UNHEX(LPAD(HEX(INET_ATON(`ip`)), 8, '0'))) WHERE `ip` NOT LIKE '%:%';
+DELETE FROM `avpn_6_ip` WHERE `ip_bin` IS NULL;
+ALTER TABLE `avpn_6_ip` DROP COLUMN `ip`;
+ALTER TABLE `avpn_6_ip` CHANGE COLUMN `ip_bin` `ip` VARBINARY(16) NOT NULL;
+ALTER TABLE `avpn_6_ip` ADD UNIQUE INDEX `uq_avpn_6_ip_ip` (`ip`);
+
+ALTER TABLE `avpn_6_player` ADD COLUMN `uuid_bin` BINARY(16);
+UPDATE `avpn_6_player` SET `uuid_bin` = UNHEX(REPLACE(`uuid`, '-', ''));
+DELETE FROM `avpn_6_player` WHERE `uuid_bin` IS NULL;
+ALTER TABLE `avpn_6_player` DROP COLUMN `uuid`;
+ALTER TABLE `avpn_6_player` CHANGE COLUMN `uuid_bin` `uuid` BINARY(16) NOT NULL;
+ALTER TABLE `avpn_6_player` ADD UNIQUE INDEX `uq_avpn_6_player_uuid` (`uuid`);
\ No newline at end of file
@@ -0,0 +1,15 @@
+ALTER TABLE "avpn_6_ip" ADD COLUMN "ip_bin" BYTEA;
+UPDATE "avpn_6_ip" SET "ip_bin" = CASE WHEN family("ip"::inet) = 4 THEN decode('00000000000000000000ffff', 'hex') || substring(inet_send("ip"::inet) from 5) ELSE substring(inet_send("ip"::inet) from 5) END;
+DELETE FROM "avpn_6_ip" WHERE "ip_bin" IS NULL;
+ALTER TABLE "avpn_6_ip" DROP COLUMN "ip";
+ALTER TABLE "avpn_6_ip" RENAME COLUMN "ip_bin" TO "ip";
+ALTER TABLE "avpn_6_ip" ALTER COLUMN "ip" SET NOT NULL;
+ALTER TABLE "avpn_6_ip" ADD CONSTRAINT "uq_avpn_6_ip_ip" UNIQUE ("ip");
+
+ALTER TABLE "avpn_6_player" ADD COLUMN "uuid_bin" BYTEA;
+UPDATE "avpn_6_player" SET "uuid_bin" = decode(replace("uuid", '-', ''), 'hex');
+DELETE FROM "avpn_6_player" WHERE "uuid_bin" IS NULL;
+ALTER TABLE "avpn_6_player" DROP COLUMN "uuid";
+ALTER TABLE "avpn_6_player" RENAME COLUMN "uuid_bin" TO "uuid";
+ALTER TABLE "avpn_6_player" ALTER COLUMN "uuid" SET NOT NULL;
+ALTER TABLE "avpn_6_player" ADD CONSTRAINT "uq_avpn_6_player_uuid" UNIQUE ("uuid");
\ No newline at end of file
@@ -0,0 +1,25 @@
+DROP TABLE "avpn_6_ip";
+
+CREATE TABLE "avpn_6_ip" (
+	"id"	INTEGER NOT NULL,
+	"version"	INTEGER NOT NULL,
+	"created"	INTEGER NOT NULL,
+	"modified"	INTEGER NOT NULL,
+	"ip"	BLOB NOT NULL UNIQUE,
+	"type"	INTEGER NOT NULL,
+	"cascade"	INTEGER,
+	"consensus"	REAL,
+	PRIMARY KEY("id" AUTOINCREMENT)
+);
+
+DROP TABLE "avpn_6_player";
+
+CREATE TABLE "avpn_6_player" (
+	"id"	INTEGER NOT NULL,
+	"version"	INTEGER NOT NULL,
+	"created"	INTEGER NOT NULL,
+	"modified"	INTEGER NOT NULL,
+	"uuid"	BLOB NOT NULL UNIQUE,
+	"mcleaks"	INTEGER NOT NULL,
+	PRIMARY KEY("id" AUTOINCREMENT)
+);
\ No newline at end of file
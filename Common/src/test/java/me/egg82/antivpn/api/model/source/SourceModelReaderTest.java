@@ -0,0 +1,155 @@
+package me.egg82.antivpn.api.model.source;
+
+import flexjson.JSONDeserializer;
+import flexjson.JSONSerializer;
+import me.egg82.antivpn.api.model.source.models.*;
+import me.egg82.antivpn.json.JsonReader;
+import me.egg82.antivpn.json.ModelReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+Binds every recorded fixture with each source's reader and with flexjson, which the sources used before
+ */
+class SourceModelReaderTest {
+    private static final String IP = "8.8.8.8";
+
+    private static final List<Case<?>> cases = new ArrayList<>();
+
+    static {
+        add("getipintel", "ok", GetIPIntelModel.class, GetIPIntel::readModel);
+        add("getipintel", "banned", GetIPIntelModel.class, GetIPIntel::readModel);
+        add("ip2proxy", "ok", IP2ProxyModel.class, IP2Proxy::readModel);
+        add("iphub", "ok", IPHubModel.class, IPHub::readModel);
+        add("iphub", "invalid-key", IPHubModel.class, IPHub::readModel);
+        add("iphunter", "ok", IPHunterModel.class, IPHunter::readModel);
+        add("ipinfo", "ok", IPInfoModel.class, IPInfo::readModel);
+        add("ipinfo", "invalid-token", IPInfoModel.class, IPInfo::readModel);
+        add("ipqualityscore", "ok", IPQualityScoreModel.class, IPQualityScore::readModel);
+        add("iptrooper", "ok", IPTrooperModel.class, IPTrooper::readModel);
+        add("iptrooper", "limit", IPTrooperModel.class, IPTrooper::readModel);
+        add("shodan", "ok", ShodanModel.class, Shodan::readModel);
+        add("teoh", "ok", TeohModel.class, Teoh::readModel);
+        add("vpnblocker", "ok", VPNBlockerModel.class, VPNBlocker::readModel);
+        for (String fixture : new String[] { "ok", "ok-batch", "denied" }) {
+            cases.add(new Case<>("proxycheck", fixture, r -> ProxyCheck.readModel(r, IP), SourceModelReaderTest::readProxyCheck));
+        }
+    }
+
+    @Test
+    void testFixtures() throws IOException {
+        for (Case<?> c : cases) {
+            Assertions.assertEquals(c.flexjson.apply(c.body), c.read(), c.toString());
+        }
+    }
+
+    /*
+    Compares this against flexjson. Not run by default, use -Dantivpn.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "antivpn.benchmark", matches = "true")
+    void benchmarkAgainstFlexjson() throws IOException {
+        int iterations = Integer.getInteger("antivpn.benchmark.iterations", 20_000);
+        for (Case<?> c : cases) {
+            // Warm both up so the JIT has had a go before anything is timed
+            for (int i = 0; i < iterations / 10; i++) {
+                c.read();
+                c.flexjson.apply(c.body);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                c.read();
+            }
+            long readerNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                c.flexjson.apply(c.body);
+            }
+            long flexjsonNanos = System.nanoTime() - start;
+
+            System.out.println(String.format(
+                    "[%s] %d reads: JsonReader %.0f/s, flexjson %.0f/s (%.1fx)",
+                    c,
+                    iterations,
+                    perSecond(iterations, readerNanos),
+                    perSecond(iterations, flexjsonNanos),
+                    (double) flexjsonNanos / (double) readerNanos
+            ));
+        }
+    }
+
+    private static double perSecond(int count, long nanos) { return count / (nanos / 1_000_000_000.0d); }
+
+    private static <T> void add(String source, String fixture, Class<T> type, ModelReader<T> reader) {
+        cases.add(new Case<>(source, fixture, reader, body -> new JSONDeserializer<T>().deserialize(body, type)));
+    }
+
+    // The same two passes ProxyCheck used to make, since the result is keyed by the IP
+    private static ProxyCheckModel readProxyCheck(String body) {
+        Map<String, Object> map = new JSONDeserializer<Map<String, Object>>().deserialize(body);
+        ProxyCheckModel.IP ipModel = null;
+        if (map.containsKey(IP)) {
+            ipModel = new JSONDeserializer<ProxyCheckModel.IP>().deserialize(new JSONSerializer().exclude("*.class").deepSerialize(map.get(IP)), ProxyCheckModel.IP.class);
+        }
+        ProxyCheckModel retVal = new JSONDeserializer<ProxyCheckModel>().deserialize(body, ProxyCheckModel.class);
+        retVal.setIp(ipModel);
+        return retVal;
+    }
+
+    private static String load(String source, String fixture) {
+        String path = "/fixtures/" + source + "/" + fixture + ".json";
+        try (InputStream in = SourceModelReaderTest.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Could not find recorded response " + path);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static final class Case<T> {
+        private final String source;
+        private final String fixture;
+        private final String body;
+        private final ModelReader<T> reader;
+        private final Function<String, T> flexjson;
+
+        private Case(String source, String fixture, ModelReader<T> reader, Function<String, T> flexjson) {
+            this.source = source;
+            this.fixture = fixture;
+            this.body = load(source, fixture);
+            this.reader = reader;
+            this.flexjson = flexjson;
+        }
+
+        private T read() throws IOException {
+            try (JsonReader json = new JsonReader(new StringReader(body))) {
+                return reader.read(json);
+            }
+        }
+
+        @Override
+        public String toString() { return source + "/" + fixture; }
+    }
+}
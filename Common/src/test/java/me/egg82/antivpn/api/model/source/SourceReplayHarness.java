@@ -0,0 +1,61 @@
+package me.egg82.antivpn.api.model.source;
+
+import me.egg82.antivpn.config.CachedConfig;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.web.StubHttpServer;
+import me.egg82.antivpn.web.WebRequest;
+import org.jetbrains.annotations.NotNull;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.ConfigurationNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Wires bundled sources up to a {@link StubHttpServer} with a minimal configuration,
+ * so they can be exercised without keys or network access.
+ */
+public class SourceReplayHarness implements Closeable {
+    private final @NotNull StubHttpServer server;
+
+    public SourceReplayHarness() throws IOException { this(CachedConfig.builder().build()); }
+
+    public SourceReplayHarness(@NotNull CachedConfig cachedConfig) throws IOException {
+        server = new StubHttpServer();
+        // Sources read the config when they're created, so this has to come first
+        ConfigUtil.setConfiguration(createConfig(), cachedConfig, null);
+    }
+
+    @NotNull
+    public StubHttpServer getServer() { return server; }
+
+    /**
+     * Points the source's hosts at the stub server.
+     */
+    @NotNull
+    public <T extends AbstractSource<?>> T load(@NotNull T source) throws IOException {
+        for (String host : source.getHostnames()) {
+            WebRequest.setBaseUrl(host, server.getBaseUrl(source.getName()));
+        }
+        return source;
+    }
+
+    @Override
+    public void close() {
+        WebRequest.clearBaseUrls();
+        server.close();
+        ConfigUtil.setConfiguration(null, null, null);
+    }
+
+    @NotNull
+    private static ConfigurationNode createConfig() {
+        CommentedConfigurationNode retVal = CommentedConfigurationNode.root();
+        for (String source : new String[] { "proxycheck", "iptrooper", "getipintel", "ipqualityscore", "iphub", "iphunter", "vpnblocker", "ip2proxy", "shodan", "ipinfo", "teoh" }) {
+            retVal.node("sources", source, "enabled").raw(Boolean.TRUE);
+            retVal.node("sources", source, "key").raw("test");
+        }
+        retVal.node("sources", "getipintel", "contact").raw("test@example.com");
+        retVal.node("sources", "getipintel", "subdomain").raw("check");
+        return retVal;
+    }
+}
@@ -0,0 +1,186 @@
+package me.egg82.antivpn.api.model.source;
+
+import me.egg82.antivpn.api.APIException;
+import me.egg82.antivpn.web.Fixture;
+import me.egg82.antivpn.web.LatencyDistribution;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+class SourceReplayTest {
+    private static final String IP = "8.8.8.8";
+
+    private SourceReplayHarness harness;
+
+    @BeforeEach
+    void setup() throws IOException {
+        harness = new SourceReplayHarness();
+    }
+
+    @AfterEach
+    void teardown() {
+        harness.close();
+    }
+
+    @Test
+    void testRecordedResults() throws IOException, ExecutionException, InterruptedException {
+        Map<AbstractSource<?>, Boolean> expected = new LinkedHashMap<>();
+        expected.put(new ProxyCheck(), Boolean.FALSE);
+        expected.put(new IPTrooper(), Boolean.FALSE);
+        expected.put(new GetIPIntel(), Boolean.TRUE);
+        expected.put(new IPQualityScore(), Boolean.FALSE);
+        expected.put(new IPHub(), Boolean.TRUE);
+        expected.put(new IPHunter(), Boolean.TRUE);
+        expected.put(new VPNBlocker(), Boolean.TRUE);
+        expected.put(new IP2Proxy(), Boolean.FALSE);
+        expected.put(new Shodan(), Boolean.FALSE);
+        expected.put(new IPInfo(), Boolean.FALSE);
+        expected.put(new Teoh(), Boolean.TRUE);
+
+        for (Map.Entry<AbstractSource<?>, Boolean> kvp : expected.entrySet()) {
+            AbstractSource<?> source = harness.load(kvp.getKey());
+            harness.getServer().replay(source.getName(), Fixture.recorded(source.getName(), "ok"));
+
+            Assertions.assertEquals(kvp.getValue(), source.getResult(IP).get(), source.getName());
+            Assertions.assertNotNull(source.getRawResponse(IP).get(), source.getName());
+            // The raw response is shared with the result above
+            Assertions.assertEquals(1, harness.getServer().getRequestCount(source.getName()), source.getName());
+        }
+    }
+
+    @Test
+    void testRecordedErrors() throws IOException {
+        ProxyCheck proxyCheck = harness.load(new ProxyCheck());
+        harness.getServer().replay(proxyCheck.getName(), Fixture.recorded(proxyCheck.getName(), "denied"));
+        assertSoftError(proxyCheck);
+
+        IPTrooper ipTrooper = harness.load(new IPTrooper());
+        harness.getServer().replay(ipTrooper.getName(), Fixture.recorded(ipTrooper.getName(), "limit"));
+        assertSoftError(ipTrooper);
+
+        GetIPIntel getIPIntel = harness.load(new GetIPIntel());
+        harness.getServer().replay(getIPIntel.getName(), Fixture.recorded(getIPIntel.getName(), "banned").withStatus(400));
+        assertHardError(getIPIntel);
+
+        IPHub ipHub = harness.load(new IPHub());
+        harness.getServer().replay(ipHub.getName(), Fixture.recorded(ipHub.getName(), "invalid-key").withStatus(403));
+        assertHardError(ipHub);
+
+        IPInfo ipInfo = harness.load(new IPInfo());
+        harness.getServer().replay(ipInfo.getName(), Fixture.recorded(ipInfo.getName(), "invalid-token").withStatus(403));
+        assertHardError(ipInfo);
+    }
+
+    @Test
+    void testErrorNotCached() throws IOException, ExecutionException, InterruptedException {
+        ProxyCheck source = harness.load(new ProxyCheck());
+        harness.getServer().replay(source.getName(), Fixture.recorded(source.getName(), "denied"), Fixture.recorded(source.getName(), "ok"));
+
+        assertSoftError(source);
+        // The error body parsed fine, but it shouldn't be handed out again until the cache expires
+        Assertions.assertFalse(source.getResult(IP).get());
+        Assertions.assertEquals(2, harness.getServer().getRequestCount(source.getName()));
+    }
+
+    @Test
+    void testServerErrorRetried() throws IOException, ExecutionException, InterruptedException {
+        ProxyCheck source = harness.load(new ProxyCheck());
+        harness.getServer().replay(source.getName(), Fixture.status(503), Fixture.status(502), Fixture.recorded(source.getName(), "ok"));
+
+        Assertions.assertFalse(source.getResult(IP).get());
+        Assertions.assertEquals(3, harness.getServer().getRequestCount(source.getName()));
+    }
+
+    @Test
+    void testTooManyRequests() throws IOException {
+        Teoh source = harness.load(new Teoh());
+        harness.getServer().replay(source.getName(), Fixture.tooManyRequests(60L));
+
+        assertSoftError(source);
+        // Retry-After is longer than the timeout, so the source should be paused instead of retried
+        assertSoftError(source);
+        Assertions.assertEquals(1, harness.getServer().getRequestCount(source.getName()));
+    }
+
+    @Test
+    void testSlowBody() throws IOException, ExecutionException, InterruptedException {
+        IPQualityScore source = harness.load(new IPQualityScore());
+        harness.getServer().replay(source.getName(), Fixture.recorded(source.getName(), "ok").slowBody(64, 20L).latency(LatencyDistribution.uniform(50L, 150L)));
+
+        Assertions.assertFalse(source.getResult(IP).get());
+    }
+
+    @Test
+    void testCompressed() throws IOException, ExecutionException, InterruptedException {
+        Shodan source = harness.load(new Shodan());
+        harness.getServer().replay(source.getName(), Fixture.recorded(source.getName(), "ok").gzip());
+
+        Assertions.assertEquals(Arrays.asList(53, 443), source.getRawResponse(IP).get().getPorts());
+    }
+
+    @Test
+    void testRedirect() throws IOException, ExecutionException, InterruptedException {
+        IPHub source = harness.load(new IPHub());
+        harness.getServer().replay(source.getName(), Fixture.redirect(Fixture.recorded(source.getName(), "ok")));
+
+        Assertions.assertTrue(source.getResult(IP).get());
+        Assertions.assertEquals(2, harness.getServer().getRequestCount(source.getName()));
+    }
+
+    @Test
+    void testBatch() throws IOException, ExecutionException, InterruptedException {
+        ProxyCheck source = harness.load(new ProxyCheck());
+        harness.getServer().replay(source.getName(), Fixture.recorded(source.getName(), "ok-batch"));
+
+        Map<String, Boolean> results = source.getResults(Arrays.asList(IP, "185.220.101.1")).get();
+        Assertions.assertEquals(Boolean.FALSE, results.get(IP));
+        Assertions.assertEquals(Boolean.TRUE, results.get("185.220.101.1"));
+        // Batched responses are cached per IP
+        Assertions.assertNotNull(source.getRawResponse("185.220.101.1").get().getIp());
+        Assertions.assertEquals(1, harness.getServer().getRequestCount(source.getName()));
+    }
+
+    @Test
+    void testBatchFailed() throws IOException {
+        IPHub source = harness.load(new IPHub());
+        harness.getServer().replay(source.getName(), Fixture.recorded(source.getName(), "invalid-key").withStatus(403));
+
+        // Every IP failed, so the batch fails instead of coming back empty
+        ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> source.getResults(Arrays.asList(IP, "185.220.101.1")).get());
+        Assertions.assertTrue(ex.getCause() instanceof APIException);
+        Assertions.assertTrue(((APIException) ex.getCause()).isHard());
+    }
+
+    @Test
+    void testRateLimited() throws IOException, ExecutionException, InterruptedException {
+        GetIPIntel source = harness.load(new GetIPIntel());
+        harness.getServer().replay(source.getName(), Fixture.recorded(source.getName(), "ok"));
+
+        // Permits reserved by the IP manager are used by the requests made for them, not taken twice
+        Assertions.assertEquals(10, source.getRateLimiter().reserve(10));
+        for (int i = 1; i <= 15; i++) {
+            Assertions.assertTrue(source.getResult("10.0.0." + i).get());
+        }
+        // Callers going to the source directly are held to the same 15/minute
+        assertSoftError(source);
+        Assertions.assertEquals(0, source.getRateLimiter().reserve(1));
+        Assertions.assertEquals(15, harness.getServer().getRequestCount(source.getName()));
+    }
+
+    private static void assertSoftError(Source<?> source) { Assertions.assertFalse(getError(source).isHard(), source.getName()); }
+
+    private static void assertHardError(Source<?> source) { Assertions.assertTrue(getError(source).isHard(), source.getName()); }
+
+    private static APIException getError(Source<?> source) {
+        ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> source.getResult(IP).get(), source.getName());
+        Assertions.assertTrue(ex.getCause() instanceof APIException, source.getName());
+        return (APIException) ex.getCause();
+    }
+}
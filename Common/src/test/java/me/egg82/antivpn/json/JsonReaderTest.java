@@ -0,0 +1,190 @@
+package me.egg82.antivpn.json;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+class JsonReaderTest {
+    @Test
+    void testEscapes() throws IOException {
+        for (Function<String, JsonReader> open : readers()) {
+            try (JsonReader reader = open.apply("{\"a\":\"x\\\"y\\\\z\\/\\b\\f\\n\\r\\t\\u00e9\\u4E2D\"}")) {
+                reader.beginObject();
+                Assertions.assertEquals("a", reader.nextName());
+                Assertions.assertEquals("x\"y\\z/\b\f\n\r\t\u00e9\u4e2d", reader.nextString());
+                reader.endObject();
+                Assertions.assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+            }
+        }
+    }
+
+    @Test
+    void testLongString() throws IOException {
+        // Longer than the read buffer, with escapes on either side of where it refills
+        StringBuilder expected = new StringBuilder();
+        StringBuilder json = new StringBuilder("[\"");
+        for (int i = 0; i < 3000; i++) {
+            if (i % 511 == 0) {
+                expected.append('\u00e9');
+                json.append("\\u00e9");
+            } else {
+                expected.append((char) ('a' + i % 26));
+                json.append((char) ('a' + i % 26));
+            }
+        }
+        json.append("\"]");
+
+        for (Function<String, JsonReader> open : readers()) {
+            try (JsonReader reader = open.apply(json.toString())) {
+                reader.beginArray();
+                Assertions.assertEquals(expected.toString(), reader.nextString());
+                reader.endArray();
+            }
+        }
+    }
+
+    @Test
+    void testSkipNested() throws IOException {
+        for (Function<String, JsonReader> open : readers()) {
+            try (JsonReader reader = open.apply("{\"skip\":{\"a\":[1,{\"b\":[]},\"]}\\\"\"],\"c\":null},\"list\":[true,[2,3]],\"keep\":5}")) {
+                reader.beginObject();
+                Assertions.assertEquals("skip", reader.nextName());
+                reader.skipValue();
+                Assertions.assertEquals("list", reader.nextName());
+                reader.skipValue();
+                Assertions.assertEquals("keep", reader.nextName());
+                Assertions.assertEquals(5, reader.nextInt(-1));
+                Assertions.assertFalse(reader.hasNext());
+                reader.endObject();
+            }
+        }
+    }
+
+    @Test
+    void testQuotedNumbers() throws IOException {
+        try (JsonReader reader = open("{\"i\":\"42\",\"l\":\"12345678901\",\"d\":\"0.5\",\"f\":\"1.9\",\"s\":15169,\"bad\":\"abc\"}")) {
+            reader.beginObject();
+            reader.nextName();
+            Assertions.assertEquals(42, reader.nextInt(-1));
+            reader.nextName();
+            Assertions.assertEquals(12345678901L, reader.nextLong(-1L));
+            reader.nextName();
+            Assertions.assertEquals(0.5d, reader.nextDouble(-1.0d));
+            reader.nextName();
+            Assertions.assertEquals(1, reader.nextInt(-1));
+            reader.nextName();
+            // Numbers can be read as strings too, eg. Teoh's ASN
+            Assertions.assertEquals("15169", reader.nextString());
+            reader.nextName();
+            Assertions.assertEquals(-1, reader.nextInt(-1));
+            reader.endObject();
+        }
+    }
+
+    @Test
+    void testBooleans() throws IOException {
+        try (JsonReader reader = open("[true,false,1,0,\"1\",\"0\",\"yes\",\"no\",\"true\",\"\",0.5]")) {
+            reader.beginArray();
+            boolean[] expected = new boolean[] { true, false, true, false, true, false, true, false, true, false, true };
+            for (boolean b : expected) {
+                Assertions.assertEquals(b, reader.nextBoolean());
+            }
+            reader.endArray();
+        }
+    }
+
+    @Test
+    void testNullDefaults() throws IOException {
+        try (JsonReader reader = open("{\"i\":null,\"l\":null,\"d\":null,\"b\":null,\"s\":null,\"o\":{\"x\":1},\"a\":[1]}")) {
+            reader.beginObject();
+            reader.nextName();
+            Assertions.assertEquals(-1, reader.nextInt(-1));
+            reader.nextName();
+            Assertions.assertEquals(-1L, reader.nextLong(-1L));
+            reader.nextName();
+            Assertions.assertEquals(-1.0d, reader.nextDouble(-1.0d));
+            reader.nextName();
+            Assertions.assertFalse(reader.nextBoolean());
+            reader.nextName();
+            Assertions.assertNull(reader.nextString());
+            // Objects and arrays where a scalar was expected are dropped, as flexjson does
+            reader.nextName();
+            Assertions.assertEquals(-1, reader.nextInt(-1));
+            reader.nextName();
+            Assertions.assertFalse(reader.nextBoolean());
+            Assertions.assertFalse(reader.hasNext());
+            reader.endObject();
+        }
+    }
+
+    @Test
+    void testTruncated() {
+        String[] inputs = new String[] {
+                "{",
+                "{\"a\"",
+                "{\"a\":",
+                "{\"a\":\"bc",
+                "{\"a\":\"\\u00",
+                "{\"a\":\"\\",
+                "{\"a\":1",
+                "{\"a\":{\"b\":[1,2",
+                "[1,2",
+        };
+        for (String input : inputs) {
+            for (Function<String, JsonReader> open : readers()) {
+                Assertions.assertThrows(MalformedJsonException.class, () -> {
+                    try (JsonReader reader = open.apply(input)) {
+                        reader.skipValue();
+                    }
+                }, input);
+            }
+        }
+    }
+
+    @Test
+    void testMalformed() {
+        Assertions.assertThrows(MalformedJsonException.class, () -> {
+            try (JsonReader reader = open("{\"a\" 1}")) {
+                reader.skipValue();
+            }
+        });
+        Assertions.assertThrows(MalformedJsonException.class, () -> {
+            try (JsonReader reader = open("{\"a\":\"\\uZZZZ\"}")) {
+                reader.skipValue();
+            }
+        });
+        Assertions.assertThrows(MalformedJsonException.class, () -> {
+            try (JsonReader reader = open("{a:1}")) {
+                reader.skipValue();
+            }
+        });
+    }
+
+    private static JsonReader open(String json) { return new JsonReader(new StringReader(json)); }
+
+    /*
+    Every case is read in one go and one character at a time, so values split across buffer refills are covered too
+     */
+    private static List<Function<String, JsonReader>> readers() {
+        return Arrays.asList(
+                JsonReaderTest::open,
+                json -> new JsonReader(new OneCharReader(new StringReader(json)))
+        );
+    }
+
+    private static final class OneCharReader extends FilterReader {
+        private OneCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException { return super.read(cbuf, off, Math.min(len, 1)); }
+    }
+}
@@ -0,0 +1,236 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
+import me.egg82.antivpn.utils.IPUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+class H2StorageServiceTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1L);
+
+    @TempDir
+    File dataDirectory;
+
+    private H2StorageService service;
+
+    @BeforeEach
+    void setup() throws IOException {
+        service = H2StorageService.builder("h2")
+                .file(new File(dataDirectory, "anti_vpn"))
+                .options("")
+                .poolSize(2, 2)
+                .life(TimeUnit.MINUTES.toMillis(30L), TimeUnit.SECONDS.toMillis(5L))
+                .build();
+    }
+
+    @AfterEach
+    void teardown() {
+        if (!service.isClosed()) {
+            service.close();
+        }
+    }
+
+    @Test
+    void testLookupMatchesOrm() {
+        service.storeModel(ip("8.8.8.8", true, null));
+        service.storeModel(ip("2001:db8::1", null, 0.75d));
+        UUID uuid = UUID.randomUUID();
+        service.getOrCreatePlayerModel(uuid, true);
+
+        for (String ip : new String[] { "8.8.8.8", "2001:db8::1" }) {
+            IPModel lean = service.getIpModel(ip, DAY);
+            IPModel orm = findIp(ip, DAY);
+            Assertions.assertNotNull(lean);
+            Assertions.assertNotNull(orm);
+            Assertions.assertEquals(orm.getId(), lean.getId());
+            Assertions.assertEquals(orm.getVersion(), lean.getVersion());
+            Assertions.assertEquals(orm.getCreated(), lean.getCreated());
+            Assertions.assertEquals(orm.getModified(), lean.getModified());
+            Assertions.assertEquals(orm.getIp(), lean.getIp());
+            Assertions.assertEquals(orm.getType(), lean.getType());
+            Assertions.assertEquals(orm.getCascade(), lean.getCascade());
+            Assertions.assertEquals(orm.getConsensus(), lean.getConsensus());
+        }
+
+        PlayerModel player = service.getPlayerModel(uuid, DAY);
+        Assertions.assertNotNull(player);
+        Assertions.assertEquals(uuid, player.getUuid());
+        Assertions.assertTrue(player.isMcleaks());
+        Assertions.assertNull(service.getPlayerModel(UUID.randomUUID(), DAY));
+    }
+
+    @Test
+    void testLookupExpiry() {
+        IPModel model = ip("10.0.0.1", null, null);
+        model.setModified(Instant.now().minusMillis(2L * DAY));
+        service.storeModels(Collections.singletonList(model));
+
+        Assertions.assertNull(service.getIpModel("10.0.0.1", DAY));
+        Assertions.assertNotNull(service.getIpModel("10.0.0.1", 3L * DAY));
+    }
+
+    @Test
+    void testBulkLookupsSpanChunks() {
+        // More keys than fit in one IN (...) on any dialect
+        List<IPModel> models = new ArrayList<>();
+        List<String> ips = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            String ip = "10." + ((i >> 8) & 0xFF) + "." + (i & 0xFF) + ".1";
+            ips.add(ip);
+            models.add(ip(ip, null, null));
+        }
+        service.storeModels(models);
+        ips.add("192.0.2.1");
+
+        Map<String, IPModel> found = service.getIpModels(ips, DAY);
+        Assertions.assertEquals(2500, found.size());
+        Assertions.assertFalse(found.containsKey("192.0.2.1"));
+        Assertions.assertEquals("10.0.5.1", found.get("10.0.5.1").getIp());
+
+        List<UUID> uuids = new ArrayList<>();
+        List<PlayerModel> playerModels = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            UUID uuid = UUID.randomUUID();
+            uuids.add(uuid);
+            PlayerModel model = new PlayerModel();
+            model.setUuid(uuid);
+            model.setMcleaks(i % 2 == 0);
+            playerModels.add(model);
+        }
+        service.storeModels(playerModels);
+        uuids.add(UUID.randomUUID());
+
+        Map<UUID, PlayerModel> players = service.getPlayerModels(uuids, DAY);
+        Assertions.assertEquals(1200, players.size());
+        Assertions.assertTrue(players.get(uuids.get(0)).isMcleaks());
+        Assertions.assertFalse(players.get(uuids.get(1)).isMcleaks());
+    }
+
+    @Test
+    void testConcurrentWrites() throws InterruptedException {
+        // Enough writers at once that the single writer has to commit some of them together
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t * 50;
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < offset + 50; i++) {
+                    service.storeModel(ip("10.1." + (i >> 8) + "." + (i & 0xFF), null, null));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assertions.assertEquals(400, service.getAllIps(DAY).size());
+        Assertions.assertEquals(0L, service.getMetrics().getStats(StorageMetrics.Operation.STORE).getErrors());
+    }
+
+    @Test
+    void testPooledWrites() throws IOException {
+        service.close();
+        service = H2StorageService.builder("h2")
+                .file(new File(dataDirectory, "anti_vpn_pooled"))
+                .options("")
+                .poolSize(2, 2)
+                .life(TimeUnit.MINUTES.toMillis(30L), TimeUnit.SECONDS.toMillis(5L))
+                .singleWriter(false)
+                .build();
+
+        service.storeModels(Arrays.asList(ip("8.8.8.8", true, null), ip("8.8.4.4", false, null)));
+        IPModel model = service.getOrCreateIpModel("1.1.1.1", 1);
+        Assertions.assertEquals(1, model.getType());
+        Assertions.assertEquals(3, service.getAllIps(DAY).size());
+        Assertions.assertEquals(Boolean.TRUE, service.getIpModel("8.8.8.8", DAY).getCascade());
+    }
+
+    @Test
+    void testMetrics() {
+        service.storeModel(ip("8.8.8.8", null, null));
+        service.getIpModel("8.8.8.8", DAY);
+        service.getIpModel("1.2.3.4", DAY);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.getIpModel("not an ip", DAY));
+
+        StorageMetrics metrics = service.getMetrics();
+        Assertions.assertEquals(1L, metrics.getStats(StorageMetrics.Operation.STORE).getCount());
+        Assertions.assertEquals(3L, metrics.getStats(StorageMetrics.Operation.GET_IP).getCount());
+        Assertions.assertEquals(1L, metrics.getStats(StorageMetrics.Operation.GET_IP).getErrors());
+        Assertions.assertEquals(0L, metrics.getStats(StorageMetrics.Operation.GET_IPS).getCount());
+        Assertions.assertTrue(metrics.getStats(StorageMetrics.Operation.GET_IP).getLatency().getPercentileMillis(0.99d) > 0.0d);
+
+        PoolMetrics pool = metrics.getPool();
+        Assertions.assertNotNull(pool);
+        Assertions.assertTrue(pool.getAcquire().getCount() > 0L);
+        Assertions.assertEquals(2, pool.getMax());
+    }
+
+    /*
+    Compares the lean lookup against the Ebean query it replaced. Not run by default, use -Dantivpn.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "antivpn.benchmark", matches = "true")
+    void benchmarkLookup() {
+        int rows = Integer.getInteger("antivpn.benchmark.rows", 10_000);
+        int reads = Integer.getInteger("antivpn.benchmark.reads", 200_000);
+        List<String> ips = new ArrayList<>(rows);
+        List<IPModel> models = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String ip = ((i >> 16) & 0xFF) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF) + ".1";
+            ips.add(ip);
+            models.add(ip(ip, Boolean.FALSE, null));
+        }
+        service.storeModels(models);
+
+        // Warm both paths up before timing them
+        run("orm (warmup)", ips, reads / 4, ip -> findIp(ip, DAY));
+        run("lean (warmup)", ips, reads / 4, ip -> service.getIpModel(ip, DAY));
+        run("orm", ips, reads, ip -> findIp(ip, DAY));
+        run("lean", ips, reads, ip -> service.getIpModel(ip, DAY));
+    }
+
+    private static void run(String label, List<String> ips, int reads, Function<String, IPModel> lookup) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            Assertions.assertNotNull(lookup.apply(ips.get(random.nextInt(ips.size()))));
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("[%s] %d reads: %.0f/s, %.1fus each", label, reads, reads / (nanos / 1_000_000_000.0d), nanos / 1_000.0d / reads));
+    }
+
+    private IPModel findIp(String ip, long cacheTimeMillis) {
+        return service.connection.find(IPModel.class)
+                .where()
+                .eq("ip", IPUtil.toBytes(ip))
+                .gt("modified", Instant.now().minusMillis(cacheTimeMillis))
+                .findOne();
+    }
+
+    private static IPModel ip(String ip, Boolean cascade, Double consensus) {
+        IPModel retVal = new IPModel();
+        retVal.setIp(ip);
+        retVal.setType(0);
+        retVal.setCascade(cascade);
+        retVal.setConsensus(consensus);
+        return retVal;
+    }
+}
@@ -0,0 +1,230 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+class MVStoreStorageServiceTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1L);
+
+    @TempDir
+    File dataDirectory;
+
+    private MVStoreStorageService service;
+
+    @BeforeEach
+    void setup() {
+        service = open();
+    }
+
+    @AfterEach
+    void teardown() {
+        if (!service.isClosed()) {
+            service.close();
+        }
+    }
+
+    @Test
+    void testRoundTrip() {
+        service.storeModels(Arrays.asList(ip("8.8.8.8", true, null), ip("2001:db8::1", null, 0.75d)));
+        UUID uuid = UUID.randomUUID();
+        service.getOrCreatePlayerModel(uuid, true);
+        service.getOrCreateDataModel("key", "value");
+
+        IPModel v4 = service.getIpModel("8.8.8.8", DAY);
+        Assertions.assertNotNull(v4);
+        Assertions.assertEquals(Boolean.TRUE, v4.getCascade());
+        Assertions.assertNull(v4.getConsensus());
+
+        IPModel v6 = service.getIpModel("2001:db8::1", DAY);
+        Assertions.assertNotNull(v6);
+        Assertions.assertNull(v6.getCascade());
+        Assertions.assertEquals(0.75d, v6.getConsensus());
+        Assertions.assertEquals(v6.getIp(), service.getIpModel(v6.getId(), DAY).getIp());
+
+        Assertions.assertTrue(service.getPlayerModel(uuid, DAY).isMcleaks());
+        Assertions.assertEquals("value", service.getDataModel("key").getValue());
+
+        // Updates keep the id and created time
+        service.storeModel(ip("8.8.8.8", false, null));
+        IPModel updated = service.getIpModel("8.8.8.8", DAY);
+        Assertions.assertEquals(v4.getId(), updated.getId());
+        Assertions.assertEquals(v4.getCreated(), updated.getCreated());
+        Assertions.assertEquals(v4.getVersion() + 1L, updated.getVersion());
+        Assertions.assertEquals(Boolean.FALSE, updated.getCascade());
+
+        service.deleteModel(updated);
+        Assertions.assertNull(service.getIpModel("8.8.8.8", DAY));
+        Assertions.assertNull(service.getIpModel(v4.getId(), DAY));
+    }
+
+    @Test
+    void testRange() {
+        // Bytes over 0x7F, so a signed comparison would get these wrong
+        service.storeModels(Arrays.asList(ip("203.0.112.255", null, null), ip("203.0.113.1", null, null), ip("203.0.113.200", null, null), ip("203.0.114.0", null, null)));
+
+        Set<String> found = service.getIpModelsInRange("203.0.113.0/24", DAY).stream().map(IPModel::getIp).collect(Collectors.toSet());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("203.0.113.1", "203.0.113.200")), found);
+    }
+
+    @Test
+    void testExpiry() {
+        Instant now = Instant.now();
+        List<BaseModel> models = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            IPModel model = ip("10.0.0." + i, null, null);
+            // Half of them a week old
+            model.setModified(i % 2 == 0 ? now.minusMillis(7L * DAY) : now);
+            models.add(model);
+        }
+        service.storeModels(models);
+
+        Assertions.assertNull(service.getIpModel("10.0.0.0", DAY));
+        Assertions.assertNotNull(service.getIpModel("10.0.0.1", DAY));
+
+        Assertions.assertEquals(3, service.purgeIps(now.minusMillis(DAY), 3));
+        Assertions.assertEquals(2, service.purgeIps(now.minusMillis(DAY), 3));
+        Assertions.assertEquals(0, service.purgeIps(now.minusMillis(DAY), 3));
+        Assertions.assertEquals(5, service.getAllIps(Long.MAX_VALUE / 2L).size());
+    }
+
+    @Test
+    void testPaging() {
+        List<BaseModel> models = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            models.add(ip("10.0.1." + i, null, null));
+        }
+        service.storeModels(models);
+
+        List<String> seen = new ArrayList<>();
+        KeysetIterator<IPModel> iterator = service.streamIps(0L, 10, DAY);
+        while (iterator.hasNext()) {
+            seen.add(iterator.next().getIp());
+        }
+        Assertions.assertEquals(25, seen.size());
+        Assertions.assertEquals(25, new HashSet<>(seen).size());
+    }
+
+    @Test
+    void testPagingWithoutIds() {
+        // A full page of rows without ids would otherwise be read again forever
+        KeysetIterator<IPModel> iterator = new KeysetIterator<>(0L, 2, (cursor, max) -> Arrays.asList(ip("10.0.2.1", null, null), ip("10.0.2.2", null, null)));
+        Assertions.assertTrue(iterator.hasNext());
+        Assertions.assertThrows(IllegalStateException.class, iterator::next);
+    }
+
+    @Test
+    void testReopen() {
+        service.getOrCreateIpModel("1.1.1.1", 0);
+        UUID uuid = UUID.randomUUID();
+        service.getOrCreatePlayerModel(uuid, false);
+        long id = service.getIpModel("1.1.1.1", DAY).getId();
+        service.close();
+
+        service = open();
+        Assertions.assertEquals(id, service.getIpModel("1.1.1.1", DAY).getId());
+        Assertions.assertNotNull(service.getPlayerModel(uuid, DAY));
+        // Ids carry on from where they were
+        Assertions.assertEquals(id + 1L, service.getOrCreateIpModel("1.0.0.1", 0).getId());
+    }
+
+    /*
+    Compares this against the H2 JDBC path. Not run by default, use -Dantivpn.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "antivpn.benchmark", matches = "true")
+    void benchmarkAgainstH2() throws IOException {
+        int rows = Integer.getInteger("antivpn.benchmark.rows", 50_000);
+        List<String> ips = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            ips.add(((i >> 16) & 0xFF) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF) + ".1");
+        }
+
+        H2StorageService h2 = H2StorageService.builder("h2")
+                .file(new File(dataDirectory, "benchmark_h2"))
+                .options("")
+                .poolSize(4, 4)
+                .life(TimeUnit.MINUTES.toMillis(30L), TimeUnit.SECONDS.toMillis(5L))
+                .build();
+        try {
+            run("mvstore", service, ips);
+            run("h2", h2, ips);
+        } finally {
+            h2.close();
+        }
+    }
+
+    private static void run(String label, StorageService service, List<String> ips) {
+        long start = System.nanoTime();
+        List<BaseModel> batch = new ArrayList<>(100);
+        for (String ip : ips) {
+            batch.add(ip(ip, Boolean.FALSE, null));
+            if (batch.size() == 100) {
+                service.storeModels(batch);
+                batch.clear();
+            }
+        }
+        service.storeModels(batch);
+        long writeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < ips.size(); i++) {
+            Assertions.assertNotNull(service.getIpModel(ips.get(random.nextInt(ips.size())), DAY));
+        }
+        long readNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int paged = 0;
+        KeysetIterator<IPModel> iterator = service.streamIps(0L, 500, DAY);
+        while (iterator.hasNext()) {
+            iterator.next();
+            paged++;
+        }
+        long pageNanos = System.nanoTime() - start;
+
+        System.out.println(String.format(
+                "[%s] %d rows: batched writes %.0f/s, point reads %.0f/s, paged scan %.0f/s",
+                label,
+                ips.size(),
+                perSecond(ips.size(), writeNanos),
+                perSecond(ips.size(), readNanos),
+                perSecond(paged, pageNanos)
+        ));
+    }
+
+    private static double perSecond(int count, long nanos) { return count / (nanos / 1_000_000_000.0d); }
+
+    private MVStoreStorageService open() {
+        try {
+            return MVStoreStorageService.builder("mvstore")
+                    .file(new File(dataDirectory, "anti_vpn.mv"))
+                    .options("cacheSize=16&commitInterval=1000")
+                    .build();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static IPModel ip(String ip, Boolean cascade, Double consensus) {
+        IPModel retVal = new IPModel();
+        retVal.setIp(ip);
+        retVal.setType(0);
+        retVal.setCascade(cascade);
+        retVal.setConsensus(consensus);
+        return retVal;
+    }
+}
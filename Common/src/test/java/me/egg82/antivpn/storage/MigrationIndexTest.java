@@ -0,0 +1,37 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.utils.VersionUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+class MigrationIndexTest {
+    @Test
+    void testIndex() throws IOException {
+        MigrationIndex index = MigrationIndex.get();
+        String latest = index.getLatest();
+        Assertions.assertNotNull(latest);
+
+        for (String scriptsName : new String[] { "h2", "sqlite", "mysql", "mysql55", "mariadb", "postgresql" }) {
+            List<MigrationIndex.Migration> migrations = index.getMigrations(scriptsName, "1.0");
+            Assertions.assertFalse(migrations.isEmpty());
+
+            String last = "1.0";
+            for (MigrationIndex.Migration migration : migrations) {
+                // Oldest first, and never the same version twice
+                Assertions.assertFalse(VersionUtil.isAtLeast(migration.getVersion(), '.', last, '.'));
+                Assertions.assertTrue(VersionUtil.isAtLeast(latest, '.', migration.getVersion(), '.'));
+                last = migration.getVersion();
+
+                try (InputStream inStream = MigrationIndexTest.class.getResourceAsStream(migration.getPath())) {
+                    Assertions.assertNotNull(inStream);
+                }
+            }
+
+            Assertions.assertTrue(index.getMigrations(scriptsName, latest).isEmpty());
+        }
+    }
+}
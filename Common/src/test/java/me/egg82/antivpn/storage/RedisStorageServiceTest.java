@@ -0,0 +1,208 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+Needs a running redis-server, eg. -Dantivpn.redis.address=127.0.0.1:6379
+Everything is written under a random prefix and deleted afterwards
+ */
+@EnabledIfSystemProperty(named = "antivpn.redis.address", matches = ".+")
+class RedisStorageServiceTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1L);
+    // What rows are kept for while the config isn't loaded
+    private static final long IP_TTL = TimeUnit.HOURS.toMillis(6L);
+
+    private String address;
+    private int port;
+    private String prefix;
+
+    private RedisStorageService service;
+
+    @BeforeEach
+    void setup() {
+        String[] parts = System.getProperty("antivpn.redis.address").split(":");
+        address = parts[0];
+        port = parts.length > 1 ? Integer.parseInt(parts[1]) : 6379;
+        prefix = "avpn-test-" + UUID.randomUUID() + ":";
+
+        service = RedisStorageService.builder("redis")
+                .url(address, port)
+                .credentials(System.getProperty("antivpn.redis.password", ""))
+                .prefix(prefix)
+                .poolSize(1, 4)
+                .life(TimeUnit.MINUTES.toMillis(30L), 5000)
+                .build();
+    }
+
+    @AfterEach
+    void teardown() {
+        if (!service.isClosed()) {
+            service.close();
+        }
+
+        try (Jedis redis = new Jedis(address, port)) {
+            String password = System.getProperty("antivpn.redis.password", "");
+            if (!password.isEmpty()) {
+                redis.auth(password);
+            }
+            ScanParams params = new ScanParams().match(prefix + "*").count(500);
+            byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+            ScanResult<byte[]> result;
+            do {
+                result = redis.scan(cursor, params);
+                cursor = result.getCursorAsBytes();
+                if (!result.getResult().isEmpty()) {
+                    redis.del(result.getResult().toArray(new byte[0][]));
+                }
+            } while (!result.isCompleteIteration());
+        }
+    }
+
+    @Test
+    void testRoundTrip() {
+        service.storeModels(Arrays.asList(ip("8.8.8.8", true, null), ip("2001:db8::1", null, 0.75d)));
+        UUID uuid = UUID.randomUUID();
+        service.getOrCreatePlayerModel(uuid, true);
+        service.getOrCreateDataModel("key", "value");
+
+        IPModel v4 = service.getIpModel("8.8.8.8", DAY);
+        Assertions.assertNotNull(v4);
+        Assertions.assertEquals(Boolean.TRUE, v4.getCascade());
+
+        IPModel v6 = service.getIpModel("2001:db8::1", DAY);
+        Assertions.assertNotNull(v6);
+        Assertions.assertEquals(0.75d, v6.getConsensus());
+        Assertions.assertEquals(v6.getIp(), service.getIpModel(v6.getId(), DAY).getIp());
+
+        Assertions.assertTrue(service.getPlayerModel(uuid, DAY).isMcleaks());
+        Assertions.assertEquals("value", service.getDataModel("key").getValue());
+
+        Map<String, IPModel> batch = service.getIpModels(Arrays.asList("8.8.8.8", "2001:db8::1", "1.2.3.4"), DAY);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("8.8.8.8", "2001:db8::1")), batch.keySet());
+
+        // Updates keep the id and created time
+        service.storeModel(ip("8.8.8.8", false, null));
+        IPModel updated = service.getIpModel("8.8.8.8", DAY);
+        Assertions.assertEquals(v4.getId(), updated.getId());
+        Assertions.assertEquals(v4.getCreated(), updated.getCreated());
+        Assertions.assertEquals(v4.getVersion() + 1L, updated.getVersion());
+
+        service.deleteModel(updated);
+        Assertions.assertNull(service.getIpModel("8.8.8.8", DAY));
+        Assertions.assertNull(service.getIpModel(v4.getId(), DAY));
+    }
+
+    @Test
+    void testRange() {
+        service.storeModels(Arrays.asList(ip("203.0.112.255", null, null), ip("203.0.113.1", null, null), ip("203.0.113.200", null, null), ip("203.0.114.0", null, null)));
+
+        Set<String> found = service.getIpModelsInRange("203.0.113.0/24", DAY).stream().map(IPModel::getIp).collect(Collectors.toSet());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("203.0.113.1", "203.0.113.200")), found);
+    }
+
+    @Test
+    void testNativeExpiry() throws InterruptedException {
+        IPModel model = ip("10.0.0.1", null, null);
+        // Half a second left before the cache time runs out
+        model.setModified(Instant.now().minusMillis(IP_TTL - 500L));
+        IPModel expired = ip("10.0.0.2", null, null);
+        expired.setModified(Instant.now().minusMillis(IP_TTL + 1000L));
+        service.storeModels(Arrays.asList(model, expired));
+
+        // Past its cache time already, so it was never written
+        Assertions.assertNull(service.getIpModel("10.0.0.2", Long.MAX_VALUE / 2L));
+        Assertions.assertNotNull(service.getIpModel("10.0.0.1", Long.MAX_VALUE / 2L));
+
+        Thread.sleep(1000L);
+        Assertions.assertNull(service.getIpModel("10.0.0.1", Long.MAX_VALUE / 2L));
+        Assertions.assertTrue(service.getAllIps(Long.MAX_VALUE / 2L).isEmpty());
+
+        // Only the index entry is left behind, and the purger clears it
+        Assertions.assertEquals(1, service.purgeIps(Instant.now().minusMillis(IP_TTL - 1000L), 10));
+        Assertions.assertEquals(0, service.purgeIps(Instant.now().minusMillis(IP_TTL - 1000L), 10));
+    }
+
+    @Test
+    void testPaging() {
+        List<BaseModel> models = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            models.add(ip("10.0.1." + i, null, null));
+        }
+        service.storeModels(models);
+        service.deleteModel(ip("10.0.1.5", null, null));
+
+        List<String> seen = new ArrayList<>();
+        KeysetIterator<IPModel> iterator = service.streamIps(0L, 10, DAY);
+        while (iterator.hasNext()) {
+            seen.add(iterator.next().getIp());
+        }
+        Assertions.assertEquals(24, seen.size());
+        Assertions.assertEquals(24, new HashSet<>(seen).size());
+        Assertions.assertEquals(24, service.getAllIps(DAY).size());
+    }
+
+    @Test
+    void testConcurrentServers() throws InterruptedException {
+        // A second service on the same prefix stands in for another server sharing this Redis
+        RedisStorageService other = RedisStorageService.builder("redis2")
+                .url(address, port)
+                .credentials(System.getProperty("antivpn.redis.password", ""))
+                .prefix(prefix)
+                .poolSize(1, 4)
+                .life(TimeUnit.MINUTES.toMillis(30L), 5000)
+                .build();
+        try {
+            List<BaseModel> models = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                models.add(ip("10.0.2." + i, null, null));
+            }
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                RedisStorageService target = i % 2 == 0 ? service : other;
+                threads[i] = new Thread(() -> {
+                    for (int j = 0; j < 10; j++) {
+                        target.storeModels(models);
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // Every row's id has to match its id index entry, or id lookups and paging find the wrong row
+            for (BaseModel model : models) {
+                IPModel stored = service.getIpModel(((IPModel) model).getIp(), DAY);
+                Assertions.assertNotNull(stored);
+                IPModel byId = other.getIpModel(stored.getId(), DAY);
+                Assertions.assertNotNull(byId);
+                Assertions.assertEquals(stored.getIp(), byId.getIp());
+            }
+        } finally {
+            other.close();
+        }
+    }
+
+    private static IPModel ip(String ip, Boolean cascade, Double consensus) {
+        IPModel retVal = new IPModel();
+        retVal.setIp(ip);
+        retVal.setType(0);
+        retVal.setCascade(cascade);
+        retVal.setConsensus(consensus);
+        return retVal;
+    }
+}
@@ -0,0 +1,122 @@
+package me.egg82.antivpn.storage;
+
+import me.egg82.antivpn.storage.models.BaseModel;
+import me.egg82.antivpn.storage.models.IPModel;
+import me.egg82.antivpn.storage.models.PlayerModel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+class StorageSnapshotTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1L);
+
+    @TempDir
+    File dataDirectory;
+
+    @Test
+    void testRoundTrip() throws IOException {
+        Instant created = Instant.ofEpochMilli(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1L) - 123L);
+        Instant modified = created.plusSeconds(60L).plusMillis(7L);
+
+        List<BaseModel> models = new ArrayList<>();
+        models.add(ip("8.8.8.8", 1, true, null, created, modified));
+        models.add(ip("2001:db8::1", -1, null, 0.75d, created.plusMillis(1L), modified));
+        models.add(ip("1.1.1.1", 0, false, 0.123456d, created.minusSeconds(5L), modified.plusSeconds(5L)));
+        UUID mcleaks = UUID.randomUUID();
+        UUID clean = UUID.randomUUID();
+        models.add(player(mcleaks, true, created, modified));
+        models.add(player(clean, false, created.plusSeconds(1L), modified));
+
+        MVStoreStorageService source = open("source");
+        MVStoreStorageService target = open("target");
+        try {
+            source.storeModels(models);
+
+            File file = new File(dataDirectory, "test.avpn");
+            // A block size of 2 makes sure rows spanning several blocks come back in one piece
+            Assertions.assertEquals(5L, StorageSnapshot.export(source, file, 2, DAY, DAY, (rows, rate) -> { }));
+            Assertions.assertFalse(new File(dataDirectory, "test.avpn.tmp").exists());
+            Assertions.assertEquals(5L, StorageSnapshot.load(file, target, (rows, rate) -> { }));
+
+            for (BaseModel model : models) {
+                if (model instanceof IPModel) {
+                    IPModel expected = (IPModel) model;
+                    IPModel actual = target.getIpModel(expected.getIp(), DAY);
+                    Assertions.assertNotNull(actual);
+                    Assertions.assertEquals(expected.getType(), actual.getType());
+                    Assertions.assertEquals(expected.getCascade(), actual.getCascade());
+                    if (expected.getConsensus() == null) {
+                        Assertions.assertNull(actual.getConsensus());
+                    } else {
+                        Assertions.assertEquals(expected.getConsensus(), actual.getConsensus(), 1.0d / 65535.0d);
+                    }
+                    Assertions.assertEquals(expected.getCreated(), actual.getCreated());
+                    Assertions.assertEquals(expected.getModified(), actual.getModified());
+                } else {
+                    PlayerModel expected = (PlayerModel) model;
+                    PlayerModel actual = target.getPlayerModel(expected.getUuid(), DAY);
+                    Assertions.assertNotNull(actual);
+                    Assertions.assertEquals(expected.isMcleaks(), actual.isMcleaks());
+                    Assertions.assertEquals(expected.getCreated(), actual.getCreated());
+                    Assertions.assertEquals(expected.getModified(), actual.getModified());
+                }
+            }
+        } finally {
+            source.close();
+            target.close();
+        }
+    }
+
+    @Test
+    void testBadFile() throws IOException {
+        File file = new File(dataDirectory, "bad.avpn");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a snapshot".getBytes(StandardCharsets.UTF_8));
+        }
+
+        MVStoreStorageService target = open("target");
+        try {
+            Assertions.assertThrows(IOException.class, () -> StorageSnapshot.load(file, target, (rows, rate) -> { }));
+        } finally {
+            target.close();
+        }
+    }
+
+    private MVStoreStorageService open(String name) {
+        try {
+            return MVStoreStorageService.builder(name)
+                    .file(new File(dataDirectory, name + ".mv"))
+                    .build();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static IPModel ip(String ip, int type, Boolean cascade, Double consensus, Instant created, Instant modified) {
+        IPModel retVal = new IPModel();
+        retVal.setIp(ip);
+        retVal.setType(type);
+        retVal.setCascade(cascade);
+        retVal.setConsensus(consensus);
+        retVal.setCreated(created);
+        retVal.setModified(modified);
+        return retVal;
+    }
+
+    private static PlayerModel player(UUID uuid, boolean mcleaks, Instant created, Instant modified) {
+        PlayerModel retVal = new PlayerModel();
+        retVal.setUuid(uuid);
+        retVal.setMcleaks(mcleaks);
+        retVal.setCreated(created);
+        retVal.setModified(modified);
+        return retVal;
+    }
+}
@@ -0,0 +1,128 @@
+package me.egg82.antivpn.web;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single response replayed by {@link StubHttpServer}.
+ *
+ * <p>Recorded bodies live in the test resources under {@code fixtures/<source name>/<name>.json}.</p>
+ */
+public final class Fixture {
+    private int status = 200;
+    private byte @NotNull [] body = new byte[0];
+    private final @NotNull Map<String, String> headers = new HashMap<>();
+
+    private @NotNull LatencyDistribution latency = LatencyDistribution.none();
+    private int chunkSize = 0;
+    private long chunkDelayMillis = 0L;
+    private boolean gzip = false;
+    private @Nullable Fixture redirectTarget = null;
+
+    private Fixture() { }
+
+    @NotNull
+    public static Fixture recorded(@NotNull String source, @NotNull String name) {
+        String path = "/fixtures/" + source + "/" + name + ".json";
+        try (InputStream in = Fixture.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Could not find recorded response " + path);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+
+            Fixture retVal = new Fixture();
+            retVal.body = out.toByteArray();
+            retVal.headers.put("Content-Type", "application/json; charset=utf-8");
+            return retVal;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @NotNull
+    public static Fixture status(int status) { return new Fixture().withStatus(status); }
+
+    @NotNull
+    public static Fixture tooManyRequests(long retryAfterSeconds) { return status(429).header("Retry-After", String.valueOf(retryAfterSeconds)); }
+
+    /**
+     * Answers with a redirect, then serves the target from the redirected URL.
+     */
+    @NotNull
+    public static Fixture redirect(@NotNull Fixture target) {
+        Fixture retVal = status(302);
+        retVal.redirectTarget = target;
+        return retVal;
+    }
+
+    @NotNull
+    public Fixture withStatus(int status) {
+        this.status = status;
+        return this;
+    }
+
+    @NotNull
+    public Fixture header(@NotNull String key, @NotNull String value) {
+        headers.put(key, value);
+        return this;
+    }
+
+    @NotNull
+    public Fixture latency(@NotNull LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Sends the body in chunks with a pause between each, like a slow or congested API.
+     */
+    @NotNull
+    public Fixture slowBody(int chunkSize, long chunkDelayMillis) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize cannot be <= 0.");
+        }
+
+        this.chunkSize = chunkSize;
+        this.chunkDelayMillis = chunkDelayMillis;
+        return this;
+    }
+
+    @NotNull
+    public Fixture gzip() {
+        this.gzip = true;
+        return this;
+    }
+
+    public int getStatus() { return status; }
+
+    public byte @NotNull [] getBody() { return body; }
+
+    @NotNull
+    public Map<String, String> getHeaders() { return Collections.unmodifiableMap(headers); }
+
+    @NotNull
+    public LatencyDistribution getLatency() { return latency; }
+
+    public int getChunkSize() { return chunkSize; }
+
+    public long getChunkDelayMillis() { return chunkDelayMillis; }
+
+    public boolean isGzip() { return gzip; }
+
+    @Nullable
+    public Fixture getRedirectTarget() { return redirectTarget; }
+}
@@ -0,0 +1,33 @@
+package me.egg82.antivpn.web;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Decides how long {@link StubHttpServer} waits before answering a request.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    long nextMillis(@NotNull Random random);
+
+    @NotNull
+    static LatencyDistribution none() { return random -> 0L; }
+
+    @NotNull
+    static LatencyDistribution fixed(long millis) { return random -> millis; }
+
+    @NotNull
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("maxMillis cannot be < minMillis.");
+        }
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * A long-tailed distribution, closer to what real APIs look like than a uniform one.
+     */
+    @NotNull
+    static LatencyDistribution logNormal(long medianMillis, double sigma) { return random -> Math.max(0L, (long) (medianMillis * Math.exp(sigma * random.nextGaussian()))); }
+}
@@ -0,0 +1,183 @@
+package me.egg82.antivpn.web;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local HTTP server which replays {@link Fixture}s, so sources can be tested and benchmarked offline.
+ *
+ * <p>Each source gets its own base URL ({@code http://127.0.0.1:<port>/<source name>}) which
+ * {@link WebRequest#setBaseUrl(String, URL)} points the source's hosts at. Fixtures queued for
+ * a source are served in order, with the last one repeated for any further requests.</p>
+ */
+public class StubHttpServer implements Closeable {
+    private static final String REDIRECT_PATH = "/redirected";
+
+    private final @NotNull HttpServer server;
+    private final @NotNull ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Anti-VPN_StubHttp_%d").setDaemon(true).build());
+    private final @NotNull ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final @NotNull Random random;
+
+    public StubHttpServer() throws IOException { this(82L); }
+
+    public StubHttpServer(long seed) throws IOException {
+        random = new Random(seed); // Seeded so latency runs are repeatable
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(pool);
+        server.start();
+    }
+
+    @NotNull
+    public URL getBaseUrl(@NotNull String source) throws IOException { return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/" + source); }
+
+    public void replay(@NotNull String source, @NotNull Fixture @NotNull ... fixtures) {
+        if (fixtures.length == 0) {
+            throw new IllegalArgumentException("fixtures cannot be empty.");
+        }
+        routes.put(source, new Route(Arrays.asList(fixtures)));
+    }
+
+    public int getRequestCount(@NotNull String source) {
+        Route route = routes.get(source);
+        return route != null ? route.requests.get() : 0;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    private void handle(@NotNull HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            String source = path.length() > 1 ? path.substring(1).split("/", 2)[0] : "";
+            Route route = routes.get(source);
+            if (route == null) {
+                send(exchange, Fixture.status(404));
+                return;
+            }
+
+            String prefix = "/" + source;
+            boolean redirected = path.startsWith(prefix + REDIRECT_PATH);
+            Fixture fixture = redirected ? route.redirected() : route.next();
+            if (fixture == null) {
+                send(exchange, Fixture.status(404));
+                return;
+            }
+
+            sleep(fixture.getLatency().nextMillis(random));
+
+            if (fixture.getRedirectTarget() != null && !redirected) {
+                route.redirectTarget = fixture.getRedirectTarget();
+                String query = exchange.getRequestURI().getRawQuery();
+                exchange.getResponseHeaders().set("Location", prefix + REDIRECT_PATH + path.substring(prefix.length()) + (query != null ? "?" + query : ""));
+            }
+            send(exchange, fixture);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void send(@NotNull HttpExchange exchange, @NotNull Fixture fixture) throws IOException {
+        // Request bodies (eg. batched POSTs) have to be read for the connection to be re-used
+        drain(exchange);
+
+        for (Map.Entry<String, String> kvp : fixture.getHeaders().entrySet()) {
+            exchange.getResponseHeaders().set(kvp.getKey(), kvp.getValue());
+        }
+
+        byte[] body = fixture.getBody();
+        if (fixture.isGzip() && body.length > 0) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        if (body.length == 0) {
+            exchange.sendResponseHeaders(fixture.getStatus(), -1L);
+            return;
+        }
+
+        if (fixture.getChunkSize() <= 0) {
+            exchange.sendResponseHeaders(fixture.getStatus(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            return;
+        }
+
+        exchange.sendResponseHeaders(fixture.getStatus(), 0L); // Chunked
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < body.length; i += fixture.getChunkSize()) {
+                out.write(body, i, Math.min(fixture.getChunkSize(), body.length - i));
+                out.flush();
+                sleep(fixture.getChunkDelayMillis());
+            }
+        }
+    }
+
+    private static void drain(@NotNull HttpExchange exchange) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (exchange.getRequestBody().read(buffer) > 0) {
+            // Discard
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0L) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while delaying response");
+        }
+    }
+
+    private static class Route {
+        private final @NotNull List<Fixture> fixtures;
+        private final @NotNull AtomicInteger requests = new AtomicInteger(0);
+        private final @NotNull AtomicInteger served = new AtomicInteger(0);
+        private volatile Fixture redirectTarget = null;
+
+        private Route(@NotNull List<Fixture> fixtures) {
+            this.fixtures = new ArrayList<>(fixtures);
+        }
+
+        @NotNull
+        private Fixture next() {
+            requests.incrementAndGet();
+            return fixtures.get(Math.min(served.getAndIncrement(), fixtures.size() - 1));
+        }
+
+        private Fixture redirected() {
+            requests.incrementAndGet();
+            return redirectTarget;
+        }
+    }
+}
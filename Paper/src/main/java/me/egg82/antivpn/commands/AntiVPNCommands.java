@@ -2,22 +2,32 @@ package me.egg82.antivpn.commands;
 
 import cloud.commandframework.ArgumentDescription;
 import cloud.commandframework.arguments.standard.EnumArgument;
+import cloud.commandframework.arguments.standard.IntegerArgument;
 import cloud.commandframework.arguments.standard.StringArgument;
 import cloud.commandframework.bukkit.parsers.selector.SinglePlayerSelectorArgument;
 import cloud.commandframework.minecraft.extras.MinecraftHelp;
 import cloud.commandframework.paper.PaperCommandManager;
 import me.egg82.antivpn.commands.arguments.KickType;
+import me.egg82.antivpn.commands.internal.ImportCommand;
 import me.egg82.antivpn.commands.internal.KickCommand;
 import me.egg82.antivpn.commands.internal.ReloadCommand;
+import me.egg82.antivpn.commands.internal.SnapshotExportCommand;
+import me.egg82.antivpn.commands.internal.SnapshotImportCommand;
+import me.egg82.antivpn.commands.internal.SourcesCommand;
+import me.egg82.antivpn.commands.internal.StorageCommand;
 import me.egg82.antivpn.config.ConfigUtil;
 import me.egg82.antivpn.locale.BukkitLocaleCommandUtil;
 import me.egg82.antivpn.locale.BukkitLocalizedCommandSender;
 import me.egg82.antivpn.locale.LocalizedArgumentDescription;
 import me.egg82.antivpn.locale.MessageKey;
+import me.egg82.antivpn.storage.StorageService;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.spongepowered.configurate.ConfigurationNode;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class AntiVPNCommands extends CommandHolder {
     public AntiVPNCommands(@NotNull Plugin plugin) {
         super();
@@ -47,16 +57,18 @@ public class AntiVPNCommands extends CommandHolder {
 
         // TODO: Commands + argument suggestions
 
-        /*commands.add(
-            commandManager.commandBuilder("antivpn", baseAliases)
-                .literal("import", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__IMPORT), getAliases(config, "import")) // TODO: Localization
-                .permission(ConfigUtil.getCachedConfig().getAdminPermissionNode())
-                .argument(StringArgument.<BukkitLocalizedCommandSender>newBuilder("master").withSuggestionsProvider(storageSuggestions).build(), ArgumentDescription.of("<master>")) // TODO: Localization
-                .argument(StringArgument.<BukkitLocalizedCommandSender>newBuilder("slave").withSuggestionsProvider(storageSuggestions).build(), ArgumentDescription.of("<slave>")) // TODO: Localization
-                .argument(IntegerArgument.<BukkitLocalizedCommandSender>newBuilder("batchSize").withMin(1).asOptionalWithDefault("50").build(), ArgumentDescription.of("[batchSize]")) // TODO: Localization
-                .handler(new ReloadCommand(commandManager, plugin.getDataFolder(), plugin))
-                .build()
-        );*/
+        commands.add(
+                commandManager.commandBuilder("antivpn", baseAliases)
+                        .literal("import", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__IMPORT), getAliases(config, "import")) // TODO: Localization
+                        .permission(ConfigUtil.getCachedConfig().getAdminPermissionNode())
+                        .argument(StringArgument.<BukkitLocalizedCommandSender>newBuilder("master").withSuggestionsProvider((c, s) -> getStorageNames()).build(), ArgumentDescription.of("<master>")) // TODO: Localization
+                        .argument(StringArgument.<BukkitLocalizedCommandSender>newBuilder("slave").withSuggestionsProvider((c, s) -> getStorageNames()).build(), ArgumentDescription.of("<slave>")) // TODO: Localization
+                        .argument(IntegerArgument.<BukkitLocalizedCommandSender>newBuilder("batch-size").withMin(1).asOptionalWithDefault("500").build(), ArgumentDescription.of("[batch-size]")) // TODO: Localization
+                        .argument(IntegerArgument.<BukkitLocalizedCommandSender>newBuilder("parallelism").withMin(1).withMax(16).asOptionalWithDefault("2").build(), ArgumentDescription.of("[parallelism]")) // TODO: Localization
+                        .flag(commandManager.flagBuilder("restart"))
+                        .handler(new ImportCommand(commandManager, plugin.getDataFolder()))
+                        .build()
+        );
 
         commands.add(
                 commandManager.commandBuilder("antivpn", baseAliases)
@@ -68,6 +80,45 @@ public class AntiVPNCommands extends CommandHolder {
                         .build()
         );
 
+        commands.add(
+                commandManager.commandBuilder("antivpn", baseAliases)
+                        .literal("storage", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__STORAGE), getAliases(config, "storage")) // TODO: Localization
+                        .permission(ConfigUtil.getCachedConfig().getAdminPermissionNode())
+                        .handler(new StorageCommand(commandManager))
+                        .build()
+        );
+
+        commands.add(
+                commandManager.commandBuilder("antivpn", baseAliases)
+                        .literal("sources", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__SOURCES), getAliases(config, "sources")) // TODO: Localization
+                        .permission(ConfigUtil.getCachedConfig().getAdminPermissionNode())
+                        .handler(new SourcesCommand(commandManager))
+                        .build()
+        );
+
+        commands.add(
+                commandManager.commandBuilder("antivpn", baseAliases)
+                        .literal("snapshot", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__SNAPSHOT), getAliases(config, "snapshot")) // TODO: Localization
+                        .literal("export", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__SNAPSHOT_EXPORT)) // TODO: Localization
+                        .permission(ConfigUtil.getCachedConfig().getAdminPermissionNode())
+                        .argument(StringArgument.<BukkitLocalizedCommandSender>newBuilder("storage").withSuggestionsProvider((c, s) -> getStorageNames()).build(), ArgumentDescription.of("<storage>")) // TODO: Localization
+                        .argument(StringArgument.optional("file"), ArgumentDescription.of("[file]")) // TODO: Localization
+                        .argument(IntegerArgument.<BukkitLocalizedCommandSender>newBuilder("block-size").withMin(1).asOptionalWithDefault("4096").build(), ArgumentDescription.of("[block-size]")) // TODO: Localization
+                        .handler(new SnapshotExportCommand(commandManager, plugin.getDataFolder()))
+                        .build()
+        );
+
+        commands.add(
+                commandManager.commandBuilder("antivpn", baseAliases)
+                        .literal("snapshot", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__SNAPSHOT), getAliases(config, "snapshot")) // TODO: Localization
+                        .literal("import", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__SNAPSHOT_IMPORT)) // TODO: Localization
+                        .permission(ConfigUtil.getCachedConfig().getAdminPermissionNode())
+                        .argument(StringArgument.<BukkitLocalizedCommandSender>newBuilder("storage").withSuggestionsProvider((c, s) -> getStorageNames()).build(), ArgumentDescription.of("<storage>")) // TODO: Localization
+                        .argument(StringArgument.of("file"), ArgumentDescription.of("<file>")) // TODO: Localization
+                        .handler(new SnapshotImportCommand(commandManager, plugin.getDataFolder()))
+                        .build()
+        );
+
         /*commands.add(
             commandManager.commandBuilder("antivpn", baseAliases)
                 .literal("test", LocalizedArgumentDescription.of(MessageKey.COMMAND_DESC__TEST), getAliases(config, "test")) // TODO: Localization
@@ -114,4 +165,12 @@ public class AntiVPNCommands extends CommandHolder {
 
         registerAll();
     }
+
+    private @NotNull List<@NotNull String> getStorageNames() {
+        List<String> retVal = new ArrayList<>();
+        for (StorageService service : ConfigUtil.getCachedConfig().getStorage()) {
+            retVal.add(service.getName());
+        }
+        return retVal;
+    }
 }
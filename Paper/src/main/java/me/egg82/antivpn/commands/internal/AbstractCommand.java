@@ -2,11 +2,14 @@ package me.egg82.antivpn.commands.internal;
 
 import cloud.commandframework.execution.CommandExecutionHandler;
 import cloud.commandframework.paper.PaperCommandManager;
+import me.egg82.antivpn.config.CachedConfig;
 import me.egg82.antivpn.locale.BukkitLocalizedCommandSender;
 import me.egg82.antivpn.logging.GELFLogger;
 import me.egg82.antivpn.services.lookup.PlayerInfo;
 import me.egg82.antivpn.services.lookup.PlayerLookup;
+import me.egg82.antivpn.storage.StorageService;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,4 +26,13 @@ public abstract class AbstractCommand implements CommandExecutionHandler<BukkitL
     }
 
     protected @NotNull CompletableFuture<@NotNull UUID> fetchUuid(@NotNull String name) { return PlayerLookup.get(name).thenApply(PlayerInfo::getUUID); }
+
+    protected @Nullable StorageService getStorage(@NotNull CachedConfig cachedConfig, @NotNull String name) {
+        for (StorageService service : cachedConfig.getStorage()) {
+            if (name.equalsIgnoreCase(service.getName())) {
+                return service;
+            }
+        }
+        return null;
+    }
 }
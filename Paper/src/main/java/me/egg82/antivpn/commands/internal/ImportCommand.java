@@ -2,101 +2,124 @@ package me.egg82.antivpn.commands.internal;
 
 import cloud.commandframework.context.CommandContext;
 import cloud.commandframework.paper.PaperCommandManager;
+import me.egg82.antivpn.config.CachedConfig;
+import me.egg82.antivpn.config.ConfigUtil;
 import me.egg82.antivpn.locale.BukkitLocalizedCommandSender;
+import me.egg82.antivpn.locale.MessageKey;
+import me.egg82.antivpn.storage.StorageCopier;
+import me.egg82.antivpn.storage.StorageService;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
 public class ImportCommand extends AbstractCommand {
-    public ImportCommand(@NotNull PaperCommandManager<BukkitLocalizedCommandSender> commandManager) {
+    private final File progressFile;
+
+    public ImportCommand(@NotNull PaperCommandManager<BukkitLocalizedCommandSender> commandManager, @NotNull File dataFolder) {
         super(commandManager);
+        this.progressFile = new File(dataFolder, "import.properties");
     }
 
     @Override
-    public void execute(@NonNull CommandContext<BukkitLocalizedCommandSender> commandContext) { }
+    public void execute(@NonNull CommandContext<BukkitLocalizedCommandSender> commandContext) {
+        commandManager.taskRecipe().begin(commandContext)
+                .asynchronous(c -> {
+                    String masterName = c.get("master");
+                    String slaveName = c.get("slave");
+                    int batchSize = c.get("batch-size");
+                    int parallelism = c.get("parallelism");
 
-    /*private final String masterName;
-    private final String slaveName;
-    private final String batchMax;
+                    if (masterName.equalsIgnoreCase(slaveName)) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__ERROR__SAME_STORAGE);
+                        return;
+                    }
 
-    public ImportCommand(@NotNull CommandIssuer issuer, @NotNull TaskChainFactory taskFactory, @NotNull String masterName, @NotNull String slaveName, @NotNull String batchMax) {
-        super(issuer, taskFactory);
-        this.masterName = masterName;
-        this.slaveName = slaveName;
-        this.batchMax = batchMax;
-    }
+                    CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
 
-    public void run() {
-        if (masterName.isEmpty()) {
-            issuer.sendError(MessageKey.IMPORT__NO_MASTER);
-            return;
-        }
-        if (slaveName.isEmpty()) {
-            issuer.sendError(MessageKey.IMPORT__NO_SLAVE);
-            return;
-        }
+                    StorageService master = getStorage(cachedConfig, masterName);
+                    if (master == null) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__ERROR__NO_MASTER);
+                        return;
+                    }
+                    StorageService slave = getStorage(cachedConfig, slaveName);
+                    if (slave == null) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__ERROR__NO_SLAVE);
+                        return;
+                    }
 
-        if (masterName.equalsIgnoreCase(slaveName)) {
-            issuer.sendError(MessageKey.IMPORT__SAME_STORAGE);
-            return;
-        }
+                    String ipKey = master.getName() + ".to." + slave.getName() + ".ip";
+                    String playerKey = master.getName() + ".to." + slave.getName() + ".player";
 
-       CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+                    Properties progress = loadProgress();
+                    if (c.flags().isPresent("restart")) {
+                        progress.remove(ipKey);
+                        progress.remove(playerKey);
+                    }
+                    long ipCursor = Long.parseLong(progress.getProperty(ipKey, "0"));
+                    long playerCursor = Long.parseLong(progress.getProperty(playerKey, "0"));
 
-        int max = batchMax == null ? 50 : Integer.parseInt(batchMax);
+                    if (ipCursor > 0L || playerCursor > 0L) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__RESUME, "{ip}", String.valueOf(ipCursor), "{player}", String.valueOf(playerCursor));
+                    } else {
+                        c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__BEGIN);
+                    }
 
-        int masterIndex = -1;
-        int slaveIndex = -1;
-        for (int i = 0; i < cachedConfig.getStorage().size(); i++) {
-            StorageService storage = cachedConfig.getStorage().get(i);
-            if (masterIndex == -1 && masterName.equalsIgnoreCase(storage.getName())) {
-                masterIndex = i;
-            } else if (slaveIndex == -1 && slaveName.equalsIgnoreCase(storage.getName())) { // The elseif helps to ensure we aren't trying to import from master to master
-                slaveIndex = i;
-            }
-        }
+                    // Only rows that haven't expired yet, the same ones the purger would leave behind
+                    StorageCopier copier = new StorageCopier(master, slave, batchSize, parallelism);
+                    try {
+                        copier.copyIps(ipCursor, cachedConfig.getSourceCacheTime(), (copied, cursor, rate) -> {
+                            saveProgress(progress, ipKey, cursor);
+                            c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__IMPORT_IP, "{id}", String.valueOf(cursor), "{count}", String.valueOf(copied), "{rate}", String.format("%.1f", rate));
+                        });
+                        copier.copyPlayers(playerCursor, Math.max(cachedConfig.getSourceCacheTime(), cachedConfig.getMCLeaksCacheTime()), (copied, cursor, rate) -> {
+                            saveProgress(progress, playerKey, cursor);
+                            c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__IMPORT_PLAYER, "{id}", String.valueOf(cursor), "{count}", String.valueOf(copied), "{rate}", String.format("%.1f", rate));
+                        });
+                    } catch (StorageCopier.StorageCopyException ex) {
+                        logger.error(ex.getMessage(), ex);
+                        c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__ERROR__FAILED, "{id}", String.valueOf(ex.getCursor()));
+                        return;
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
 
-        if (masterIndex == -1) {
-            issuer.sendError(MessageKey.IMPORT__NO_MASTER);
-            return;
-        }
-        if (slaveIndex == -1) {
-            issuer.sendError(MessageKey.IMPORT__NO_SLAVE);
-            return;
-        }
+                    progress.remove(ipKey);
+                    progress.remove(playerKey);
+                    writeProgress(progress);
 
-        issuer.sendInfo(MessageKey.IMPORT__BEGIN);
-
-        StorageService master = cachedConfig.getStorage().get(masterIndex);
-        StorageService slave = cachedConfig.getStorage().get(slaveIndex);
-
-        TaskChain<Void> chain = taskFactory.newChain();
-        chain.setErrorHandler((ex, task) -> ExceptionUtil.handleException(ex, logger));
-        chain
-                .sync(() -> issuer.sendInfo(MessageKey.IMPORT__IPS, "{id}", "0"))
-                .<Integer>asyncCallback((v, r) -> {
-                    int start = 1;
-                    Set<IPModel> models;
-                    do {
-                        models = master.getAllIps(start, max);
-                        slave.storeModels(models);
-                        issuer.sendInfo(MessageKey.IMPORT__IPS, "{id}", String.valueOf(start + models.size()));
-                        start += models.size();
-                    } while (models.size() == max);
-                    r.accept(start);
+                    c.getSender().sendMessage(MessageKey.COMMAND__IMPORT__END);
                 })
-                .sync(() -> issuer.sendInfo(MessageKey.IMPORT__PLAYERS, "{id}", "0"))
-                .<Integer>asyncCallback((v, r) -> {
-                    int start = 1;
-                    Set<PlayerModel> models;
-                    do {
-                        models = master.getAllPlayers(start, max);
-                        slave.storeModels(models);
-                        issuer.sendInfo(MessageKey.IMPORT__PLAYERS, "{id}", String.valueOf(start + models.size()));
-                        start += models.size();
-                    } while (models.size() == max);
-                    r.accept(start);
-                })
-                .syncLast(v -> issuer.sendInfo(MessageKey.IMPORT__END))
                 .execute();
-    }*/
+    }
+
+    private @NotNull Properties loadProgress() {
+        Properties retVal = new Properties();
+        if (!progressFile.exists()) {
+            return retVal;
+        }
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(progressFile), StandardCharsets.UTF_8)) {
+            retVal.load(reader);
+        } catch (IOException ex) {
+            logger.error("Could not read import progress from " + progressFile.getAbsolutePath() + ", starting over.", ex);
+        }
+        return retVal;
+    }
+
+    private void saveProgress(@NotNull Properties progress, @NotNull String key, long cursor) {
+        progress.setProperty(key, String.valueOf(cursor));
+        writeProgress(progress);
+    }
+
+    private synchronized void writeProgress(@NotNull Properties progress) {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(progressFile), StandardCharsets.UTF_8)) {
+            progress.store(writer, "Anti-VPN import progress, delete to start imports over");
+        } catch (IOException ex) {
+            logger.error("Could not write import progress to " + progressFile.getAbsolutePath() + ".", ex);
+        }
+    }
 }
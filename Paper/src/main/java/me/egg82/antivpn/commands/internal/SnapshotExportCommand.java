@@ -0,0 +1,77 @@
+package me.egg82.antivpn.commands.internal;
+
+import cloud.commandframework.context.CommandContext;
+import cloud.commandframework.paper.PaperCommandManager;
+import me.egg82.antivpn.config.CachedConfig;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.locale.BukkitLocalizedCommandSender;
+import me.egg82.antivpn.locale.MessageKey;
+import me.egg82.antivpn.storage.StorageService;
+import me.egg82.antivpn.storage.StorageSnapshot;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+public class SnapshotExportCommand extends AbstractCommand {
+    private final File snapshotFolder;
+
+    public SnapshotExportCommand(@NotNull PaperCommandManager<BukkitLocalizedCommandSender> commandManager, @NotNull File dataFolder) {
+        super(commandManager);
+        this.snapshotFolder = new File(dataFolder, "snapshots");
+    }
+
+    @Override
+    public void execute(@NonNull CommandContext<BukkitLocalizedCommandSender> commandContext) {
+        commandManager.taskRecipe().begin(commandContext)
+                .asynchronous(c -> {
+                    String storageName = c.get("storage");
+                    String fileName = c.getOrDefault("file", "anti_vpn-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".avpn");
+                    int blockSize = c.get("block-size");
+
+                    // Plain names only, so the command can't be pointed at files outside the snapshots folder
+                    if (!fileName.equals(new File(fileName).getName())) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__BAD_FILE);
+                        return;
+                    }
+
+                    CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+
+                    StorageService storage = getStorage(cachedConfig, storageName);
+                    if (storage == null) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__NO_STORAGE);
+                        return;
+                    }
+
+                    if (!snapshotFolder.exists() && !snapshotFolder.mkdirs()) {
+                        logger.error("Could not create snapshot folder " + snapshotFolder.getAbsolutePath() + ".");
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__FAILED, "{file}", fileName);
+                        return;
+                    }
+
+                    c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__EXPORT_BEGIN, "{storage}", storage.getName(), "{file}", fileName);
+
+                    long rows;
+                    try {
+                        rows = StorageSnapshot.export(
+                                storage,
+                                new File(snapshotFolder, fileName),
+                                blockSize,
+                                cachedConfig.getSourceCacheTime(),
+                                Math.max(cachedConfig.getSourceCacheTime(), cachedConfig.getMCLeaksCacheTime()),
+                                (count, rate) -> c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__PROGRESS, "{count}", String.valueOf(count), "{rate}", String.format("%.1f", rate))
+                        );
+                    } catch (IOException | RuntimeException ex) {
+                        logger.error("Could not export " + storage.getName() + " to " + fileName + ".", ex);
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__FAILED, "{file}", fileName);
+                        return;
+                    }
+
+                    c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__EXPORT_END, "{count}", String.valueOf(rows), "{file}", fileName);
+                })
+                .execute();
+    }
+}
@@ -0,0 +1,67 @@
+package me.egg82.antivpn.commands.internal;
+
+import cloud.commandframework.context.CommandContext;
+import cloud.commandframework.paper.PaperCommandManager;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.locale.BukkitLocalizedCommandSender;
+import me.egg82.antivpn.locale.MessageKey;
+import me.egg82.antivpn.storage.StorageService;
+import me.egg82.antivpn.storage.StorageSnapshot;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SnapshotImportCommand extends AbstractCommand {
+    private final File snapshotFolder;
+
+    public SnapshotImportCommand(@NotNull PaperCommandManager<BukkitLocalizedCommandSender> commandManager, @NotNull File dataFolder) {
+        super(commandManager);
+        this.snapshotFolder = new File(dataFolder, "snapshots");
+    }
+
+    @Override
+    public void execute(@NonNull CommandContext<BukkitLocalizedCommandSender> commandContext) {
+        commandManager.taskRecipe().begin(commandContext)
+                .asynchronous(c -> {
+                    String storageName = c.get("storage");
+                    String fileName = c.get("file");
+
+                    if (!fileName.equals(new File(fileName).getName())) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__BAD_FILE);
+                        return;
+                    }
+
+                    StorageService storage = getStorage(ConfigUtil.getCachedConfig(), storageName);
+                    if (storage == null) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__NO_STORAGE);
+                        return;
+                    }
+
+                    File file = new File(snapshotFolder, fileName);
+                    if (!file.isFile()) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__NO_FILE, "{file}", fileName);
+                        return;
+                    }
+
+                    c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__IMPORT_BEGIN, "{storage}", storage.getName(), "{file}", fileName);
+
+                    long rows;
+                    try {
+                        rows = StorageSnapshot.load(
+                                file,
+                                storage,
+                                (count, rate) -> c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__PROGRESS, "{count}", String.valueOf(count), "{rate}", String.format("%.1f", rate))
+                        );
+                    } catch (IOException | RuntimeException ex) {
+                        logger.error("Could not import " + fileName + " into " + storage.getName() + ".", ex);
+                        c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__ERROR__FAILED, "{file}", fileName);
+                        return;
+                    }
+
+                    c.getSender().sendMessage(MessageKey.COMMAND__SNAPSHOT__IMPORT_END, "{count}", String.valueOf(rows), "{file}", fileName);
+                })
+                .execute();
+    }
+}
@@ -0,0 +1,75 @@
+package me.egg82.antivpn.commands.internal;
+
+import cloud.commandframework.context.CommandContext;
+import cloud.commandframework.paper.PaperCommandManager;
+import me.egg82.antivpn.api.VPNAPIProvider;
+import me.egg82.antivpn.api.model.source.AbstractSource;
+import me.egg82.antivpn.api.model.source.LatencyTracker;
+import me.egg82.antivpn.api.model.source.Source;
+import me.egg82.antivpn.api.model.source.models.SourceModel;
+import me.egg82.antivpn.config.CachedConfig;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.locale.BukkitLocalizedCommandSender;
+import me.egg82.antivpn.locale.MessageKey;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public class SourcesCommand extends AbstractCommand {
+    public SourcesCommand(@NotNull PaperCommandManager<BukkitLocalizedCommandSender> commandManager) {
+        super(commandManager);
+    }
+
+    @Override
+    public void execute(@NonNull CommandContext<BukkitLocalizedCommandSender> commandContext) {
+        commandManager.taskRecipe().begin(commandContext)
+                .asynchronous(c -> {
+                    CachedConfig cachedConfig = ConfigUtil.getCachedConfig();
+                    if (cachedConfig.getAdaptiveTimeout()) {
+                        c.getSender().sendMessage(
+                                MessageKey.COMMAND__SOURCES__ADAPTIVE_TIMEOUT,
+                                "{margin}", String.valueOf(cachedConfig.getTimeoutMargin()),
+                                "{min}", String.valueOf(cachedConfig.getMinTimeout()),
+                                "{max}", String.valueOf(cachedConfig.getTimeout())
+                        );
+                    } else {
+                        c.getSender().sendMessage(MessageKey.COMMAND__SOURCES__TIMEOUT, "{timeout}", String.valueOf(cachedConfig.getTimeout()));
+                    }
+
+                    List<Source<SourceModel>> sources = VPNAPIProvider.getInstance().getSourceManager().getSources();
+                    if (sources.isEmpty()) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__SOURCES__NONE);
+                        return;
+                    }
+
+                    for (Source<SourceModel> source : sources) {
+                        // Sources registered through the API that don't extend AbstractSource time themselves out, so there's nothing to show
+                        if (!(source instanceof AbstractSource)) {
+                            continue;
+                        }
+
+                        AbstractSource<?> s = (AbstractSource<?>) source;
+                        LatencyTracker latency = s.getLatency();
+                        long p99 = latency.getPercentile(0.99d);
+                        if (p99 < 0L) {
+                            c.getSender().sendMessage(
+                                    MessageKey.COMMAND__SOURCES__NO_DATA,
+                                    "{source}", source.getName(),
+                                    "{timeout}", String.valueOf(s.getTimeout()),
+                                    "{samples}", String.valueOf(latency.getSampleCount())
+                            );
+                        } else {
+                            c.getSender().sendMessage(
+                                    MessageKey.COMMAND__SOURCES__SOURCE,
+                                    "{source}", source.getName(),
+                                    "{timeout}", String.valueOf(s.getTimeout()),
+                                    "{p99}", String.valueOf(p99),
+                                    "{samples}", String.valueOf(latency.getSampleCount())
+                            );
+                        }
+                    }
+                })
+                .execute();
+    }
+}
@@ -0,0 +1,70 @@
+package me.egg82.antivpn.commands.internal;
+
+import cloud.commandframework.context.CommandContext;
+import cloud.commandframework.paper.PaperCommandManager;
+import me.egg82.antivpn.config.ConfigUtil;
+import me.egg82.antivpn.locale.BukkitLocalizedCommandSender;
+import me.egg82.antivpn.locale.MessageKey;
+import me.egg82.antivpn.storage.LatencyHistogram;
+import me.egg82.antivpn.storage.PoolMetrics;
+import me.egg82.antivpn.storage.StorageMetrics;
+import me.egg82.antivpn.storage.StorageService;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.jetbrains.annotations.NotNull;
+
+public class StorageCommand extends AbstractCommand {
+    public StorageCommand(@NotNull PaperCommandManager<BukkitLocalizedCommandSender> commandManager) {
+        super(commandManager);
+    }
+
+    @Override
+    public void execute(@NonNull CommandContext<BukkitLocalizedCommandSender> commandContext) {
+        commandManager.taskRecipe().begin(commandContext)
+                .asynchronous(c -> {
+                    for (StorageService service : ConfigUtil.getCachedConfig().getStorage()) {
+                        c.getSender().sendMessage(MessageKey.COMMAND__STORAGE__ENGINE, "{name}", service.getName(), "{type}", service.getClass().getSimpleName());
+
+                        StorageMetrics metrics = service.getMetrics();
+                        boolean any = false;
+                        for (StorageMetrics.Operation operation : StorageMetrics.Operation.values()) {
+                            StorageMetrics.OperationStats stats = metrics.getStats(operation);
+                            if (stats.getCount() == 0L) {
+                                continue;
+                            }
+                            any = true;
+
+                            LatencyHistogram latency = stats.getLatency();
+                            c.getSender().sendMessage(
+                                    MessageKey.COMMAND__STORAGE__OPERATION,
+                                    "{operation}", operation.getName(),
+                                    "{count}", String.valueOf(stats.getCount()),
+                                    "{errors}", String.valueOf(stats.getErrors()),
+                                    "{p50}", format(latency.getPercentileMillis(0.50d)),
+                                    "{p95}", format(latency.getPercentileMillis(0.95d)),
+                                    "{p99}", format(latency.getPercentileMillis(0.99d)),
+                                    "{max}", format(latency.getMaxMillis())
+                            );
+                        }
+                        if (!any) {
+                            c.getSender().sendMessage(MessageKey.COMMAND__STORAGE__NO_DATA);
+                        }
+
+                        PoolMetrics pool = metrics.getPool();
+                        if (pool != null) {
+                            c.getSender().sendMessage(
+                                    MessageKey.COMMAND__STORAGE__POOL,
+                                    "{active}", String.valueOf(pool.getActive()),
+                                    "{max}", String.valueOf(pool.getMax()),
+                                    "{idle}", String.valueOf(pool.getIdle()),
+                                    "{pending}", String.valueOf(pool.getPending()),
+                                    "{timeouts}", String.valueOf(pool.getTimeouts()),
+                                    "{wait}", format(pool.getAcquire().getPercentileMillis(0.99d))
+                            );
+                        }
+                    }
+                })
+                .execute();
+    }
+
+    private static @NotNull String format(double millis) { return String.format("%.1f", millis); }
+}